@@ -0,0 +1,93 @@
+/*!COPYRIGHT HEADER! 
+ *
+ * (c) Copyright Darwino Inc. 2014-2016.
+ *
+ * Licensed under The MIT License (https://opensource.org/licenses/MIT)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial 
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT 
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, 
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.darwino.graphsql.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.darwino.graphsql.benchmarks.ServiceBenchmark.BenchmarkService;
+import com.darwino.graphsql.service.GraphQLServiceFactory;
+
+
+/**
+ * Wide query reading the same few paths of a document through many aliases, with and
+ * without the memoization of the path results by the accessors.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations=3, time=2)
+@Measurement(iterations=5, time=2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AliasedQueryBenchmark {
+	
+	// Number of distinct paths read by the query
+	public static final int PATH_COUNT	= 5;
+	
+	@Param({"0", "64"})
+	public int memoSize;
+	
+	@Param({"20", "200"})
+	public int aliasCount;
+	
+	private BenchmarkService service;
+	private String query;
+	
+	public static String createQuery(int aliasCount) {
+		StringBuilder b = new StringBuilder();
+		b.append("{ Document(unid:\"doc1\") {");
+		for(int i=0; i<aliasCount; i++) {
+			int p = i%PATH_COUNT;
+			b.append(" a").append(i).append(": string(path:\"$.child").append(p*10+9).append(".label\")");
+		}
+		b.append(" } }");
+		return b.toString();
+	}
+	
+	@Setup
+	public void setup() {
+		GraphQLServiceFactory factory = new GraphQLServiceFactory("/graphql", BenchmarkData.createSchema());
+		factory.setJsonMemoSize(memoSize);
+		InMemoryStore store = BenchmarkData.createStore(10, PATH_COUNT*10);
+		service = new BenchmarkService(factory, store.createSession());
+		query = createQuery(aliasCount);
+	}
+	
+	@Benchmark
+	public void processRequest(Blackhole blackhole) {
+		service.run(query, blackhole);
+	}
+}
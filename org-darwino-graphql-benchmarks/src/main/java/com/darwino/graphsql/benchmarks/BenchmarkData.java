@@ -0,0 +1,88 @@
+/*!COPYRIGHT HEADER! 
+ *
+ * (c) Copyright Darwino Inc. 2014-2016.
+ *
+ * Licensed under The MIT License (https://opensource.org/licenses/MIT)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial 
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT 
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, 
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.darwino.graphsql.benchmarks;
+
+import com.darwino.commons.json.JsonArray;
+import com.darwino.commons.json.JsonObject;
+import com.darwino.graphsql.json.GraphQLJsonType;
+import com.darwino.graphsql.jsonstore.JsonDocument;
+
+import graphql.schema.GraphQLSchema;
+
+
+/**
+ * Synthetic data shared by the benchmarks.
+ */
+public class BenchmarkData {
+	
+	public static final String DATABASE	= "bench";
+	public static final String STORE	= "_default";
+	
+	public static GraphQLSchema createSchema() {
+		return GraphQLSchema.newSchema()
+			.query(new GraphQLJsonType(new JsonDocument()).createType())
+			.build();
+	}
+	
+	/**
+	 * Create a document with a given number of top level fields.
+	 * Every tenth field is a nested object, to keep the paths realistic.
+	 */
+	public static JsonObject createDocument(int fieldCount) {
+		JsonObject json = new JsonObject();
+		json.put("name", "Document name");
+		json.put("value", 12345.5);
+		json.put("active", true);
+		json.put("count", 42);
+		json.put("timestamp", 1500000000000L);
+		json.put("created", "2017-07-14T02:40:00.000Z");
+		for(int i=0; i<fieldCount; i++) {
+			if(i%10==9) {
+				JsonObject child = new JsonObject();
+				child.put("id", i);
+				child.put("label", "Child "+i);
+				JsonArray values = new JsonArray();
+				for(int j=0; j<10; j++) {
+					values.add((double)j);
+				}
+				child.put("values", values);
+				json.put("child"+i, child);
+			} else {
+				json.put("field"+i, "Value of field "+i);
+			}
+		}
+		return json;
+	}
+	
+	public static InMemoryStore createStore(int documentCount, int fieldCount) {
+		InMemoryStore store = new InMemoryStore();
+		for(int i=0; i<documentCount; i++) {
+			store.put("doc"+i, createDocument(fieldCount));
+		}
+		return store;
+	}
+	
+	private BenchmarkData() {
+	}
+}
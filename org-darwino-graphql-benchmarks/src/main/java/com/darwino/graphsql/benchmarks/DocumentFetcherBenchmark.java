@@ -0,0 +1,97 @@
+/*!COPYRIGHT HEADER! 
+ *
+ * (c) Copyright Darwino Inc. 2014-2016.
+ *
+ * Licensed under The MIT License (https://opensource.org/licenses/MIT)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial 
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT 
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, 
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.darwino.graphsql.benchmarks;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.darwino.graphsql.jsonstore.JsonDocument;
+import com.darwino.jsonstore.Session;
+
+import graphql.schema.DataFetchingEnvironment;
+
+
+/**
+ * Document loading by the Document field fetcher, against an in memory store.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations=3, time=2)
+@Measurement(iterations=5, time=2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DocumentFetcherBenchmark {
+	
+	@Param({"10", "100", "1000"})
+	public int fieldCount;
+	
+	private Session session;
+	private Map<Object,Object> sharedContext;
+	
+	@Setup
+	public void setup() {
+		session = BenchmarkData.createStore(1, fieldCount).createSession();
+		sharedContext = createContext();
+	}
+	
+	private Map<Object,Object> createContext() {
+		Map<Object,Object> ctx = new HashMap<Object,Object>();
+		ctx.put(JsonDocument.Context.class, new JsonDocument.Context(session, BenchmarkData.DATABASE, BenchmarkData.STORE));
+		return ctx;
+	}
+	
+	private static DataFetchingEnvironment environment(Object context) {
+		return new DataFetchingEnvironment(null, Collections.<String,Object>singletonMap("unid", "doc0"), context, null, null, null, null);
+	}
+
+	/**
+	 * Each invocation is a new request.
+	 */
+	@Benchmark
+	public Object loadDocument() {
+		return JsonDocument.documentFecther.get(environment(createContext()));
+	}
+
+	/**
+	 * All the invocations are part of the same request.
+	 */
+	@Benchmark
+	public Object loadDocumentSameRequest() {
+		return JsonDocument.documentFecther.get(environment(sharedContext));
+	}
+}
@@ -0,0 +1,137 @@
+/*!COPYRIGHT HEADER! 
+ *
+ * (c) Copyright Darwino Inc. 2014-2016.
+ *
+ * Licensed under The MIT License (https://opensource.org/licenses/MIT)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial 
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT 
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, 
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.darwino.graphsql.benchmarks;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.darwino.commons.json.JsonObject;
+import com.darwino.jsonstore.Database;
+import com.darwino.jsonstore.Document;
+import com.darwino.jsonstore.Session;
+import com.darwino.jsonstore.Store;
+
+
+/**
+ * In memory stand-in for a JSON store session.
+ * 
+ * This only implements what the GraphQL data fetchers use to load a document by unid,
+ * so the benchmarks measure the GraphQL layer and not a database.
+ */
+public class InMemoryStore {
+	
+	private Map<String,JsonObject> documents = new HashMap<String,JsonObject>();
+	private Date lastModified = new Date();
+	private AtomicLong loads = new AtomicLong();
+	
+	public InMemoryStore() {
+	}
+	
+	public void put(String unid, JsonObject json) {
+		documents.put(unid,json);
+	}
+	
+	public long getLoadCount() {
+		return loads.get();
+	}
+	
+	public Session createSession() {
+		final Store store = proxy(Store.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				if(method.getName().equals("loadDocument")) {
+					String unid = (String)args[0];
+					JsonObject json = documents.get(unid);
+					if(json==null) {
+						return null;
+					}
+					loads.incrementAndGet();
+					return createDocument(unid,json);
+				}
+				return unsupported(method);
+			}
+		});
+		final Database database = proxy(Database.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				if(method.getName().equals("getStore")) {
+					return store;
+				}
+				return unsupported(method);
+			}
+		});
+		return proxy(Session.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				if(method.getName().equals("getDatabase")) {
+					return database;
+				}
+				return unsupported(method);
+			}
+		});
+	}
+	
+	private Document createDocument(final String unid, final JsonObject json) {
+		return proxy(Document.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				String name = method.getName();
+				if(name.equals("getJson")) {
+					return json;
+				}
+				if(name.equals("getUnid")) {
+					return unid;
+				}
+				if(name.equals("getLastModificationDate")) {
+					return lastModified;
+				}
+				return unsupported(method);
+			}
+		});
+	}
+	
+	private static Object unsupported(Method method) {
+		String name = method.getName();
+		if(name.equals("hashCode")) {
+			return 0;
+		}
+		if(name.equals("equals")) {
+			return Boolean.FALSE;
+		}
+		if(name.equals("toString")) {
+			return method.getDeclaringClass().getSimpleName();
+		}
+		throw new UnsupportedOperationException(method.toString());
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static <T> T proxy(Class<T> c, InvocationHandler handler) {
+		return (T)Proxy.newProxyInstance(InMemoryStore.class.getClassLoader(), new Class<?>[] {c}, handler);
+	}
+}
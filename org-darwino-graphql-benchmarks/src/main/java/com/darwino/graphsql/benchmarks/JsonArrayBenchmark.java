@@ -0,0 +1,165 @@
+/*!COPYRIGHT HEADER! 
+ *
+ * (c) Copyright Darwino Inc. 2014-2016.
+ *
+ * Licensed under The MIT License (https://opensource.org/licenses/MIT)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial 
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT 
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, 
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.darwino.graphsql.benchmarks;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.darwino.commons.json.JsonArray;
+import com.darwino.commons.json.JsonObject;
+import com.darwino.commons.json.JsonUtil;
+import com.darwino.commons.services.HttpServiceContext;
+import com.darwino.graphsql.json.JsonAccessor;
+import com.darwino.graphsql.json.JsonAccessorFactory;
+import com.darwino.graphsql.json.JsonStandardFields.JsonArrayFecther;
+import com.darwino.graphsql.service.GraphQLServiceFactory;
+import com.darwino.graphsql.util.JsonStreamWriter;
+import com.darwino.jsonstore.Session;
+
+import graphql.schema.DataFetchingEnvironment;
+
+
+/**
+ * Extraction of numeric arrays (time series) by the array fetchers.
+ * 
+ * The service benchmark runs a query through GraphQLService and writes the response with the
+ * streaming writer, so it includes the completion and the serialization of the arrays.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations=3, time=2)
+@Measurement(iterations=5, time=2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonArrayBenchmark {
+	
+	@Param({"100", "10000"})
+	public int arraySize;
+	
+	private JsonArrayFecther numberFetcher = new JsonArrayFecther(JsonUtil.TYPE_NUMBER);
+	
+	public static final String QUERY = "{ Document(unid:\"series\") { numberArray(path:\"$.series\") } }";
+	
+	/**
+	 * Service writing the response to a discarding writer. 
+	 */
+	public static class SerializingService extends ServiceBenchmark.BenchmarkService {
+		
+		public SerializingService(GraphQLServiceFactory factory, Session session) {
+			super(factory, session);
+		}
+		
+		@Override
+		protected void emitData(HttpServiceContext context, Object data) {
+			CountingWriter w = new CountingWriter();
+			try {
+				JsonStreamWriter jw = new JsonStreamWriter(w);
+				jw.startObject()
+					.property("data", data)
+				.endObject();
+				jw.flush();
+			} catch(IOException ex) {
+				throw new RuntimeException(ex);
+			}
+			super.emitData(context, w.count);
+		}
+	}
+	
+	private static class CountingWriter extends Writer {
+		long count;
+		@Override
+		public void write(char[] cbuf, int off, int len) {
+			count += len;
+		}
+		@Override
+		public void write(int c) {
+			count++;
+		}
+		@Override
+		public void write(String str, int off, int len) {
+			count += len;
+		}
+		@Override
+		public void flush() {
+		}
+		@Override
+		public void close() {
+		}
+	}
+	
+	private DataFetchingEnvironment series;
+	private SerializingService service;
+	
+	@Setup
+	public void setup() {
+		JsonObject json = new JsonObject();
+		JsonArray values = new JsonArray();
+		for(int i=0; i<arraySize; i++) {
+			values.add(i*0.5);
+		}
+		json.put("series", values);
+		JsonAccessor source = JsonAccessorFactory.adapter(json);
+		series = JsonValueBenchmark.environment(source, "$.series");
+		
+		InMemoryStore store = new InMemoryStore();
+		store.put("series", json);
+		service = new SerializingService(new GraphQLServiceFactory("/graphql", BenchmarkData.createSchema()), store.createSession());
+	}
+
+	@Benchmark
+	public Object numberArray() {
+		return numberFetcher.get(series);
+	}
+
+	@Benchmark
+	public double numberArraySum() {
+		// Reads every element, as the execution would do
+		List<?> l = (List<?>)numberFetcher.get(series);
+		double sum = 0;
+		for(int i=0; i<l.size(); i++) {
+			sum += ((Number)l.get(i)).doubleValue();
+		}
+		return sum;
+	}
+
+	@Benchmark
+	public void serviceNumberArray(Blackhole blackhole) {
+		service.run(QUERY, blackhole);
+	}
+}
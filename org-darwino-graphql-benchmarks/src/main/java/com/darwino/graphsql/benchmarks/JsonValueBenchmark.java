@@ -0,0 +1,134 @@
+/*!COPYRIGHT HEADER! 
+ *
+ * (c) Copyright Darwino Inc. 2014-2016.
+ *
+ * Licensed under The MIT License (https://opensource.org/licenses/MIT)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial 
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT 
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, 
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.darwino.graphsql.benchmarks;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.darwino.commons.json.JsonUtil;
+import com.darwino.graphsql.json.JsonAccessor;
+import com.darwino.graphsql.json.JsonAccessorFactory;
+import com.darwino.graphsql.json.JsonStandardFields.JsonDateFecther;
+import com.darwino.graphsql.json.JsonStandardFields.JsonIntFecther;
+import com.darwino.graphsql.json.JsonStandardFields.JsonLongFecther;
+import com.darwino.graphsql.json.JsonStandardFields.JsonValueFecther;
+
+import graphql.schema.DataFetchingEnvironment;
+
+
+/**
+ * Path evaluation by the JSON value fetchers, over documents of different sizes.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations=3, time=2)
+@Measurement(iterations=5, time=2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JsonValueBenchmark {
+	
+	@Param({"10", "100", "1000"})
+	public int fieldCount;
+	
+	private JsonValueFecther stringFetcher = new JsonValueFecther(JsonUtil.TYPE_STRING);
+	private JsonValueFecther numberFetcher = new JsonValueFecther(JsonUtil.TYPE_NUMBER);
+	private JsonIntFecther intFetcher = new JsonIntFecther();
+	private JsonLongFecther longFetcher = new JsonLongFecther();
+	private JsonDateFecther datetimeFetcher = new JsonDateFecther(true);
+	
+	private DataFetchingEnvironment topLevel;
+	private DataFetchingEnvironment nested;
+	private DataFetchingEnvironment number;
+	private DataFetchingEnvironment count;
+	private DataFetchingEnvironment timestamp;
+	private DataFetchingEnvironment created;
+	
+	@Setup
+	public void setup() {
+		JsonAccessor source = JsonAccessorFactory.adapter(BenchmarkData.createDocument(fieldCount));
+		topLevel = environment(source, "$.name");
+		nested = environment(source, "$.child9.label");
+		number = environment(source, "$.value");
+		count = environment(source, "$.count");
+		timestamp = environment(source, "$.timestamp");
+		created = environment(source, "$.created");
+	}
+	
+	public static DataFetchingEnvironment environment(Object source, String path) {
+		return new DataFetchingEnvironment(source, Collections.<String,Object>singletonMap("path", path), null, null, null, null, null);
+	}
+
+	@Benchmark
+	public Object topLevelString() {
+		return stringFetcher.get(topLevel);
+	}
+
+	@Benchmark
+	public Object nestedString() {
+		return stringFetcher.get(nested);
+	}
+
+	@Benchmark
+	public Object number() {
+		return numberFetcher.get(number);
+	}
+
+	// Integer read through the generic number coercion, to compare with the typed fetcher
+	@Benchmark
+	public Object intAsNumber() {
+		return numberFetcher.get(count);
+	}
+
+	@Benchmark
+	public Object intValue() {
+		return intFetcher.get(count);
+	}
+
+	@Benchmark
+	public Object longValue() {
+		return longFetcher.get(timestamp);
+	}
+
+	@Benchmark
+	public Object datetimeFromString() {
+		return datetimeFetcher.get(created);
+	}
+
+	@Benchmark
+	public Object datetimeFromMillis() {
+		return datetimeFetcher.get(timestamp);
+	}
+}
@@ -0,0 +1,114 @@
+/*!COPYRIGHT HEADER! 
+ *
+ * (c) Copyright Darwino Inc. 2014-2016.
+ *
+ * Licensed under The MIT License (https://opensource.org/licenses/MIT)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial 
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT 
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, 
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.darwino.graphsql.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.darwino.commons.services.HttpServiceContext;
+import com.darwino.graphsql.jsonstore.JsonDocument;
+import com.darwino.graphsql.service.GraphQLService;
+import com.darwino.graphsql.service.GraphQLServiceFactory;
+import com.darwino.jsonstore.Session;
+
+
+/**
+ * Parse, validate and execute a query through GraphQLService.processRequest.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations=3, time=2)
+@Measurement(iterations=5, time=2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ServiceBenchmark {
+	
+	public static final String QUERY = "{ Document(unid:\"doc1\") { name: string(path:\"$.name\") value: number(path:\"$.value\") active: boolean(path:\"$.active\") label: string(path:\"$.child9.label\") } }";
+	
+	/**
+	 * Service stub.
+	 * 
+	 * The HTTP context is not used: the execution context is created from the in memory
+	 * store, and the result is consumed instead of being emitted.
+	 */
+	public static class BenchmarkService extends GraphQLService {
+		
+		private Session session;
+		private Blackhole blackhole;
+		
+		public BenchmarkService(GraphQLServiceFactory factory, Session session) {
+			super(factory,false);
+			this.session = session;
+		}
+		
+		public void run(String query, Blackhole blackhole) {
+			this.blackhole = blackhole;
+			processRequest(null, getSchema(), query, null, null);
+		}
+		
+		@Override
+		protected Object createExecutionContext(HttpServiceContext context) {
+			Map<Object,Object> ctx = new HashMap<Object,Object>();
+			ctx.put(JsonDocument.Context.class, new JsonDocument.Context(session, BenchmarkData.DATABASE, BenchmarkData.STORE));
+			return ctx;
+		}
+		
+		@Override
+		protected void emitData(HttpServiceContext context, Object data) {
+			blackhole.consume(data);
+		}
+	}
+	
+	@Param({"true", "false"})
+	public boolean queryCache;
+	
+	private BenchmarkService service;
+	
+	@Setup
+	public void setup() {
+		GraphQLServiceFactory factory = new GraphQLServiceFactory("/graphql", BenchmarkData.createSchema());
+		factory.setQueryCacheSize(queryCache ? GraphQLServiceFactory.DEFAULT_QUERYCACHE_SIZE : 0);
+		InMemoryStore store = BenchmarkData.createStore(10, 20);
+		service = new BenchmarkService(factory, store.createSession());
+	}
+
+	@Benchmark
+	public void processRequest(Blackhole blackhole) {
+		service.run(QUERY, blackhole);
+	}
+}
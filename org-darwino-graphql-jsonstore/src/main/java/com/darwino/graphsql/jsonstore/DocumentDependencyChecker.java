@@ -0,0 +1,121 @@
+/*!COPYRIGHT HEADER! 
+ *
+ * (c) Copyright Darwino Inc. 2014-2016.
+ *
+ * Licensed under The MIT License (https://opensource.org/licenses/MIT)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial 
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT 
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, 
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.darwino.graphsql.jsonstore;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.darwino.commons.json.JsonException;
+import com.darwino.graphsql.jsonstore.JsonDocument.Context;
+import com.darwino.graphsql.service.ResultDependencies;
+import com.darwino.jsonstore.Document;
+import com.darwino.jsonstore.Store;
+
+
+/**
+ * Check the documents a cached result depends on.
+ * 
+ * The dependencies are the keys of the documents read by the query, with their last
+ * modification date. They are checked by reading the modification dates of the documents,
+ * using one cursor per store, which is much cheaper than executing the query again.
+ */
+public class DocumentDependencyChecker implements ResultDependencies.Checker {
+	
+	/**
+	 * Return the stamp recorded for a document, or null if the document does not exist.
+	 */
+	public static Object getStamp(Document doc) {
+		if(doc==null) {
+			return null;
+		}
+		Date d = doc.getLastModificationDate();
+		return d!=null ? Long.valueOf(d.getTime()) : Long.valueOf(0);
+	}
+	
+	public DocumentDependencyChecker() {
+	}
+	
+	@Override
+	public boolean isUnchanged(Object executionContext, Map<Object,Object> dependencies) {
+		Context ctx = null;
+		if(executionContext instanceof Map<?,?>) {
+			ctx = (Context)((Map<?,?>)executionContext).get(Context.class);
+		}
+		if(ctx==null || !ctx.hasSession()) {
+			return false;
+		}
+		
+		// Group the documents per store
+		Map<String,List<DocumentKey>> keys = new LinkedHashMap<String,List<DocumentKey>>();
+		for(Object k: dependencies.keySet()) {
+			if(!(k instanceof DocumentKey)) {
+				// Unknown dependency
+				return false;
+			}
+			DocumentKey key = (DocumentKey)k;
+			String storeKey = key.getDatabase()+"/"+key.getStore();
+			List<DocumentKey> l = keys.get(storeKey);
+			if(l==null) {
+				l = new ArrayList<DocumentKey>();
+				keys.put(storeKey,l);
+			}
+			l.add(key);
+		}
+		
+		try {
+			for(final List<DocumentKey> l: keys.values()) {
+				Map<String,Object> stamps = ctx.withStore(l.get(0), new JsonDocument.StoreCall<Map<String,Object>>() {
+					@Override
+					public Map<String,Object> call(Store store) throws JsonException {
+						return readStamps(store, l);
+					}
+				});
+				for(DocumentKey key: l) {
+					Object expected = dependencies.get(key);
+					Object current = stamps.get(key.getUnid());
+					if(expected==null ? current!=null : !expected.equals(current)) {
+						return false;
+					}
+				}
+			}
+			return true;
+		} catch(JsonException ex) {
+			return false;
+		}
+	}
+	
+	/**
+	 * Read the stamps of a set of documents from a store, without loading the documents. 
+	 */
+	protected Map<String,Object> readStamps(Store store, List<DocumentKey> keys) throws JsonException {
+		List<String> unids = new ArrayList<String>(keys.size());
+		for(DocumentKey key: keys) {
+			unids.add(key.getUnid());
+		}
+		return JsonDocument.readStamps(store, unids);
+	}
+}
@@ -0,0 +1,72 @@
+/*!COPYRIGHT HEADER! 
+ *
+ * (c) Copyright Darwino Inc. 2014-2016.
+ *
+ * Licensed under The MIT License (https://opensource.org/licenses/MIT)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial 
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT 
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, 
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.darwino.graphsql.jsonstore;
+
+
+/**
+ * Identifies a document in the JSON store.
+ */
+public final class DocumentKey {
+	
+	private final String database;
+	private final String store;
+	private final String unid;
+	private final int hash;
+	
+	public DocumentKey(String database, String store, String unid) {
+		this.database = database;
+		this.store = store;
+		this.unid = unid;
+		this.hash = (database.hashCode()*31 + store.hashCode())*31 + unid.hashCode();
+	}
+	
+	public String getDatabase() {
+		return database;
+	}
+	public String getStore() {
+		return store;
+	}
+	public String getUnid() {
+		return unid;
+	}
+	
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+	@Override
+	public boolean equals(Object o) {
+		if(o==this) {
+			return true;
+		}
+		if(!(o instanceof DocumentKey)) {
+			return false;
+		}
+		DocumentKey k = (DocumentKey)o;
+		return hash==k.hash && unid.equals(k.unid) && store.equals(k.store) && database.equals(k.database);
+	}
+	@Override
+	public String toString() {
+		return database+"/"+store+"/"+unid;
+	}
+}
@@ -0,0 +1,195 @@
+/*!COPYRIGHT HEADER! 
+ *
+ * (c) Copyright Darwino Inc. 2014-2016.
+ *
+ * Licensed under The MIT License (https://opensource.org/licenses/MIT)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial 
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT 
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, 
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.darwino.graphsql.jsonstore;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import com.darwino.commons.json.JsonException;
+import com.darwino.commons.json.JsonObject;
+import com.darwino.commons.json.jsonpath.JsonPath;
+import com.darwino.graphsql.json.JsonAccessor;
+import com.darwino.graphsql.json.JsonProvider;
+import com.darwino.graphsql.jsonstore.JsonDocument.Context;
+import com.darwino.jsonstore.CursorEntry;
+import com.darwino.jsonstore.Store;
+
+import graphql.language.Argument;
+import graphql.language.Field;
+import graphql.language.InlineFragment;
+import graphql.language.Selection;
+import graphql.language.SelectionSet;
+import graphql.language.StringValue;
+import graphql.language.Value;
+import graphql.language.VariableReference;
+import graphql.schema.DataFetchingEnvironment;
+
+
+/**
+ * Projection of a document on the paths read by a query.
+ * 
+ * When the sub-selection of a Document field only reads literal paths, only these
+ * sub-trees are extracted by the store instead of loading the whole document.
+ */
+public class DocumentProjection {
+	
+	// Only simple member paths are pushed down to the store
+	private static final Pattern SIMPLE_PATH = Pattern.compile("\\$(\\.[A-Za-z_][A-Za-z0-9_]*)+");
+	
+	/**
+	 * Accessor on a projected document.
+	 * 
+	 * If a path that was not projected is requested, the full document is loaded.
+	 */
+	public static class Accessor extends JsonAccessor {
+		
+		private Context context;
+		private DocumentKey key;
+		private Map<String,Object> values;
+		// A Document, or a CachedDocument from the shared cache
+		private volatile Object document;
+		
+		public Accessor(Object parent, Context context, DocumentKey key, Map<String,Object> values) {
+			super(parent);
+			this.context = context;
+			this.key = key;
+			this.values = values;
+		}
+		
+		public DocumentKey getKey() {
+			return key;
+		}
+		
+		@Override
+		protected Object readPath(String path) throws JsonException {
+			// The projected values are indexed by the path text, as the compiled path
+			// can be evicted from the path cache and recompiled as another instance
+			if(values.containsKey(path)) {
+				return values.get(path);
+			}
+			return super.readPath(path);
+		}
+		
+		@Override
+		public Object path(JsonPath path) throws JsonException {
+			Object doc = document;
+			if(doc==null) {
+				doc = document = context.fetchDocument(key,true);
+			}
+			return doc!=null ? path.read(JsonDocument.getJson(doc)) : null;
+		}
+	}
+	
+	/**
+	 * Collect the paths read by the sub-selection of the current field.
+	 * 
+	 * This returns null when the paths cannot be known before execution: variables,
+	 * fragment spreads or complex paths. 
+	 */
+	public static Set<String> collectPaths(DataFetchingEnvironment environment) {
+		List<Field> fields = environment.getFields();
+		if(fields==null) {
+			return null;
+		}
+		Set<String> paths = new LinkedHashSet<String>();
+		for(Field f: fields) {
+			if(!collectPaths(f.getSelectionSet(),paths)) {
+				return null;
+			}
+		}
+		return paths;
+	}
+	private static boolean collectPaths(SelectionSet selectionSet, Set<String> paths) {
+		if(selectionSet==null) {
+			return true;
+		}
+		for(Selection s: selectionSet.getSelections()) {
+			if(s instanceof Field) {
+				// The arguments are evaluated against this document, while the
+				// sub-selections are evaluated against the child values
+				List<Argument> args = ((Field)s).getArguments();
+				if(args!=null) {
+					for(Argument a: args) {
+						Value v = a.getValue();
+						if(v instanceof VariableReference) {
+							// Variables can hold a path at runtime
+							return false;
+						}
+						if(v instanceof StringValue) {
+							String path = ((StringValue)v).getValue();
+							if(JsonProvider.pathArgument.getName().equals(a.getName()) || (path!=null && path.startsWith("$."))) {
+								if(path==null || !SIMPLE_PATH.matcher(path).matches()) {
+									return false;
+								}
+								paths.add(path);
+							}
+						}
+					}
+				}
+			} else if(s instanceof InlineFragment) {
+				if(!collectPaths(((InlineFragment)s).getSelectionSet(),paths)) {
+					return false;
+				}
+			} else {
+				// Fragment spreads cannot be resolved from the data fetching environment
+				return false;
+			}
+		}
+		return true;
+	}
+	/**
+	 * Load the projection of a document.
+	 * @return the values indexed by path, or null if the document does not exist
+	 */
+	public static Map<String,Object> load(Store store, String unid, Set<String> paths) throws JsonException {
+		JsonObject extract = new JsonObject();
+		int i = 0;
+		for(String p: paths) {
+			extract.put("p"+(i++),p);
+		}
+		CursorEntry entry = store.openCursor()
+			.unid(unid)
+			.extract(extract)
+			.findOne();
+		if(entry==null) {
+			return null;
+		}
+		Object value = entry.getValue();
+		Map<String,Object> values = new HashMap<String,Object>();
+		i = 0;
+		for(String p: paths) {
+			Object v = value instanceof Map<?,?> ? ((Map<?,?>)value).get("p"+i) : null;
+			values.put(p,v);
+			i++;
+		}
+		return values;
+	}
+	
+	private DocumentProjection() {
+	}
+}
@@ -22,23 +22,62 @@
 
 package com.darwino.graphsql.jsonstore;
 
+import static graphql.Scalars.GraphQLBoolean;
+import static graphql.Scalars.GraphQLInt;
 import static graphql.Scalars.GraphQLString;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import com.darwino.commons.json.JsonArray;
 import com.darwino.commons.json.JsonException;
+import com.darwino.commons.json.JsonObject;
 import com.darwino.commons.json.jsonpath.JsonPath;
 import com.darwino.commons.util.StringUtil;
 import com.darwino.graphsql.json.GraphQLJsonType;
 import com.darwino.graphsql.json.JsonAccessor;
 import com.darwino.graphsql.json.JsonDataFetcher;
+import com.darwino.graphsql.json.JsonPathCache;
 import com.darwino.graphsql.json.JsonProvider;
+import com.darwino.graphsql.metrics.Metrics;
+import com.darwino.graphsql.service.RequestDeadline;
+import com.darwino.graphsql.service.ResultDependencies;
+import com.darwino.graphsql.util.Base64Util;
+import com.darwino.graphsql.util.JsonStreamWriter;
+import com.darwino.jsonstore.Cursor;
+import com.darwino.jsonstore.CursorEntry;
+import com.darwino.jsonstore.Database;
 import com.darwino.jsonstore.Document;
 import com.darwino.jsonstore.Session;
+import com.darwino.jsonstore.Store;
+import com.darwino.jsonstore.callback.CursorHandler;
 
+import graphql.GraphQLException;
+import graphql.execution.batched.Batched;
+import graphql.schema.DataFetcher;
 import graphql.schema.DataFetchingEnvironment;
 import graphql.schema.GraphQLArgument;
 import graphql.schema.GraphQLFieldDefinition;
+import graphql.schema.GraphQLList;
 import graphql.schema.GraphQLObjectType;
 import graphql.schema.GraphQLTypeReference;
 
@@ -52,23 +91,160 @@ public class JsonDocument extends JsonProvider {
 	public static class DocumentAccessor extends JsonAccessor {
 		
 		private Document document;
+		private SharedDocumentCache.CachedDocument cached;
 		
 		public DocumentAccessor(Object parent, Document document) {
 			super(parent);
 			this.document = document;
 		}
+		DocumentAccessor(Object parent, SharedDocumentCache.CachedDocument cached) {
+			super(parent);
+			this.cached = cached;
+		}
 		@Override
 		public Object path(JsonPath path) throws JsonException {
-			return path.read(document.getJson());
+			return path.read(document!=null ? document.getJson() : cached.getJson());
+		}
+	}
+	
+	// Create an accessor for a document read by a field: a Document or a CachedDocument
+	static DocumentAccessor createAccessor(Object parent, Object doc) {
+		if(doc instanceof SharedDocumentCache.CachedDocument) {
+			return new DocumentAccessor(parent,(SharedDocumentCache.CachedDocument)doc);
 		}
+		return new DocumentAccessor(parent,(Document)doc);
+	}
+	static Object getJson(Object doc) throws JsonException {
+		if(doc instanceof SharedDocumentCache.CachedDocument) {
+			return ((SharedDocumentCache.CachedDocument)doc).getJson();
+		}
+		return ((Document)doc).getJson();
+	}
+	static Object getStamp(Object doc) {
+		if(doc instanceof SharedDocumentCache.CachedDocument) {
+			return ((SharedDocumentCache.CachedDocument)doc).getStamp();
+		}
+		return DocumentDependencyChecker.getStamp((Document)doc);
 	}
 	
-	public static final class Context {
+	// Load of a document in progress, awaited by the other fields requesting the same document
+	private static final class PendingLoad extends FutureTask<Object> {
+		private static final Callable<Object> NONE = new Callable<Object>() {
+			@Override
+			public Object call() {
+				return null;
+			}
+		};
+		PendingLoad() {
+			super(NONE);
+		}
+		void complete(Object doc) {
+			set(doc);
+		}
+		void fail(Throwable ex) {
+			setException(ex);
+		}
+		Object await() throws JsonException {
+			try {
+				return get();
+			} catch(InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new JsonException(ex,"Interrupted while waiting for a document");
+			} catch(ExecutionException ex) {
+				Throwable t = ex.getCause();
+				if(t instanceof JsonException) {
+					throw (JsonException)t;
+				}
+				if(t instanceof RuntimeException) {
+					throw (RuntimeException)t;
+				}
+				throw new JsonException(t,"Error while loading a document");
+			}
+		}
+	}
+	
+	/**
+	 * Call made with a store of the request.
+	 * @see Context#withStore(String, String, StoreCall)
+	 */
+	public interface StoreCall<T> {
+		public T call(Store store) throws JsonException;
+	}
+	
+	/**
+	 * Call made with a session of the request.
+	 * @see Context#withSession(SessionCall)
+	 */
+	public interface SessionCall<T> {
+		public T call(Session session) throws JsonException;
+	}
+	
+	// Session used by one call at a time, with the database and store handles it resolved
+	private static final class Lane {
+		final Session session;
+		final Map<String,Database> databases = new HashMap<String,Database>();
+		final Map<String,Store> stores = new HashMap<String,Store>();
+		Lane(Session session) {
+			this.session = session;
+		}
+		Store resolveStore(String database, String store) throws JsonException {
+			String key = database+"/"+store;
+			Store st = stores.get(key);
+			if(st==null) {
+				Database db = databases.get(database);
+				if(db==null) {
+					db = session.getDatabase(database);
+					databases.put(database,db);
+				}
+				st = db.getStore(store);
+				stores.put(key,st);
+			}
+			return st;
+		}
+	}
+	
+	/**
+	 * Request context.
+	 * 
+	 * The context is stored in the execution context map, so it is reachable from all the fields,
+	 * including when they are resolved by other threads with parallel execution. Its request state
+	 * is thread safe.
+	 * 
+	 * As a store session is not thread safe, the calls to the store are made through
+	 * {@link #withStore(String, String, StoreCall)}, which gives a session to one call at a time.
+	 * A context created with a single session runs the store calls one after the other. A context
+	 * created with a {@link SessionSource} opens more sessions when the fields read concurrently,
+	 * up to a maximum, so independent reads overlap. The sessions are handed over through a
+	 * java.util.concurrent queue: a waiting field does not hold a monitor, and a virtual thread
+	 * does not pin its carrier thread while it waits.
+	 * 
+	 * The context must be closed when the request completes, to close the sessions it opened.
+	 */
+	public static final class Context implements Closeable {
+		
+		public static final int DEFAULT_MAX_SESSIONS	= 4;
 		
 		private Session session;
+		private SessionSource sessionSource;
+		private int maxSessions;
 		private String database;
 		private String store;
 		
+		// Sessions of the request, each used by one store call at a time
+		private final LinkedBlockingQueue<Lane> idleLanes = new LinkedBlockingQueue<Lane>();
+		private final ConcurrentLinkedQueue<Lane> openedLanes = new ConcurrentLinkedQueue<Lane>();
+		private final AtomicInteger laneCount = new AtomicInteger();
+		
+		// Documents already loaded by this request
+		// They can come from the shared cache when they were only read by the document fields
+		private Map<DocumentKey,Object> documents = new ConcurrentHashMap<DocumentKey,Object>();
+		private ConcurrentHashMap<DocumentKey,PendingLoad> loading = new ConcurrentHashMap<DocumentKey,PendingLoad>();
+		private AtomicInteger avoidedLoads = new AtomicInteger();
+		private SharedDocumentCache sharedCache = SharedDocumentCache.getDefault();
+		
+		// Deadline of the request, checked before reading from the store
+		private volatile RequestDeadline deadline;
+		
 		public Context(Session session) {
 			this(session, null, null);
 		}
@@ -77,69 +253,1023 @@ public class JsonDocument extends JsonProvider {
 		}
 		public Context(Session session, String database, String store) {
 			this.session = session;
+			this.maxSessions = 1;
 			this.database = database;
 			this.store = store;
+			if(session!=null) {
+				idleLanes.add(new Lane(session));
+				laneCount.set(1);
+			}
 		}
 		
+		/**
+		 * Create a context opening its sessions from a source.
+		 * @param maxSessions the maximum number of sessions used at the same time
+		 */
+		public Context(SessionSource sessionSource, int maxSessions, String database, String store) {
+			if(maxSessions<1) {
+				throw new IllegalArgumentException("The maximum number of sessions must be greater than 0");
+			}
+			this.sessionSource = sessionSource;
+			this.maxSessions = maxSessions;
+			this.database = database;
+			this.store = store;
+		}
+		
+		/**
+		 * Return the session the context was created with, or null when it opens its sessions
+		 * from a source. The session must only be used through {@link #withSession(SessionCall)}.
+		 */
 		public Session getSession() {
 			return session;
 		}
+		
+		/**
+		 * Check if the context can read from the store.
+		 */
+		public boolean hasSession() {
+			return session!=null || sessionSource!=null;
+		}
+		
+		public SessionSource getSessionSource() {
+			return sessionSource;
+		}
+		
+		public int getMaxSessions() {
+			return maxSessions;
+		}
+		
+		/**
+		 * Return the number of sessions used by this request so far.
+		 */
+		public int getSessionCount() {
+			return laneCount.get();
+		}
+		
 		public String getDatabase() {
 			return database;
 		}
 		public String getStore() {
 			return store;
 		}
+		
+		/**
+		 * Return the deadline of the request, or null.
+		 * It is taken from the execution context when the context is obtained by a data fetcher.
+		 */
+		public RequestDeadline getDeadline() {
+			return deadline;
+		}
+		public void setDeadline(RequestDeadline deadline) {
+			this.deadline = deadline;
+		}
+		
+		/**
+		 * Throw an exception if the deadline of the request is exceeded.
+		 */
+		public void checkDeadline() {
+			RequestDeadline d = deadline;
+			if(d!=null) {
+				d.check();
+			}
+		}
+		
+		/**
+		 * Make a call with a session of the request.
+		 * The session is not used by another call until this one returns.
+		 */
+		public <T> T withSession(SessionCall<T> call) throws JsonException {
+			Lane lane = acquireLane();
+			try {
+				return call.call(lane.session);
+			} finally {
+				idleLanes.add(lane);
+			}
+		}
+		
+		/**
+		 * Make a call with a store of the request.
+		 * The database and store handles are resolved once per session of the request, and the
+		 * session is not used by another call until this one returns.
+		 */
+		public <T> T withStore(String database, String store, StoreCall<T> call) throws JsonException {
+			Lane lane = acquireLane();
+			try {
+				return call.call(lane.resolveStore(database,store));
+			} finally {
+				idleLanes.add(lane);
+			}
+		}
+		public <T> T withStore(DocumentKey key, StoreCall<T> call) throws JsonException {
+			return withStore(key.getDatabase(),key.getStore(),call);
+		}
+		
+		private Lane acquireLane() throws JsonException {
+			Lane lane = idleLanes.poll();
+			if(lane!=null) {
+				return lane;
+			}
+			if(sessionSource!=null) {
+				for(int n=laneCount.get(); n<maxSessions; n=laneCount.get()) {
+					if(laneCount.compareAndSet(n,n+1)) {
+						try {
+							lane = new Lane(sessionSource.openSession());
+						} catch(JsonException ex) {
+							laneCount.decrementAndGet();
+							throw ex;
+						} catch(RuntimeException ex) {
+							laneCount.decrementAndGet();
+							throw ex;
+						}
+						openedLanes.add(lane);
+						return lane;
+					}
+				}
+			} else if(session==null) {
+				throw new IllegalStateException("The context has no session");
+			}
+			// All the sessions are in use, wait for one, up to the deadline
+			try {
+				RequestDeadline d = deadline;
+				if(d==null) {
+					return idleLanes.take();
+				}
+				lane = idleLanes.poll(d.getRemainingMillis(),TimeUnit.MILLISECONDS);
+				if(lane==null) {
+					d.check();
+					// Expired between the two calls
+					throw new RequestDeadline.ExceededException("The request exceeded its deadline of "+d.getTimeout()+"ms");
+				}
+				return lane;
+			} catch(InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new JsonException(ex,"Interrupted while waiting for a store session");
+			}
+		}
+		
+		/**
+		 * Close the sessions opened from the session source.
+		 * The session given to the constructor is owned by the caller, and is not closed.
+		 */
+		@Override
+		public void close() throws IOException {
+			JsonException error = null;
+			for(Lane lane=openedLanes.poll(); lane!=null; lane=openedLanes.poll()) {
+				idleLanes.remove(lane);
+				try {
+					sessionSource.closeSession(lane.session);
+				} catch(JsonException ex) {
+					error = ex;
+				}
+			}
+			if(error!=null) {
+				throw new IOException("Error while closing a store session",error);
+			}
+		}
+		
+		/**
+		 * Return the cache shared across requests, or null.
+		 * This is initialized with the default shared cache.
+		 */
+		public SharedDocumentCache getSharedCache() {
+			return sharedCache;
+		}
+		public void setSharedCache(SharedDocumentCache sharedCache) {
+			this.sharedCache = sharedCache;
+		}
+		
+		/**
+		 * Load a document, unless it was already loaded during this request.
+		 * 
+		 * When several fields request the same document concurrently, only one of them reads it
+		 * from the store while the others wait for the result. The document is always a store
+		 * document, never one served by the shared cache.
+		 */
+		public Document loadDocument(DocumentKey key) throws JsonException {
+			return (Document)fetchDocument(key,false);
+		}
+		
+		/**
+		 * Load a document for the document fields.
+		 * When shared is true, the result can be a CachedDocument from the shared cache, which is
+		 * only read through a {@link DocumentAccessor}.
+		 */
+		Object fetchDocument(DocumentKey key, boolean shared) throws JsonException {
+			Object doc = getLoaded(key,shared);
+			if(doc!=null) {
+				return doc;
+			}
+			PendingLoad load = new PendingLoad();
+			PendingLoad pending = loading.putIfAbsent(key,load);
+			if(pending!=null) {
+				// Another field is already loading the document
+				doc = pending.await();
+				if(doc==null || shared || doc instanceof Document) {
+					reuse();
+					return doc;
+				}
+				// It came from the shared cache, while a store document is needed
+				return readStoreDocument(key);
+			}
+			try {
+				doc = getLoaded(key,shared);
+				if(doc==null) {
+					doc = readDocument(key,shared);
+					if(doc!=null) {
+						documents.put(key,doc);
+					}
+				}
+				load.complete(doc);
+				return doc;
+			} catch(JsonException ex) {
+				load.fail(ex);
+				throw ex;
+			} catch(RuntimeException ex) {
+				load.fail(ex);
+				throw ex;
+			} finally {
+				loading.remove(key,load);
+			}
+		}
+		
+		private Document readStoreDocument(DocumentKey key) throws JsonException {
+			Document doc = (Document)readDocument(key,false);
+			if(doc!=null) {
+				documents.put(key,doc);
+			}
+			return doc;
+		}
+		
+		private Object readDocument(final DocumentKey key, final boolean useShared) throws JsonException {
+			final SharedDocumentCache shared = getSharedCache(key);
+			return withStore(key, new StoreCall<Object>() {
+				@Override
+				public Object call(Store store) throws JsonException {
+					if(useShared && shared!=null) {
+						Object cached = shared.get(store,key);
+						if(cached!=null) {
+							return cached;
+						}
+					}
+					checkDeadline();
+					long start = Metrics.start();
+					Document doc = store.loadDocument(key.getUnid());
+					Metrics.phase(Metrics.PHASE_LOAD_DOCUMENT, start);
+					Metrics.event(Metrics.EVENT_DOCUMENT_LOAD);
+					if(shared!=null) {
+						shared.put(key,doc);
+					}
+					return doc;
+				}
+			});
+		}
+		
+		/**
+		 * Load a set of documents from the same store, using a single cursor for the ones
+		 * that were not already loaded.
+		 * 
+		 * The keys requested several times, or being loaded by another field, are only read once
+		 * and are counted as avoided loads.
+		 */
+		public Map<DocumentKey,Document> loadDocuments(List<DocumentKey> keys) throws JsonException {
+			Map<DocumentKey,Document> result = new HashMap<DocumentKey,Document>();
+			for(Map.Entry<DocumentKey,Object> e: fetchDocuments(keys,false).entrySet()) {
+				result.put(e.getKey(),(Document)e.getValue());
+			}
+			return result;
+		}
+		
+		/**
+		 * Load a set of documents from the same store for the document fields.
+		 * When shared is true, the result can contain CachedDocuments from the shared cache.
+		 */
+		Map<DocumentKey,Object> fetchDocuments(List<DocumentKey> keys, boolean shared) throws JsonException {
+			Map<DocumentKey,Object> result = new HashMap<DocumentKey,Object>();
+			Set<DocumentKey> requested = new HashSet<DocumentKey>();
+			Map<DocumentKey,PendingLoad> owned = new LinkedHashMap<DocumentKey,PendingLoad>();
+			Map<DocumentKey,PendingLoad> waiting = new HashMap<DocumentKey,PendingLoad>();
+			for(DocumentKey key: keys) {
+				if(!requested.add(key)) {
+					reuse();
+					continue;
+				}
+				Object doc = getLoaded(key,shared);
+				if(doc!=null) {
+					result.put(key,doc);
+					continue;
+				}
+				PendingLoad load = new PendingLoad();
+				PendingLoad pending = loading.putIfAbsent(key,load);
+				if(pending!=null) {
+					reuse();
+					waiting.put(key,pending);
+				} else {
+					owned.put(key,load);
+				}
+			}
+			
+			if(!owned.isEmpty()) {
+				try {
+					Map<DocumentKey,Object> loaded = readDocuments(new ArrayList<DocumentKey>(owned.keySet()),shared);
+					for(Map.Entry<DocumentKey,PendingLoad> e: owned.entrySet()) {
+						Object doc = loaded.get(e.getKey());
+						if(doc!=null) {
+							result.put(e.getKey(),doc);
+							documents.put(e.getKey(),doc);
+						}
+						e.getValue().complete(doc);
+					}
+				} catch(JsonException ex) {
+					fail(owned,ex);
+					throw ex;
+				} catch(RuntimeException ex) {
+					fail(owned,ex);
+					throw ex;
+				} finally {
+					for(Map.Entry<DocumentKey,PendingLoad> e: owned.entrySet()) {
+						loading.remove(e.getKey(),e.getValue());
+					}
+				}
+			}
+			
+			List<DocumentKey> reload = null;
+			for(Map.Entry<DocumentKey,PendingLoad> e: waiting.entrySet()) {
+				Object doc = e.getValue().await();
+				if(doc!=null && !shared && !(doc instanceof Document)) {
+					// It came from the shared cache, while store documents are needed
+					if(reload==null) {
+						reload = new ArrayList<DocumentKey>();
+					}
+					reload.add(e.getKey());
+				} else if(doc!=null) {
+					result.put(e.getKey(),doc);
+				}
+			}
+			if(reload!=null) {
+				for(Map.Entry<DocumentKey,Object> e: readDocuments(reload,false).entrySet()) {
+					result.put(e.getKey(),e.getValue());
+					documents.put(e.getKey(),e.getValue());
+				}
+			}
+			return result;
+		}
+		
+		private Map<DocumentKey,Object> readDocuments(final List<DocumentKey> keys, final boolean useShared) throws JsonException {
+			return withStore(keys.get(0), new StoreCall<Map<DocumentKey,Object>>() {
+				@Override
+				public Map<DocumentKey,Object> call(Store store) throws JsonException {
+					return readDocuments(store,keys,useShared);
+				}
+			});
+		}
+		private Map<DocumentKey,Object> readDocuments(Store store, List<DocumentKey> keys, boolean useShared) throws JsonException {
+			Map<DocumentKey,Object> result = new HashMap<DocumentKey,Object>();
+			List<DocumentKey> toLoad = keys;
+			SharedDocumentCache shared = getSharedCache(keys.get(0));
+			if(useShared && shared!=null) {
+				Map<DocumentKey,SharedDocumentCache.CachedDocument> cached = shared.getAll(store,toLoad);
+				if(!cached.isEmpty()) {
+					result.putAll(cached);
+					List<DocumentKey> l = new ArrayList<DocumentKey>(toLoad.size()-cached.size());
+					for(DocumentKey key: toLoad) {
+						if(!cached.containsKey(key)) {
+							l.add(key);
+						}
+					}
+					toLoad = l;
+				}
+			}
+			if(toLoad.isEmpty()) {
+				return result;
+			}
+			
+			checkDeadline();
+			long start = Metrics.start();
+			Map<String,Document> loaded = JsonDocument.loadDocuments(store,toLoad,deadline);
+			Metrics.phase(Metrics.PHASE_LOAD_DOCUMENTS, start);
+			for(DocumentKey key: toLoad) {
+				Document doc = loaded.get(key.getUnid());
+				if(doc!=null) {
+					result.put(key,doc);
+					if(shared!=null) {
+						shared.put(key,doc);
+					}
+				}
+			}
+			return result;
+		}
+		
+		private static void fail(Map<DocumentKey,PendingLoad> loads, Throwable ex) {
+			// The loads that already completed ignore the failure
+			for(PendingLoad load: loads.values()) {
+				load.fail(ex);
+			}
+		}
+		
+		private void reuse() {
+			avoidedLoads.incrementAndGet();
+			Metrics.event(Metrics.EVENT_DOCUMENT_REUSE);
+		}
+		
+		private SharedDocumentCache getSharedCache(DocumentKey key) {
+			SharedDocumentCache shared = sharedCache;
+			return shared!=null && shared.isEnabled(key.getDatabase(),key.getStore()) ? shared : null;
+		}
+		
+		/**
+		 * Return a document already loaded during this request, or null.
+		 */
+		public Document getLoadedDocument(DocumentKey key) {
+			return (Document)getLoaded(key,false);
+		}
+		Object getLoaded(DocumentKey key, boolean shared) {
+			Object doc = documents.get(key);
+			if(doc!=null && (shared || doc instanceof Document)) {
+				reuse();
+				return doc;
+			}
+			return null;
+		}
+		public void addLoadedDocument(DocumentKey key, Document doc) {
+			documents.put(key,doc);
+		}
+		
+		/**
+		 * Number of store loads that were avoided because the document was already loaded by this request.
+		 */
+		public int getAvoidedLoads() {
+			return avoidedLoads.get();
+		}
 	}
 
 	public static class DocumentFecther extends JsonDataFetcher {
+		private boolean projection;
 		public DocumentFecther() {
+			this(false);
+		}
+		/**
+		 * Create a document fetcher.
+		 * 
+		 * When projection is true, the fetcher reads from the store only the paths used by
+		 * the sub-selection, when they are all known before execution.
+		 * @see DocumentProjection
+		 */
+		public DocumentFecther(boolean projection) {
+			this.projection = projection;
+		}
+		public boolean isProjection() {
+			return projection;
 		}
 		@Override
-		public DocumentAccessor get(DataFetchingEnvironment environment) {
+		public JsonAccessor get(DataFetchingEnvironment environment) {
+			long start = Metrics.start();
 			try {
-				Context ctx = (Context)((Map<?,?>)environment.getContext()).get(Context.class);
-				if(ctx==null) {
+				Context ctx = getContext(environment);
+				if(ctx==null || !ctx.hasSession()) {
 					return null;
 				}
-
-				Session session = ctx.getSession();
-				if(session==null) {
+				
+				Object source = environment.getSource();
+				DocumentKey key = getDocumentKey(environment, ctx, source);
+				if(key==null) {
+					// More with requests...
 					return null;
 				}
 				
-				String database = getStringParameter(environment,"database");
-				if(StringUtil.isEmpty(database)) {
-					database = ctx.getDatabase();
-					if(StringUtil.isEmpty(database)) {
-						return null;
+				if(projection) {
+					JsonAccessor projected = loadProjection(environment, ctx, key, source);
+					if(projected!=null) {
+						// The projection does not read the modification date
+						setUncacheable(environment);
+						return projected;
 					}
 				}
-				String store = getStringParameter(environment,"store");
-				if(StringUtil.isEmpty(store)) {
-					store = ctx.getStore();
-					if(StringUtil.isEmpty(store)) {
-						return null;
-					}
+				
+				Object doc = ctx.fetchDocument(key,true);
+				addDependency(environment, key, doc);
+				return doc!=null ? createAccessor(source,doc) : null;
+			} catch(Exception ex) {
+				setUncacheable(environment);
+				return null;
+			} finally {
+				Metrics.field(environment, start);
+			}
+		}
+		protected JsonAccessor loadProjection(DataFetchingEnvironment environment, Context ctx, DocumentKey key, Object source) throws JsonException {
+			// The document is already fully available
+			Object doc = ctx.getLoaded(key,true);
+			if(doc!=null) {
+				return createAccessor(source,doc);
+			}
+			final Set<String> paths = DocumentProjection.collectPaths(environment);
+			if(paths==null || paths.isEmpty()) {
+				return null;
+			}
+			final String unid = key.getUnid();
+			Map<String,Object> values = ctx.withStore(key, new StoreCall<Map<String,Object>>() {
+				@Override
+				public Map<String,Object> call(Store store) throws JsonException {
+					return DocumentProjection.load(store, unid, paths);
 				}
+			});
+			if(values==null) {
+				return null;
+			}
+			return new DocumentProjection.Accessor(source,ctx,key,values);
+		}
+	};
+	public static DocumentFecther documentFecther = new DocumentFecther();
+	public static DocumentFecther projectedDocumentFecther = new DocumentFecther(true);
+
+	/**
+	 * Batched version of the document fetcher.
+	 * 
+	 * When executed by a graphql-java BatchedExecutionStrategy, the environment source is the list
+	 * of all the parent objects at the current execution level. The requested documents are
+	 * grouped by database and store, and each group is read from the store with a single cursor.
+	 * When executed by another strategy, this behaves like the regular document fetcher.
+	 * 
+	 * As the batched strategy resolves the nested levels by itself, the request deadline is not
+	 * checked by the execution strategy below the root: the fetcher checks it before reading a
+	 * level, and returns null documents once it is exceeded.
+	 */
+	public static class BatchedDocumentFecther implements DataFetcher {
+		public BatchedDocumentFecther() {
+		}
+		@Override
+		@Batched
+		public Object get(DataFetchingEnvironment environment) {
+			Object source = environment.getSource();
+			if(!(source instanceof List<?>)) {
+				return documentFecther.get(environment);
+			}
+			
+			List<?> sources = (List<?>)source;
+			int count = sources.size();
+			List<Object> result = new ArrayList<Object>(count);
+			for(int i=0; i<count; i++) {
+				result.add(null);
+			}
 
-				Document doc = null;
+			Context ctx = getContext(environment);
+			if(ctx==null || !ctx.hasSession()) {
+				return result;
+			}
+			try {
+				ctx.checkDeadline();
+			} catch(RequestDeadline.ExceededException ex) {
+				// The whole level is left empty
+				setUncacheable(environment);
+				return result;
+			}
+			
+			// Group the unids per store, keeping the key of each source 
+			Map<DocumentKey,Object> docs = new HashMap<DocumentKey,Object>();
+			Map<String,List<DocumentKey>> keys = new LinkedHashMap<String,List<DocumentKey>>();
+			DocumentKey[] sourceKeys = new DocumentKey[count];
+			for(int i=0; i<count; i++) {
+				try {
+					DocumentKey key = getDocumentKey(environment, ctx, sources.get(i));
+					if(key==null) {
+						continue;
+					}
+					sourceKeys[i] = key;
+					// The context skips the documents already loaded and the duplicated keys
+					String storeKey = key.getDatabase()+"/"+key.getStore();
+					List<DocumentKey> l = keys.get(storeKey);
+					if(l==null) {
+						l = new ArrayList<DocumentKey>();
+						keys.put(storeKey,l);
+					}
+					l.add(key);
+				} catch(Exception ex) {
+					// Ignore this source
+				}
+			}
+			
+			for(List<DocumentKey> l: keys.values()) {
+				try {
+					docs.putAll(ctx.fetchDocuments(l,true));
+				} catch(RequestDeadline.ExceededException ex) {
+					// Do not read the remaining stores
+					setUncacheable(environment);
+					break;
+				} catch(Exception ex) {
+					// Ignore this store, the fields will be null
+					setUncacheable(environment);
+				}
+			}
+			
+			for(int i=0; i<count; i++) {
+				if(sourceKeys[i]!=null) {
+					Object doc = docs.get(sourceKeys[i]);
+					addDependency(environment, sourceKeys[i], doc);
+					if(doc!=null) {
+						result.set(i,createAccessor(sources.get(i),doc));
+					}
+				}
+			}
+			return result;
+		}
+	};
+	public static BatchedDocumentFecther batchedDocumentFecther = new BatchedDocumentFecther();
+	
+	/**
+	 * Fetcher for a page of documents.
+	 * 
+	 * The documents are read from a store cursor, stopping as soon as the page is full. The pages
+	 * use keyset pagination: a cursor holds the sort value and the unid of the last document of a page,
+	 * and the next page is selected by a query on these values. Deep pages are then as fast to read
+	 * as the first one. 
+	 * 
+	 * An invalid query or cursor, as well as a store failure, is reported as an error of the field.
+	 */
+	public static class DocumentsFecther implements DataFetcher {
+		private int maxPageSize;
+		public DocumentsFecther(int maxPageSize) {
+			this.maxPageSize = maxPageSize;
+		}
+		public int getMaxPageSize() {
+			return maxPageSize;
+		}
+		@Override
+		public Object get(DataFetchingEnvironment environment) {
+			try {
+				final Context ctx = getContext(environment);
+				if(ctx==null || !ctx.hasSession()) {
+					return null;
+				}
 				
-				String unid = getStringParameter(environment,"unid");
-				if(StringUtil.isNotEmpty(unid)) {
-					doc = session.getDatabase(database).getStore(store).loadDocument(unid);
-				} else {
-					// More with requests...
+				// The result depends on documents that are not read yet
+				setUncacheable(environment);
+				
+				final Object source = environment.getSource();
+				final String database = getDatabase(environment,ctx,source);
+				final String store = getStore(environment,ctx,source);
+				if(StringUtil.isEmpty(database) || StringUtil.isEmpty(store)) {
 					return null;
 				}
 				
-				return new DocumentAccessor(environment.getSource(),doc);
-			} catch(Exception ex) {
-				return null;
+				int pageSize = DEFAULT_PAGE_SIZE;
+				Object first = environment.getArgument("first");
+				if(first instanceof Number) {
+					pageSize = ((Number)first).intValue();
+				}
+				final int count = Math.max(0,Math.min(pageSize,maxPageSize));
+				
+				final String orderBy = JsonDataFetcher.getStringParameter(environment,"orderBy",source);
+				boolean descending = Boolean.TRUE.equals(environment.getArgument("descending"));
+				
+				JsonObject query = null;
+				String q = JsonDataFetcher.getStringParameter(environment,"query",source);
+				if(StringUtil.isNotEmpty(q)) {
+					try {
+						query = JsonObject.fromJson(q);
+					} catch(JsonException ex) {
+						throw new GraphQLException("Invalid JSON query: "+q,ex);
+					}
+				}
+				String after = (String)environment.getArgument("after");
+				if(StringUtil.isNotEmpty(after)) {
+					JsonObject keyset = createKeysetQuery(parseCursor(after),orderBy,descending);
+					query = query!=null ? and(query,keyset) : keyset;
+				}
+				
+				// Read one more entry to know if there is a next page
+				final List<Object> edges = new ArrayList<Object>(count);
+				final boolean[] hasNextPage = new boolean[1];
+				final JsonObject cursorQuery = query;
+				final boolean desc = descending;
+				ctx.withStore(database, store, new StoreCall<Void>() {
+					@Override
+					public Void call(Store st) throws JsonException {
+						ctx.checkDeadline();
+						Cursor cursor = st.openCursor();
+						if(cursorQuery!=null) {
+							cursor.query(cursorQuery);
+						}
+						if(StringUtil.isNotEmpty(orderBy)) {
+							cursor.orderBy(orderBy,UNID_FIELD);
+						} else {
+							cursor.orderBy(UNID_FIELD);
+						}
+						if(desc) {
+							cursor.descending();
+						}
+						cursor.options(Cursor.DATA_DOCUMENT)
+							.range(0,count+1)
+							.find(new CursorHandler() {
+								@Override
+								public boolean handle(CursorEntry entry) throws JsonException {
+									RequestDeadline deadline = ctx.getDeadline();
+									if(deadline!=null && deadline.isExpired()) {
+										return false;
+									}
+									if(edges.size()>=count) {
+										hasNextPage[0] = true;
+										return false;
+									}
+									String unid = entry.getUnid();
+									Document doc = entry.loadDocument();
+									ctx.addLoadedDocument(new DocumentKey(database,store,unid),doc);
+								
+									Map<String,Object> edge = new HashMap<String,Object>();
+									edge.put("cursor",createCursor(doc,unid,orderBy));
+									edge.put("node",new DocumentAccessor(source,doc));
+									edges.add(edge);
+									return true;
+								}
+							});
+						return null;
+					}
+				});
+				// A page cut by the deadline is not returned
+				ctx.checkDeadline();
+				
+				Map<String,Object> pageInfo = new HashMap<String,Object>();
+				pageInfo.put("hasNextPage",hasNextPage[0]);
+				pageInfo.put("endCursor",edges.isEmpty() ? null : ((Map<?,?>)edges.get(edges.size()-1)).get("cursor"));
+				
+				Map<String,Object> page = new HashMap<String,Object>();
+				page.put("edges",edges);
+				page.put("pageInfo",pageInfo);
+				return page;
+			} catch(JsonException ex) {
+				// Reported as a field error, rather than an empty page
+				throw new GraphQLException("Error while reading the documents: "+ex.getMessage(),ex);
+			}
+		}
+		
+		/**
+		 * Decode a cursor returned by a previous page.
+		 * @throws GraphQLException if the cursor was not created by this fetcher
+		 */
+		protected JsonObject parseCursor(String after) {
+			try {
+				JsonObject cursor = JsonObject.fromJson(Base64Util.decodeString(after));
+				if(cursor!=null && cursor.get("u") instanceof String) {
+					return cursor;
+				}
+			} catch(JsonException ex) {
+				// Not a cursor
+			} catch(IllegalArgumentException ex) {
+				// Not Base64
 			}
+			throw new GraphQLException("Invalid cursor: "+after);
+		}
+		
+		protected String createCursor(Document doc, String unid, String orderBy) throws JsonException {
+			StringWriter w = new StringWriter();
+			try {
+				JsonStreamWriter jw = new JsonStreamWriter(w);
+				jw.startObject();
+				if(StringUtil.isNotEmpty(orderBy)) {
+					jw.property("v",JsonPathCache.get("$."+orderBy).read(doc.getJson()));
+				}
+				jw.property("u",unid);
+				jw.endObject();
+			} catch(IOException ex) {
+				throw new JsonException(ex,"Error while creating the cursor");
+			}
+			return Base64Util.encodeString(w.toString());
+		}
+		
+		protected JsonObject createKeysetQuery(JsonObject cursor, String orderBy, boolean descending) {
+			String op = descending ? "$lt" : "$gt";
+			JsonObject unid = new JsonObject();
+			unid.put(UNID_FIELD,condition(op,cursor.get("u")));
+			if(StringUtil.isEmpty(orderBy)) {
+				return unid;
+			}
+			// (value op v) or (value==v and unid op u)
+			JsonObject after = new JsonObject();
+			after.put(orderBy,condition(op,cursor.get("v")));
+			JsonObject same = new JsonObject();
+			same.put(orderBy,cursor.get("v"));
+			JsonArray or = new JsonArray();
+			or.add(after);
+			or.add(and(same,unid));
+			JsonObject query = new JsonObject();
+			query.put("$or",or);
+			return query;
+		}
+		private static JsonObject condition(String op, Object value) {
+			JsonObject c = new JsonObject();
+			c.put(op,value);
+			return c;
+		}
+		private static JsonObject and(JsonObject q1, JsonObject q2) {
+			JsonArray and = new JsonArray();
+			and.add(q1);
+			and.add(q2);
+			JsonObject query = new JsonObject();
+			query.put("$and",and);
+			return query;
 		}
 	};
-	public static DocumentFecther documentFecther = new DocumentFecther();
+	
+	
+	protected static Context getContext(DataFetchingEnvironment environment) {
+		Object context = environment.getContext();
+		if(context instanceof Map<?,?>) {
+			Context ctx = (Context)((Map<?,?>)context).get(Context.class);
+			if(ctx!=null && ctx.deadline==null) {
+				ctx.deadline = RequestDeadline.get(context);
+			}
+			return ctx;
+		}
+		return null;
+	}
+	
+	/**
+	 * Record a document read by the request, when the result is to be cached.
+	 */
+	protected static void addDependency(DataFetchingEnvironment environment, DocumentKey key, Document doc) {
+		addDependency(environment, key, (Object)doc);
+	}
+	private static void addDependency(DataFetchingEnvironment environment, DocumentKey key, Object doc) {
+		ResultDependencies deps = ResultDependencies.get(environment.getContext());
+		if(deps!=null) {
+			deps.add(key, doc!=null ? getStamp(doc) : null);
+		}
+	}
+	
+	protected static void setUncacheable(DataFetchingEnvironment environment) {
+		ResultDependencies deps = ResultDependencies.get(environment.getContext());
+		if(deps!=null) {
+			deps.setUncacheable();
+		}
+	}
+	
+	/**
+	 * Compute the key of the document requested by a field, for a given source object.
+	 * This returns null if the field does not designate a single document.
+	 */
+	protected static DocumentKey getDocumentKey(DataFetchingEnvironment environment, Context ctx, Object source) throws JsonException {
+		String database = getDatabase(environment,ctx,source);
+		if(StringUtil.isEmpty(database)) {
+			return null;
+		}
+		String store = getStore(environment,ctx,source);
+		if(StringUtil.isEmpty(store)) {
+			return null;
+		}
+		String unid = JsonDataFetcher.getStringParameter(environment,"unid",source);
+		if(StringUtil.isEmpty(unid)) {
+			return null;
+		}
+		return new DocumentKey(database,store,unid);
+	}
+	
+	protected static String getDatabase(DataFetchingEnvironment environment, Context ctx, Object source) throws JsonException {
+		return getContextParameter(environment,"database",ctx.getDatabase(),source);
+	}
+	
+	protected static String getStore(DataFetchingEnvironment environment, Context ctx, Object source) throws JsonException {
+		return getContextParameter(environment,"store",ctx.getStore(),source);
+	}
+	
+	private static String getContextParameter(DataFetchingEnvironment environment, String argName, String defaultValue, Object source) throws JsonException {
+		// Fast path: no argument, or a literal value
+		// Returning the context instance lets the store lookup use its own fast path 
+		Object arg = environment.getArgument(argName);
+		if(arg==null) {
+			return defaultValue;
+		}
+		if(arg instanceof String && !((String)arg).startsWith("$.")) {
+			String s = (String)arg;
+			if(s.length()==0) {
+				return defaultValue;
+			}
+			return s.equals(defaultValue) ? defaultValue : s;
+		}
+		String value = JsonDataFetcher.getStringParameter(environment,argName,source);
+		return StringUtil.isNotEmpty(value) ? value : defaultValue;
+	}
+	
+	/**
+	 * Read the stamps (last modification dates) of a set of documents, without loading the documents.
+	 * The documents that do not exist have no entry in the result. 
+	 */
+	public static Map<String,Object> readStamps(Store store, Collection<String> unids) throws JsonException {
+		final Map<String,Object> result = new HashMap<String,Object>();
+		store.openCursor()
+			.unids(unids.toArray(new String[unids.size()]))
+			.options(Cursor.DATA_MODDATES)
+			.find(new CursorHandler() {
+				@Override
+				public boolean handle(CursorEntry entry) throws JsonException {
+					Date d = entry.getLastModificationDate();
+					result.put(entry.getUnid(), d!=null ? Long.valueOf(d.getTime()) : Long.valueOf(0));
+					return true;
+				}
+			});
+		return result;
+	}
+	
+	/**
+	 * Load a set of documents from a store, using a single cursor.
+	 * The returned map is indexed by unid and does not contain the documents that don't exist. 
+	 */
+	public static Map<String,Document> loadDocuments(Store store, Collection<DocumentKey> keys) throws JsonException {
+		return loadDocuments(store,keys,null);
+	}
+	
+	/**
+	 * Load a set of documents from a store, stopping the cursor as soon as the deadline is exceeded.
+	 * @throws RequestDeadline.ExceededException if the documents were not all read before the deadline
+	 */
+	public static Map<String,Document> loadDocuments(Store store, Collection<DocumentKey> keys, final RequestDeadline deadline) throws JsonException {
+		final Map<String,Document> docs = new HashMap<String,Document>();
+		if(keys.size()==1) {
+			String unid = keys.iterator().next().getUnid();
+			Document doc = store.loadDocument(unid);
+			if(doc!=null) {
+				docs.put(unid,doc);
+			}
+			return docs;
+		}
+		
+		LinkedHashSet<String> unids = new LinkedHashSet<String>();
+		for(DocumentKey key: keys) {
+			unids.add(key.getUnid());
+		}
+		store.openCursor()
+			.unids(unids.toArray(new String[unids.size()]))
+			.options(Cursor.DATA_DOCUMENT)
+			.find(new CursorHandler() {
+				@Override
+				public boolean handle(CursorEntry entry) throws JsonException {
+					if(deadline!=null && deadline.isExpired()) {
+						return false;
+					}
+					docs.put(entry.getUnid(),entry.loadDocument());
+					return true;
+				}
+			});
+		if(deadline!=null) {
+			deadline.check();
+		}
+		return docs;
+	}
+	
+	
+	public static final int DEFAULT_PAGE_SIZE		= 20;
+	public static final int DEFAULT_MAX_PAGE_SIZE	= 100;
+	
+	// System field holding the document unid in the store queries
+	public static final String UNID_FIELD	= "_unid";
+	
+	private boolean batched;
+	private boolean projection;
+	private int maxPageSize = DEFAULT_MAX_PAGE_SIZE;
+	
+	public JsonDocument() {
+		this(false);
+	}
+	
+	/**
+	 * Create the provider.
+	 * 
+	 * When batched is true, the Document field uses a fetcher that loads the documents 
+	 * of a whole execution level at once. This requires the schema to be executed with
+	 * a graphql-java BatchedExecutionStrategy.
+	 */
+	public JsonDocument(boolean batched) {
+		this(batched,false);
+	}
+	
+	/**
+	 * Create the provider.
+	 * 
+	 * When projection is true, the Document field only reads from the store the paths
+	 * used by the query, when they are known before execution. Projection does not apply
+	 * to batched fetches.
+	 */
+	public JsonDocument(boolean batched, boolean projection) {
+		this.batched = batched;
+		this.projection = projection;
+	}
+	
+	public boolean isBatched() {
+		return batched;
+	}
+	
+	public boolean isProjection() {
+		return projection;
+	}
+	
+	public int getMaxPageSize() {
+		return maxPageSize;
+	}
+	
+	/**
+	 * Set the maximum number of documents returned by a page of the Documents field.
+	 * This must be set before the type is created.
+	 */
+	public void setMaxPageSize(int maxPageSize) {
+		this.maxPageSize = maxPageSize;
+	}
 	
 	
 	public static GraphQLArgument databaseArgument = new GraphQLArgument.Builder()
@@ -158,6 +1288,59 @@ public class JsonDocument extends JsonProvider {
 		.name("id")
 		.type(GraphQLString)
 		.build(); 
+	public static GraphQLArgument queryArgument = new GraphQLArgument.Builder()
+		.name("query")
+		.type(GraphQLString)
+		.build(); 
+	public static GraphQLArgument orderByArgument = new GraphQLArgument.Builder()
+		.name("orderBy")
+		.type(GraphQLString)
+		.build(); 
+	public static GraphQLArgument descendingArgument = new GraphQLArgument.Builder()
+		.name("descending")
+		.type(GraphQLBoolean)
+		.build(); 
+	public static GraphQLArgument firstArgument = new GraphQLArgument.Builder()
+		.name("first")
+		.type(GraphQLInt)
+		.build(); 
+	public static GraphQLArgument afterArgument = new GraphQLArgument.Builder()
+		.name("after")
+		.type(GraphQLString)
+		.build(); 
+	
+	// Page of documents, following the Relay connection conventions.
+	// The types are created for each JSON type, as the node type reference is resolved
+	// in place when a schema is built, and a provider can be part of several schemas.
+	protected GraphQLObjectType createConnectionType() {
+		GraphQLObjectType pageInfoType = GraphQLObjectType.newObject()
+			.name("DocumentPageInfo")
+			.field(GraphQLFieldDefinition.newFieldDefinition()
+					.name("hasNextPage")
+					.type(GraphQLBoolean))
+			.field(GraphQLFieldDefinition.newFieldDefinition()
+					.name("endCursor")
+					.type(GraphQLString))
+			.build();
+		GraphQLObjectType edgeType = GraphQLObjectType.newObject()
+			.name("DocumentEdge")
+			.field(GraphQLFieldDefinition.newFieldDefinition()
+					.name("cursor")
+					.type(GraphQLString))
+			.field(GraphQLFieldDefinition.newFieldDefinition()
+					.name("node")
+					.type(new GraphQLTypeReference(GraphQLJsonType.TYPE)))
+			.build();
+		return GraphQLObjectType.newObject()
+			.name("DocumentConnection")
+			.field(GraphQLFieldDefinition.newFieldDefinition()
+					.name("edges")
+					.type(new GraphQLList(edgeType)))
+			.field(GraphQLFieldDefinition.newFieldDefinition()
+					.name("pageInfo")
+					.type(pageInfoType))
+			.build();
+	}
 
 	@Override
 	public void addJsonFields(GraphQLObjectType.Builder builder) {
@@ -169,7 +1352,19 @@ public class JsonDocument extends JsonProvider {
 					.argument(unidArgument)
 					.argument(idArgument)
 					.type(new GraphQLTypeReference(GraphQLJsonType.TYPE))
-					.dataFetcher(documentFecther)
+					.dataFetcher(batched ? batchedDocumentFecther : projection ? projectedDocumentFecther : documentFecther)
+			)
+			.field(GraphQLFieldDefinition.newFieldDefinition()
+					.name("Documents")
+					.argument(databaseArgument)
+					.argument(storeArgument)
+					.argument(queryArgument)
+					.argument(orderByArgument)
+					.argument(descendingArgument)
+					.argument(firstArgument)
+					.argument(afterArgument)
+					.type(createConnectionType())
+					.dataFetcher(new DocumentsFecther(maxPageSize))
 			)
 		;
 	}
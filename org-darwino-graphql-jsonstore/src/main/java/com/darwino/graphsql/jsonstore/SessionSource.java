@@ -0,0 +1,48 @@
+/*!COPYRIGHT HEADER! 
+ *
+ * (c) Copyright Darwino Inc. 2014-2016.
+ *
+ * Licensed under The MIT License (https://opensource.org/licenses/MIT)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial 
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT 
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, 
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.darwino.graphsql.jsonstore;
+
+import com.darwino.commons.json.JsonException;
+import com.darwino.jsonstore.Session;
+
+
+/**
+ * Source of the store sessions used by a request.
+ * 
+ * A store session is not thread safe. When the fields of a request are resolved in parallel,
+ * the request context opens additional sessions from this source, for the same user, so the
+ * independent reads run concurrently instead of waiting for each other.
+ */
+public interface SessionSource {
+
+	/**
+	 * Open a session for the user of the request.
+	 */
+	public Session openSession() throws JsonException;
+
+	/**
+	 * Close a session opened by this source, when the request completes.
+	 */
+	public void closeSession(Session session) throws JsonException;
+}
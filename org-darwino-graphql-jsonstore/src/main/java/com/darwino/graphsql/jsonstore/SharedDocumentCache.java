@@ -0,0 +1,420 @@
+/*!COPYRIGHT HEADER! 
+ *
+ * (c) Copyright Darwino Inc. 2014-2016.
+ *
+ * Licensed under The MIT License (https://opensource.org/licenses/MIT)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial 
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT 
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, 
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.darwino.graphsql.jsonstore;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.darwino.commons.json.JsonArray;
+import com.darwino.commons.json.JsonException;
+import com.darwino.commons.json.JsonObject;
+import com.darwino.jsonstore.Document;
+import com.darwino.jsonstore.Store;
+
+
+/**
+ * Process wide document cache.
+ * 
+ * Documents from the stores that opted in are kept across requests, and validated against
+ * their last modification date before being served: a document is only reused if it was not
+ * modified since it was cached. Reading the modification dates is much cheaper than loading
+ * and parsing the documents. The dates are always read with the session of the requesting
+ * user, so a cached document is only served to the users allowed to read it.
+ * 
+ * The cache keeps a private copy of the JSON of each document, and never shares it between
+ * requests: each request gets its own copy. The cached documents are only read by the document
+ * fields of the request, and are not store documents: the documents returned by the request
+ * context, to the application data fetchers, are always loaded from the store.
+ * 
+ * The cache is bounded by a number of documents and by an estimated weight. When one of the
+ * bounds is reached, the oldest entries are evicted first.
+ * 
+ * Write paths should call one of the invalidate methods, so the updated documents are evicted
+ * right away instead of being detected as stale on the next access.
+ */
+public class SharedDocumentCache {
+	
+	public static final int DEFAULT_MAX_SIZE		= 10000;
+	public static final long DEFAULT_MAX_WEIGHT		= 64L*1024*1024;
+	
+	private static volatile SharedDocumentCache defaultCache;
+	
+	/**
+	 * Return the cache used by default by the request contexts, or null.
+	 */
+	public static SharedDocumentCache getDefault() {
+		return defaultCache;
+	}
+	public static void setDefault(SharedDocumentCache cache) {
+		defaultCache = cache;
+	}
+	
+	private static final class Entry {
+		// Never exposed, the requests get their own copy
+		final Object json;
+		final Object stamp;
+		final int weight;
+		Entry(Object json, Object stamp, int weight) {
+			this.json = json;
+			this.stamp = stamp;
+			this.weight = weight;
+		}
+	}
+	
+	/**
+	 * Document served from the cache to a request.
+	 * 
+	 * This is not a store document: it is only read by the document fields, through their
+	 * accessors, and is never returned by the request context. Each instance has its own copy
+	 * of the JSON, made when it is first read.
+	 */
+	static final class CachedDocument {
+		private final DocumentKey key;
+		private final Entry entry;
+		private Object json;
+		CachedDocument(DocumentKey key, Entry entry) {
+			this.key = key;
+			this.entry = entry;
+		}
+		DocumentKey getKey() {
+			return key;
+		}
+		synchronized Object getJson() {
+			if(json==null) {
+				json = copyJson(entry.json);
+			}
+			return json;
+		}
+		Object getStamp() {
+			return entry.stamp;
+		}
+		@Override
+		public String toString() {
+			return "CachedDocument["+key.getDatabase()+"/"+key.getStore()+"/"+key.getUnid()+"]";
+		}
+	}
+	
+	private final int maxSize;
+	private final long maxWeight;
+	private final ConcurrentHashMap<DocumentKey,Entry> entries;
+	private final ConcurrentLinkedQueue<DocumentKey> order;
+	private final AtomicLong weight = new AtomicLong();
+	private final Set<String> stores = Collections.newSetFromMap(new ConcurrentHashMap<String,Boolean>());
+	
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong staleEntries = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong invalidations = new AtomicLong();
+	
+	public SharedDocumentCache() {
+		this(DEFAULT_MAX_SIZE, DEFAULT_MAX_WEIGHT);
+	}
+	public SharedDocumentCache(int maxSize, long maxWeight) {
+		if(maxSize<1 || maxWeight<1) {
+			throw new IllegalArgumentException("The cache size and weight must be greater than 0");
+		}
+		this.maxSize = maxSize;
+		this.maxWeight = maxWeight;
+		this.entries = new ConcurrentHashMap<DocumentKey,Entry>(Math.min(maxSize,1024));
+		this.order = new ConcurrentLinkedQueue<DocumentKey>();
+	}
+	
+	public int getMaxSize() {
+		return maxSize;
+	}
+	
+	public long getMaxWeight() {
+		return maxWeight;
+	}
+	
+	
+	//
+	// Stores opt-in
+	//
+	
+	public void enableStore(String database, String store) {
+		stores.add(storeKey(database,store));
+	}
+	
+	public void disableStore(String database, String store) {
+		stores.remove(storeKey(database,store));
+		invalidateStore(database, store);
+	}
+	
+	public boolean isEnabled(String database, String store) {
+		return !stores.isEmpty() && stores.contains(storeKey(database,store));
+	}
+	
+	private static String storeKey(String database, String store) {
+		return database+"/"+store;
+	}
+	
+	
+	//
+	// Access
+	//
+	
+	/**
+	 * Return a cached document, if it is still up to date.
+	 * The store must come from the session of the requesting user.
+	 */
+	CachedDocument get(Store store, DocumentKey key) throws JsonException {
+		Entry e = entries.get(key);
+		if(e==null) {
+			misses.incrementAndGet();
+			return null;
+		}
+		Map<String,Object> stamps = JsonDocument.readStamps(store, Collections.singletonList(key.getUnid()));
+		return validate(key, e, stamps.get(key.getUnid()));
+	}
+	
+	/**
+	 * Return the cached documents that are still up to date, among a set of documents from the same store.
+	 * The documents are validated using a single cursor.
+	 */
+	Map<DocumentKey,CachedDocument> getAll(Store store, List<DocumentKey> keys) throws JsonException {
+		Map<DocumentKey,CachedDocument> result = new HashMap<DocumentKey,CachedDocument>();
+		Map<DocumentKey,Entry> toValidate = null;
+		for(DocumentKey key: keys) {
+			Entry e = entries.get(key);
+			if(e==null) {
+				misses.incrementAndGet();
+			} else {
+				if(toValidate==null) {
+					toValidate = new HashMap<DocumentKey,Entry>();
+				}
+				toValidate.put(key,e);
+			}
+		}
+		if(toValidate!=null) {
+			List<String> unids = new ArrayList<String>(toValidate.size());
+			for(DocumentKey key: toValidate.keySet()) {
+				unids.add(key.getUnid());
+			}
+			Map<String,Object> stamps = JsonDocument.readStamps(store, unids);
+			for(Map.Entry<DocumentKey,Entry> e: toValidate.entrySet()) {
+				DocumentKey key = e.getKey();
+				CachedDocument doc = validate(key, e.getValue(), stamps.get(key.getUnid()));
+				if(doc!=null) {
+					result.put(key,doc);
+				}
+			}
+		}
+		return result;
+	}
+	
+	private CachedDocument validate(DocumentKey key, Entry e, Object currentStamp) {
+		if(currentStamp!=null && currentStamp.equals(e.stamp)) {
+			hits.incrementAndGet();
+			return new CachedDocument(key, e);
+		}
+		// The document was modified, deleted, or cannot be read by this user
+		// Only a modified document is evicted, as a missing stamp can come from the access rights
+		if(currentStamp!=null && entries.remove(key,e)) {
+			weight.addAndGet(-e.weight);
+			order.remove(key);
+			staleEntries.incrementAndGet();
+		}
+		misses.incrementAndGet();
+		return null;
+	}
+	
+	/**
+	 * Add a document that was just loaded from the store.
+	 * The cache keeps a copy of its JSON, so the document can still be modified by the request.
+	 */
+	public void put(DocumentKey key, Document doc) {
+		if(doc==null) {
+			return;
+		}
+		Object json;
+		try {
+			json = copyJson(doc.getJson());
+		} catch(JsonException ex) {
+			return;
+		}
+		int w = weigh(json);
+		if(w>maxWeight) {
+			return;
+		}
+		Entry e = new Entry(json, DocumentDependencyChecker.getStamp(doc), w);
+		Entry prev = entries.put(key,e);
+		if(prev!=null) {
+			weight.addAndGet(w-prev.weight);
+		} else {
+			weight.addAndGet(w);
+			order.add(key);
+		}
+		while(entries.size()>maxSize || weight.get()>maxWeight) {
+			DocumentKey oldest = order.poll();
+			if(oldest==null) {
+				break;
+			}
+			Entry removed = entries.remove(oldest);
+			if(removed!=null) {
+				weight.addAndGet(-removed.weight);
+				evictions.incrementAndGet();
+			}
+		}
+	}
+	
+	
+	//
+	// Invalidation
+	//
+	
+	public void invalidate(String database, String store, String unid) {
+		invalidate(new DocumentKey(database,store,unid));
+	}
+	
+	public void invalidate(DocumentKey key) {
+		Entry e = entries.remove(key);
+		if(e!=null) {
+			weight.addAndGet(-e.weight);
+			order.remove(key);
+			invalidations.incrementAndGet();
+		}
+	}
+	
+	/**
+	 * Evict all the documents of a store.
+	 */
+	public void invalidateStore(String database, String store) {
+		for(Iterator<DocumentKey> it=entries.keySet().iterator(); it.hasNext(); ) {
+			DocumentKey key = it.next();
+			if(key.getDatabase().equals(database) && key.getStore().equals(store)) {
+				invalidate(key);
+			}
+		}
+	}
+	
+	public void clear() {
+		entries.clear();
+		order.clear();
+		weight.set(0);
+	}
+	
+	
+	//
+	// Weight
+	//
+	
+	/**
+	 * Estimate the memory used by the JSON of a document.
+	 * The estimate is computed once, when the document is added to the cache.
+	 */
+	protected int weigh(Object json) {
+		long w = 128+estimate(json);
+		return (int)Math.min(w,Integer.MAX_VALUE);
+	}
+	
+	private static long estimate(Object o) {
+		if(o instanceof String) {
+			return 40+2*((String)o).length();
+		}
+		if(o instanceof Map<?,?>) {
+			long w = 64;
+			for(Map.Entry<?,?> e: ((Map<?,?>)o).entrySet()) {
+				w += 32+estimate(e.getKey())+estimate(e.getValue());
+			}
+			return w;
+		}
+		if(o instanceof List<?>) {
+			long w = 48;
+			for(Object v: (List<?>)o) {
+				w += 8+estimate(v);
+			}
+			return w;
+		}
+		return 16;
+	}
+	
+	
+	//
+	// Copy
+	//
+	
+	// Deep copy of the JSON containers, the values are immutable 
+	private static Object copyJson(Object o) {
+		if(o instanceof Map<?,?>) {
+			Map<?,?> m = (Map<?,?>)o;
+			JsonObject c = new JsonObject();
+			for(Map.Entry<?,?> e: m.entrySet()) {
+				c.put(String.valueOf(e.getKey()),copyJson(e.getValue()));
+			}
+			return c;
+		}
+		if(o instanceof List<?>) {
+			List<?> l = (List<?>)o;
+			JsonArray c = new JsonArray();
+			for(Object v: l) {
+				c.add(copyJson(v));
+			}
+			return c;
+		}
+		return o;
+	}
+	
+	
+	//
+	// Statistics
+	//
+	
+	public int size() {
+		return entries.size();
+	}
+	
+	public long getWeight() {
+		return weight.get();
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	public long getStaleCount() {
+		return staleEntries.get();
+	}
+
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+
+	public long getInvalidationCount() {
+		return invalidations.get();
+	}
+}
@@ -0,0 +1,111 @@
+/*!COPYRIGHT HEADER! 
+ *
+ * (c) Copyright Darwino Inc. 2014-2016.
+ *
+ * Licensed under The MIT License (https://opensource.org/licenses/MIT)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial 
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT 
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, 
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.darwino.graphsql.jsonstore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.darwino.commons.json.JsonObject;
+import com.darwino.graphsql.json.JsonAccessor;
+import com.darwino.graphsql.json.JsonAccessorFactory;
+import com.darwino.graphsql.service.RequestDeadline;
+
+import graphql.schema.DataFetchingEnvironment;
+
+
+/**
+ * Tests the batched document fetcher.
+ */
+public class BatchedDocumentFectherTest {
+	
+	private static DataFetchingEnvironment createEnvironment(Map<Object,Object> executionContext, String... ids) {
+		List<JsonAccessor> sources = new ArrayList<JsonAccessor>();
+		for(String id: ids) {
+			JsonObject json = new JsonObject();
+			json.put("id",id);
+			sources.add(JsonAccessorFactory.adapter(json));
+		}
+		Map<String,Object> arguments = new HashMap<String,Object>();
+		arguments.put("unid","$.id");
+		return new DataFetchingEnvironment(sources,arguments,executionContext,null,null,null,null);
+	}
+	
+	private static Map<Object,Object> createExecutionContext(TestStore store) {
+		JsonDocument.Context ctx = new JsonDocument.Context(store.createSession(),TestStore.DATABASE,TestStore.STORE);
+		ctx.setSharedCache(null);
+		Map<Object,Object> executionContext = new HashMap<Object,Object>();
+		executionContext.put(JsonDocument.Context.class,ctx);
+		return executionContext;
+	}
+	
+	private static TestStore createStore() {
+		TestStore store = new TestStore();
+		for(int i=0; i<2; i++) {
+			JsonObject json = new JsonObject();
+			json.put("index",i);
+			store.put("doc"+i,json);
+		}
+		return store;
+	}
+	
+	@Test
+	public void testLevel() throws Exception {
+		TestStore store = createStore();
+		Map<Object,Object> executionContext = createExecutionContext(store);
+		List<?> result = (List<?>)JsonDocument.batchedDocumentFecther.get(createEnvironment(executionContext,"doc0","doc1","doc0","missing"));
+		assertEquals(4,result.size());
+		assertNotNull(result.get(0));
+		assertNotNull(result.get(1));
+		assertNotNull(result.get(2));
+		assertNull(result.get(3));
+		assertEquals(1,((JsonAccessor)result.get(1)).read("$.index"));
+		// A single cursor reads the whole level
+		assertEquals(1,store.getCursorCount());
+	}
+	
+	@Test
+	public void testExpiredDeadline() throws Exception {
+		TestStore store = createStore();
+		Map<Object,Object> executionContext = createExecutionContext(store);
+		RequestDeadline deadline = new RequestDeadline(60000);
+		deadline.cancel();
+		RequestDeadline.set(executionContext,deadline);
+		List<?> result = (List<?>)JsonDocument.batchedDocumentFecther.get(createEnvironment(executionContext,"doc0","doc1"));
+		assertEquals(2,result.size());
+		assertNull(result.get(0));
+		assertNull(result.get(1));
+		assertEquals(0,store.getCursorCount());
+		assertEquals(0,store.getLoadCount());
+		assertTrue(deadline.isExceeded());
+	}
+}
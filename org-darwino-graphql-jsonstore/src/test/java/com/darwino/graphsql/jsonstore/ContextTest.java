@@ -0,0 +1,155 @@
+/*!COPYRIGHT HEADER! 
+ *
+ * (c) Copyright Darwino Inc. 2014-2016.
+ *
+ * Licensed under The MIT License (https://opensource.org/licenses/MIT)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial 
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT 
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, 
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.darwino.graphsql.jsonstore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import com.darwino.commons.json.JsonObject;
+import com.darwino.jsonstore.Document;
+
+
+/**
+ * Tests the sessions used by the request context.
+ */
+public class ContextTest {
+	
+	private static TestStore createStore(int count) {
+		TestStore store = new TestStore();
+		for(int i=0; i<count; i++) {
+			JsonObject json = new JsonObject();
+			json.put("index",i);
+			store.put("doc"+i,json);
+		}
+		return store;
+	}
+	
+	private static JsonDocument.Context createContext(TestStore store, int maxSessions) {
+		JsonDocument.Context ctx = new JsonDocument.Context(store.createSessionSource(),maxSessions,TestStore.DATABASE,TestStore.STORE);
+		ctx.setSharedCache(null);
+		return ctx;
+	}
+	
+	private static JsonDocument.Context createContext(TestStore store) {
+		JsonDocument.Context ctx = new JsonDocument.Context(store.createSession(),TestStore.DATABASE,TestStore.STORE);
+		ctx.setSharedCache(null);
+		return ctx;
+	}
+	
+	private static List<Document> loadConcurrently(final JsonDocument.Context ctx, int count) throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(count);
+		try {
+			List<Future<Document>> futures = new ArrayList<Future<Document>>();
+			for(int i=0; i<count; i++) {
+				final DocumentKey key = new DocumentKey(TestStore.DATABASE,TestStore.STORE,"doc"+i);
+				futures.add(executor.submit(new Callable<Document>() {
+					@Override
+					public Document call() throws Exception {
+						return ctx.loadDocument(key);
+					}
+				}));
+			}
+			List<Document> docs = new ArrayList<Document>();
+			for(Future<Document> f: futures) {
+				docs.add(f.get());
+			}
+			return docs;
+		} finally {
+			executor.shutdown();
+		}
+	}
+	
+	@Test
+	public void testSessionSourceOverlaps() throws Exception {
+		TestStore store = createStore(2);
+		// Each load waits for the other one, so they must run at the same time
+		store.setRendezvous(2,5000);
+		JsonDocument.Context ctx = createContext(store,2);
+		try {
+			List<Document> docs = loadConcurrently(ctx,2);
+			assertNotNull(docs.get(0));
+			assertNotNull(docs.get(1));
+			assertEquals(2,store.getMaxActiveCalls());
+			assertEquals(2,ctx.getSessionCount());
+			assertFalse(store.isConcurrentSessionUse());
+		} finally {
+			ctx.close();
+		}
+	}
+	
+	@Test
+	public void testSingleSessionSerializes() throws Exception {
+		TestStore store = createStore(2);
+		store.setRendezvous(2,200);
+		JsonDocument.Context ctx = createContext(store);
+		List<Document> docs = loadConcurrently(ctx,2);
+		assertNotNull(docs.get(0));
+		assertNotNull(docs.get(1));
+		assertEquals(1,store.getMaxActiveCalls());
+		assertFalse(store.isConcurrentSessionUse());
+	}
+	
+	@Test
+	public void testMaxSessions() throws Exception {
+		TestStore store = createStore(6);
+		store.setRendezvous(6,200);
+		JsonDocument.Context ctx = createContext(store,3);
+		try {
+			List<Document> docs = loadConcurrently(ctx,6);
+			assertEquals(6,docs.size());
+			assertTrue(store.getMaxActiveCalls()<=3);
+			assertTrue(ctx.getSessionCount()<=3);
+			assertFalse(store.isConcurrentSessionUse());
+		} finally {
+			ctx.close();
+		}
+	}
+	
+	@Test
+	public void testCloseSessions() throws Exception {
+		TestStore store = createStore(2);
+		store.setRendezvous(2,5000);
+		JsonDocument.Context ctx = createContext(store,2);
+		loadConcurrently(ctx,2);
+		assertEquals(2,store.getOpenSessionCount());
+		ctx.close();
+		assertEquals(0,store.getOpenSessionCount());
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testInvalidMaxSessions() throws Exception {
+		createContext(new TestStore(),0);
+	}
+}
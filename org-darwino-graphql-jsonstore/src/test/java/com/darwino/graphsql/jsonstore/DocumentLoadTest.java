@@ -0,0 +1,135 @@
+/*!COPYRIGHT HEADER! 
+ *
+ * (c) Copyright Darwino Inc. 2014-2016.
+ *
+ * Licensed under The MIT License (https://opensource.org/licenses/MIT)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial 
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT 
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, 
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.darwino.graphsql.jsonstore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import com.darwino.commons.json.JsonObject;
+import com.darwino.jsonstore.Document;
+
+
+/**
+ * Tests the documents loaded once per request by the context.
+ */
+public class DocumentLoadTest {
+	
+	private static DocumentKey key(String unid) {
+		return new DocumentKey(TestStore.DATABASE,TestStore.STORE,unid);
+	}
+	
+	private static TestStore createStore() {
+		TestStore store = new TestStore();
+		for(int i=0; i<3; i++) {
+			JsonObject json = new JsonObject();
+			json.put("index",i);
+			store.put("doc"+i,json);
+		}
+		return store;
+	}
+	
+	private static JsonDocument.Context createContext(TestStore store, int maxSessions) {
+		JsonDocument.Context ctx = new JsonDocument.Context(store.createSessionSource(),maxSessions,TestStore.DATABASE,TestStore.STORE);
+		ctx.setSharedCache(null);
+		return ctx;
+	}
+	
+	@Test
+	public void testLoadOnce() throws Exception {
+		TestStore store = createStore();
+		JsonDocument.Context ctx = createContext(store,1);
+		Document doc = ctx.loadDocument(key("doc0"));
+		assertNotNull(doc);
+		assertSame(doc,ctx.loadDocument(key("doc0")));
+		assertEquals(1,store.getLoadCount());
+		assertEquals(1,ctx.getAvoidedLoads());
+		ctx.close();
+	}
+	
+	@Test
+	public void testConcurrentLoads() throws Exception {
+		TestStore store = createStore();
+		// The first load lasts long enough for the others to find it pending
+		store.setDelay(200);
+		final JsonDocument.Context ctx = createContext(store,4);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Document>> futures = new ArrayList<Future<Document>>();
+			for(int i=0; i<4; i++) {
+				futures.add(executor.submit(new Callable<Document>() {
+					@Override
+					public Document call() throws Exception {
+						return ctx.loadDocument(key("doc1"));
+					}
+				}));
+			}
+			Document doc = futures.get(0).get();
+			assertNotNull(doc);
+			for(Future<Document> f: futures) {
+				assertSame(doc,f.get());
+			}
+			assertEquals(1,store.getLoadCount());
+			assertEquals(3,ctx.getAvoidedLoads());
+		} finally {
+			executor.shutdown();
+			ctx.close();
+		}
+	}
+	
+	@Test
+	public void testDuplicateKeys() throws Exception {
+		TestStore store = createStore();
+		JsonDocument.Context ctx = createContext(store,1);
+		Document doc0 = ctx.loadDocument(key("doc0"));
+		store.resetCounts();
+		
+		Map<DocumentKey,Document> docs = ctx.loadDocuments(Arrays.asList(key("doc0"),key("doc1"),key("doc2"),key("doc1"),key("missing")));
+		assertEquals(3,docs.size());
+		assertSame(doc0,docs.get(key("doc0")));
+		assertNull(docs.get(key("missing")));
+		// Only the documents not yet loaded are read, with a single cursor
+		assertEquals(1,store.getCursorCount());
+		assertEquals(2,store.getLoadCount());
+		assertEquals(2,ctx.getAvoidedLoads());
+		
+		// The documents read by the cursor are then reused 
+		store.resetCounts();
+		assertSame(docs.get(key("doc2")),ctx.loadDocument(key("doc2")));
+		assertEquals(0,store.getLoadCount());
+		ctx.close();
+	}
+}
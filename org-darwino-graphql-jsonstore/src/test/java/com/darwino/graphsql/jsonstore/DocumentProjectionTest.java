@@ -0,0 +1,133 @@
+/*!COPYRIGHT HEADER! 
+ *
+ * (c) Copyright Darwino Inc. 2014-2016.
+ *
+ * Licensed under The MIT License (https://opensource.org/licenses/MIT)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial 
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT 
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, 
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.darwino.graphsql.jsonstore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.darwino.commons.json.JsonObject;
+import com.darwino.graphsql.json.JsonAccessor;
+
+import graphql.language.Argument;
+import graphql.language.Field;
+import graphql.language.FragmentSpread;
+import graphql.language.InlineFragment;
+import graphql.language.Selection;
+import graphql.language.SelectionSet;
+import graphql.language.StringValue;
+import graphql.language.TypeName;
+import graphql.language.Value;
+import graphql.language.VariableReference;
+import graphql.schema.DataFetchingEnvironment;
+
+
+/**
+ * Tests the projection of the documents on the paths read by a query.
+ */
+public class DocumentProjectionTest {
+	
+	private static Field field(String name, String path) {
+		return field(name,new StringValue(path));
+	}
+	private static Field field(String name, Value path) {
+		return new Field(name,Collections.singletonList(new Argument("path",path)),null);
+	}
+	private static List<Field> document(Selection... selections) {
+		SelectionSet ss = new SelectionSet(new ArrayList<Selection>(Arrays.asList(selections)));
+		return Collections.singletonList(new Field("Document",new ArrayList<Argument>(),ss));
+	}
+	private static DataFetchingEnvironment createEnvironment(Object executionContext, List<Field> fields, String unid) {
+		Map<String,Object> arguments = new HashMap<String,Object>();
+		arguments.put("unid",unid);
+		return new DataFetchingEnvironment(null,arguments,executionContext,fields,null,null,null);
+	}
+	
+	@Test
+	public void testCollectPaths() throws Exception {
+		List<Field> fields = document(
+			field("string","$.name"),
+			field("number","$.index"),
+			new InlineFragment(new TypeName("Doc"),null,new SelectionSet(new ArrayList<Selection>(Arrays.<Selection>asList(field("number","$.address.zip")))))
+		);
+		Set<String> paths = DocumentProjection.collectPaths(createEnvironment(null,fields,"doc0"));
+		assertEquals(Arrays.asList("$.name","$.index","$.address.zip"),new ArrayList<String>(paths));
+	}
+	
+	@Test
+	public void testUnknownPaths() throws Exception {
+		// Paths computed at runtime or not simple members cannot be projected
+		assertNull(DocumentProjection.collectPaths(createEnvironment(null,document(field("string",new VariableReference("p"))),"doc0")));
+		assertNull(DocumentProjection.collectPaths(createEnvironment(null,document(field("string","$.tags[0]")),"doc0")));
+		assertNull(DocumentProjection.collectPaths(createEnvironment(null,document(new FragmentSpread("f")),"doc0")));
+	}
+	
+	@Test
+	public void testProjectedFetch() throws Exception {
+		TestStore store = new TestStore();
+		JsonObject json = new JsonObject();
+		json.put("name","Doc 0");
+		json.put("index",0);
+		json.put("other","value");
+		store.put("doc0",json);
+		
+		JsonDocument.Context ctx = new JsonDocument.Context(store.createSession(),TestStore.DATABASE,TestStore.STORE);
+		ctx.setSharedCache(null);
+		Map<Object,Object> executionContext = new HashMap<Object,Object>();
+		executionContext.put(JsonDocument.Context.class,ctx);
+		
+		List<Field> fields = document(field("string","$.name"),field("number","$.index"));
+		JsonAccessor accessor = JsonDocument.projectedDocumentFecther.get(createEnvironment(executionContext,fields,"doc0"));
+		assertTrue(accessor instanceof DocumentProjection.Accessor);
+		assertEquals("Doc 0",accessor.read("$.name"));
+		assertEquals(0,accessor.read("$.index"));
+		// Only the projected values were read
+		assertEquals(1,store.getCursorCount());
+		assertEquals(0,store.getLoadCount());
+		
+		// Another path loads the whole document
+		assertEquals("value",accessor.read("$.other"));
+		assertEquals(1,store.getLoadCount());
+	}
+	
+	@Test
+	public void testProjectedMissingDocument() throws Exception {
+		TestStore store = new TestStore();
+		JsonDocument.Context ctx = new JsonDocument.Context(store.createSession(),TestStore.DATABASE,TestStore.STORE);
+		ctx.setSharedCache(null);
+		Map<Object,Object> executionContext = new HashMap<Object,Object>();
+		executionContext.put(JsonDocument.Context.class,ctx);
+		assertNull(JsonDocument.projectedDocumentFecther.get(createEnvironment(executionContext,document(field("string","$.name")),"missing")));
+	}
+}
@@ -0,0 +1,139 @@
+/*!COPYRIGHT HEADER! 
+ *
+ * (c) Copyright Darwino Inc. 2014-2016.
+ *
+ * Licensed under The MIT License (https://opensource.org/licenses/MIT)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial 
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT 
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, 
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.darwino.graphsql.jsonstore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.darwino.commons.json.JsonException;
+import com.darwino.commons.json.JsonObject;
+import com.darwino.graphsql.service.RequestDeadline;
+
+import graphql.GraphQLException;
+import graphql.schema.DataFetchingEnvironment;
+
+
+/**
+ * Tests the fetcher for a page of documents.
+ */
+public class DocumentsFectherTest {
+	
+	private JsonDocument.DocumentsFecther fetcher = new JsonDocument.DocumentsFecther(100);
+	
+	private static TestStore createStore() {
+		TestStore store = new TestStore();
+		for(int i=0; i<5; i++) {
+			JsonObject json = new JsonObject();
+			json.put("index",i);
+			store.put("doc"+i,json);
+		}
+		return store;
+	}
+	
+	private static DataFetchingEnvironment createEnvironment(TestStore store, RequestDeadline deadline, Object... arguments) {
+		JsonDocument.Context ctx = new JsonDocument.Context(store.createSession(),TestStore.DATABASE,TestStore.STORE);
+		ctx.setSharedCache(null);
+		Map<Object,Object> executionContext = new HashMap<Object,Object>();
+		executionContext.put(JsonDocument.Context.class,ctx);
+		if(deadline!=null) {
+			RequestDeadline.set(executionContext,deadline);
+		}
+		Map<String,Object> args = new HashMap<String,Object>();
+		for(int i=0; i<arguments.length; i+=2) {
+			args.put((String)arguments[i],arguments[i+1]);
+		}
+		return new DataFetchingEnvironment(null,args,executionContext,null,null,null,null);
+	}
+	
+	@Test
+	public void testPage() throws Exception {
+		TestStore store = createStore();
+		Map<?,?> page = (Map<?,?>)fetcher.get(createEnvironment(store,null,"first",2));
+		List<?> edges = (List<?>)page.get("edges");
+		assertEquals(2,edges.size());
+		Map<?,?> pageInfo = (Map<?,?>)page.get("pageInfo");
+		assertEquals(Boolean.TRUE,pageInfo.get("hasNextPage"));
+		assertEquals(((Map<?,?>)edges.get(1)).get("cursor"),pageInfo.get("endCursor"));
+		assertNotNull(((Map<?,?>)edges.get(0)).get("node"));
+	}
+	
+	@Test
+	public void testLastPage() throws Exception {
+		TestStore store = createStore();
+		Map<?,?> page = (Map<?,?>)fetcher.get(createEnvironment(store,null,"first",10));
+		assertEquals(5,((List<?>)page.get("edges")).size());
+		assertEquals(Boolean.FALSE,((Map<?,?>)page.get("pageInfo")).get("hasNextPage"));
+	}
+	
+	@Test
+	public void testInvalidCursor() throws Exception {
+		TestStore store = createStore();
+		try {
+			fetcher.get(createEnvironment(store,null,"after","not a cursor"));
+			fail("The cursor should be rejected");
+		} catch(GraphQLException ex) {
+			assertTrue(ex.getMessage().contains("not a cursor"));
+		}
+		assertEquals(0,store.getCursorCount());
+	}
+	
+	@Test
+	public void testInvalidQuery() throws Exception {
+		TestStore store = createStore();
+		try {
+			fetcher.get(createEnvironment(store,null,"query","{\"index\":"));
+			fail("The query should be rejected");
+		} catch(GraphQLException ex) {
+			assertTrue(ex.getCause() instanceof JsonException);
+		}
+		assertEquals(0,store.getCursorCount());
+	}
+	
+	@Test
+	public void testStoreFailure() throws Exception {
+		TestStore store = createStore();
+		store.setFailing(true);
+		try {
+			fetcher.get(createEnvironment(store,null));
+			fail("The failure should be reported");
+		} catch(GraphQLException ex) {
+			assertTrue(ex.getCause() instanceof JsonException);
+		}
+	}
+	
+	@Test(expected=RequestDeadline.ExceededException.class)
+	public void testExpiredDeadline() throws Exception {
+		RequestDeadline deadline = new RequestDeadline(60000);
+		deadline.cancel();
+		fetcher.get(createEnvironment(createStore(),deadline));
+	}
+}
@@ -0,0 +1,172 @@
+/*!COPYRIGHT HEADER! 
+ *
+ * (c) Copyright Darwino Inc. 2014-2016.
+ *
+ * Licensed under The MIT License (https://opensource.org/licenses/MIT)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial 
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT 
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, 
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.darwino.graphsql.jsonstore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.darwino.commons.json.JsonObject;
+import com.darwino.graphsql.json.JsonAccessor;
+import com.darwino.jsonstore.Document;
+import com.darwino.jsonstore.Session;
+
+import graphql.schema.DataFetchingEnvironment;
+
+
+/**
+ * Tests the document cache shared across requests.
+ */
+public class SharedDocumentCacheTest {
+	
+	private TestStore store = createStore();
+	private SharedDocumentCache cache = createCache();
+	
+	private static TestStore createStore() {
+		TestStore store = new TestStore();
+		for(int i=0; i<2; i++) {
+			store.put("doc"+i,createJson(i));
+		}
+		return store;
+	}
+	
+	private static JsonObject createJson(int index) {
+		JsonObject json = new JsonObject();
+		json.put("index",index);
+		return json;
+	}
+	
+	private static SharedDocumentCache createCache() {
+		SharedDocumentCache cache = new SharedDocumentCache();
+		cache.enableStore(TestStore.DATABASE,TestStore.STORE);
+		return cache;
+	}
+	
+	private JsonDocument.Context createContext(Session session) {
+		JsonDocument.Context ctx = new JsonDocument.Context(session,TestStore.DATABASE,TestStore.STORE);
+		ctx.setSharedCache(cache);
+		return ctx;
+	}
+	
+	// Read a document with the document field, in a new request
+	private JsonAccessor fetch(Session session, String unid) {
+		return fetch(createContext(session),unid);
+	}
+	private JsonAccessor fetch(JsonDocument.Context ctx, String unid) {
+		Map<Object,Object> executionContext = new HashMap<Object,Object>();
+		executionContext.put(JsonDocument.Context.class,ctx);
+		Map<String,Object> arguments = new HashMap<String,Object>();
+		arguments.put("unid",unid);
+		return JsonDocument.documentFecther.get(new DataFetchingEnvironment(null,arguments,executionContext,null,null,null,null));
+	}
+	
+	@Test
+	public void testHit() throws Exception {
+		assertEquals(0,fetch(store.createSession(),"doc0").read("$.index"));
+		assertEquals(1,store.getLoadCount());
+		assertEquals(0,fetch(store.createSession(),"doc0").read("$.index"));
+		assertEquals(1,store.getLoadCount());
+		assertEquals(1,cache.getHitCount());
+	}
+	
+	@Test
+	public void testStale() throws Exception {
+		fetch(store.createSession(),"doc0");
+		store.put("doc0",createJson(10));
+		assertEquals(10,fetch(store.createSession(),"doc0").read("$.index"));
+		assertEquals(2,store.getLoadCount());
+		assertEquals(1,cache.getStaleCount());
+		assertEquals(0,cache.getHitCount());
+		// The new version is cached
+		assertEquals(10,fetch(store.createSession(),"doc0").read("$.index"));
+		assertEquals(2,store.getLoadCount());
+	}
+	
+	@Test
+	public void testDeleted() throws Exception {
+		fetch(store.createSession(),"doc0");
+		store.remove("doc0");
+		assertNull(fetch(store.createSession(),"doc0"));
+		assertEquals(0,cache.getHitCount());
+	}
+	
+	@Test
+	public void testInvalidate() throws Exception {
+		fetch(store.createSession(),"doc0");
+		cache.invalidate(TestStore.DATABASE,TestStore.STORE,"doc0");
+		assertEquals(0,cache.size());
+		assertEquals(1,cache.getInvalidationCount());
+		fetch(store.createSession(),"doc0");
+		assertEquals(2,store.getLoadCount());
+		
+		cache.invalidateStore(TestStore.DATABASE,TestStore.STORE);
+		assertEquals(0,cache.size());
+	}
+	
+	@Test
+	public void testAccessRights() throws Exception {
+		fetch(store.createSession(),"doc0");
+		// A user who cannot read the document does not get it from the cache
+		Session restricted = store.createSession(Collections.singleton("doc1"));
+		assertNull(fetch(restricted,"doc0"));
+		assertEquals(0,cache.getHitCount());
+		// The entry is kept for the other users
+		assertEquals(1,cache.size());
+		assertNotNull(fetch(store.createSession(),"doc0"));
+		assertEquals(1,cache.getHitCount());
+	}
+	
+	@Test
+	public void testPrivateCopies() throws Exception {
+		fetch(store.createSession(),"doc0");
+		JsonAccessor a1 = fetch(store.createSession(),"doc0");
+		JsonAccessor a2 = fetch(store.createSession(),"doc0");
+		((JsonObject)a1.read("$")).put("index",5);
+		assertEquals(5,a1.read("$.index"));
+		assertEquals(0,a2.read("$.index"));
+		assertEquals(0,fetch(store.createSession(),"doc0").read("$.index"));
+	}
+	
+	@Test
+	public void testContextReturnsStoreDocuments() throws Exception {
+		fetch(store.createSession(),"doc0");
+		JsonDocument.Context ctx = createContext(store.createSession());
+		assertNotNull(fetch(ctx,"doc0"));
+		assertEquals(1,cache.getHitCount());
+		// The documents given to the application come from the store, even when the field was cached
+		DocumentKey key = new DocumentKey(TestStore.DATABASE,TestStore.STORE,"doc0");
+		assertNull(ctx.getLoadedDocument(key));
+		Document doc = ctx.loadDocument(key);
+		assertNotNull(doc.getLastModificationDate());
+		assertEquals("doc0",doc.getUnid());
+		assertEquals(2,store.getLoadCount());
+		assertEquals(doc,ctx.getLoadedDocument(key));
+	}
+}
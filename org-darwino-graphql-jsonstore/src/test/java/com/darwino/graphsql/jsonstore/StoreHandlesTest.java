@@ -0,0 +1,91 @@
+/*!COPYRIGHT HEADER! 
+ *
+ * (c) Copyright Darwino Inc. 2014-2016.
+ *
+ * Licensed under The MIT License (https://opensource.org/licenses/MIT)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial 
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT 
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, 
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.darwino.graphsql.jsonstore;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import com.darwino.commons.json.JsonObject;
+import com.darwino.jsonstore.Store;
+
+
+/**
+ * Tests the database and store handles resolved by the request context.
+ */
+public class StoreHandlesTest {
+	
+	private static TestStore createStore() {
+		TestStore store = new TestStore();
+		for(int i=0; i<5; i++) {
+			JsonObject json = new JsonObject();
+			json.put("index",i);
+			store.put("doc"+i,json);
+		}
+		return store;
+	}
+	
+	@Test
+	public void testResolvedOnce() throws Exception {
+		TestStore store = createStore();
+		JsonDocument.Context ctx = new JsonDocument.Context(store.createSession(),TestStore.DATABASE,TestStore.STORE);
+		ctx.setSharedCache(null);
+		for(int i=0; i<5; i++) {
+			ctx.loadDocument(new DocumentKey(TestStore.DATABASE,TestStore.STORE,"doc"+i));
+		}
+		assertEquals(5,store.getLoadCount());
+		assertEquals(1,store.getStoreResolutionCount());
+	}
+	
+	@Test
+	public void testResolvedPerStore() throws Exception {
+		TestStore store = createStore();
+		JsonDocument.Context ctx = new JsonDocument.Context(store.createSession(),TestStore.DATABASE,TestStore.STORE);
+		JsonDocument.StoreCall<Store> call = new JsonDocument.StoreCall<Store>() {
+			@Override
+			public Store call(Store store) {
+				return store;
+			}
+		};
+		ctx.withStore(TestStore.DATABASE,TestStore.STORE,call);
+		ctx.withStore(TestStore.DATABASE,"other",call);
+		ctx.withStore(TestStore.DATABASE,TestStore.STORE,call);
+		ctx.withStore(TestStore.DATABASE,"other",call);
+		assertEquals(2,store.getStoreResolutionCount());
+	}
+	
+	@Test
+	public void testResolvedPerSession() throws Exception {
+		TestStore store = createStore();
+		JsonDocument.Context ctx = new JsonDocument.Context(store.createSessionSource(),3,TestStore.DATABASE,TestStore.STORE);
+		ctx.setSharedCache(null);
+		for(int i=0; i<5; i++) {
+			ctx.loadDocument(new DocumentKey(TestStore.DATABASE,TestStore.STORE,"doc"+i));
+		}
+		// The loads are sequential, so they reuse the first session
+		assertEquals(1,ctx.getSessionCount());
+		assertEquals(1,store.getStoreResolutionCount());
+		ctx.close();
+	}
+}
@@ -0,0 +1,420 @@
+/*!COPYRIGHT HEADER! 
+ *
+ * (c) Copyright Darwino Inc. 2014-2016.
+ *
+ * Licensed under The MIT License (https://opensource.org/licenses/MIT)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial 
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT 
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, 
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.darwino.graphsql.jsonstore;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.darwino.commons.json.JsonException;
+import com.darwino.commons.json.JsonObject;
+import com.darwino.jsonstore.Cursor;
+import com.darwino.jsonstore.CursorEntry;
+import com.darwino.jsonstore.Database;
+import com.darwino.jsonstore.Document;
+import com.darwino.jsonstore.Session;
+import com.darwino.jsonstore.Store;
+import com.darwino.jsonstore.callback.CursorHandler;
+
+
+/**
+ * In memory stand-in for a JSON store, for the tests.
+ * 
+ * It implements the calls made by the JSON store fields: loading a document, reading
+ * documents and modification dates with a cursor on unids or on the whole store, and
+ * extracting values. The cursor queries and sort options are ignored. A session
+ * can be restricted to a set of readable documents, and the store counts its calls, the
+ * calls running at the same time, and the sessions used concurrently.
+ */
+public class TestStore {
+	
+	public static final String DATABASE	= "db";
+	public static final String STORE	= "store";
+	
+	private static final class Doc {
+		final JsonObject json;
+		final long modified;
+		Doc(JsonObject json, long modified) {
+			this.json = json;
+			this.modified = modified;
+		}
+	}
+	
+	private final Map<String,Doc> documents = new ConcurrentHashMap<String,Doc>();
+	private long clock = 1000000;
+	
+	private final AtomicInteger loads = new AtomicInteger();
+	private final AtomicInteger cursors = new AtomicInteger();
+	private final AtomicInteger storeResolutions = new AtomicInteger();
+	private final AtomicInteger openSessions = new AtomicInteger();
+	private final AtomicInteger activeCalls = new AtomicInteger();
+	private final AtomicInteger maxActiveCalls = new AtomicInteger();
+	private final Set<Object> busySessions = Collections.newSetFromMap(new ConcurrentHashMap<Object,Boolean>());
+	private volatile boolean concurrentSessionUse;
+	private volatile CyclicBarrier rendezvous;
+	private volatile long rendezvousTimeout;
+	private volatile long delay;
+	private volatile boolean failing;
+	
+	public TestStore() {
+	}
+	
+	/**
+	 * Create or update a document, changing its modification date.
+	 */
+	public synchronized void put(String unid, JsonObject json) {
+		documents.put(unid,new Doc(json,clock+=1000));
+	}
+	
+	public void remove(String unid) {
+		documents.remove(unid);
+	}
+	
+	/**
+	 * Make the store calls wait for each other, until a number of calls are running or a
+	 * timeout expires. This shows if the calls can run at the same time.
+	 */
+	public void setRendezvous(int parties, long timeout) {
+		this.rendezvous = parties>1 ? new CyclicBarrier(parties) : null;
+		this.rendezvousTimeout = timeout;
+	}
+	
+	/**
+	 * Make each store call last at least a delay, in milliseconds.
+	 */
+	public void setDelay(long delay) {
+		this.delay = delay;
+	}
+	
+	/**
+	 * Make the store calls fail.
+	 */
+	public void setFailing(boolean failing) {
+		this.failing = failing;
+	}
+	
+	public int getLoadCount() {
+		return loads.get();
+	}
+	
+	public int getCursorCount() {
+		return cursors.get();
+	}
+	
+	public int getStoreResolutionCount() {
+		return storeResolutions.get();
+	}
+	
+	public int getOpenSessionCount() {
+		return openSessions.get();
+	}
+	
+	public int getMaxActiveCalls() {
+		return maxActiveCalls.get();
+	}
+	
+	/**
+	 * Check if a session was used by several threads at the same time.
+	 */
+	public boolean isConcurrentSessionUse() {
+		return concurrentSessionUse;
+	}
+	
+	public void resetCounts() {
+		loads.set(0);
+		cursors.set(0);
+		storeResolutions.set(0);
+		maxActiveCalls.set(0);
+	}
+	
+	/**
+	 * Create a session reading all the documents.
+	 */
+	public Session createSession() {
+		return createSession(null);
+	}
+	
+	/**
+	 * Create a session only reading a set of documents, or all of them when null.
+	 */
+	public Session createSession(final Set<String> readable) {
+		final Object id = new Object();
+		final Store store = proxy(Store.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				String name = method.getName();
+				if(name.equals("loadDocument")) {
+					enter(id);
+					try {
+						loads.incrementAndGet();
+						return createDocument((Store)proxy,(String)args[0],readable);
+					} finally {
+						leave(id);
+					}
+				}
+				if(name.equals("openCursor")) {
+					return createCursor((Store)proxy,id,readable);
+				}
+				if(name.equals("getId")) {
+					return STORE;
+				}
+				return objectMethod(proxy,method,args);
+			}
+		});
+		final Database database = proxy(Database.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				String name = method.getName();
+				if(name.equals("getStore")) {
+					storeResolutions.incrementAndGet();
+					return store;
+				}
+				if(name.equals("getId")) {
+					return DATABASE;
+				}
+				return objectMethod(proxy,method,args);
+			}
+		});
+		return proxy(Session.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				if(method.getName().equals("getDatabase")) {
+					return database;
+				}
+				return objectMethod(proxy,method,args);
+			}
+		});
+	}
+	
+	/**
+	 * Create a source of sessions reading all the documents, counting the open sessions.
+	 */
+	public SessionSource createSessionSource() {
+		return new SessionSource() {
+			@Override
+			public Session openSession() {
+				openSessions.incrementAndGet();
+				return createSession();
+			}
+			@Override
+			public void closeSession(Session session) {
+				openSessions.decrementAndGet();
+			}
+		};
+	}
+	
+	private void enter(Object session) throws JsonException {
+		if(failing) {
+			throw new JsonException(null,"Store failure");
+		}
+		if(!busySessions.add(session)) {
+			concurrentSessionUse = true;
+		}
+		int n = activeCalls.incrementAndGet();
+		for(int max=maxActiveCalls.get(); n>max && !maxActiveCalls.compareAndSet(max,n); max=maxActiveCalls.get()) {
+		}
+		try {
+			if(delay>0) {
+				Thread.sleep(delay);
+			}
+		} catch(InterruptedException ex) {
+			throw new JsonException(ex,"Interrupted");
+		}
+		CyclicBarrier b = rendezvous;
+		if(b!=null) {
+			try {
+				b.await(rendezvousTimeout,TimeUnit.MILLISECONDS);
+			} catch(TimeoutException ex) {
+				// The other calls did not come
+			} catch(BrokenBarrierException ex) {
+				// Another call timed out
+			} catch(InterruptedException ex) {
+				throw new JsonException(ex,"Interrupted");
+			}
+		}
+	}
+	
+	private void leave(Object session) {
+		activeCalls.decrementAndGet();
+		busySessions.remove(session);
+	}
+	
+	private Document createDocument(final Store store, final String unid, Set<String> readable) {
+		if(readable!=null && !readable.contains(unid)) {
+			return null;
+		}
+		final Doc doc = documents.get(unid);
+		if(doc==null) {
+			return null;
+		}
+		// Each load gets its own copy, like a document read from the database
+		final JsonObject json = copy(doc.json);
+		return proxy(Document.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				String name = method.getName();
+				if(name.equals("getJson")) {
+					return json;
+				}
+				if(name.equals("getUnid")) {
+					return unid;
+				}
+				if(name.equals("getStore")) {
+					return store;
+				}
+				if(name.equals("getLastModificationDate") || name.equals("getCreationDate")) {
+					return new Date(doc.modified);
+				}
+				return objectMethod(proxy,method,args);
+			}
+		});
+	}
+	
+	private Cursor createCursor(final Store store, final Object session, final Set<String> readable) {
+		final List<String> unids = new ArrayList<String>();
+		final Object[] extract = new Object[1];
+		return proxy(Cursor.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				String name = method.getName();
+				if(name.equals("unids")) {
+					unids.addAll(Arrays.asList((String[])args[0]));
+					return proxy;
+				}
+				if(name.equals("unid")) {
+					unids.add((String)args[0]);
+					return proxy;
+				}
+				if(name.equals("extract")) {
+					extract[0] = args[0];
+					return proxy;
+				}
+				if(name.equals("find") || name.equals("findOne")) {
+					enter(session);
+					try {
+						cursors.incrementAndGet();
+						CursorHandler handler = args!=null ? (CursorHandler)args[0] : null;
+						// Without unids, the cursor reads all the documents sorted by unid
+						List<String> l = unids.isEmpty() ? new ArrayList<String>(new TreeSet<String>(documents.keySet())) : unids;
+						for(String unid: l) {
+							Doc doc = documents.get(unid);
+							if(doc==null || (readable!=null && !readable.contains(unid))) {
+								continue;
+							}
+							CursorEntry entry = createEntry(store,unid,doc,extract[0],readable);
+							if(handler==null) {
+								return entry;
+							}
+							if(!handler.handle(entry)) {
+								break;
+							}
+						}
+						return null;
+					} finally {
+						leave(session);
+					}
+				}
+				if(method.getReturnType()==Cursor.class) {
+					// Options, query and sort are ignored
+					return proxy;
+				}
+				return objectMethod(proxy,method,args);
+			}
+		});
+	}
+	
+	private CursorEntry createEntry(final Store store, final String unid, final Doc doc, final Object extract, final Set<String> readable) {
+		return proxy(CursorEntry.class, new InvocationHandler() {
+			@Override
+			public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+				String name = method.getName();
+				if(name.equals("getUnid")) {
+					return unid;
+				}
+				if(name.equals("getLastModificationDate")) {
+					return new Date(doc.modified);
+				}
+				if(name.equals("loadDocument")) {
+					loads.incrementAndGet();
+					return createDocument(store,unid,readable);
+				}
+				if(name.equals("getJson")) {
+					return copy(doc.json);
+				}
+				if(name.equals("getValue")) {
+					// Extract the top level members named by the "$.name" paths
+					JsonObject value = new JsonObject();
+					if(extract instanceof Map<?,?>) {
+						for(Map.Entry<?,?> e: ((Map<?,?>)extract).entrySet()) {
+							String path = String.valueOf(e.getValue());
+							value.put(String.valueOf(e.getKey()),doc.json.get(path.substring(2)));
+						}
+					}
+					return value;
+				}
+				return objectMethod(proxy,method,args);
+			}
+		});
+	}
+	
+	private static JsonObject copy(JsonObject json) {
+		JsonObject c = new JsonObject();
+		c.putAll(json);
+		return c;
+	}
+	
+	private static Object objectMethod(Object proxy, Method method, Object[] args) throws Throwable {
+		String name = method.getName();
+		if(name.equals("hashCode")) {
+			return System.identityHashCode(proxy);
+		}
+		if(name.equals("equals")) {
+			return proxy==args[0];
+		}
+		if(name.equals("toString")) {
+			return method.getDeclaringClass().getSimpleName();
+		}
+		throw new InvocationTargetException(new UnsupportedOperationException(method.toString()));
+	}
+	
+	@SuppressWarnings("unchecked")
+	private static <T> T proxy(Class<T> c, InvocationHandler handler) {
+		return (T)Proxy.newProxyInstance(TestStore.class.getClassLoader(), new Class<?>[] {c}, handler);
+	}
+}
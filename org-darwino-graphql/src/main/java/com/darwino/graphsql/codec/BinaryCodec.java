@@ -0,0 +1,61 @@
+/*!COPYRIGHT HEADER! 
+ *
+ * (c) Copyright Darwino Inc. 2014-2016.
+ *
+ * Licensed under The MIT License (https://opensource.org/licenses/MIT)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial 
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT 
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, 
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.darwino.graphsql.codec;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+
+/**
+ * Binary encoding of the GraphQL requests and responses.
+ * 
+ * A codec is selected when a client accepts its content type, or sends a request body
+ * with this content type. The values are the same as the JSON ones: maps, lists, strings,
+ * numbers, booleans and null.
+ */
+public interface BinaryCodec {
+
+	/**
+	 * Return the short name of the encoding, for example "cbor".
+	 */
+	public String getName();
+
+	/**
+	 * Return the media type of the encoding, for example "application/cbor".
+	 */
+	public String getContentType();
+
+	/**
+	 * Write a value to a stream.
+	 * The stream is flushed but not closed.
+	 */
+	public void write(OutputStream os, Object value) throws IOException;
+
+	/**
+	 * Read a value from a stream.
+	 * Objects are returned as JsonObject and arrays as JsonArray.
+	 */
+	public Object read(InputStream is) throws IOException;
+}
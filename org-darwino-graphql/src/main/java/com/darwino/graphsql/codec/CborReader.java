@@ -0,0 +1,315 @@
+/*!COPYRIGHT HEADER! 
+ *
+ * (c) Copyright Darwino Inc. 2014-2016.
+ *
+ * Licensed under The MIT License (https://opensource.org/licenses/MIT)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial 
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT 
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, 
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.darwino.graphsql.codec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+import com.darwino.commons.json.JsonArray;
+import com.darwino.commons.json.JsonObject;
+
+
+/**
+ * CBOR reader.
+ * 
+ * The data items are converted to the JSON values: maps to JsonObject, arrays to JsonArray.
+ * Integers are returned as Integer or Long, or BigInteger when they do not fit in 64 bits, and
+ * floating point numbers as Double. Bignums (tags 2 and 3) are returned as BigInteger and
+ * decimal fractions (tag 4) as BigDecimal. The other tags are ignored and the tagged item is
+ * returned as is. Byte strings are returned as byte[].
+ */
+public class CborReader {
+	
+	private static final int MAX_DEPTH	= 256;
+	
+	// Returned when a break stop code is read
+	private static final Object BREAK = new Object();
+	
+	private InputStream is;
+	private byte[] buffer = new byte[8192];
+	private int pos;
+	private int count;
+	
+	public CborReader(InputStream is) {
+		this.is = is;
+	}
+	
+	/**
+	 * Read the next data item.
+	 */
+	public Object read() throws IOException {
+		Object o = readItem(0);
+		if(o==BREAK) {
+			throw new IOException("Unexpected CBOR break");
+		}
+		return o;
+	}
+	
+	private Object readItem(int depth) throws IOException {
+		if(depth>MAX_DEPTH) {
+			throw new IOException("CBOR value is too deeply nested");
+		}
+		int ib = readByte();
+		int major = ib>>>5;
+		int info = ib&0x1f;
+		switch(major) {
+			case 0: {
+				long v = readArgument(info);
+				if(v<0) {
+					// Unsigned value above Long.MAX_VALUE
+					return toUnsigned(v);
+				}
+				return toNumber(v);
+			}
+			case 1: {
+				long v = readArgument(info);
+				if(v<0) {
+					// Below Long.MIN_VALUE
+					return toUnsigned(v).not();
+				}
+				return toNumber(-1-v);
+			}
+			case 2: {
+				return readBytes(info,2);
+			}
+			case 3: {
+				return new String(readBytes(info,3),"UTF-8");
+			}
+			case 4: {
+				JsonArray a = new JsonArray();
+				if(info==31) {
+					for(Object o=readItem(depth+1); o!=BREAK; o=readItem(depth+1)) {
+						a.add(o);
+					}
+				} else {
+					long n = readLength(info);
+					for(long i=0; i<n; i++) {
+						a.add(readValue(depth+1));
+					}
+				}
+				return a;
+			}
+			case 5: {
+				JsonObject m = new JsonObject();
+				if(info==31) {
+					for(Object k=readItem(depth+1); k!=BREAK; k=readItem(depth+1)) {
+						m.put(toKey(k),readValue(depth+1));
+					}
+				} else {
+					long n = readLength(info);
+					for(long i=0; i<n; i++) {
+						m.put(toKey(readValue(depth+1)),readValue(depth+1));
+					}
+				}
+				return m;
+			}
+			case 6: {
+				long tag = readArgument(info);
+				Object o = readValue(depth+1);
+				if((tag==2 || tag==3) && o instanceof byte[]) {
+					BigInteger n = new BigInteger(1,(byte[])o);
+					return tag==2 ? n : n.not();
+				}
+				if(tag==4 && o instanceof JsonArray) {
+					return toDecimal((JsonArray)o);
+				}
+				return o;
+			}
+			default: {
+				switch(info) {
+					case 20:	return Boolean.FALSE;
+					case 21:	return Boolean.TRUE;
+					case 22:	// null
+					case 23:	return null; // undefined
+					case 24:	readByte(); return null; // other simple values
+					case 25:	return Double.valueOf(halfToDouble((readByte()<<8)|readByte()));
+					case 26:	return Double.valueOf(Float.intBitsToFloat((int)readUnsigned(4)));
+					case 27:	return Double.valueOf(Double.longBitsToDouble(readUnsigned(8)));
+					case 31:	return BREAK;
+					default: {
+						if(info<20) {
+							return null;
+						}
+						throw new IOException("Invalid CBOR simple value "+info);
+					}
+				}
+			}
+		}
+	}
+	
+	private Object readValue(int depth) throws IOException {
+		Object o = readItem(depth);
+		if(o==BREAK) {
+			throw new IOException("Unexpected CBOR break");
+		}
+		return o;
+	}
+	
+	private static String toKey(Object k) {
+		return k instanceof String ? (String)k : String.valueOf(k);
+	}
+	
+	private static Number toNumber(long v) {
+		if(v<=Integer.MAX_VALUE && v>=Integer.MIN_VALUE) {
+			return Integer.valueOf((int)v);
+		}
+		return Long.valueOf(v);
+	}
+	
+	private static BigInteger toUnsigned(long v) {
+		return BigInteger.valueOf(v>>>1).shiftLeft(1).or(BigInteger.valueOf(v&1));
+	}
+	
+	private static BigDecimal toDecimal(JsonArray a) throws IOException {
+		if(a.size()==2) {
+			Object e = a.get(0);
+			Object m = a.get(1);
+			if((e instanceof Integer || e instanceof Long) && ((Number)e).longValue()>-Integer.MAX_VALUE && ((Number)e).longValue()<=Integer.MAX_VALUE) {
+				int scale = -((Number)e).intValue();
+				if(m instanceof BigInteger) {
+					return new BigDecimal((BigInteger)m,scale);
+				}
+				if(m instanceof Integer || m instanceof Long) {
+					return BigDecimal.valueOf(((Number)m).longValue(),scale);
+				}
+			}
+		}
+		throw new IOException("Invalid CBOR decimal fraction");
+	}
+	
+	private byte[] readBytes(int info, int major) throws IOException {
+		if(info!=31) {
+			return readFully(readLength(info));
+		}
+		// Indefinite length, concatenate the chunks
+		ByteArrayOutputStream bos = new ByteArrayOutputStream();
+		for(;;) {
+			int ib = readByte();
+			if(ib==0xff) {
+				return bos.toByteArray();
+			}
+			if((ib>>>5)!=major || (ib&0x1f)==31) {
+				throw new IOException("Invalid CBOR string chunk");
+			}
+			bos.write(readFully(readLength(ib&0x1f)));
+		}
+	}
+	
+	private byte[] readFully(long length) throws IOException {
+		if(length>Integer.MAX_VALUE-8) {
+			throw new IOException("CBOR string is too long");
+		}
+		int len = (int)length;
+		if(len<=buffer.length) {
+			byte[] b = new byte[len];
+			int off = 0;
+			while(off<len) {
+				if(pos==count) {
+					fill();
+				}
+				int n = Math.min(len-off,count-pos);
+				System.arraycopy(buffer,pos,b,off,n);
+				pos += n;
+				off += n;
+			}
+			return b;
+		}
+		// The declared length is not trusted, the content grows as it is read
+		ByteArrayOutputStream bos = new ByteArrayOutputStream(buffer.length);
+		int remaining = len;
+		while(remaining>0) {
+			if(pos==count) {
+				fill();
+			}
+			int n = Math.min(remaining,count-pos);
+			bos.write(buffer,pos,n);
+			pos += n;
+			remaining -= n;
+		}
+		return bos.toByteArray();
+	}
+	
+	private long readLength(int info) throws IOException {
+		long n = readArgument(info);
+		if(n<0) {
+			throw new IOException("Invalid CBOR length");
+		}
+		return n;
+	}
+	
+	private long readArgument(int info) throws IOException {
+		if(info<24) {
+			return info;
+		}
+		switch(info) {
+			case 24:	return readByte();
+			case 25:	return readUnsigned(2);
+			case 26:	return readUnsigned(4);
+			case 27:	return readUnsigned(8);
+			default:	throw new IOException("Invalid CBOR additional information "+info);
+		}
+	}
+	
+	private long readUnsigned(int n) throws IOException {
+		long v = 0;
+		for(int i=0; i<n; i++) {
+			v = (v<<8)|readByte();
+		}
+		return v;
+	}
+	
+	private int readByte() throws IOException {
+		if(pos==count) {
+			fill();
+		}
+		return buffer[pos++]&0xff;
+	}
+	
+	private void fill() throws IOException {
+		int n = is.read(buffer,0,buffer.length);
+		if(n<=0) {
+			throw new EOFException("Unexpected end of CBOR content");
+		}
+		pos = 0;
+		count = n;
+	}
+	
+	private static double halfToDouble(int h) {
+		int exp = (h>>>10)&0x1f;
+		int mant = h&0x3ff;
+		double v;
+		if(exp==0) {
+			v = mant*Math.pow(2,-24);
+		} else if(exp==31) {
+			v = mant==0 ? Double.POSITIVE_INFINITY : Double.NaN;
+		} else {
+			v = (mant+1024)*Math.pow(2,exp-25);
+		}
+		return (h&0x8000)!=0 ? -v : v;
+	}
+}
@@ -0,0 +1,320 @@
+/*!COPYRIGHT HEADER! 
+ *
+ * (c) Copyright Darwino Inc. 2014-2016.
+ *
+ * Licensed under The MIT License (https://opensource.org/licenses/MIT)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial 
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT 
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, 
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.darwino.graphsql.codec;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.Map;
+
+import com.darwino.graphsql.json.JsonArrays;
+
+
+/**
+ * Incremental CBOR writer.
+ * 
+ * Values are written as they are traversed, like with the JSON stream writer. Integers are
+ * written with their shortest encoding, and floating point numbers as single precision
+ * values when this does not lose precision. BigInteger values that do not fit in 64 bits are
+ * written as bignums (tags 2 and 3), and BigDecimal values as decimal fractions (tag 4), so
+ * they keep their exact value.
+ */
+public class CborWriter {
+	
+	private static final int MAX_DEPTH	= 256;
+	
+	private static final int MAJOR_UINT		= 0;
+	private static final int MAJOR_NINT		= 1;
+	private static final int MAJOR_BYTES	= 2;
+	private static final int MAJOR_TEXT		= 3;
+	private static final int MAJOR_ARRAY	= 4;
+	private static final int MAJOR_MAP		= 5;
+	private static final int MAJOR_TAG		= 6;
+	
+	private static final int TAG_POSBIGNUM	= 2;
+	private static final int TAG_NEGBIGNUM	= 3;
+	private static final int TAG_DECIMAL	= 4;
+	
+	private static final int FALSE			= 0xf4;
+	private static final int TRUE			= 0xf5;
+	private static final int NULL			= 0xf6;
+	private static final int FLOAT32		= 0xfa;
+	private static final int FLOAT64		= 0xfb;
+	private static final int ARRAY_START	= 0x9f;
+	private static final int BREAK			= 0xff;
+	
+	private OutputStream os;
+	private byte[] buffer = new byte[8192];
+	private int count;
+	private int depth;
+	
+	public CborWriter(OutputStream os) {
+		this.os = os;
+	}
+	
+	public void flush() throws IOException {
+		flushBuffer();
+		os.flush();
+	}
+	
+	/**
+	 * Write a value.
+	 * Maps, collections and arrays are traversed recursively.
+	 */
+	public CborWriter value(Object value) throws IOException {
+		if(value==null) {
+			writeByte(NULL);
+		} else if(value instanceof String) {
+			writeString((String)value);
+		} else if(value instanceof Number) {
+			Number n = (Number)value;
+			if(n instanceof Integer || n instanceof Long || n instanceof Short || n instanceof Byte) {
+				value(n.longValue());
+			} else if(n instanceof BigInteger) {
+				value((BigInteger)n);
+			} else if(n instanceof BigDecimal) {
+				value((BigDecimal)n);
+			} else {
+				value(n.doubleValue());
+			}
+		} else if(value instanceof Boolean) {
+			value(((Boolean)value).booleanValue());
+		} else if(value instanceof Map<?,?>) {
+			Map<?,?> m = (Map<?,?>)value;
+			push();
+			writeHeader(MAJOR_MAP,m.size());
+			for(Map.Entry<?,?> e: m.entrySet()) {
+				writeString(String.valueOf(e.getKey()));
+				value(e.getValue());
+			}
+			depth--;
+		} else if(value instanceof JsonArrays.DoubleList) {
+			// Write the primitive values without boxing
+			value(((JsonArrays.DoubleList)value).getArray());
+		} else if(value instanceof JsonArrays.BooleanList) {
+			value(((JsonArrays.BooleanList)value).getArray());
+		} else if(value instanceof Collection<?>) {
+			Collection<?> c = (Collection<?>)value;
+			push();
+			writeHeader(MAJOR_ARRAY,c.size());
+			for(Object o: c) {
+				value(o);
+			}
+			depth--;
+		} else if(value instanceof Iterable<?>) {
+			// Unknown size, use an indefinite length array
+			push();
+			writeByte(ARRAY_START);
+			for(Object o: (Iterable<?>)value) {
+				value(o);
+			}
+			writeByte(BREAK);
+			depth--;
+		} else if(value instanceof Object[]) {
+			Object[] a = (Object[])value;
+			push();
+			writeHeader(MAJOR_ARRAY,a.length);
+			for(Object o: a) {
+				value(o);
+			}
+			depth--;
+		} else if(value instanceof double[]) {
+			double[] a = (double[])value;
+			writeHeader(MAJOR_ARRAY,a.length);
+			for(double d: a) {
+				value(d);
+			}
+		} else if(value instanceof boolean[]) {
+			boolean[] a = (boolean[])value;
+			writeHeader(MAJOR_ARRAY,a.length);
+			for(boolean b: a) {
+				value(b);
+			}
+		} else {
+			writeString(value.toString());
+		}
+		return this;
+	}
+	
+	public CborWriter value(long value) throws IOException {
+		if(value>=0) {
+			writeHeader(MAJOR_UINT,value);
+		} else {
+			writeHeader(MAJOR_NINT,-1-value);
+		}
+		return this;
+	}
+	
+	public CborWriter value(BigInteger value) throws IOException {
+		if(value.bitLength()<64) {
+			return value(value.longValue());
+		}
+		// The negative bignums encode -1-n, like the negative integers
+		boolean negative = value.signum()<0;
+		byte[] bytes = (negative ? value.not() : value).toByteArray();
+		// Remove the sign byte
+		int start = bytes[0]==0 ? 1 : 0;
+		writeHeader(MAJOR_TAG,negative ? TAG_NEGBIGNUM : TAG_POSBIGNUM);
+		writeHeader(MAJOR_BYTES,bytes.length-start);
+		if(start>0) {
+			byte[] b = new byte[bytes.length-start];
+			System.arraycopy(bytes,start,b,0,b.length);
+			bytes = b;
+		}
+		writeBytes(bytes);
+		return this;
+	}
+	
+	/**
+	 * Write a decimal fraction: an array with the base 10 exponent and the mantissa. 
+	 */
+	public CborWriter value(BigDecimal value) throws IOException {
+		writeHeader(MAJOR_TAG,TAG_DECIMAL);
+		writeHeader(MAJOR_ARRAY,2);
+		value(-(long)value.scale());
+		value(value.unscaledValue());
+		return this;
+	}
+	
+	public CborWriter value(double value) throws IOException {
+		float f = (float)value;
+		if(f==value || Double.isNaN(value)) {
+			ensure(5);
+			buffer[count++] = (byte)FLOAT32;
+			writeInt(Float.floatToIntBits(f));
+		} else {
+			ensure(9);
+			buffer[count++] = (byte)FLOAT64;
+			long bits = Double.doubleToLongBits(value);
+			writeInt((int)(bits>>>32));
+			writeInt((int)bits);
+		}
+		return this;
+	}
+	
+	public CborWriter value(boolean value) throws IOException {
+		writeByte(value ? TRUE : FALSE);
+		return this;
+	}
+	
+	
+	private void push() {
+		if(depth>=MAX_DEPTH) {
+			throw new IllegalStateException("CBOR value is too deeply nested");
+		}
+		depth++;
+	}
+	
+	private void writeHeader(int major, long length) throws IOException {
+		ensure(9);
+		int m = major<<5;
+		byte[] b = buffer;
+		if(length<24) {
+			b[count++] = (byte)(m|(int)length);
+		} else if(length<0x100) {
+			b[count++] = (byte)(m|24);
+			b[count++] = (byte)length;
+		} else if(length<0x10000) {
+			b[count++] = (byte)(m|25);
+			b[count++] = (byte)(length>>>8);
+			b[count++] = (byte)length;
+		} else if(length<0x100000000L) {
+			b[count++] = (byte)(m|26);
+			writeInt((int)length);
+		} else {
+			b[count++] = (byte)(m|27);
+			writeInt((int)(length>>>32));
+			writeInt((int)length);
+		}
+	}
+	
+	// The buffer must have room for the 4 bytes
+	private void writeInt(int v) {
+		byte[] b = buffer;
+		b[count++] = (byte)(v>>>24);
+		b[count++] = (byte)(v>>>16);
+		b[count++] = (byte)(v>>>8);
+		b[count++] = (byte)v;
+	}
+	
+	private void writeString(String s) throws IOException {
+		int len = s.length();
+		for(int i=0; i<len; i++) {
+			if(s.charAt(i)>=0x80) {
+				byte[] utf8 = s.getBytes("UTF-8");
+				writeHeader(MAJOR_TEXT,utf8.length);
+				writeBytes(utf8);
+				return;
+			}
+		}
+		// ASCII only, the characters are the bytes
+		writeHeader(MAJOR_TEXT,len);
+		int start = 0;
+		while(start<len) {
+			if(count==buffer.length) {
+				flushBuffer();
+			}
+			int n = Math.min(len-start,buffer.length-count);
+			byte[] b = buffer;
+			int c = count;
+			for(int i=0; i<n; i++) {
+				b[c++] = (byte)s.charAt(start+i);
+			}
+			count = c;
+			start += n;
+		}
+	}
+	
+	private void writeBytes(byte[] bytes) throws IOException {
+		if(bytes.length>buffer.length-count) {
+			flushBuffer();
+			if(bytes.length>buffer.length) {
+				os.write(bytes);
+				return;
+			}
+		}
+		System.arraycopy(bytes,0,buffer,count,bytes.length);
+		count += bytes.length;
+	}
+	
+	private void writeByte(int b) throws IOException {
+		ensure(1);
+		buffer[count++] = (byte)b;
+	}
+	
+	private void ensure(int n) throws IOException {
+		if(count+n>buffer.length) {
+			flushBuffer();
+		}
+	}
+	
+	private void flushBuffer() throws IOException {
+		if(count>0) {
+			os.write(buffer,0,count);
+			count = 0;
+		}
+	}
+}
@@ -31,13 +31,26 @@ import graphql.schema.GraphQLObjectType;
 /**
  * JSON GraphQL data type.
  * 
+ * The type is built once from the providers and then reused, until the list of providers
+ * changes. The built type is immutable and can be shared by several schemas.
+ * 
  * @author Philippe Riand
  */
 public class GraphQLJsonType {
 	
 	public static final String TYPE = "json";
 	
+	private static final class BuiltType {
+		final List<JsonProvider> providers;
+		final GraphQLObjectType type;
+		BuiltType(List<JsonProvider> providers, GraphQLObjectType type) {
+			this.providers = providers;
+			this.type = type;
+		}
+	}
+	
 	private List<JsonProvider> providers = new ArrayList<JsonProvider>();
+	private volatile BuiltType builtType;
 	
 	public GraphQLJsonType(JsonProvider...providers) {
 		initDefaultProviders(this.providers);
@@ -54,7 +67,35 @@ public class GraphQLJsonType {
 		return providers;
 	}
 	
+	public void addProvider(JsonProvider provider) {
+		providers.add(provider);
+		invalidate();
+	}
+	
+	/**
+	 * Force the type to be built again on the next call to createType.
+	 * This is needed when a provider changes the fields it contributes.
+	 */
+	public void invalidate() {
+		this.builtType = null;
+	}
+	
 	public GraphQLObjectType createType() {
+		BuiltType b = builtType;
+		// The providers list can also be modified directly
+		if(b==null || !b.providers.equals(providers)) {
+			synchronized(this) {
+				b = builtType;
+				if(b==null || !b.providers.equals(providers)) {
+					List<JsonProvider> snapshot = new ArrayList<JsonProvider>(providers);
+					b = builtType = new BuiltType(snapshot,buildType(snapshot));
+				}
+			}
+		}
+		return b.type;
+	}
+	
+	protected GraphQLObjectType buildType(List<JsonProvider> providers) {
 		GraphQLObjectType.Builder builder = GraphQLObjectType.newObject()
 			.name(TYPE)
 		;
@@ -22,17 +22,66 @@
 
 package com.darwino.graphsql.json;
 
+import java.util.HashMap;
+import java.util.Map;
+
 import com.darwino.commons.json.JsonException;
 import com.darwino.commons.json.jsonpath.JsonPath;
 
+import graphql.schema.DataFetchingEnvironment;
+
 /**
  * Add access to JSON documents coming from the Darwino JSON store.
  * 
+ * The data fetchers read the values through {@link #read(DataFetchingEnvironment, String)},
+ * which can memoize the result of each path. This avoids evaluating the same path again when
+ * a query reads it several times from the same object, for example through aliases or $.
+ * arguments. The number of memoized paths is set per request, in the execution context.
+ * The accessors only live for the duration of a request, so the memoized values do not
+ * outlive it.
+ * 
  * @author Philippe Riand
  */
 public abstract class JsonAccessor {
+	
+	// Key of the memo size in the execution context
+	private static final String MEMO_SIZE = JsonAccessor.class.getName()+".memoSize";
+	
+	private static final Object NULL = new Object();
+	
+	/**
+	 * Get the maximum number of path results memoized by each accessor of a request.
+	 * @return the size from the execution context, or 0 if memoization is disabled
+	 */
+	public static int getMemoSize(Object executionContext) {
+		if(executionContext instanceof Map<?,?>) {
+			Object size = ((Map<?,?>)executionContext).get(MEMO_SIZE);
+			if(size instanceof Integer) {
+				return (Integer)size;
+			}
+		}
+		return 0;
+	}
+	
+	/**
+	 * Set the maximum number of path results memoized by each accessor of a request, in its
+	 * execution context if it is a map.
+	 * When the limit is reached, the other paths are evaluated each time they are read.
+	 * A value <=0 disables the memoization.
+	 */
+	@SuppressWarnings("unchecked")
+	public static void setMemoSize(Object executionContext, int size) {
+		if(executionContext instanceof Map<?,?>) {
+			if(size>0) {
+				((Map<Object,Object>)executionContext).put(MEMO_SIZE, size);
+			} else {
+				((Map<Object,Object>)executionContext).remove(MEMO_SIZE);
+			}
+		}
+	}
 
 	private JsonAccessor parent;
+	private Map<String,Object> memo;
 	
 	public JsonAccessor(Object parent) {
 		this.parent = JsonAccessorFactory.adapter(parent);
@@ -42,5 +91,61 @@ public abstract class JsonAccessor {
 		return parent;
 	}
 	
+	/**
+	 * Read the value of a path for a data fetcher, memoized if enabled for the request.
+	 */
+	public Object read(DataFetchingEnvironment environment, String path) throws JsonException {
+		return read(path, getMemoSize(environment.getContext()));
+	}
+	
+	/**
+	 * Read the value of a path, without memoization.
+	 */
+	public Object read(String path) throws JsonException {
+		return readPath(path);
+	}
+	
+	/**
+	 * Read the value of a path, memoized if enabled.
+	 * The values are indexed by the path text, so they do not depend on the compiled path
+	 * still being in the {@link JsonPathCache}.
+	 * @param max the maximum number of paths memoized by this accessor, <=0 to disable it
+	 */
+	public Object read(String path, int max) throws JsonException {
+		if(max<=0) {
+			return readPath(path);
+		}
+		// The fields of an object can be resolved by several threads
+		synchronized(this) {
+			if(memo!=null) {
+				Object v = memo.get(path);
+				if(v!=null) {
+					return v!=NULL ? v : null;
+				}
+			}
+		}
+		Object v = readPath(path);
+		synchronized(this) {
+			if(memo==null) {
+				memo = new HashMap<String,Object>();
+			}
+			if(memo.size()<max) {
+				memo.put(path, v!=null ? v : NULL);
+			}
+		}
+		return v;
+	}
+	
+	/**
+	 * Read the value of a path, without memoization.
+	 * By default, this evaluates the compiled path against the JSON value.
+	 */
+	protected Object readPath(String path) throws JsonException {
+		return path(JsonPathCache.get(path));
+	}
+	
+	/**
+	 * Evaluate a path against the JSON value.
+	 */
 	public abstract Object path(JsonPath path) throws JsonException;
 }
@@ -0,0 +1,189 @@
+/*!COPYRIGHT HEADER! 
+ *
+ * (c) Copyright Darwino Inc. 2014-2016.
+ *
+ * Licensed under The MIT License (https://opensource.org/licenses/MIT)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial 
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT 
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, 
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.darwino.graphsql.json;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.RandomAccess;
+
+import com.darwino.commons.json.JsonException;
+import com.darwino.commons.json.JsonUtil;
+
+
+/**
+ * Conversion of JSON arrays to primitive arrays.
+ * 
+ * Large numeric arrays, like time series, are converted to a double[] rather than to a list
+ * of coerced values. The arrays are then wrapped into lightweight list views that only box an
+ * element when it is read.
+ * 
+ * The array fields keep their standard GraphQL list types. The response writers and the binary
+ * codecs write the primitive arrays of the views directly, when they get them.
+ */
+public class JsonArrays {
+	
+	/**
+	 * List view on top of a double[].
+	 * NaN values are returned as null, as they are used for values that are not numbers.
+	 */
+	public static class DoubleList extends AbstractList<Object> implements RandomAccess {
+		private final double[] array;
+		public DoubleList(double[] array) {
+			this.array = array;
+		}
+		public double[] getArray() {
+			return array;
+		}
+		@Override
+		public Object get(int index) {
+			double d = array[index];
+			return Double.isNaN(d) ? null : Double.valueOf(d);
+		}
+		@Override
+		public int size() {
+			return array.length;
+		}
+	}
+	
+	/**
+	 * List view on top of a boolean[].
+	 */
+	public static class BooleanList extends AbstractList<Object> implements RandomAccess {
+		private final boolean[] array;
+		public BooleanList(boolean[] array) {
+			this.array = array;
+		}
+		public boolean[] getArray() {
+			return array;
+		}
+		@Override
+		public Object get(int index) {
+			// Shared instances, no allocation
+			return Boolean.valueOf(array[index]);
+		}
+		@Override
+		public int size() {
+			return array.length;
+		}
+	}
+	
+	public static double[] toDoubleArray(Object value) throws JsonException {
+		if(value==null) {
+			return null;
+		}
+		if(value instanceof double[]) {
+			return (double[])value;
+		}
+		if(value instanceof List) {
+			List<?> l = (List<?>)value;
+			int size = l.size();
+			double[] result = new double[size];
+			if(l instanceof RandomAccess) {
+				for(int i=0; i<size; i++) {
+					result[i] = toDouble(l.get(i));
+				}
+			} else {
+				int i = 0;
+				for(Object o: l) {
+					result[i++] = toDouble(o);
+				}
+			}
+			return result;
+		}
+		if(value instanceof Object[]) {
+			Object[] a = (Object[])value;
+			double[] result = new double[a.length];
+			for(int i=0; i<a.length; i++) {
+				result[i] = toDouble(a[i]);
+			}
+			return result;
+		}
+		return new double[] {toDouble(value)};
+	}
+	private static double toDouble(Object o) throws JsonException {
+		if(o instanceof Number) {
+			return ((Number)o).doubleValue();
+		}
+		// Uncommon case, let the JSON library apply its conversion rules
+		Object n = JsonUtil.coerceType(JsonUtil.TYPE_NUMBER, o, null);
+		return n instanceof Number ? ((Number)n).doubleValue() : Double.NaN;
+	}
+	
+	public static boolean[] toBooleanArray(Object value) throws JsonException {
+		if(value==null) {
+			return null;
+		}
+		if(value instanceof boolean[]) {
+			return (boolean[])value;
+		}
+		if(value instanceof List) {
+			List<?> l = (List<?>)value;
+			int size = l.size();
+			boolean[] result = new boolean[size];
+			int i = 0;
+			for(Object o: l) {
+				result[i++] = toBoolean(o);
+			}
+			return result;
+		}
+		if(value instanceof Object[]) {
+			Object[] a = (Object[])value;
+			boolean[] result = new boolean[a.length];
+			for(int i=0; i<a.length; i++) {
+				result[i] = toBoolean(a[i]);
+			}
+			return result;
+		}
+		return new boolean[] {toBoolean(value)};
+	}
+	private static boolean toBoolean(Object o) throws JsonException {
+		if(o instanceof Boolean) {
+			return ((Boolean)o).booleanValue();
+		}
+		return Boolean.TRUE.equals(JsonUtil.coerceType(JsonUtil.TYPE_BOOLEAN, o, null));
+	}
+	
+	public static List<Object> toStringList(Object value) throws JsonException {
+		if(value==null) {
+			return null;
+		}
+		Collection<?> c;
+		if(value instanceof Collection) {
+			c = (Collection<?>)value;
+		} else if(value instanceof Object[]) {
+			c = Arrays.asList((Object[])value);
+		} else {
+			c = Collections.singletonList(value);
+		}
+		Object[] result = new Object[c.size()];
+		int i = 0;
+		for(Object o: c) {
+			result[i++] = o instanceof String ? o : JsonUtil.coerceType(JsonUtil.TYPE_STRING, o, null);
+		}
+		return Arrays.asList(result);
+	}
+}
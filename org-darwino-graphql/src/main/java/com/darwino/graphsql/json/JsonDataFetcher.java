@@ -23,8 +23,6 @@
 package com.darwino.graphsql.json;
 
 import com.darwino.commons.json.JsonException;
-import com.darwino.commons.json.jsonpath.JsonPath;
-import com.darwino.commons.json.jsonpath.JsonPathFactory;
 
 import graphql.schema.DataFetcher;
 import graphql.schema.DataFetchingEnvironment;
@@ -46,17 +44,25 @@ public abstract class JsonDataFetcher implements DataFetcher {
     
 	
 	protected String getStringParameter(DataFetchingEnvironment environment, String argName) throws JsonException {
-		return (String)getParameter(environment, argName);
+		return (String)getParameter(environment, argName, environment.getSource());
 	}
-	private Object getParameter(DataFetchingEnvironment environment, String argName) throws JsonException {
+	
+	/**
+	 * Get the value of a parameter, evaluated against a specific source object.
+	 * 
+	 * This is used by batched data fetchers, where the environment source is the list
+	 * of all the parent objects.
+	 */
+	public static String getStringParameter(DataFetchingEnvironment environment, String argName, Object source) throws JsonException {
+		return (String)getParameter(environment, argName, source);
+	}
+	private static Object getParameter(DataFetchingEnvironment environment, String argName, Object source) throws JsonException {
 		Object value = environment.getArgument(argName);
 		if(value instanceof String) {
 			String s = (String)value;
 			if(s.startsWith("$.")) {
-				Object source = environment.getSource();
 				if(source instanceof JsonAccessor) {
-					JsonPath p = JsonPathFactory.get(s);
-					return ((JsonAccessor)source).path(p);
+					return ((JsonAccessor)source).read(environment,s);
 				}
 			}
 		}
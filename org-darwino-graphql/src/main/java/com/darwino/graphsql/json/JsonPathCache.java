@@ -0,0 +1,58 @@
+/*!COPYRIGHT HEADER! 
+ *
+ * (c) Copyright Darwino Inc. 2014-2016.
+ *
+ * Licensed under The MIT License (https://opensource.org/licenses/MIT)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial 
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT 
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, 
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.darwino.graphsql.json;
+
+import com.darwino.commons.json.JsonException;
+import com.darwino.commons.json.jsonpath.JsonPath;
+import com.darwino.commons.json.jsonpath.JsonPathFactory;
+import com.darwino.graphsql.util.BoundedCache;
+
+
+/**
+ * Shared cache of compiled JSON paths.
+ * 
+ * The data fetchers evaluate the same handful of paths for every object of a result,
+ * so each distinct path is only compiled once per JVM.
+ */
+public class JsonPathCache {
+	
+	public static final int DEFAULT_SIZE	= 2000;
+
+	private static BoundedCache<String,JsonPath> cache = new BoundedCache<String,JsonPath>(DEFAULT_SIZE);
+	
+	public static JsonPath get(String path) throws JsonException {
+		JsonPath p = cache.get(path);
+		if(p==null) {
+			p = cache.put(path,JsonPathFactory.get(path));
+		}
+		return p;
+	}
+	
+	public static BoundedCache<String,JsonPath> getCache() {
+		return cache;
+	}
+	
+	private JsonPathCache() {
+	}
+}
@@ -24,15 +24,23 @@ package com.darwino.graphsql.json;
 
 import static graphql.Scalars.GraphQLBoolean;
 import static graphql.Scalars.GraphQLFloat;
+import static graphql.Scalars.GraphQLInt;
+import static graphql.Scalars.GraphQLLong;
 import static graphql.Scalars.GraphQLString;
 import static graphql.schema.GraphQLFieldDefinition.newFieldDefinition;
 
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Date;
+
+import com.darwino.commons.json.JsonException;
 import com.darwino.commons.json.JsonUtil;
-import com.darwino.commons.json.jsonpath.JsonPath;
-import com.darwino.commons.json.jsonpath.JsonPathFactory;
+import com.darwino.graphsql.metrics.Metrics;
+import com.darwino.graphsql.util.IsoDates;
 
 import graphql.schema.DataFetcher;
 import graphql.schema.DataFetchingEnvironment;
+import graphql.schema.GraphQLList;
 import graphql.schema.GraphQLObjectType;
 
 
@@ -65,27 +73,44 @@ public class JsonStandardFields extends JsonProvider {
 					.argument(pathArgument)
 					.type(GraphQLString)
 					.dataFetcher(new JsonValueFecther(JsonUtil.TYPE_STRING)))
-			;
+			.field(newFieldDefinition()
+					.name("int")
+					.argument(pathArgument)
+					.type(GraphQLInt)
+					.dataFetcher(new JsonIntFecther()))
+			.field(newFieldDefinition()
+					.name("long")
+					.argument(pathArgument)
+					.type(GraphQLLong)
+					.dataFetcher(new JsonLongFecther()))
+			.field(newFieldDefinition()
+					.name("date")
+					.argument(pathArgument)
+					.type(GraphQLString)
+					.dataFetcher(new JsonDateFecther(false)))
+			.field(newFieldDefinition()
+					.name("datetime")
+					.argument(pathArgument)
+					.type(GraphQLString)
+					.dataFetcher(new JsonDateFecther(true)))
 			
-//			// Arrays
-//			.field(newFieldDefinition()
-//					.name("booleanArray")
-//					.argument(pathArgument)
-//					.argument(nameArgument)
-//					.type(new GraphQLList(GraphQLBoolean))
-//					.dataFetcher(booleanArrayFetcher))
-//			.field(newFieldDefinition()
-//					.name("numberArray")
-//					.argument(pathArgument)
-//					.argument(nameArgument)
-//					.type(new GraphQLList(GraphQLFloat))
-//					.dataFetcher(numberArrayFetcher))
-//			.field(newFieldDefinition()
-//					.name("stringArray")
-//					.argument(pathArgument)
-//					.argument(nameArgument)
-//					.type(new GraphQLList(GraphQLString))
-//					.dataFetcher(stringArrayFetcher));
+			// Arrays
+			.field(newFieldDefinition()
+					.name("booleanArray")
+					.argument(pathArgument)
+					.type(new GraphQLList(GraphQLBoolean))
+					.dataFetcher(new JsonArrayFecther(JsonUtil.TYPE_BOOLEAN)))
+			.field(newFieldDefinition()
+					.name("numberArray")
+					.argument(pathArgument)
+					.type(new GraphQLList(GraphQLFloat))
+					.dataFetcher(new JsonArrayFecther(JsonUtil.TYPE_NUMBER)))
+			.field(newFieldDefinition()
+					.name("stringArray")
+					.argument(pathArgument)
+					.type(new GraphQLList(GraphQLString))
+					.dataFetcher(new JsonArrayFecther(JsonUtil.TYPE_STRING)))
+			;
 	}
 	
 	public static abstract class ValueDataFetcher implements DataFetcher {
@@ -103,32 +128,195 @@ public class JsonStandardFields extends JsonProvider {
 		}
 		@Override
 		public Object get(DataFetchingEnvironment environment) {
+			long start = Metrics.start();
 			try {
-				String parent = (String)environment.getArgument("path");
-				JsonPath path = JsonPathFactory.get(parent);
+				String path = (String)environment.getArgument("path");
 				JsonAccessor source = (JsonAccessor)environment.getSource();
-				Object o = source.path(path);
+				Object o = source.read(environment,path);
 				return JsonUtil.coerceType(getType(), o, null);
 			} catch(Exception ex) {
 				return null;
+			} finally {
+				Metrics.field(environment, start);
+			}
+		}
+	}
+	
+	/**
+	 * Base class for the typed fetchers.
+	 * The typed fetchers convert the JSON value directly, without the generic coercion.
+	 */
+	public static abstract class JsonTypedFecther implements DataFetcher {
+		@Override
+		public Object get(DataFetchingEnvironment environment) {
+			long start = Metrics.start();
+			try {
+				String path = (String)environment.getArgument("path");
+				JsonAccessor source = (JsonAccessor)environment.getSource();
+				return convert(source.read(environment,path));
+			} catch(Exception ex) {
+				return null;
+			} finally {
+				Metrics.field(environment, start);
+			}
+		}
+		protected abstract Object convert(Object value);
+	}
+	/**
+	 * Integers are returned as is, while the other numbers must hold an integral value in
+	 * the int range. Fractional or out of range values are returned as null rather than
+	 * being truncated or wrapped.
+	 */
+	public static class JsonIntFecther extends JsonTypedFecther {
+		@Override
+		protected Object convert(Object value) {
+			if(value instanceof Integer) {
+				return value;
+			}
+			if(value instanceof Number) {
+				Long l = toLong((Number)value);
+				if(l==null || l.longValue()<Integer.MIN_VALUE || l.longValue()>Integer.MAX_VALUE) {
+					return null;
+				}
+				// Integer.valueOf() uses the shared instances for small values
+				return Integer.valueOf(l.intValue());
+			}
+			if(value instanceof String) {
+				try {
+					return Integer.valueOf((String)value);
+				} catch(NumberFormatException ex) {
+					return null;
+				}
+			}
+			return null;
+		}
+	}
+	/**
+	 * Same as the int fetcher, with the long range.
+	 */
+	public static class JsonLongFecther extends JsonTypedFecther {
+		@Override
+		protected Object convert(Object value) {
+			if(value instanceof Long) {
+				return value;
+			}
+			if(value instanceof Number) {
+				return toLong((Number)value);
+			}
+			if(value instanceof String) {
+				try {
+					return Long.valueOf((String)value);
+				} catch(NumberFormatException ex) {
+					return null;
+				}
+			}
+			return null;
+		}
+	}
+	/**
+	 * Convert a number to a long, if it holds an integral value in the long range.
+	 */
+	protected static Long toLong(Number n) {
+		if(n instanceof Long || n instanceof Integer || n instanceof Short || n instanceof Byte) {
+			return Long.valueOf(n.longValue());
+		}
+		if(n instanceof BigInteger) {
+			return ((BigInteger)n).bitLength()<64 ? Long.valueOf(n.longValue()) : null;
+		}
+		if(n instanceof BigDecimal) {
+			try {
+				return Long.valueOf(((BigDecimal)n).longValueExact());
+			} catch(ArithmeticException ex) {
+				return null;
 			}
 		}
+		double d = n.doubleValue();
+		// 2^63 is exactly representable, while Long.MAX_VALUE is not
+		if(d!=Math.rint(d) || d<-9.223372036854775808E18 || d>=9.223372036854775808E18) {
+			return null;
+		}
+		return Long.valueOf((long)d);
+	}
+	
+	/**
+	 * Dates are returned as ISO 8601 strings.
+	 * The value can be an ISO string or a number of milliseconds since the epoch. A datetime
+	 * with a time zone offset designates an instant, and is normalized to UTC. A date keeps
+	 * the local date of an ISO string, so 2024-03-01T23:00-05:00 stays 2024-03-01, while the
+	 * numbers, which have no offset, are taken in UTC. A datetime without an offset is local
+	 * and returned as is.
+	 */
+	public static class JsonDateFecther extends JsonTypedFecther {
+		private boolean time;
+		public JsonDateFecther(boolean time) {
+			this.time = time;
+		}
+		public boolean isTime() {
+			return time;
+		}
+		@Override
+		protected Object convert(Object value) {
+			if(value instanceof String) {
+				String s = (String)value;
+				if(!IsoDates.isIsoDate(s)) {
+					return null;
+				}
+				if(!time) {
+					return s.length()==10 ? s : s.substring(0,10);
+				}
+				if(IsoDates.isUtcDateTime(s)) {
+					// Already normalized
+					return s;
+				}
+				long millis = IsoDates.parseDateTime(s);
+				return millis!=IsoDates.NO_DATE ? IsoDates.formatDateTime(millis) : s;
+			}
+			if(value instanceof Number) {
+				long millis = ((Number)value).longValue();
+				return time ? IsoDates.formatDateTime(millis) : IsoDates.formatDate(millis);
+			}
+			if(value instanceof Date) {
+				long millis = ((Date)value).getTime();
+				return time ? IsoDates.formatDateTime(millis) : IsoDates.formatDate(millis);
+			}
+			return null;
+		}
 	}
+	
 	public static class JsonArrayFecther extends ValueDataFetcher {
 		public JsonArrayFecther(int type) {
 			super(type);
 		}
 		@Override
 		public Object get(DataFetchingEnvironment environment) {
+			long start = Metrics.start();
 			try {
-				String parent = (String)environment.getArgument("path");
-				JsonPath path = JsonPathFactory.get(parent);
+				String path = (String)environment.getArgument("path");
 				JsonAccessor source = (JsonAccessor)environment.getSource();
-				Object o = source.path(path);
-				return JsonUtil.coerceType(getType(), o, null);
+				Object o = source.read(environment,path);
+				return toList(o);
 			} catch(Exception ex) {
 				return null;
+			} finally {
+				Metrics.field(environment, start);
+			}
+		}
+		protected Object toList(Object o) throws JsonException {
+			// The values are converted to primitive arrays in one pass, and only boxed when the
+			// list views are read, without the generic coercion of each element
+			int type = getType();
+			if(type==JsonUtil.TYPE_NUMBER) {
+				double[] a = JsonArrays.toDoubleArray(o);
+				return a!=null ? new JsonArrays.DoubleList(a) : null;
+			}
+			if(type==JsonUtil.TYPE_BOOLEAN) {
+				boolean[] a = JsonArrays.toBooleanArray(o);
+				return a!=null ? new JsonArrays.BooleanList(a) : null;
+			}
+			if(type==JsonUtil.TYPE_STRING) {
+				return JsonArrays.toStringList(o);
 			}
+			return null;
 		}
 	}
 }
@@ -0,0 +1,100 @@
+/*!COPYRIGHT HEADER! 
+ *
+ * (c) Copyright Darwino Inc. 2014-2016.
+ *
+ * Licensed under The MIT License (https://opensource.org/licenses/MIT)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial 
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT 
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, 
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.darwino.graphsql.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ * Latency histogram with fixed buckets.
+ * 
+ * Recording a value is lock free and does not allocate: it increments the counter of
+ * the bucket the value falls into, and the total count and sum.
+ */
+public class Histogram {
+	
+	// Upper bounds of the buckets, in seconds
+	public static final double[] BUCKETS = {
+		0.00001, 0.000025, 0.00005, 0.0001, 0.00025, 0.0005,
+		0.001, 0.0025, 0.005, 0.01, 0.025, 0.05,
+		0.1, 0.25, 0.5, 1, 2.5, 5, 10
+	};
+	private static final long[] BOUNDS = new long[BUCKETS.length];
+	static {
+		for(int i=0; i<BUCKETS.length; i++) {
+			BOUNDS[i] = (long)(BUCKETS[i]*1000000000L);
+		}
+	}
+	
+	// The last counter is for the values above the last bucket
+	private final AtomicLongArray counts = new AtomicLongArray(BUCKETS.length+1);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sum = new AtomicLong();
+	
+	public Histogram() {
+	}
+	
+	/**
+	 * Record a duration, in nanoseconds.
+	 */
+	public void record(long nanos) {
+		int lo = 0;
+		int hi = BOUNDS.length;
+		while(lo<hi) {
+			int mid = (lo+hi)>>>1;
+			if(nanos<=BOUNDS[mid]) {
+				hi = mid;
+			} else {
+				lo = mid+1;
+			}
+		}
+		counts.incrementAndGet(lo);
+		count.incrementAndGet();
+		sum.addAndGet(nanos);
+	}
+	
+	public long getCount() {
+		return count.get();
+	}
+	
+	/**
+	 * Sum of the recorded durations, in nanoseconds.
+	 */
+	public long getSum() {
+		return sum.get();
+	}
+	
+	/**
+	 * Return the number of values in each bucket, not cumulated.
+	 * The last entry is the number of values above the last bucket.
+	 */
+	public long[] getBucketCounts() {
+		long[] result = new long[counts.length()];
+		for(int i=0; i<result.length; i++) {
+			result[i] = counts.get(i);
+		}
+		return result;
+	}
+}
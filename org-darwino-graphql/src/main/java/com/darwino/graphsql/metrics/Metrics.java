@@ -0,0 +1,165 @@
+/*!COPYRIGHT HEADER! 
+ *
+ * (c) Copyright Darwino Inc. 2014-2016.
+ *
+ * Licensed under The MIT License (https://opensource.org/licenses/MIT)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial 
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT 
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, 
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.darwino.graphsql.metrics;
+
+import java.util.List;
+
+import graphql.language.Field;
+import graphql.schema.DataFetchingEnvironment;
+import graphql.schema.GraphQLSchema;
+
+
+/**
+ * GraphQL metrics instrumentation.
+ * 
+ * The metrics are recorded into the {@link MetricsRegistry} of the current request, which the
+ * GraphQL service sets for the thread executing the request. The threads resolving the fields
+ * in parallel get it from the request executor, using {@link #wrap(Runnable)}.
+ * When there is no registry, or when it is disabled, start() returns 0 and the record methods
+ * return immediately.
+ * Typical use:
+ * <pre>
+ * long start = Metrics.start();
+ * ...
+ * Metrics.phase(Metrics.PHASE_PARSE, start);
+ * </pre>
+ */
+public class Metrics {
+	
+	// Request phases
+	public static final String PHASE_REQUEST		= "request";
+	public static final String PHASE_PARSE			= "parse";
+	public static final String PHASE_VALIDATE		= "validate";
+	public static final String PHASE_EXECUTE		= "execute";
+	public static final String PHASE_SERIALIZE		= "serialize";
+	public static final String PHASE_LOAD_DOCUMENT	= "load_document";
+	public static final String PHASE_LOAD_DOCUMENTS	= "load_documents";
+	public static final String PHASE_ADMISSION_WAIT	= "admission_wait";
+	
+	// Events
+	public static final String EVENT_REQUEST		= "request";
+	public static final String EVENT_ERROR			= "error";
+	public static final String EVENT_DOCUMENT_LOAD	= "document_load";
+	public static final String EVENT_DOCUMENT_REUSE	= "document_reuse";
+	public static final String EVENT_TIMEOUT			= "timeout";
+	public static final String EVENT_ADMISSION_QUEUED	= "admission_queued";
+	public static final String EVENT_REJECTED_QUEUE_FULL	= "rejected_queue_full";
+	public static final String EVENT_REJECTED_TIMEOUT		= "rejected_timeout";
+	public static final String EVENT_REJECTED_QUOTA			= "rejected_quota";
+	
+	private static final ThreadLocal<MetricsRegistry> current = new ThreadLocal<MetricsRegistry>();
+	
+	/**
+	 * Return the registry of the current request, or null.
+	 */
+	public static MetricsRegistry getCurrent() {
+		return current.get();
+	}
+	
+	/**
+	 * Set the registry of the current thread.
+	 * @return the previous registry, to be restored when the thread is done with the request
+	 */
+	public static MetricsRegistry setCurrent(MetricsRegistry registry) {
+		MetricsRegistry previous = current.get();
+		if(registry!=null) {
+			current.set(registry);
+		} else {
+			current.remove();
+		}
+		return previous;
+	}
+	
+	/**
+	 * Wrap a task so it records into the registry of the current thread, whatever the thread
+	 * running it.
+	 */
+	public static Runnable wrap(final Runnable task) {
+		final MetricsRegistry registry = current.get();
+		if(registry==null) {
+			return task;
+		}
+		return new Runnable() {
+			@Override
+			public void run() {
+				MetricsRegistry previous = setCurrent(registry);
+				try {
+					task.run();
+				} finally {
+					setCurrent(previous);
+				}
+			}
+		};
+	}
+	
+	public static boolean isEnabled() {
+		MetricsRegistry r = current.get();
+		return r!=null && r.isEnabled();
+	}
+	
+	/**
+	 * Start measuring a duration.
+	 * Return 0 when the metrics are disabled.
+	 */
+	public static long start() {
+		return isEnabled() ? System.nanoTime() : 0L;
+	}
+	
+	public static void phase(String phase, long start) {
+		if(start!=0) {
+			MetricsRegistry r = current.get();
+			if(r!=null) {
+				r.recordPhase(phase, System.nanoTime()-start);
+			}
+		}
+	}
+	
+	/**
+	 * Record the time spent resolving a field.
+	 * Only the fields of the query root are recorded: the nested fields would create a label
+	 * for every name used in the documents, and their times are included in the root fields.
+	 */
+	public static void field(DataFetchingEnvironment environment, long start) {
+		if(start!=0) {
+			MetricsRegistry r = current.get();
+			GraphQLSchema schema = environment.getGraphQLSchema();
+			if(r==null || schema==null || environment.getParentType()!=schema.getQueryType()) {
+				return;
+			}
+			List<Field> f = environment.getFields();
+			String name = f!=null && !f.isEmpty() ? f.get(0).getName() : "unknown";
+			r.recordField(name, System.nanoTime()-start);
+		}
+	}
+	
+	public static void event(String event) {
+		MetricsRegistry r = current.get();
+		if(r!=null && r.isEnabled()) {
+			r.recordEvent(event);
+		}
+	}
+	
+	private Metrics() {
+	}
+}
@@ -0,0 +1,299 @@
+/*!COPYRIGHT HEADER! 
+ *
+ * (c) Copyright Darwino Inc. 2014-2016.
+ *
+ * Licensed under The MIT License (https://opensource.org/licenses/MIT)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial 
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT 
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, 
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.darwino.graphsql.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Metrics collected for a GraphQL service factory.
+ * 
+ * Each factory has its own registry, so the factories of a process are enabled and exposed
+ * separately. The registry is disabled by default, unless the darwino.graphql.metrics system
+ * property is set. The instrumented code records into the registry of the current request
+ * through the static methods of {@link Metrics}.
+ * 
+ * The metrics are written using the Prometheus text exposition format.
+ */
+public class MetricsRegistry {
+	
+	public static final String ENABLED_PROPERTY	= "darwino.graphql.metrics";
+	
+	/**
+	 * Value sampled when the metrics are written.
+	 */
+	public static interface Gauge {
+		public long getValue();
+	}
+	
+	private static final String[] BUCKET_LABELS = new String[Histogram.BUCKETS.length];
+	static {
+		for(int i=0; i<BUCKET_LABELS.length; i++) {
+			BUCKET_LABELS[i] = new BigDecimal(Double.toString(Histogram.BUCKETS[i])).stripTrailingZeros().toPlainString();
+		}
+	}
+	
+	private final HistogramFamily phases = new HistogramFamily("graphql_phase_seconds","Time spent in each phase of the GraphQL requests","phase");
+	private final HistogramFamily fields = new HistogramFamily("graphql_field_seconds","Time spent resolving the instrumented root fields","field");
+	private final CounterFamily events = new CounterFamily("graphql_events_total","Number of GraphQL events","event");
+	// Each gauge is its own family, as the gauges measure unrelated values
+	private final ConcurrentMap<String,GaugeFamily> gauges = new ConcurrentHashMap<String,GaugeFamily>();
+	
+	private volatile boolean enabled = Boolean.getBoolean(ENABLED_PROPERTY);
+	
+	public MetricsRegistry() {
+	}
+	
+	public boolean isEnabled() {
+		return enabled;
+	}
+	
+	/**
+	 * Enable or disable the collection of the metrics.
+	 * The metrics service of a factory is only available when its metrics are enabled before
+	 * the factory binds its services.
+	 */
+	public void setEnabled(boolean enabled) {
+		this.enabled = enabled;
+	}
+	
+	public void recordPhase(String phase, long nanos) {
+		phases.get(phase).record(nanos);
+	}
+	
+	public void recordField(String field, long nanos) {
+		fields.get(field).record(nanos);
+	}
+	
+	public void recordEvent(String event) {
+		events.get(event).incrementAndGet();
+	}
+	
+	/**
+	 * Register a gauge, replacing the gauge previously registered with the same name.
+	 * The gauge is written as the graphql_&lt;name&gt; metric. Gauges are registered even when
+	 * the metrics are disabled, as they are only read when written.
+	 */
+	public void registerGauge(String name, String help, Gauge gauge) {
+		if(!isValidName(name)) {
+			throw new IllegalArgumentException("Invalid gauge name "+name);
+		}
+		gauges.put(name,new GaugeFamily("graphql_"+name,help,gauge));
+	}
+	
+	public void unregisterGauge(String name, Gauge gauge) {
+		GaugeFamily f = gauges.get(name);
+		if(f!=null && f.gauge==gauge) {
+			gauges.remove(name,f);
+		}
+	}
+	
+	public Gauge getGauge(String name) {
+		GaugeFamily f = gauges.get(name);
+		return f!=null ? f.gauge : null;
+	}
+	
+	public void reset() {
+		phases.clear();
+		fields.clear();
+		events.clear();
+	}
+	
+	public Histogram getPhase(String phase) {
+		return phases.values.get(phase);
+	}
+	
+	public Histogram getField(String field) {
+		return fields.values.get(field);
+	}
+	
+	public long getEventCount(String event) {
+		AtomicLong c = events.values.get(event);
+		return c!=null ? c.get() : 0;
+	}
+	
+	/**
+	 * Write all the metrics, in the Prometheus text format.
+	 */
+	public void write(Writer w) throws IOException {
+		phases.write(w);
+		fields.write(w);
+		events.write(w);
+		List<String> names = new ArrayList<String>(gauges.keySet());
+		Collections.sort(names);
+		for(String name: names) {
+			GaugeFamily f = gauges.get(name);
+			if(f!=null) {
+				f.write(w);
+			}
+		}
+	}
+	
+	// Prometheus metric name, without the colons reserved to the recording rules
+	private static boolean isValidName(String name) {
+		if(name==null || name.length()==0) {
+			return false;
+		}
+		for(int i=0; i<name.length(); i++) {
+			char c = name.charAt(i);
+			if(!((c>='a' && c<='z') || (c>='A' && c<='Z') || c=='_' || (i>0 && c>='0' && c<='9'))) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	
+	private static abstract class Family<T> {
+		final String name;
+		final String help;
+		final String label;
+		final ConcurrentMap<String,T> values = new ConcurrentHashMap<String,T>();
+		Family(String name, String help, String label) {
+			this.name = name;
+			this.help = help;
+			this.label = label;
+		}
+		void clear() {
+			values.clear();
+		}
+		abstract String getType();
+		void write(Writer w) throws IOException {
+			if(values.isEmpty()) {
+				return;
+			}
+			w.write("# HELP "+name+" "+help+"\n");
+			w.write("# TYPE "+name+" "+getType()+"\n");
+			List<String> keys = new ArrayList<String>(values.keySet());
+			Collections.sort(keys);
+			for(String k: keys) {
+				T v = values.get(k);
+				if(v!=null) {
+					write(w,escape(k),v);
+				}
+			}
+		}
+		abstract void write(Writer w, String labelValue, T value) throws IOException;
+		T get(String labelValue) {
+			T v = values.get(labelValue);
+			if(v==null) {
+				T nv = create();
+				v = values.putIfAbsent(labelValue,nv);
+				if(v==null) {
+					v = nv;
+				}
+			}
+			return v;
+		}
+		abstract T create();
+	}
+	
+	private static class HistogramFamily extends Family<Histogram> {
+		HistogramFamily(String name, String help, String label) {
+			super(name,help,label);
+		}
+		@Override
+		Histogram create() {
+			return new Histogram();
+		}
+		@Override
+		String getType() {
+			return "histogram";
+		}
+		@Override
+		void write(Writer w, String labelValue, Histogram h) throws IOException {
+			String l = label+"=\""+labelValue+"\"";
+			long[] counts = h.getBucketCounts();
+			long cumulated = 0;
+			for(int i=0; i<Histogram.BUCKETS.length; i++) {
+				cumulated += counts[i];
+				w.write(name+"_bucket{"+l+",le=\""+BUCKET_LABELS[i]+"\"} "+cumulated+"\n");
+			}
+			cumulated += counts[Histogram.BUCKETS.length];
+			w.write(name+"_bucket{"+l+",le=\"+Inf\"} "+cumulated+"\n");
+			w.write(name+"_sum{"+l+"} "+(h.getSum()/1e9)+"\n");
+			w.write(name+"_count{"+l+"} "+cumulated+"\n");
+		}
+	}
+	
+	private static class CounterFamily extends Family<AtomicLong> {
+		CounterFamily(String name, String help, String label) {
+			super(name,help,label);
+		}
+		@Override
+		AtomicLong create() {
+			return new AtomicLong();
+		}
+		@Override
+		String getType() {
+			return "counter";
+		}
+		@Override
+		void write(Writer w, String labelValue, AtomicLong value) throws IOException {
+			w.write(name+"{"+label+"=\""+labelValue+"\"} "+value.get()+"\n");
+		}
+	}
+	
+	// A registered gauge, written as a family without labels
+	private static class GaugeFamily {
+		final String name;
+		final String help;
+		final Gauge gauge;
+		GaugeFamily(String name, String help, Gauge gauge) {
+			this.name = name;
+			this.help = help;
+			this.gauge = gauge;
+		}
+		void write(Writer w) throws IOException {
+			w.write("# HELP "+name+" "+help+"\n");
+			w.write("# TYPE "+name+" gauge\n");
+			w.write(name+" "+gauge.getValue()+"\n");
+		}
+	}
+	
+	private static String escape(String s) {
+		if(s.indexOf('\\')<0 && s.indexOf('"')<0 && s.indexOf('\n')<0) {
+			return s;
+		}
+		StringBuilder b = new StringBuilder(s.length()+8);
+		for(int i=0; i<s.length(); i++) {
+			char c = s.charAt(i);
+			switch(c) {
+				case '\\':	b.append("\\\\"); break;
+				case '"':	b.append("\\\""); break;
+				case '\n':	b.append("\\n"); break;
+				default:	b.append(c);
+			}
+		}
+		return b.toString();
+	}
+}
@@ -0,0 +1,102 @@
+/*!COPYRIGHT HEADER! 
+ *
+ * (c) Copyright Darwino Inc. 2014-2016.
+ *
+ * Licensed under The MIT License (https://opensource.org/licenses/MIT)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial 
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT 
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, 
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.darwino.graphsql.metrics;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.security.MessageDigest;
+
+import com.darwino.commons.httpclnt.HttpBase;
+import com.darwino.commons.services.HttpService;
+import com.darwino.commons.services.HttpServiceContext;
+import com.darwino.commons.services.HttpServiceError;
+
+
+/**
+ * Metrics Service.
+ * 
+ * This service emits the metrics of a factory in the Prometheus text exposition format.
+ * 
+ * The metrics reveal the activity of the server, so the service is secured by default: a
+ * request must send the access token of the service as a bearer token, and the service refuses
+ * all the requests when it has no token. {@link #isAuthorized(HttpServiceContext)} can be
+ * overridden to use another check.
+ */
+public class MetricsService extends HttpService {
+	
+	private final MetricsRegistry registry;
+	private final String accessToken;
+	
+	public MetricsService(MetricsRegistry registry, String accessToken) {
+		this.registry = registry;
+		this.accessToken = accessToken;
+	}
+	
+	public MetricsRegistry getRegistry() {
+		return registry;
+	}
+	
+	@Override
+	public void service(HttpServiceContext context) {
+		if(!context.isGet()) {
+			throw HttpServiceError.errorUnsupportedMethod(context.getMethod());
+		}
+		if(!isAuthorized(context)) {
+			throw HttpServiceError.error(null,HttpBase.SC_FORBIDDEN,"Access to the metrics is not allowed");
+		}
+		try {
+			context.setResponseHeader("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+			context.setResponseHeader("Cache-Control", "no-cache");
+			Writer w = new BufferedWriter(new OutputStreamWriter(context.getOutputStream(),"UTF-8"),8192);
+			registry.write(w);
+			w.flush();
+		} catch(IOException ex) {
+			throw HttpServiceError.error500(ex,"Error while writing the metrics");
+		}
+	}
+	
+	/**
+	 * Check if a request can read the metrics.
+	 * By default, the request must have an Authorization header with the access token of the
+	 * service as a bearer token.
+	 */
+	protected boolean isAuthorized(HttpServiceContext context) {
+		if(accessToken==null || accessToken.length()==0) {
+			return false;
+		}
+		String auth = context.getRequestHeader("Authorization");
+		if(auth==null || !auth.regionMatches(true,0,"Bearer ",0,7)) {
+			return false;
+		}
+		try {
+			// Constant time comparison, so the token cannot be guessed from the response times
+			return MessageDigest.isEqual(auth.substring(7).trim().getBytes("UTF-8"),accessToken.getBytes("UTF-8"));
+		} catch(UnsupportedEncodingException ex) {
+			return false;
+		}
+	}
+}
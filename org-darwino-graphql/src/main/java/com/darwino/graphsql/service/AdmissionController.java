@@ -0,0 +1,292 @@
+/*!COPYRIGHT HEADER! 
+ *
+ * (c) Copyright Darwino Inc. 2014-2016.
+ *
+ * Licensed under The MIT License (https://opensource.org/licenses/MIT)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial 
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT 
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, 
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.darwino.graphsql.service;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.darwino.graphsql.metrics.Metrics;
+import com.darwino.graphsql.metrics.MetricsRegistry;
+
+
+/**
+ * Admission control of the GraphQL requests.
+ * 
+ * The number of requests executed at the same time is bounded. When the limit is reached,
+ * a few requests can wait for a slot, for a short time. The other requests are rejected
+ * immediately, so an overloaded server fails fast instead of piling up requests on the store.
+ * 
+ * A key, generally the user, can also be given a quota: the maximum number of requests
+ * with this key executed or waiting at the same time. It prevents a single user from
+ * taking all the slots. The count of a key is only kept while it has requests, so the number
+ * of distinct keys seen over time does not matter.
+ */
+public class AdmissionController {
+	
+	public static final int STATUS_TOO_MANY_REQUESTS		= 429;
+	public static final int STATUS_SERVICE_UNAVAILABLE		= 503;
+	
+	public static final int DEFAULT_MAX_QUEUED			= 50;
+	public static final long DEFAULT_QUEUE_TIMEOUT		= 500;	// ms
+	
+	/**
+	 * Exception thrown when a request is not admitted.
+	 */
+	public static class RejectedException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+		private int status;
+		public RejectedException(String message, int status) {
+			super(message);
+			this.status = status;
+		}
+		/**
+		 * Return the HTTP status to send: 429 when the quota of the key is exceeded, 503 when
+		 * the server is saturated.
+		 */
+		public int getStatus() {
+			return status;
+		}
+	}
+	
+	/**
+	 * Admission of a request, to be released when the request completes.
+	 */
+	public final class Permit {
+		private String key;
+		private AtomicInteger keyCount;
+		private boolean released;
+		Permit(String key, AtomicInteger keyCount) {
+			this.key = key;
+			this.keyCount = keyCount;
+		}
+		public void release() {
+			if(!released) {
+				released = true;
+				semaphore.release();
+				if(keyCount!=null) {
+					releaseKey(key,keyCount);
+				}
+			}
+		}
+	}
+	
+	private final int maxConcurrent;
+	private final Semaphore semaphore;
+	private final AtomicInteger queued = new AtomicInteger();
+	// The count of a key is removed when it drops to 0, and then marked with -1 so it is not reused
+	private final ConcurrentHashMap<String,AtomicInteger> keyCounts = new ConcurrentHashMap<String,AtomicInteger>();
+	private int maxQueued = DEFAULT_MAX_QUEUED;
+	private long queueTimeout = DEFAULT_QUEUE_TIMEOUT;
+	private int keyQuota;
+	
+	private final AtomicLong rejectedCount = new AtomicLong();
+	
+	private final MetricsRegistry.Gauge activeGauge = new MetricsRegistry.Gauge() {
+		@Override
+		public long getValue() {
+			return getActiveCount();
+		}
+	};
+	private final MetricsRegistry.Gauge queuedGauge = new MetricsRegistry.Gauge() {
+		@Override
+		public long getValue() {
+			return getQueuedCount();
+		}
+	};
+	
+	public AdmissionController(int maxConcurrent) {
+		if(maxConcurrent<1) {
+			throw new IllegalArgumentException("The maximum number of concurrent requests must be greater than 0");
+		}
+		this.maxConcurrent = maxConcurrent;
+		this.semaphore = new Semaphore(maxConcurrent,true);
+	}
+	
+	public int getMaxConcurrent() {
+		return maxConcurrent;
+	}
+	
+	public int getMaxQueued() {
+		return maxQueued;
+	}
+	
+	/**
+	 * Set the maximum number of requests waiting for a slot.
+	 * With 0, the requests are rejected as soon as all the slots are used.
+	 */
+	public void setMaxQueued(int maxQueued) {
+		this.maxQueued = maxQueued;
+	}
+	
+	public long getQueueTimeout() {
+		return queueTimeout;
+	}
+	
+	/**
+	 * Set the maximum time, in milliseconds, a request waits for a slot.
+	 */
+	public void setQueueTimeout(long queueTimeout) {
+		this.queueTimeout = queueTimeout;
+	}
+	
+	public int getKeyQuota() {
+		return keyQuota;
+	}
+	
+	/**
+	 * Set the maximum number of requests with the same key, running or waiting.
+	 * A value <=0, which is the default, means no quota.
+	 */
+	public void setKeyQuota(int keyQuota) {
+		this.keyQuota = keyQuota;
+	}
+	
+	public int getActiveCount() {
+		return maxConcurrent-semaphore.availablePermits();
+	}
+	
+	public int getQueuedCount() {
+		return queued.get();
+	}
+	
+	public long getRejectedCount() {
+		return rejectedCount.get();
+	}	
+	/**
+	 * Return the number of keys with requests running or waiting.
+	 */
+	public int getKeyCount() {
+		return keyCounts.size();
+	}
+	
+	/**
+	 * Admit a request.
+	 * 
+	 * This returns immediately when a slot is available, and otherwise waits for a slot
+	 * up to the queue timeout.
+	 * @param key the key of the request for the quota, or null
+	 * @throws RejectedException if the request is not admitted
+	 */
+	public Permit acquire(String key) {
+		AtomicInteger keyCount = null;
+		if(key!=null && keyQuota>0) {
+			keyCount = acquireKey(key);
+		}
+		boolean acquired = false;
+		try {
+			if(semaphore.tryAcquire()) {
+				acquired = true;
+			} else {
+				acquired = waitForSlot();
+			}
+		} finally {
+			if(!acquired && keyCount!=null) {
+				releaseKey(key,keyCount);
+			}
+		}
+		return new Permit(key,keyCount);
+	}
+	
+	private boolean waitForSlot() {
+		if(queued.incrementAndGet()>maxQueued) {
+			queued.decrementAndGet();
+			reject(Metrics.EVENT_REJECTED_QUEUE_FULL);
+			throw new RejectedException("The server is too busy to process the request",STATUS_SERVICE_UNAVAILABLE);
+		}
+		Metrics.event(Metrics.EVENT_ADMISSION_QUEUED);
+		long start = Metrics.start();
+		boolean acquired;
+		try {
+			acquired = semaphore.tryAcquire(queueTimeout,TimeUnit.MILLISECONDS);
+		} catch(InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			acquired = false;
+		} finally {
+			queued.decrementAndGet();
+			Metrics.phase(Metrics.PHASE_ADMISSION_WAIT, start);
+		}
+		if(!acquired) {
+			reject(Metrics.EVENT_REJECTED_TIMEOUT);
+			throw new RejectedException("The server is too busy to process the request",STATUS_SERVICE_UNAVAILABLE);
+		}
+		return true;
+	}
+	
+	private AtomicInteger acquireKey(String key) {
+		for(;;) {
+			AtomicInteger c = keyCounts.get(key);
+			if(c==null) {
+				AtomicInteger nc = new AtomicInteger();
+				c = keyCounts.putIfAbsent(key,nc);
+				if(c==null) {
+					c = nc;
+				}
+			}
+			for(int n=c.get(); n>=0; n=c.get()) {
+				if(n>=keyQuota) {
+					reject(Metrics.EVENT_REJECTED_QUOTA);
+					throw new RejectedException("Too many concurrent requests for "+key,STATUS_TOO_MANY_REQUESTS);
+				}
+				if(c.compareAndSet(n,n+1)) {
+					return c;
+				}
+			}
+			// Released concurrently, help removing it and start with a new count
+			keyCounts.remove(key,c);
+		}
+	}
+	
+	private void releaseKey(String key, AtomicInteger c) {
+		if(c.decrementAndGet()==0 && c.compareAndSet(0,-1)) {
+			keyCounts.remove(key,c);
+		}
+	}
+
+	
+	private void reject(String event) {
+		rejectedCount.incrementAndGet();
+		Metrics.event(event);
+	}
+	
+	/**
+	 * Expose the number of active and queued requests as metrics gauges.
+	 * The gauges are named &lt;prefix&gt;_admission_active and &lt;prefix&gt;_admission_queued, so
+	 * the controllers of several factories can be told apart.
+	 */
+	public void registerGauges(MetricsRegistry registry, String prefix) {
+		registry.registerGauge(prefix+"_admission_active", "Number of GraphQL requests being executed", activeGauge);
+		registry.registerGauge(prefix+"_admission_queued", "Number of GraphQL requests waiting for admission", queuedGauge);
+	}
+	
+	/**
+	 * Remove the gauges registered by {@link #registerGauges(MetricsRegistry, String)}.
+	 */
+	public void unregisterGauges(MetricsRegistry registry, String prefix) {
+		registry.unregisterGauge(prefix+"_admission_active", activeGauge);
+		registry.unregisterGauge(prefix+"_admission_queued", queuedGauge);
+	}
+}
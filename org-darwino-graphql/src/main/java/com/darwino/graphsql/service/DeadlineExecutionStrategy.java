@@ -0,0 +1,77 @@
+/*!COPYRIGHT HEADER! 
+ *
+ * (c) Copyright Darwino Inc. 2014-2016.
+ *
+ * Licensed under The MIT License (https://opensource.org/licenses/MIT)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial 
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT 
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, 
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.darwino.graphsql.service;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import graphql.ExecutionResult;
+import graphql.ExecutionResultImpl;
+import graphql.GraphQLError;
+import graphql.execution.ExecutionContext;
+import graphql.execution.ExecutionStrategy;
+import graphql.execution.SimpleExecutionStrategy;
+import graphql.language.Field;
+import graphql.schema.GraphQLObjectType;
+
+
+/**
+ * Execution strategy checking the request deadline.
+ * 
+ * The strategy is called for the root fields and then for the fields of each nested object.
+ * When the deadline is exceeded, the objects not yet resolved are returned as null and their
+ * fields are not resolved. The actual resolution is delegated to another strategy.
+ * 
+ * Strategies resolving the nested objects by themselves, like the batched one, are only
+ * checked at the root. Their data fetchers are then expected to check the deadline, using
+ * {@link RequestDeadline#get(Object)} on the execution context, as the batched JSON store
+ * document fetcher does before reading each level.
+ */
+public class DeadlineExecutionStrategy extends ExecutionStrategy {
+	
+	private ExecutionStrategy delegate;
+	private RequestDeadline deadline;
+	
+	public DeadlineExecutionStrategy(ExecutionStrategy delegate, RequestDeadline deadline) {
+		this.delegate = delegate!=null ? delegate : new SimpleExecutionStrategy();
+		this.deadline = deadline;
+	}
+	
+	public ExecutionStrategy getDelegate() {
+		return delegate;
+	}
+	
+	public RequestDeadline getDeadline() {
+		return deadline;
+	}
+
+	@Override
+	public ExecutionResult execute(ExecutionContext executionContext, GraphQLObjectType parentType, Object source, Map<String,List<Field>> fields) {
+		if(deadline.isExpired()) {
+			return new ExecutionResultImpl(null,Collections.<GraphQLError>emptyList());
+		}
+		return delegate.execute(executionContext,parentType,source,fields);
+	}
+}
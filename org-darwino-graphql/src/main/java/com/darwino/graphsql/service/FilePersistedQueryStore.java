@@ -0,0 +1,104 @@
+/*!COPYRIGHT HEADER! 
+ *
+ * (c) Copyright Darwino Inc. 2014-2016.
+ *
+ * Licensed under The MIT License (https://opensource.org/licenses/MIT)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial 
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT 
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, 
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.darwino.graphsql.service;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.Map;
+
+import com.darwino.commons.json.JsonException;
+import com.darwino.commons.json.JsonObject;
+
+
+/**
+ * Persisted query store loaded from the file system at startup.
+ * 
+ * The location can either be:
+ * <ul>
+ * <li>A JSON file, mapping the query ids to the query texts</li>
+ * <li>A directory with one <code>.graphql</code> file per query, the file name being the query id</li>
+ * </ul>
+ */
+public class FilePersistedQueryStore extends MemoryPersistedQueryStore {
+	
+	public static final String EXTENSION	= ".graphql";
+	
+	private File location;
+	
+	public FilePersistedQueryStore(File location) throws JsonException {
+		this(location,DEFAULT_SIZE,false);
+	}
+	
+	public FilePersistedQueryStore(File location, int maxSize, boolean registration) throws JsonException {
+		super(maxSize,registration);
+		this.location = location;
+		load();
+	}
+	
+	public File getLocation() {
+		return location;
+	}
+	
+	protected void load() throws JsonException {
+		try {
+			if(location.isDirectory()) {
+				File[] files = location.listFiles();
+				if(files!=null) {
+					for(File f: files) {
+						String name = f.getName();
+						if(f.isFile() && name.endsWith(EXTENSION)) {
+							addQuery(name.substring(0,name.length()-EXTENSION.length()),readFile(f));
+						}
+					}
+				}
+			} else {
+				JsonObject manifest = JsonObject.fromJson(readFile(location));
+				for(Map.Entry<String,Object> e: manifest.entrySet()) {
+					if(e.getValue() instanceof String) {
+						addQuery(e.getKey(),(String)e.getValue());
+					}
+				}
+			}
+		} catch(IOException ex) {
+			throw new JsonException(ex,"Error while loading the persisted queries from {0}",location);
+		}
+	}
+	
+	private static String readFile(File f) throws IOException {
+		Reader r = new InputStreamReader(new FileInputStream(f),"UTF-8");
+		try {
+			StringBuilder b = new StringBuilder((int)f.length());
+			char[] buffer = new char[4096];
+			for(int n=r.read(buffer); n>0; n=r.read(buffer)) {
+				b.append(buffer,0,n);
+			}
+			return b.toString();
+		} finally {
+			r.close();
+		}
+	}
+}
@@ -0,0 +1,104 @@
+/*!COPYRIGHT HEADER! 
+ *
+ * (c) Copyright Darwino Inc. 2014-2016.
+ *
+ * Licensed under The MIT License (https://opensource.org/licenses/MIT)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial 
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT 
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, 
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.darwino.graphsql.service;
+
+import com.darwino.commons.util.StringUtil;
+import com.darwino.graphsql.util.BoundedCache;
+
+
+/**
+ * Cache of prepared GraphQL queries.
+ * 
+ * Clients generally send the same query strings over and over, so the parse and
+ * validation phases are only executed the first time a query is seen.
+ * Only valid queries are cached. 
+ */
+public class GraphQLQueryCache {
+	
+	private static final class Key {
+		
+		private final String query;
+		private final String operationName;
+		private final int hash;
+		
+		Key(String query, String operationName) {
+			this.query = query;
+			this.operationName = operationName;
+			this.hash = query.hashCode()*31 + (operationName!=null ? operationName.hashCode() : 0);
+		}
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+		@Override
+		public boolean equals(Object o) {
+			if(o==this) {
+				return true;
+			}
+			if(!(o instanceof Key)) {
+				return false;
+			}
+			Key k = (Key)o;
+			return hash==k.hash && query.equals(k.query) && StringUtil.equals(operationName,k.operationName);
+		}
+	}
+	
+	private BoundedCache<Key,PreparedQuery> cache;
+	
+	public GraphQLQueryCache(int maxSize) {
+		this.cache = new BoundedCache<Key,PreparedQuery>(maxSize);
+	}
+	
+	public PreparedQuery get(String query, String operationName) {
+		return cache.get(new Key(query,operationName));
+	}
+	
+	public PreparedQuery put(String query, String operationName, PreparedQuery prepared) {
+		return cache.put(new Key(query,operationName),prepared);
+	}
+	
+	public void clear() {
+		cache.clear();
+	}
+	
+	public int size() {
+		return cache.size();
+	}
+	
+	public int getMaxSize() {
+		return cache.getMaxSize();
+	}
+
+	public long getHitCount() {
+		return cache.getHitCount();
+	}
+
+	public long getMissCount() {
+		return cache.getMissCount();
+	}
+
+	public long getEvictionCount() {
+		return cache.getEvictionCount();
+	}
+}
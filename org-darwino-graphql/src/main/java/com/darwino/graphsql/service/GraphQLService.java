@@ -22,8 +22,26 @@
 
 package com.darwino.graphsql.service;
 
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import org.antlr.v4.runtime.RecognitionException;
+import org.antlr.v4.runtime.Token;
+import org.antlr.v4.runtime.misc.ParseCancellationException;
 
 import com.darwino.commons.httpclnt.HttpBase;
 import com.darwino.commons.json.JsonArray;
@@ -33,11 +51,31 @@ import com.darwino.commons.services.HttpService;
 import com.darwino.commons.services.HttpServiceContext;
 import com.darwino.commons.services.HttpServiceError;
 import com.darwino.commons.util.StringUtil;
+import com.darwino.graphsql.codec.BinaryCodec;
+import com.darwino.graphsql.json.JsonAccessor;
+import com.darwino.graphsql.metrics.Metrics;
+import com.darwino.graphsql.metrics.MetricsRegistry;
+import com.darwino.graphsql.util.HashUtil;
+import com.darwino.graphsql.util.HttpUtil;
+import com.darwino.graphsql.util.JsonStreamWriter;
 
+import graphql.ExceptionWhileDataFetching;
 import graphql.ExecutionResult;
+import graphql.ExecutionResultImpl;
 import graphql.GraphQL;
 import graphql.GraphQLError;
+import graphql.InvalidSyntaxError;
+import graphql.execution.Execution;
+import graphql.execution.ExecutionStrategy;
+import graphql.language.Document;
+import graphql.language.Field;
+import graphql.language.OperationDefinition;
+import graphql.language.Selection;
+import graphql.language.SourceLocation;
+import graphql.parser.Parser;
 import graphql.schema.GraphQLSchema;
+import graphql.validation.ValidationError;
+import graphql.validation.Validator;
 
 
 /**
@@ -50,37 +88,264 @@ import graphql.schema.GraphQLSchema;
  */
 public class GraphQLService extends HttpService {
 	
-	private GraphQLSchema schema;	
+	/**
+	 * Header used by a client to set the timeout of its request, in milliseconds.
+	 */
+	public static final String TIMEOUT_HEADER	= "X-GraphQL-Timeout";
+	
+	private GraphQLServiceFactory factory;	
 	private boolean schemaJson;
+	private GraphQLSchema schema;
+	private BinaryCodec responseCodec;
+	private RequestDeadline deadline;
+	private boolean deadlineCreated;
+	private ExecutorService requestExecutor;
+	private List<Object> executionContexts;
 	
-	public GraphQLService(GraphQLSchema schema, boolean schemaJson) {
-		this.schema = schema;
+	public GraphQLService(GraphQLServiceFactory factory, boolean schemaJson) {
+		this.factory = factory;
 		this.schemaJson = schemaJson;
 	}
 	
 	@Override
 	public void service(HttpServiceContext context) {
+		// The schema is resolved once, so a concurrent schema reload does not affect the request
+		this.schema = factory.getSchema(context);
 		if(schemaJson) {
 			if(context.isGet()) {
-		    	// TODO...
-		        //query(CharStreams.toString(new InputStreamReader(GraphQLServlet.class.getResourceAsStream("introspectionQuery"))), null, new HashMap<>(), schema, req, resp, context);
-				throw HttpServiceError.errorNotImplemented("Accessing the GraphQL schema is not implemented");
+				processSchema(context);
 			} else {
 				throw HttpServiceError.errorUnsupportedMethod(context.getMethod());
 			}
-		} else {
-			if(context.isGet()) {
-				processGet(context);
-			} else if(context.isPost()) {
-				processPost(context);
-			} else {
-				throw HttpServiceError.errorUnsupportedMethod(context.getMethod());
+			return;
+		}
+		MetricsRegistry previous = Metrics.setCurrent(factory.getMetrics());
+		try {
+			long start = Metrics.start();
+			Metrics.event(Metrics.EVENT_REQUEST);
+			// The deadline includes the time waiting for admission
+			getDeadline(context);
+			this.responseCodec = selectResponseCodec(context);
+			AdmissionController.Permit permit = admit(context);
+			try {
+				if(context.isGet()) {
+					processGet(context);
+				} else if(context.isPost()) {
+					processPost(context);
+				} else {
+					throw HttpServiceError.errorUnsupportedMethod(context.getMethod());
+				}
+			} finally {
+				releaseExecutionContexts();
+				if(permit!=null) {
+					permit.release();
+				}
+				Metrics.phase(Metrics.PHASE_REQUEST, start);
+			}
+		} finally {
+			Metrics.setCurrent(previous);
+		}
+	}
+	
+	/**
+	 * Return the deadline of the request, or null if the request has no deadline.
+	 * It is created on first call.
+	 */
+	public RequestDeadline getDeadline(HttpServiceContext context) {
+		if(!deadlineCreated) {
+			deadline = createDeadline(context);
+			deadlineCreated = true;
+		}
+		return deadline;
+	}
+	
+	/**
+	 * Create the deadline of a request.
+	 * The request can set its own timeout with a header, up to the maximum timeout of the factory. 
+	 */
+	protected RequestDeadline createDeadline(HttpServiceContext context) {
+		long timeout = factory.getDefaultTimeout();
+		String header = context!=null ? context.getRequestHeader(TIMEOUT_HEADER) : null;
+		if(StringUtil.isNotEmpty(header)) {
+			try {
+				long t = Long.parseLong(header.trim());
+				if(t>0) {
+					timeout = t;
+				}
+			} catch(NumberFormatException ex) {
+				throw HttpServiceError.error(null,HttpBase.SC_BAD_REQUEST,"Invalid {0} header {1}",TIMEOUT_HEADER,header);
 			}
 		}
+		long maxTimeout = factory.getMaxTimeout();
+		if(maxTimeout>0 && (timeout<=0 || timeout>maxTimeout)) {
+			timeout = maxTimeout;
+		}
+		return timeout>0 ? new RequestDeadline(timeout) : null;
+	}
+	
+	/**
+	 * Replace the errors caused by the deadline with a single timeout error.
+	 */
+	protected ExecutionResult applyDeadline(ExecutionResult result, RequestDeadline deadline) {
+		if(deadline==null || !deadline.isExceeded()) {
+			return result;
+		}
+		List<GraphQLError> errors = new ArrayList<GraphQLError>();
+		for(GraphQLError e: result.getErrors()) {
+			if(e instanceof ExceptionWhileDataFetching && ((ExceptionWhileDataFetching)e).getException() instanceof RequestDeadline.ExceededException) {
+				continue;
+			}
+			errors.add(e);
+		}
+		errors.add(new DeadlineExceededError("The request exceeded its deadline of "+deadline.getTimeout()+"ms, the data is partial"));
+		return new ExecutionResultImpl(result.getData(),errors);
+	}
+	
+	/**
+	 * Admit the request through the admission controller of the factory, if any.
+	 * A rejected request gets a 429 when its key exceeds its quota, or a 503 when the server is saturated.
+	 * @return the permit to release when the request completes, or null if there is no admission control
+	 */
+	protected AdmissionController.Permit admit(HttpServiceContext context) {
+		AdmissionController controller = factory.getAdmissionController();
+		if(controller==null) {
+			return null;
+		}
+		try {
+			return controller.acquire(factory.getAdmissionKey(context));
+		} catch(AdmissionController.RejectedException ex) {
+			context.setResponseHeader("Retry-After", "1");
+			throw HttpServiceError.error(null,ex.getStatus(),ex.getMessage());
+		}
+	}
+	
+	public GraphQLServiceFactory getFactory() {
+		return factory;
 	}
 	
 	public GraphQLSchema getSchema() {
-		return schema;
+		return schema!=null ? schema : factory.getSchema();
+	}
+	
+	/**
+	 * Return the executor of this request, created on first use.
+	 * 
+	 * The executor is shared by the concurrent operations of a batch and the fields resolved
+	 * in parallel, so the request concurrency limit applies to the whole request.
+	 */
+	protected synchronized ExecutorService getRequestExecutor() {
+		if(requestExecutor==null) {
+			requestExecutor = factory.createRequestExecutor();
+		}
+		return requestExecutor;
+	}
+	
+	/**
+	 * Create the strategy used to execute a query of this request.
+	 */
+	protected ExecutionStrategy createQueryStrategy() {
+		return factory.createQueryStrategy(factory.isParallelExecution() ? getRequestExecutor() : null);
+	}
+	
+	/**
+	 * Return the binary codec used for the response, or null when the response is JSON.
+	 */
+	public BinaryCodec getResponseCodec() {
+		return responseCodec;
+	}
+	
+	/**
+	 * Select the encoding of the response from the Accept header.
+	 * JSON is used unless a binary encoding is explicitly preferred by the client.
+	 */
+	protected BinaryCodec selectResponseCodec(HttpServiceContext context) {
+		List<BinaryCodec> codecs = factory.getBinaryCodecs();
+		if(codecs.isEmpty()) {
+			return null;
+		}
+		String accept = context.getRequestHeader("Accept");
+		if(StringUtil.isEmpty(accept)) {
+			return null;
+		}
+		// Most of the requests only accept JSON
+		String[] types = null;
+		for(int i=0; i<codecs.size(); i++) {
+			BinaryCodec c = codecs.get(i);
+			if(accept.indexOf(c.getContentType())>=0) {
+				types = new String[codecs.size()+1];
+				types[0] = "application/json";
+				for(int j=0; j<codecs.size(); j++) {
+					types[j+1] = codecs.get(j).getContentType();
+				}
+				break;
+			}
+		}
+		if(types==null) {
+			return null;
+		}
+		int index = HttpUtil.negotiate(accept, types);
+		return index>0 ? codecs.get(index-1) : null;
+	}
+	
+	/**
+	 * Emit a value with the binary codec of the response.
+	 * @return false if the response is not using a binary encoding
+	 */
+	protected boolean emitEncoded(HttpServiceContext context, Object value) {
+		BinaryCodec codec = responseCodec;
+		if(codec==null) {
+			return false;
+		}
+		try {
+			context.setResponseHeader("Content-Type", codec.getContentType());
+			context.setResponseHeader("Vary", "Accept");
+			OutputStream os = new BufferedOutputStream(context.getOutputStream(),8192);
+			codec.write(os, value);
+		} catch(IOException ex) {
+			throw HttpServiceError.error500(ex,"Error while writing the GraphQL response");
+		}
+		return true;
+	}
+
+	/**
+	 * Emit the introspection result of the schema.
+	 * 
+	 * The result is computed once per schema and served with a strong ETag, so clients
+	 * revalidating their copy get a 304 without the introspection being executed.
+	 */
+	protected void processSchema(HttpServiceContext context) {
+		SchemaIntrospection si;
+		try {
+			si = factory.getSchemaIntrospection(getSchema());
+		} catch(IOException ex) {
+			throw HttpServiceError.error500(ex,"Error while computing the GraphQL schema");
+		}
+		// The gzip and identity bodies differ, so each gets its own strong ETag
+		String acceptEncoding = context.getRequestHeader("Accept-Encoding");
+		boolean gzip = HttpUtil.acceptsEncoding(acceptEncoding, "gzip");
+		String etag = gzip ? HttpUtil.getVariantETag(si.getETag(),"gzip") : si.getETag();
+		context.setResponseHeader("ETag", etag);
+		context.setResponseHeader("Cache-Control", "no-cache");
+		context.setResponseHeader("Vary", "Accept-Encoding");
+		if(HttpUtil.matchesETag(context.getRequestHeader("If-None-Match"), etag)) {
+			context.setResponseCode(HttpBase.SC_NOT_MODIFIED);
+			return;
+		}
+		
+		byte[] content = si.getContent();
+		if(gzip) {
+			content = si.getGzipContent();
+			context.setResponseHeader("Content-Encoding", "gzip");
+		}
+		try {
+			context.setResponseHeader("Content-Type", "application/json; charset=utf-8");
+			context.setResponseHeader("Content-Length", Integer.toString(content.length));
+			OutputStream os = context.getOutputStream();
+			os.write(content);
+			os.flush();
+		} catch(IOException ex) {
+			throw HttpServiceError.error500(ex,"Error while writing the GraphQL schema");
+		}
 	}
 
 	protected void processGet(HttpServiceContext context) {
@@ -88,37 +353,577 @@ public class GraphQLService extends HttpService {
 		if(StringUtil.isEmpty(query)) {
 			query = context.getQueryParameterString("q"); // seems supported
 		}
-		if(StringUtil.isNotEmpty(query)) {
-			String operationName = context.getQueryParameterString("operationName");
-			String sv = context.getQueryParameterString("variables");
-			Map<String,Object> variables;
+		String operationName = context.getQueryParameterString("operationName");
+		String sv = context.getQueryParameterString("variables");
+		Map<String,Object> variables;
+		try {
+			variables = StringUtil.isNotEmpty(sv) ? JsonObject.fromJson(sv) : null;
+		} catch(JsonException ex) {
+			throw HttpServiceError.error500(ex,"Error while parsing the variables parameter");
+		}
+		if(factory.getPersistedQueryStore()!=null) {
+			String se = context.getQueryParameterString("extensions");
+			Map<String,Object> extensions;
 			try {
-				variables = StringUtil.isNotEmpty(sv) ? JsonObject.fromJson(sv) : null;
+				extensions = StringUtil.isNotEmpty(se) ? JsonObject.fromJson(se) : null;
 			} catch(JsonException ex) {
-				throw HttpServiceError.error500(ex,"Error while parsing the variables parameter");
+				throw HttpServiceError.error500(ex,"Error while parsing the extensions parameter");
+			}
+			query = resolvePersistedQuery(context, getSchema(), query, context.getQueryParameterString("id"), extensions, operationName, variables);
+		}
+		if(StringUtil.isNotEmpty(query)) {
+			if(isIncrementalRequest(context, query)) {
+				processIncremental(context, getSchema(), query, operationName, variables);
+			} else if(factory.getResultCache()!=null) {
+				processCachedRequest(context, getSchema(), query, operationName, variables);
+			} else {
+				processRequest(context, getSchema(), query, operationName, variables);
 			}
-			processRequest(context, getSchema(), query, operationName, variables);
 		}
 	}
 
 	protected void processPost(HttpServiceContext context) {
-		JsonObject ct = (JsonObject)context.getContentAsJson();
+		Object content = readContent(context);
+		if(content instanceof JsonArray) {
+			processBatch(context, (JsonArray)content);
+			return;
+		}
+		JsonObject ct = (JsonObject)content;
 		String query = ct.getString("query");
+		String operationName = ct.getString("operationName");
+		Map<String,Object> variables = ct.getObject("variables");
+		if(factory.getPersistedQueryStore()!=null) {
+			query = resolvePersistedQuery(context, getSchema(), query, ct.getString("id"), ct.getObject("extensions"), operationName, variables);
+		}
 		if(StringUtil.isNotEmpty(query)) {
-			String operationName = ct.getString("operationName");
-			Map<String,Object> variables = ct.getObject("variables");
-			processRequest(context, getSchema(), query, operationName, variables);
+			if(isIncrementalRequest(context, query)) {
+				processIncremental(context, getSchema(), query, operationName, variables);
+			} else {
+				processRequest(context, getSchema(), query, operationName, variables);
+			}
 		}
 	}
 	
+	/**
+	 * Read the content of a POST request, either as JSON or with the binary codec
+	 * matching its content type.
+	 */
+	protected Object readContent(HttpServiceContext context) {
+		BinaryCodec codec = factory.getBinaryCodec(context.getRequestHeader("Content-Type"));
+		if(codec==null) {
+			return context.getContentAsJson();
+		}
+		Object content;
+		try {
+			content = codec.read(context.getInputStream());
+		} catch(IOException ex) {
+			throw HttpServiceError.error(ex,HttpBase.SC_BAD_REQUEST,"Error while reading the {0} request content",codec.getName());
+		}
+		if(!(content instanceof JsonObject) && !(content instanceof JsonArray)) {
+			throw HttpServiceError.error(null,HttpBase.SC_BAD_REQUEST,"The request content must be an object or an array");
+		}
+		return content;
+	}
 	
-	protected void processRequest(HttpServiceContext context, GraphQLSchema schema, String query, String operationName, Map<String,Object> variables) {
-		ExecutionResult result = new GraphQL(schema).execute(query,operationName,context,variables);
-		if (result.getErrors().isEmpty()) {
+	/**
+	 * Resolve the text of a persisted query.
+	 * 
+	 * The query can be designated by a registered id, or by its SHA-256 hash as sent by
+	 * automatic persisted query clients:
+	 * <code>extensions={"persistedQuery":{"version":1,"sha256Hash":"..."}}</code>.
+	 * When the hash is unknown, the client is asked to send the query text along with the hash,
+	 * and the query is then registered, if it is valid and within the limits of the factory.
+	 * The persisted query errors are emitted as GraphQL errors, with a code in their extensions.
+	 * 
+	 * @return the query text, or null if an error has been emitted
+	 */
+	protected String resolvePersistedQuery(HttpServiceContext context, GraphQLSchema schema, String query, String id, Map<String,Object> extensions, String operationName, Map<String,Object> variables) {
+		try {
+			query = lookupPersistedQuery(query, id, extensions);
+			registerPersistedQuery(schema, query, extensions, operationName, variables);
+			return query;
+		} catch(PersistedQueryException ex) {
+			emitError(context, ex.getMessage(), ex.getCode());
+			return null;
+		}
+	}
+	
+	/**
+	 * Error sent back to the client while negotiating a persisted query.
+	 */
+	protected static class PersistedQueryException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+		private String code;
+		public PersistedQueryException(String message, String code) {
+			super(message);
+			this.code = code;
+		}
+		public String getCode() {
+			return code;
+		}
+	}
+	
+	public static final String PERSISTED_QUERY_NOT_FOUND		= "PERSISTED_QUERY_NOT_FOUND";
+	public static final String PERSISTED_QUERY_NOT_SUPPORTED	= "PERSISTED_QUERY_NOT_SUPPORTED";
+	public static final String PERSISTED_QUERY_HASH_MISMATCH	= "PERSISTED_QUERY_HASH_MISMATCH";
+	
+	/**
+	 * Return the text of a persisted query, or the query sent by the client.
+	 * A query sent along with its hash is only registered by {@link #registerPersistedQuery}.
+	 */
+	protected String lookupPersistedQuery(String query, String id, Map<String,Object> extensions) {
+		PersistedQueryStore store = factory.getPersistedQueryStore();
+		
+		String sha256Hash = getPersistedQueryHash(extensions);
+		if(sha256Hash!=null) {
+			if(StringUtil.isNotEmpty(query)) {
+				if(!sha256Hash.equalsIgnoreCase(HashUtil.sha256Hex(query))) {
+					throw new PersistedQueryException("The provided sha256Hash does not match the query", PERSISTED_QUERY_HASH_MISMATCH);
+				}
+				return query;
+			}
+			query = store.getQuery(sha256Hash);
+			if(query==null) {
+				// Standard negotiation: the client then sends the query along with its hash
+				throw new PersistedQueryException("PersistedQueryNotFound", PERSISTED_QUERY_NOT_FOUND);
+			}
+			return query;
+		}
+		
+		if(StringUtil.isEmpty(query) && StringUtil.isNotEmpty(id)) {
+			query = store.getQuery(id);
+			if(query==null) {
+				throw new PersistedQueryException("Unknown persisted query "+id, PERSISTED_QUERY_NOT_FOUND);
+			}
+		}
+		return query;
+	}
+	
+	/**
+	 * Register a query sent along with its hash by an automatic persisted query client.
+	 * 
+	 * The query is only registered once it passed the validation and the complexity limits, so
+	 * the store is not filled with queries that cannot be executed. An invalid query is not
+	 * registered, and its errors are reported by its execution.
+	 */
+	protected void registerPersistedQuery(GraphQLSchema schema, String query, Map<String,Object> extensions, String operationName, Map<String,Object> variables) {
+		String sha256Hash = getPersistedQueryHash(extensions);
+		if(sha256Hash==null || StringUtil.isEmpty(query)) {
+			return;
+		}
+		PersistedQueryStore store = factory.getPersistedQueryStore();
+		if(store.getQuery(sha256Hash)!=null) {
+			return;
+		}
+		if(!checkQuery(schema, query, operationName, variables).isEmpty()) {
+			return;
+		}
+		if(!store.registerQuery(sha256Hash,query)) {
+			throw new PersistedQueryException("PersistedQueryNotSupported", PERSISTED_QUERY_NOT_SUPPORTED);
+		}
+	}
+	
+	private static String getPersistedQueryHash(Map<String,Object> extensions) {
+		Object pq = extensions!=null ? extensions.get("persistedQuery") : null;
+		Object hash = pq instanceof Map<?,?> ? ((Map<?,?>)pq).get("sha256Hash") : null;
+		return hash instanceof String ? (String)hash : null;
+	}
+	
+	/**
+	 * Emit a GraphQL error response, as defined by the GraphQL over HTTP conventions.
+	 */
+	protected void emitError(HttpServiceContext context, String message, String code) {
+		JsonObject result = createErrorResult(message, code);
+		if(!emitEncoded(context, result)) {
+			context.emitJson(result);
+		}
+	}
+	
+	protected static JsonObject createErrorResult(String message, String code) {
+		JsonObject error = new JsonObject();
+		error.put("message", message);
+		if(code!=null) {
+			JsonObject ext = new JsonObject();
+			ext.put("code", code);
+			error.put("extensions", ext);
+		}
+		JsonArray errors = new JsonArray();
+		errors.add(error);
+		JsonObject root = new JsonObject();
+		root.put("errors", errors);
+		return root;
+	}
+	
+	/**
+	 * Process a batch of operations sent as a JSON array.
+	 * 
+	 * The operations share the same execution context, and thus the request scoped caches
+	 * of the data fetchers. The response is an array with the result of each operation,
+	 * in the same order. A failing operation only produces an error in its own result.
+	 */
+	protected void processBatch(HttpServiceContext context, JsonArray operations) {
+		int maxBatchSize = factory.getMaxBatchSize();
+		if(operations.size()>maxBatchSize) {
+			throw HttpServiceError.error(null,HttpBase.SC_BAD_REQUEST,"The batch contains {0} operations, the maximum allowed is {1}",operations.size(),maxBatchSize);
+		}
+		
+		final HttpServiceContext ctx = context;
+		final Object executionContext = newExecutionContext(context);
+		final GraphQLSchema schema = getSchema();
+		// The operations share the deadline, set before they can run concurrently
+		RequestDeadline deadline = getDeadline(context);
+		if(deadline!=null) {
+			RequestDeadline.set(executionContext, deadline);
+		}
+		int count = operations.size();
+		Object[] results = new Object[count];
+		
+		if(factory.isParallelBatch() && count>1) {
+			// A full executor makes an operation run in this thread
+			ExecutorService executor = getRequestExecutor();
+			List<Future<Object>> futures = new ArrayList<Future<Object>>(count);
+			for(int i=0; i<count; i++) {
+				final Object op = operations.get(i);
+				futures.add(executor.submit(new Callable<Object>() {
+					@Override
+					public Object call() {
+						return executeOperation(ctx, schema, op, executionContext);
+					}
+				}));
+			}
+			for(int i=0; i<count; i++) {
+				try {
+					results[i] = futures.get(i).get();
+				} catch(InterruptedException ex) {
+					Thread.currentThread().interrupt();
+					results[i] = createErrorResult("The operation was interrupted", null);
+				} catch(ExecutionException ex) {
+					results[i] = createErrorResult(getErrorMessage(ex.getCause()), null);
+				}
+			}
+		} else {
+			for(int i=0; i<count; i++) {
+				results[i] = executeOperation(ctx, schema, operations.get(i), executionContext);
+			}
+		}
+		
+		emitBatch(context, Arrays.asList(results));
+	}
+	
+	/**
+	 * Execute one operation of a batch and return its result.
+	 * Errors are returned as part of the result instead of being thrown, with the data resolved
+	 * before they occurred.
+	 */
+	protected Object executeOperation(HttpServiceContext context, GraphQLSchema schema, Object operation, Object executionContext) {
+		try {
+			if(!(operation instanceof JsonObject)) {
+				return createErrorResult("An operation must be a JSON object", null);
+			}
+			JsonObject op = (JsonObject)operation;
+			String query = op.getString("query");
+			if(factory.getPersistedQueryStore()!=null) {
+				query = lookupPersistedQuery(query, op.getString("id"), op.getObject("extensions"));
+				registerPersistedQuery(schema, query, op.getObject("extensions"), op.getString("operationName"), op.getObject("variables"));
+			}
+			if(StringUtil.isEmpty(query)) {
+				return createErrorResult("Missing query", null);
+			}
+			ExecutionResult result = execute(context, schema, query, op.getString("operationName"), op.getObject("variables"), executionContext);
+			// A partial result, like one that ran out of time, keeps its data along with the errors
 			JsonObject root = new JsonObject();
-			root.put("data", result.getData());
+			if(result.getData()!=null) {
+				root.put("data", result.getData());
+			}
+			if(!result.getErrors().isEmpty()) {
+				Metrics.event(Metrics.EVENT_ERROR);
+				root.put("errors", createErrors(result.getErrors()));
+			}
+			return root;
+		} catch(PersistedQueryException ex) {
+			return createErrorResult(ex.getMessage(), ex.getCode());
+		} catch(Exception ex) {
+			return createErrorResult(getErrorMessage(ex), null);
+		}
+	}
+	
+	protected static JsonArray createErrors(List<GraphQLError> errors) {
+		JsonArray result = new JsonArray();
+		for(GraphQLError e: errors) {
+			JsonObject error = new JsonObject();
+			error.put("message", e.getMessage());
+			if(e instanceof DeadlineExceededError) {
+				JsonObject ext = new JsonObject();
+				ext.put("code", DeadlineExceededError.CODE);
+				error.put("extensions", ext);
+			}
+			result.add(error);
+		}
+		return result;
+	}
+	
+	/**
+	 * Check if a request should use incremental delivery.
+	 * The client must accept a multipart response, else the directives are ignored.
+	 */
+	protected boolean isIncrementalRequest(HttpServiceContext context, String query) {
+		if(!IncrementalQuery.hasDirectives(query)) {
+			return false;
+		}
+		String accept = context.getRequestHeader("Accept");
+		return accept!=null && accept.indexOf("multipart/mixed")>=0;
+	}
+	
+	/**
+	 * Process a query using @defer or @stream.
+	 * 
+	 * The response is a multipart/mixed stream, following the incremental delivery format.
+	 * The initial payload is sent as soon as the non deferred fields are resolved. The deferred
+	 * parts are then resolved from the objects returned by the initial execution, and flushed
+	 * one at a time. A part keeps its data along with its errors, and a part that fails is
+	 * reported by an error entry, while the other parts are still delivered.
+	 * 
+	 * The directives are ignored with the batched strategy, which does not resolve the nested
+	 * objects through the strategy, and the query is then executed as a regular query.
+	 */
+	protected void processIncremental(HttpServiceContext context, GraphQLSchema schema, String query, String operationName, Map<String,Object> variables) {
+		Map<String,Object> vars = variables!=null ? variables : Collections.<String,Object>emptyMap();
+		if(factory.isBatchedExecution()) {
+			processRequest(context, schema, query, operationName, variables);
+			return;
+		}
+		Document document;
+		try {
+			document = new Parser().parseDocument(query);
+		} catch(ParseCancellationException ex) {
+			emitResult(context, new ExecutionResultImpl(Collections.singletonList(createSyntaxError(ex))));
+			return;
+		}
+		IncrementalQuery iq = IncrementalQuery.create(document, operationName, vars);
+		if(iq==null) {
+			processRequest(context, schema, query, operationName, variables);
+			return;
+		}
+		if(!iq.getErrors().isEmpty()) {
+			emitResult(context, new ExecutionResultImpl(iq.getErrors()));
+			return;
+		}
+		
+		// The whole query is validated and checked at once, the parts are subsets of it
+		PreparedQuery full = new PreparedQuery(iq.getFullDocument());
+		List<ValidationError> errors = new Validator().validateDocument(schema,full.getDocument());
+		if(!errors.isEmpty()) {
+			emitResult(context, new ExecutionResultImpl(errors));
+			return;
+		}
+		if(factory.getMaxQueryDepth()>0 || factory.getMaxQueryCost()>0) {
+			QueryComplexityError error = checkLimits(schema,full,operationName,variables);
+			if(error!=null) {
+				emitResult(context, new ExecutionResultImpl(Collections.singletonList(error)));
+				return;
+			}
+		}
+		
+		Object executionContext = newExecutionContext(context);
+		RequestDeadline deadline = getDeadline(context);
+		ExecutionStrategy queryStrategy = createQueryStrategy();
+		if(deadline!=null) {
+			RequestDeadline.set(executionContext, deadline);
+			queryStrategy = new DeadlineExecutionStrategy(queryStrategy, deadline);
+		}
+		IncrementalExecutionStrategy strategy = new IncrementalExecutionStrategy(queryStrategy);
+		List<IncrementalQuery.Part> parts = iq.getParts();
+		
+		ExecutionResult initial = executeDocument(schema,iq.getInitialDocument(),operationName,vars,executionContext,strategy);
+		try {
+			context.setResponseHeader("Content-Type", "multipart/mixed; boundary=\"-\"; deferSpec=20220824");
+			OutputStream os = context.getOutputStream();
+			
+			// The placeholders are removed before the data is sent
+			List<List<IncrementalQuery.Location>> locations = new ArrayList<List<IncrementalQuery.Location>>(parts.size());
+			for(IncrementalQuery.Part part: parts) {
+				locations.add(part.extractLocations(initial.getData()));
+			}
+			JsonObject payload = new JsonObject();
+			payload.put("data", initial.getData());
+			if(!initial.getErrors().isEmpty()) {
+				payload.put("errors", createErrors(initial.getErrors()));
+			}
+			payload.put("hasNext", !parts.isEmpty());
+			writePart(os, payload);
+			
+			for(int i=0; i<parts.size(); i++) {
+				List<Map<String,Object>> entries = executePart(strategy,parts.get(i),locations.get(i),deadline);
+				writeIncremental(os, entries, i<parts.size()-1);
+			}
+			
+			os.write(MULTIPART_END);
+			os.flush();
+		} catch(IOException ex) {
+			throw HttpServiceError.error500(ex,"Error while writing the GraphQL response");
+		}
+	}
+	
+	/**
+	 * Execute a deferred part on the objects holding it, and create its incremental entries.
+	 * The errors, including the exceptions thrown while executing, are returned in the entries
+	 * as the initial payload has already been sent.
+	 */
+	protected List<Map<String,Object>> executePart(IncrementalExecutionStrategy strategy, IncrementalQuery.Part part, List<IncrementalQuery.Location> locations, RequestDeadline deadline) {
+		List<Map<String,Object>> entries = new ArrayList<Map<String,Object>>(locations.size());
+		for(IncrementalQuery.Location location: locations) {
+			try {
+				long start = Metrics.start();
+				ExecutionResult result;
+				try {
+					result = applyDeadline(strategy.executePart(part,location.getIndex()), deadline);
+				} finally {
+					Metrics.phase(Metrics.PHASE_EXECUTE, start);
+				}
+				Object errors = null;
+				if(!result.getErrors().isEmpty()) {
+					Metrics.event(Metrics.EVENT_ERROR);
+					errors = createErrors(result.getErrors());
+				}
+				entries.add(part.createEntry(location,result.getData(),errors));
+			} catch(RuntimeException ex) {
+				entries.add(part.createErrorEntry(location,createErrorResult(getErrorMessage(ex),null).get("errors")));
+			}
+		}
+		return entries;
+	}
+	
+	private static final byte[] MULTIPART_PART	= ascii("\r\n---\r\nContent-Type: application/json; charset=utf-8\r\n\r\n");
+	private static final byte[] MULTIPART_END	= ascii("\r\n-----\r\n");
+	private static byte[] ascii(String s) {
+		byte[] b = new byte[s.length()];
+		for(int i=0; i<b.length; i++) {
+			b[i] = (byte)s.charAt(i);
+		}
+		return b;
+	}
+	
+	private void writeIncremental(OutputStream os, List<Map<String,Object>> entries, boolean hasNext) throws IOException {
+		JsonObject payload = new JsonObject();
+		payload.put("incremental", entries);
+		payload.put("hasNext", hasNext);
+		writePart(os, payload);
+	}
+	
+	private void writePart(OutputStream os, Object payload) throws IOException {
+		long start = Metrics.start();
+		os.write(MULTIPART_PART);
+		Writer w = new BufferedWriter(new OutputStreamWriter(os,"UTF-8"),8192);
+		JsonStreamWriter jw = new JsonStreamWriter(w);
+		jw.value(payload);
+		jw.flush();
+		os.flush();
+		Metrics.phase(Metrics.PHASE_SERIALIZE, start);
+	}
+	
+	/**
+	 * Execute an already validated document.
+	 */
+	protected ExecutionResult executeDocument(GraphQLSchema schema, Document document, String operationName, Map<String,Object> variables, Object executionContext, ExecutionStrategy queryStrategy) {
+		long start = Metrics.start();
+		try {
+			return applyDeadline(new Execution(queryStrategy,factory.getMutationStrategy()).execute(schema,executionContext,document,operationName,variables), getDeadline(null));
+		} finally {
+			Metrics.phase(Metrics.PHASE_EXECUTE, start);
+		}
+	}
+	
+	private static String getErrorMessage(Throwable t) {
+		String msg = t!=null ? t.getMessage() : null;
+		return StringUtil.isNotEmpty(msg) ? msg : "Error while executing the GraphQL request";
+	}
+	
+	protected void emitBatch(HttpServiceContext context, List<Object> results) {
+		if(emitEncoded(context, results)) {
+			return;
+		}
+		if(factory.isStreamingResponse()) {
+			try {
+				context.setResponseHeader("Content-Type", "application/json; charset=utf-8");
+				Writer w = new BufferedWriter(new OutputStreamWriter(context.getOutputStream(),"UTF-8"),8192);
+				JsonStreamWriter jw = new JsonStreamWriter(w);
+				jw.value(results);
+				jw.flush();
+			} catch(IOException ex) {
+				throw HttpServiceError.error500(ex,"Error while writing the GraphQL response");
+			}
+		} else {
+			JsonArray root = new JsonArray();
+			root.addAll(results);
 			context.emitJson(root);
+		}
+	}
+	
+	
+	protected void processRequest(HttpServiceContext context, GraphQLSchema schema, String query, String operationName, Map<String,Object> variables) {
+		ExecutionResult result = execute(context, schema, query, operationName, variables);
+		emitResult(context, result);
+	}
+	
+	/**
+	 * Process a request using the result cache.
+	 * 
+	 * The result is served from the cache while the data it was computed from is unchanged.
+	 * It is sent with an ETag derived from this data, and a request with a matching If-None-Match
+	 * header gets a 304. The results are only shared within the scope of the request, as returned
+	 * by the factory.
+	 */
+	@SuppressWarnings("unchecked")
+	protected void processCachedRequest(HttpServiceContext context, GraphQLSchema schema, String query, String operationName, Map<String,Object> variables) {
+		ResultCache cache = factory.getResultCache();
+		Object executionContext = newExecutionContext(context);
+		// Only the results of the factory schema are cached, and the dependencies are recorded in the execution context map
+		if(schema!=factory.getSchema() || !(executionContext instanceof Map<?,?>)) {
+			emitResult(context, execute(context, schema, query, operationName, variables, executionContext));
+			return;
+		}
+		
+		String scope = factory.getResultCacheScope(context);
+		ResultCache.Entry entry = cache.get(executionContext, scope, query, operationName, variables);
+		if(entry==null) {
+			ResultDependencies deps = new ResultDependencies();
+			((Map<Object,Object>)executionContext).put(ResultDependencies.class, deps);
+			ExecutionResult result = execute(context, schema, query, operationName, variables, executionContext);
+			if(!result.getErrors().isEmpty() || !deps.isCacheable()) {
+				emitResult(context, result);
+				return;
+			}
+			entry = cache.put(scope, query, operationName, variables, result.getData(), deps);
+		}
+		
+		// The encodings are different representations of the result
+		String etag = responseCodec!=null ? HttpUtil.getVariantETag(entry.getETag(), responseCodec.getName()) : entry.getETag();
+		context.setResponseHeader("ETag", etag);
+		context.setResponseHeader("Cache-Control", "no-cache");
+		if(!factory.getBinaryCodecs().isEmpty()) {
+			context.setResponseHeader("Vary", "Accept");
+		}
+		if(HttpUtil.matchesETag(context.getRequestHeader("If-None-Match"), etag)) {
+			context.setResponseCode(HttpBase.SC_NOT_MODIFIED);
+			return;
+		}
+		emitData(context, entry.getData());
+	}
+	
+	protected void emitResult(HttpServiceContext context, ExecutionResult result) {
+		if (result.getErrors().isEmpty()) {
+			emitData(context, result.getData());
+		} else if(isPartialResult(result)) {
+			Metrics.event(Metrics.EVENT_TIMEOUT);
+			emitPartialResult(context, result);
 		} else {
+			Metrics.event(Metrics.EVENT_ERROR);
+			for(GraphQLError e: result.getErrors()) {
+				if(e instanceof QueryComplexityError) {
+					throw HttpServiceError.error(null,HttpBase.SC_BAD_REQUEST,e.getMessage());
+				}
+			}
+			
 			JsonObject extra = new JsonObject();
 			JsonArray errlist = new JsonArray();
 			List<GraphQLError> errors = result.getErrors();
@@ -134,4 +939,305 @@ public class GraphQLService extends HttpService {
 			throw HttpServiceError.error(null,HttpBase.SC_INTERNAL_SERVER_ERROR,"Error while executing the GraphQL request");
 		}
 	}	
+	
+	/**
+	 * Check if a result holds partial data because the request ran out of time.
+	 */
+	protected boolean isPartialResult(ExecutionResult result) {
+		for(GraphQLError e: result.getErrors()) {
+			if(e instanceof DeadlineExceededError) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Emit the partial data of a result along with its errors.
+	 */
+	protected void emitPartialResult(HttpServiceContext context, ExecutionResult result) {
+		Map<String,Object> root = new JsonObject();
+		root.put("data", result.getData());
+		root.put("errors", createErrors(result.getErrors()));
+		long start = Metrics.start();
+		try {
+			if(emitEncoded(context, root)) {
+				return;
+			}
+			if(factory.isStreamingResponse()) {
+				try {
+					context.setResponseHeader("Content-Type", "application/json; charset=utf-8");
+					Writer w = new BufferedWriter(new OutputStreamWriter(context.getOutputStream(),"UTF-8"),8192);
+					JsonStreamWriter jw = new JsonStreamWriter(w);
+					jw.value(root);
+					jw.flush();
+				} catch(IOException ex) {
+					throw HttpServiceError.error500(ex,"Error while writing the GraphQL response");
+				}
+			} else {
+				context.emitJson(root);
+			}
+		} finally {
+			Metrics.phase(Metrics.PHASE_SERIALIZE, start);
+		}
+	}
+	
+	/**
+	 * Emit the data of a successful request.
+	 * 
+	 * When the service is streaming, the result is written directly to the response
+	 * stream instead of being first copied to a JsonObject.
+	 */
+	protected void emitData(HttpServiceContext context, Object data) {
+		long start = Metrics.start();
+		try {
+			writeData(context, data);
+		} finally {
+			Metrics.phase(Metrics.PHASE_SERIALIZE, start);
+		}
+	}
+	
+	private void writeData(HttpServiceContext context, Object data) {
+		if(responseCodec!=null) {
+			emitEncoded(context, Collections.singletonMap("data", data));
+		} else if(factory.isStreamingResponse()) {
+			try {
+				context.setResponseHeader("Content-Type", "application/json; charset=utf-8");
+				Writer w = new BufferedWriter(new OutputStreamWriter(context.getOutputStream(),"UTF-8"),8192);
+				JsonStreamWriter jw = new JsonStreamWriter(w);
+				jw.startObject()
+					.property("data", data)
+				.endObject();
+				jw.flush();
+			} catch(IOException ex) {
+				throw HttpServiceError.error500(ex,"Error while writing the GraphQL response");
+			}
+		} else {
+			JsonObject root = new JsonObject();
+			root.put("data", data);
+			context.emitJson(root);
+		}
+	}
+
+	
+	protected ExecutionResult execute(HttpServiceContext context, GraphQLSchema schema, String query, String operationName, Map<String,Object> variables) {
+		return execute(context, schema, query, operationName, variables, newExecutionContext(context));
+	}
+	
+	protected ExecutionResult execute(HttpServiceContext context, GraphQLSchema schema, String query, String operationName, Map<String,Object> variables, Object executionContext) {
+		if(variables==null) {
+			variables = Collections.emptyMap();
+		}
+		
+		// Queries against a schema unknown to the factory are not cached
+		boolean factorySchema = schema==factory.getSchema();
+		GraphQLQueryCache cache = factory.getQueryCache(schema);
+		boolean limits = factory.getMaxQueryDepth()>0 || factory.getMaxQueryCost()>0;
+		
+		ExecutionStrategy queryStrategy = createQueryStrategy();
+		RequestDeadline deadline = getDeadline(context);
+		if(deadline!=null) {
+			if(RequestDeadline.get(executionContext)!=deadline) {
+				RequestDeadline.set(executionContext, deadline);
+			}
+			queryStrategy = new DeadlineExecutionStrategy(queryStrategy, deadline);
+		}
+		
+		// The operation type must be known when the result can be cached
+		ResultDependencies deps = ResultDependencies.get(executionContext);
+		
+		// The phases are only measured separately when the query goes through the prepared path
+		if(cache==null && !limits && deps==null && !Metrics.isEnabled() && !IncrementalQuery.hasDirectives(query)) {
+			GraphQL graphQL = factorySchema && queryStrategy==factory.getQueryStrategy() ? factory.getGraphQL() : new GraphQL(schema,queryStrategy,factory.getMutationStrategy());
+			return applyDeadline(graphQL.execute(query,operationName,executionContext,variables), deadline);
+		}
+		
+		List<GraphQLError> errors = new ArrayList<GraphQLError>();
+		PreparedQuery prepared = prepare(schema, cache, query, operationName, errors);
+		if(prepared==null) {
+			return new ExecutionResultImpl(errors);
+		}
+		
+		if(limits) {
+			QueryComplexityError error = checkLimits(schema,prepared,operationName,variables);
+			if(error!=null) {
+				return new ExecutionResultImpl(Collections.singletonList(error));
+			}
+		}
+		
+		if(deps!=null) {
+			// Never replay a mutation from the cache, nor the fields that did not opt in
+			OperationDefinition op = prepared.getOperation(operationName);
+			if(op==null || op.getOperation()!=OperationDefinition.Operation.QUERY || !isCacheable(op, factory.getResultCache())) {
+				deps.setUncacheable();
+			}
+		}
+		
+		long start = Metrics.start();
+		try {
+			return applyDeadline(new Execution(queryStrategy,factory.getMutationStrategy()).execute(schema,executionContext,prepared.getDocument(),operationName,variables), deadline);
+		} finally {
+			Metrics.phase(Metrics.PHASE_EXECUTE, start);
+		}
+	}
+	
+	/**
+	 * Parse and validate a query, or get it from the query cache.
+	 * @return the prepared query, or null if the query has errors
+	 */
+	private PreparedQuery prepare(GraphQLSchema schema, GraphQLQueryCache cache, String query, String operationName, List<GraphQLError> errors) {
+		PreparedQuery prepared = cache!=null ? cache.get(query,operationName) : null;
+		if(prepared!=null) {
+			return prepared;
+		}
+		Document document;
+		long start = Metrics.start();
+		try {
+			document = new Parser().parseDocument(query);
+		} catch(ParseCancellationException ex) {
+			errors.add(createSyntaxError(ex));
+			return null;
+		} finally {
+			Metrics.phase(Metrics.PHASE_PARSE, start);
+		}
+		if(IncrementalQuery.hasDirectives(query)) {
+			// Not an incremental request, the directives are ignored
+			document = IncrementalQuery.strip(document);
+		}
+		start = Metrics.start();
+		List<ValidationError> validationErrors = new Validator().validateDocument(schema,document);
+		Metrics.phase(Metrics.PHASE_VALIDATE, start);
+		if(!validationErrors.isEmpty()) {
+			errors.addAll(validationErrors);
+			return null;
+		}
+		prepared = new PreparedQuery(document);
+		if(cache!=null) {
+			prepared = cache.put(query,operationName,prepared);
+		}
+		return prepared;
+	}
+	
+	/**
+	 * Check that a query is valid and within the complexity limits of the factory, without
+	 * executing it. The prepared query is kept in the query cache for its execution.
+	 * @return the errors of the query, or an empty list
+	 */
+	protected List<GraphQLError> checkQuery(GraphQLSchema schema, String query, String operationName, Map<String,Object> variables) {
+		List<GraphQLError> errors = new ArrayList<GraphQLError>();
+		PreparedQuery prepared = prepare(schema, factory.getQueryCache(schema), query, operationName, errors);
+		if(prepared!=null && (factory.getMaxQueryDepth()>0 || factory.getMaxQueryCost()>0)) {
+			QueryComplexityError error = checkLimits(schema,prepared,operationName,variables!=null ? variables : Collections.<String,Object>emptyMap());
+			if(error!=null) {
+				errors.add(error);
+			}
+		}
+		return errors;
+	}
+	
+	/**
+	 * Create the object passed as the GraphQL execution context to the data fetchers.
+	 * 
+	 * By default, this is the HTTP service context. Services giving access to the JSON store
+	 * return a map holding the store context.
+	 */
+	protected Object createExecutionContext(HttpServiceContext context) {
+		return context;
+	}
+	
+	private Object newExecutionContext(HttpServiceContext context) {
+		Object executionContext = createExecutionContext(context);
+		JsonAccessor.setMemoSize(executionContext, factory.getJsonMemoSize(context));
+		synchronized(this) {
+			if(executionContexts==null) {
+				executionContexts = new ArrayList<Object>();
+			}
+			executionContexts.add(executionContext);
+		}
+		return executionContext;
+	}
+	
+	/**
+	 * Release an execution context when the request completes.
+	 * By default, the values of an execution context map that are Closeable, like the JSON store
+	 * context and the sessions it opened, are closed.
+	 */
+	protected void releaseExecutionContext(Object executionContext) {
+		if(executionContext instanceof Map<?,?>) {
+			for(Object v: ((Map<?,?>)executionContext).values()) {
+				if(v instanceof Closeable) {
+					try {
+						((Closeable)v).close();
+					} catch(IOException ex) {
+						// The response is already sent
+					}
+				}
+			}
+		}
+	}
+	
+	private void releaseExecutionContexts() {
+		List<Object> l;
+		synchronized(this) {
+			l = executionContexts;
+			executionContexts = null;
+		}
+		if(l!=null) {
+			for(Object executionContext: l) {
+				releaseExecutionContext(executionContext);
+			}
+		}
+	}
+	
+	/**
+	 * Check if the result of an operation can be cached, which requires all its root fields
+	 * to be declared cacheable. The fragments at the root are not expanded, and make the result
+	 * not cacheable.
+	 */
+	protected boolean isCacheable(OperationDefinition op, ResultCache cache) {
+		if(cache==null || op.getSelectionSet()==null) {
+			return false;
+		}
+		for(Selection s: op.getSelectionSet().getSelections()) {
+			if(!(s instanceof Field) || !cache.isCacheableField(((Field)s).getName())) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * Check the static complexity of a query against the limits set on the factory.
+	 * The complexity is computed once and kept with the prepared query, unless it depends on
+	 * the variables of the request. 
+	 */
+	protected QueryComplexityError checkLimits(GraphQLSchema schema, PreparedQuery prepared, String operationName, Map<String,Object> variables) {
+		QueryComplexity complexity = prepared.getComplexity();
+		if(complexity==null) {
+			complexity = factory.getQueryComplexityAnalyzer().analyze(schema,prepared.getDocument(),operationName,variables);
+			if(!complexity.isVariableDependent()) {
+				prepared.setComplexity(complexity);
+			}
+		}
+		int maxDepth = factory.getMaxQueryDepth();
+		if(maxDepth>0 && complexity.getDepth()>maxDepth) {
+			return new QueryComplexityError("The query depth "+complexity.getDepth()+" exceeds the maximum allowed depth "+maxDepth);
+		}
+		long maxCost = factory.getMaxQueryCost();
+		if(maxCost>0 && complexity.getCost()>maxCost) {
+			return new QueryComplexityError("The query cost "+complexity.getCost()+" exceeds the maximum allowed cost "+maxCost);
+		}
+		return null;
+	}
+	
+	private static InvalidSyntaxError createSyntaxError(ParseCancellationException ex) {
+		SourceLocation location = null;
+		if(ex.getCause() instanceof RecognitionException) {
+			Token token = ((RecognitionException)ex.getCause()).getOffendingToken();
+			if(token!=null) {
+				location = new SourceLocation(token.getLine(),token.getCharPositionInLine());
+			}
+		}
+		return new InvalidSyntaxError(location);
+	}
 }
@@ -22,13 +22,31 @@
 
 package com.darwino.graphsql.service;
 
+import java.io.IOException;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
 
+import com.darwino.commons.httpclnt.HttpBase;
+import com.darwino.commons.security.acl.User;
 import com.darwino.commons.services.HttpService;
 import com.darwino.commons.services.HttpServiceContext;
+import com.darwino.commons.services.HttpServiceError;
 import com.darwino.commons.services.rest.RestServiceBinder;
 import com.darwino.commons.services.rest.RestServiceFactory;
+import com.darwino.graphsql.codec.BinaryCodec;
+import com.darwino.graphsql.codec.CborCodec;
+import com.darwino.graphsql.json.JsonAccessor;
+import com.darwino.graphsql.metrics.Metrics;
+import com.darwino.graphsql.metrics.MetricsRegistry;
+import com.darwino.graphsql.metrics.MetricsService;
+import com.darwino.graphsql.util.ConcurrencyLimitedExecutor;
+import com.darwino.graphsql.util.ExecutorUtil;
 
+import graphql.GraphQL;
+import graphql.execution.ExecutionStrategy;
+import graphql.execution.ExecutorServiceExecutionStrategy;
+import graphql.execution.batched.BatchedExecutionStrategy;
 import graphql.schema.GraphQLSchema;
 
 
@@ -39,17 +57,627 @@ import graphql.schema.GraphQLSchema;
  */
 public class GraphQLServiceFactory extends RestServiceFactory {
 	
+	public static final int DEFAULT_QUERYCACHE_SIZE	= 500;
+	public static final int DEFAULT_REQUEST_CONCURRENCY	= 8;
+	public static final int DEFAULT_MAX_BATCH_SIZE		= 50;
+	
 	private GraphQLSchema schema;	
+	private int queryCacheSize = DEFAULT_QUERYCACHE_SIZE;
+	private ExecutionStrategy queryStrategy;
+	private ExecutionStrategy mutationStrategy;
+	private boolean streamingResponse;
+	private PersistedQueryStore persistedQueryStore;
+	private int maxQueryDepth;
+	private long maxQueryCost;
+	private int jsonMemoSize;
+	private QueryComplexityAnalyzer queryComplexityAnalyzer = new QueryComplexityAnalyzer();
+	private boolean parallelExecution;
+	private int maxRequestConcurrency = DEFAULT_REQUEST_CONCURRENCY;
+	private volatile ExecutorService executor;
+	
+	private volatile GraphQL graphQL;
+	private volatile GraphQLQueryCache queryCache;
+	private volatile SchemaIntrospection schemaIntrospection;
+	private ResultCache resultCache;
+	private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+	private boolean parallelBatch;
+	private SchemaRegistry schemaRegistry;
+	private List<BinaryCodec> binaryCodecs = new CopyOnWriteArrayList<BinaryCodec>();
+	private AdmissionController admissionController;
+	private long defaultTimeout;
+	private long maxTimeout;
+	private final MetricsRegistry metrics = new MetricsRegistry();
+	private String metricsName;
+	private String metricsAccessToken;
 	
 	public GraphQLServiceFactory(String path, GraphQLSchema schema) {
 		super(path);
 		this.schema = schema;
+		this.metricsName = createMetricsName(path);
+		initBinaryCodecs(binaryCodecs);
+	}
+	
+	/**
+	 * Create a factory serving the schemas of a registry.
+	 * The schema of a request is selected by {@link #getSchemaKey(HttpServiceContext)}.
+	 */
+	public GraphQLServiceFactory(String path, SchemaRegistry schemaRegistry) {
+		super(path);
+		this.schemaRegistry = schemaRegistry;
+		this.metricsName = createMetricsName(path);
+		initBinaryCodecs(binaryCodecs);
 	}
 	
+	protected void initBinaryCodecs(List<BinaryCodec> codecs) {
+		codecs.add(new CborCodec());
+	}
+	
+	/**
+	 * Return the default schema of the factory.
+	 */
 	public GraphQLSchema getSchema() {
 		return schema;
 	}
 	
+	/**
+	 * Return the schema used by a request.
+	 * This is called once per request, which then keeps using the same schema even if
+	 * the registry is updated in the meantime.
+	 */
+	public GraphQLSchema getSchema(HttpServiceContext context) {
+		if(schemaRegistry!=null) {
+			String key = getSchemaKey(context);
+			if(key!=null) {
+				GraphQLSchema s = schemaRegistry.getSchema(key);
+				if(s==null) {
+					throw HttpServiceError.error(null,HttpBase.SC_NOT_FOUND,"Unknown GraphQL schema {0}",key);
+				}
+				return s;
+			}
+		}
+		if(schema==null) {
+			throw HttpServiceError.error(null,HttpBase.SC_NOT_FOUND,"No GraphQL schema is available for this request");
+		}
+		return schema;
+	}
+	
+	/**
+	 * Return the registry key of the schema used by a request, generally computed from
+	 * the tenant and the application of the request using {@link SchemaRegistry#getKey(String, String)}.
+	 * By default, this returns null and the default schema of the factory is used.
+	 */
+	protected String getSchemaKey(HttpServiceContext context) {
+		return null;
+	}
+	
+	public AdmissionController getAdmissionController() {
+		return admissionController;
+	}
+	
+	/**
+	 * Set the controller limiting the number of requests executed at the same time.
+	 * When null, which is the default, all the requests are executed as they come.
+	 */
+	public synchronized void setAdmissionController(AdmissionController admissionController) {
+		if(this.admissionController!=null) {
+			this.admissionController.unregisterGauges(metrics, metricsName);
+		}
+		this.admissionController = admissionController;
+		if(admissionController!=null) {
+			admissionController.registerGauges(metrics, metricsName);
+		}
+	}
+	
+	/**
+	 * Return the key of a request for the admission quotas.
+	 * By default, this is the user, so a single user cannot take all the slots. When the
+	 * factory serves several schemas, the quota of a user is per tenant application. The
+	 * anonymous requests share the quota of the tenant application, or have no quota when
+	 * there is a single schema.
+	 */
+	protected String getAdmissionKey(HttpServiceContext context) {
+		String schemaKey = getSchemaKey(context);
+		String userKey = getUserKey(context);
+		if(userKey==null) {
+			return schemaKey;
+		}
+		return schemaKey!=null ? schemaKey+"/"+userKey : userKey;
+	}
+	
+	/**
+	 * Return the metrics of the requests served by this factory.
+	 * They are disabled by default, and enabled with {@link MetricsRegistry#setEnabled(boolean)}.
+	 */
+	public MetricsRegistry getMetrics() {
+		return metrics;
+	}
+	
+	public String getMetricsName() {
+		return metricsName;
+	}
+	
+	/**
+	 * Set the name prefixing the gauges of this factory, like the admission gauges.
+	 * By default, this is computed from the path of the factory (ex: /graphql -> graphql).
+	 */
+	public synchronized void setMetricsName(String metricsName) {
+		if(admissionController!=null) {
+			admissionController.unregisterGauges(metrics, this.metricsName);
+			admissionController.registerGauges(metrics, metricsName);
+		}
+		this.metricsName = metricsName;
+	}
+	
+	private static String createMetricsName(String path) {
+		StringBuilder b = new StringBuilder();
+		if(path!=null) {
+			for(int i=0; i<path.length(); i++) {
+				char c = path.charAt(i);
+				if((c>='a' && c<='z') || (c>='A' && c<='Z') || (c>='0' && c<='9')) {
+					b.append(c);
+				} else if(b.length()>0 && b.charAt(b.length()-1)!='_') {
+					b.append('_');
+				}
+			}
+		}
+		if(b.length()>0 && b.charAt(b.length()-1)=='_') {
+			b.setLength(b.length()-1);
+		}
+		if(b.length()==0) {
+			b.append("service");
+		} else if(Character.isDigit(b.charAt(0))) {
+			b.insert(0,"service_");
+		}
+		return b.toString();
+	}
+	
+	public String getMetricsAccessToken() {
+		return metricsAccessToken;
+	}
+	
+	/**
+	 * Set the token a client must send as a bearer token to read the metrics.
+	 * When null, which is the default, the metrics service refuses all the requests.
+	 */
+	public void setMetricsAccessToken(String metricsAccessToken) {
+		this.metricsAccessToken = metricsAccessToken;
+	}
+	
+	public long getDefaultTimeout() {
+		return defaultTimeout;
+	}
+	
+	/**
+	 * Set the time, in milliseconds, a request can run before it is interrupted and returns
+	 * partial data. A value <=0, which is the default, means no deadline.
+	 */
+	public void setDefaultTimeout(long defaultTimeout) {
+		this.defaultTimeout = defaultTimeout;
+	}
+	
+	public long getMaxTimeout() {
+		return maxTimeout;
+	}
+	
+	/**
+	 * Set the maximum timeout, in milliseconds, a request can ask for.
+	 * A value <=0, which is the default, means no maximum.
+	 * @see GraphQLService#TIMEOUT_HEADER
+	 */
+	public void setMaxTimeout(long maxTimeout) {
+		this.maxTimeout = maxTimeout;
+	}
+	
+	public SchemaRegistry getSchemaRegistry() {
+		return schemaRegistry;
+	}
+	
+	public void setSchemaRegistry(SchemaRegistry schemaRegistry) {
+		this.schemaRegistry = schemaRegistry;
+	}
+	
+	public int getQueryCacheSize() {
+		return queryCacheSize;
+	}
+	
+	/**
+	 * Set the maximum number of prepared queries kept in the cache.
+	 * A value <=0 disables the cache. 
+	 */
+	public void setQueryCacheSize(int queryCacheSize) {
+		this.queryCacheSize = queryCacheSize;
+		this.queryCache = null;
+	}
+	
+	/**
+	 * Return the cache of the queries prepared against this factory schema.
+	 * This returns null if the cache is disabled. 
+	 */
+	public GraphQLQueryCache getQueryCache() {
+		if(queryCacheSize<=0) {
+			return null;
+		}
+		GraphQLQueryCache c = queryCache;
+		if(c==null) {
+			synchronized(this) {
+				c = queryCache;
+				if(c==null) {
+					c = queryCache = new GraphQLQueryCache(queryCacheSize);
+				}
+			}
+		}
+		return c;
+	}
+	
+	/**
+	 * Return the cache of the queries prepared against a schema, either the factory schema
+	 * or a schema from the registry.
+	 * This returns null if the schema is unknown, or if the cache is disabled. 
+	 */
+	public GraphQLQueryCache getQueryCache(GraphQLSchema schema) {
+		if(schema==this.schema) {
+			return getQueryCache();
+		}
+		return schemaRegistry!=null ? schemaRegistry.getQueryCache(schema) : null;
+	}
+	
+	public ResultCache getResultCache() {
+		return resultCache;
+	}
+	
+	/**
+	 * Set the cache used for the results of the GET requests.
+	 * The cache is disabled by default, as it requires the data fetchers to record the data they read.
+	 * Only the queries on the fields declared with {@link ResultCache#addCacheableFields(String...)}
+	 * are cached.
+	 */
+	public void setResultCache(ResultCache resultCache) {
+		this.resultCache = resultCache;
+	}
+	
+	/**
+	 * Return the scope a cached result is shared in.
+	 * The results, and their ETags, are only shared between the requests with the same scope. By
+	 * default, this is the user, as the data returned by a query depends on its access rights.
+	 * This can be overridden to share the results more widely (ex: per tenant, when the data is
+	 * the same for all the users), or to add the tenant to the user.
+	 */
+	protected String getResultCacheScope(HttpServiceContext context) {
+		return getUserKey(context);
+	}
+	
+	/**
+	 * Return a key identifying the user of a request, or null if there is none.
+	 */
+	protected String getUserKey(HttpServiceContext context) {
+		User user = context.getUser();
+		return user!=null ? user.getDn() : null;
+	}
+	
+	/**
+	 * Return the precomputed introspection result for the current schema.
+	 * It is computed on first access, and again only when the schema changes.
+	 */
+	public SchemaIntrospection getSchemaIntrospection() throws IOException {
+		GraphQLSchema schema = getSchema();
+		SchemaIntrospection si = schemaIntrospection;
+		if(si==null || si.getSchema()!=schema) {
+			synchronized(this) {
+				si = schemaIntrospection;
+				if(si==null || si.getSchema()!=schema) {
+					si = schemaIntrospection = new SchemaIntrospection(schema);
+				}
+			}
+		}
+		return si;
+	}
+	
+	/**
+	 * Return the precomputed introspection result for a schema, either the factory schema
+	 * or a schema from the registry.
+	 */
+	public SchemaIntrospection getSchemaIntrospection(GraphQLSchema schema) throws IOException {
+		if(schema==this.schema) {
+			return getSchemaIntrospection();
+		}
+		if(schemaRegistry!=null) {
+			return schemaRegistry.getSchemaIntrospection(schema);
+		}
+		return new SchemaIntrospection(schema);
+	}
+	
+	/**
+	 * Return the GraphQL instance shared by all the requests. 
+	 */
+	public GraphQL getGraphQL() {
+		GraphQL g = graphQL;
+		if(g==null) {
+			synchronized(this) {
+				g = graphQL;
+				if(g==null) {
+					g = graphQL = new GraphQL(getSchema(),getQueryStrategy(),getMutationStrategy());
+				}
+			}
+		}
+		return g;
+	}
+	
+	/**
+	 * Return the strategy used to execute the queries.
+	 * A null value means the graphql-java default strategy. 
+	 */
+	public ExecutionStrategy getQueryStrategy() {
+		return queryStrategy;
+	}
+	
+	/**
+	 * Set the strategy used to execute the queries.
+	 * @throws IllegalStateException if the strategy is batched while parallel execution is enabled
+	 */
+	public void setQueryStrategy(ExecutionStrategy queryStrategy) {
+		if(parallelExecution && queryStrategy instanceof BatchedExecutionStrategy) {
+			throw new IllegalStateException(BATCHED_PARALLEL_ERROR);
+		}
+		this.queryStrategy = queryStrategy;
+		this.graphQL = null;
+	}
+	
+	/**
+	 * Return the strategy used to execute the mutations.
+	 * A null value means the graphql-java default strategy. 
+	 */
+	public ExecutionStrategy getMutationStrategy() {
+		return mutationStrategy;
+	}
+	
+	public void setMutationStrategy(ExecutionStrategy mutationStrategy) {
+		this.mutationStrategy = mutationStrategy;
+		this.graphQL = null;
+	}
+	
+	/**
+	 * Execute the queries level by level, so the batched data fetchers (ex: the JSON store
+	 * Document field) can resolve all the values of a level at once.
+	 * 
+	 * Batched execution cannot be combined with parallel execution, which uses its own strategy.
+	 * The request deadline is then only checked at the root by the execution strategy, and
+	 * then by the data fetchers reading from the store.
+	 * @throws IllegalStateException if parallel execution is enabled
+	 */
+	public void setBatchedExecution(boolean batched) {
+		setQueryStrategy(batched ? new BatchedExecutionStrategy() : null);
+	}
+	
+	public boolean isBatchedExecution() {
+		return queryStrategy instanceof BatchedExecutionStrategy;
+	}
+	
+	public boolean isParallelExecution() {
+		return parallelExecution;
+	}
+	
+	/**
+	 * Resolve the independent fields of a query concurrently, using the factory executor.
+	 * Mutations are always executed serially.
+	 * 
+	 * Parallel execution cannot be combined with batched execution, as each uses its own strategy.
+	 * @throws IllegalStateException if batched execution is enabled
+	 */
+	public void setParallelExecution(boolean parallelExecution) {
+		if(parallelExecution && isBatchedExecution()) {
+			throw new IllegalStateException(BATCHED_PARALLEL_ERROR);
+		}
+		this.parallelExecution = parallelExecution;
+	}
+	
+	private static final String BATCHED_PARALLEL_ERROR = "Batched execution and parallel execution cannot be enabled together";
+	
+	public int getMaxRequestConcurrency() {
+		return maxRequestConcurrency;
+	}
+	
+	/**
+	 * Set the maximum number of fields of a single request resolved at the same time.
+	 * When the limit is reached, the fields are resolved by the requesting thread.
+	 */
+	public void setMaxRequestConcurrency(int maxRequestConcurrency) {
+		this.maxRequestConcurrency = maxRequestConcurrency;
+	}
+	
+	/**
+	 * Return the executor shared by all the requests to resolve fields in parallel.
+	 * By default, this uses virtual threads when available.
+	 */
+	public ExecutorService getExecutor() {
+		ExecutorService e = executor;
+		if(e==null) {
+			synchronized(this) {
+				e = executor;
+				if(e==null) {
+					e = executor = ExecutorUtil.newFieldExecutor();
+				}
+			}
+		}
+		return e;
+	}
+	
+	public void setExecutor(ExecutorService executor) {
+		this.executor = executor;
+	}
+	
+	/**
+	 * Create the strategy used to execute the queries of a request.
+	 * With parallel execution, each request gets its own strategy, bounded by the request concurrency.
+	 */
+	public ExecutionStrategy createQueryStrategy() {
+		return createQueryStrategy(parallelExecution ? createRequestExecutor() : null);
+	}
+	
+	/**
+	 * Create the strategy used to execute a query, using the executor of its request.
+	 * The executor is only used with parallel execution.
+	 */
+	public ExecutionStrategy createQueryStrategy(ExecutorService requestExecutor) {
+		if(parallelExecution && requestExecutor!=null) {
+			return new ExecutorServiceExecutionStrategy(requestExecutor);
+		}
+		return getQueryStrategy();
+	}
+	
+	/**
+	 * Create the executor used by a single request.
+	 * This can be overridden to propagate thread bound state to the threads resolving the fields.
+	 * The objects shared by the fields of a request must be thread safe: the JSON store context,
+	 * for example, gives each of its sessions to one store call at a time. To let the store reads
+	 * overlap, it must be created with a session source opening a session per concurrent call.
+	 */
+	protected ExecutorService createRequestExecutor() {
+		return new ConcurrencyLimitedExecutor(getExecutor(),getMaxRequestConcurrency()) {
+			@Override
+			protected Runnable wrap(Runnable task) {
+				// The fields record their metrics in the registry of the request
+				return Metrics.wrap(task);
+			}
+		};
+	}
+	
+	public int getMaxBatchSize() {
+		return maxBatchSize;
+	}
+	
+	/**
+	 * Set the maximum number of operations in a batched POST request.
+	 * Batched requests are rejected when this is 0.
+	 */
+	public void setMaxBatchSize(int maxBatchSize) {
+		this.maxBatchSize = maxBatchSize;
+	}
+	
+	public boolean isParallelBatch() {
+		return parallelBatch;
+	}
+	
+	/**
+	 * Execute the operations of a batched request concurrently, using the factory executor.
+	 * The number of operations running at the same time is limited by the request concurrency.
+	 */
+	public void setParallelBatch(boolean parallelBatch) {
+		this.parallelBatch = parallelBatch;
+	}
+	
+	/**
+	 * Return the binary encodings supported in addition to JSON.
+	 * 
+	 * A response is encoded with a binary codec when the Accept header of the request
+	 * prefers its content type, and a POST body is decoded by the codec matching its
+	 * Content-Type. CBOR is available by default. The list can be modified to add or
+	 * remove codecs.
+	 */
+	public List<BinaryCodec> getBinaryCodecs() {
+		return binaryCodecs;
+	}
+	
+	/**
+	 * Return the codec of a content type, or null if the content type is not a supported binary encoding.
+	 */
+	public BinaryCodec getBinaryCodec(String contentType) {
+		if(contentType!=null) {
+			int sep = contentType.indexOf(';');
+			String media = (sep>=0 ? contentType.substring(0,sep) : contentType).trim();
+			for(BinaryCodec c: binaryCodecs) {
+				if(c.getContentType().equalsIgnoreCase(media)) {
+					return c;
+				}
+			}
+		}
+		return null;
+	}
+	
+	public boolean isStreamingResponse() {
+		return streamingResponse;
+	}
+	
+	/**
+	 * Stream the JSON response while it is being generated, instead of first building
+	 * it in memory. This reduces the memory used by large results, and the time to
+	 * the first byte.
+	 */
+	public void setStreamingResponse(boolean streamingResponse) {
+		this.streamingResponse = streamingResponse;
+	}
+	
+	public PersistedQueryStore getPersistedQueryStore() {
+		return persistedQueryStore;
+	}
+	
+	/**
+	 * Set the store used to resolve persisted queries.
+	 * When null, which is the default, persisted queries are not supported.
+	 */
+	public void setPersistedQueryStore(PersistedQueryStore persistedQueryStore) {
+		this.persistedQueryStore = persistedQueryStore;
+	}
+	
+	public int getMaxQueryDepth() {
+		return maxQueryDepth;
+	}
+	
+	/**
+	 * Set the maximum depth of the queries. A value <=0 means no limit.
+	 */
+	public void setMaxQueryDepth(int maxQueryDepth) {
+		this.maxQueryDepth = maxQueryDepth;
+	}
+	
+	public int getJsonMemoSize() {
+		return jsonMemoSize;
+	}
+	
+	/**
+	 * Set the maximum number of path results memoized by each JSON accessor of a request.
+	 * This saves the evaluation of the paths read several times from the same object, for
+	 * example through aliases. A value <=0, which is the default, disables the memoization.
+	 * The memo size is stored in the execution context, which must then be a map.
+	 * @see JsonAccessor
+	 */
+	public void setJsonMemoSize(int jsonMemoSize) {
+		this.jsonMemoSize = jsonMemoSize;
+	}
+	
+	/**
+	 * Return the memo size of the JSON accessors for a request.
+	 * By default, this is the size set on the factory.
+	 */
+	protected int getJsonMemoSize(HttpServiceContext context) {
+		return jsonMemoSize;
+	}
+	
+	public long getMaxQueryCost() {
+		return maxQueryCost;
+	}
+	
+	/**
+	 * Set the maximum estimated cost of the queries. A value <=0 means no limit.
+	 * @see QueryComplexityAnalyzer
+	 */
+	public void setMaxQueryCost(long maxQueryCost) {
+		this.maxQueryCost = maxQueryCost;
+	}
+	
+	/**
+	 * Return the analyzer used to compute the query costs.
+	 * The field weights can be customized through this object, before the service starts
+	 * serving requests: the complexity of a query is computed once and then cached.
+	 */
+	public QueryComplexityAnalyzer getQueryComplexityAnalyzer() {
+		return queryComplexityAnalyzer;
+	}
+	
+	public void setQueryComplexityAnalyzer(QueryComplexityAnalyzer queryComplexityAnalyzer) {
+		this.queryComplexityAnalyzer = queryComplexityAnalyzer;
+		this.queryCache = null;
+	}
+	
 	@Override
 	protected void createServicesBinders(List<RestServiceBinder> binders) {
 		/////////////////////////////////////////////////////////////////////////////////
@@ -67,9 +695,29 @@ public class GraphQLServiceFactory extends RestServiceFactory {
 				return newGraphQLService(true);
 			}
 		});
+		// Metrics, only exposed when collected
+		if(metrics.isEnabled()) {
+			binders.add(new RestServiceBinder("metrics") {
+				@Override
+				public HttpService createService(HttpServiceContext context, String[] parts) {
+					return newMetricsService(context);
+				}
+			});
+		}
 	}
 	
 	protected GraphQLService newGraphQLService(boolean schemaJson) {
-		return new GraphQLService(getSchema(),schemaJson);
+		return new GraphQLService(this,schemaJson);
+	}
+	
+	/**
+	 * Create the service emitting the metrics of this factory.
+	 * 
+	 * The service requires the access token of the factory. This can be overridden to use
+	 * another check, for example by extending {@link MetricsService#isAuthorized(HttpServiceContext)}
+	 * to allow the administrators.
+	 */
+	protected HttpService newMetricsService(HttpServiceContext context) {
+		return new MetricsService(metrics,metricsAccessToken);
 	}
 }
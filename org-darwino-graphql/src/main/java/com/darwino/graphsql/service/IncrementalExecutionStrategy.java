@@ -0,0 +1,142 @@
+/*!COPYRIGHT HEADER! 
+ *
+ * (c) Copyright Darwino Inc. 2014-2016.
+ *
+ * Licensed under The MIT License (https://opensource.org/licenses/MIT)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial 
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT 
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, 
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.darwino.graphsql.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import graphql.ExecutionResult;
+import graphql.ExecutionResultImpl;
+import graphql.GraphQLError;
+import graphql.execution.ExecutionContext;
+import graphql.execution.ExecutionStrategy;
+import graphql.execution.FieldCollector;
+import graphql.language.Field;
+import graphql.schema.GraphQLObjectType;
+
+
+/**
+ * Execution strategy resolving the deferred parts of an incremental query.
+ * 
+ * The initial document selects a placeholder in place of each deferred fragment or streamed
+ * field. When the strategy executes the fields of an object holding placeholders, it removes
+ * them from the fields, records the object with its type, and puts the index of the record in
+ * the result in place of the placeholders. A part is then executed on the recorded objects,
+ * so its ancestors are not resolved again, and the paths of the incremental payloads designate
+ * the objects actually returned by the initial payload.
+ * 
+ * Like the deadline strategy, this relies on the strategy being called for the fields of each
+ * nested object, which the batched strategy does not do.
+ */
+public class IncrementalExecutionStrategy extends ExecutionStrategy {
+	
+	/**
+	 * An object holding a deferred part.
+	 */
+	private static final class Source {
+		final GraphQLObjectType type;
+		final Object value;
+		Source(GraphQLObjectType type, Object value) {
+			this.type = type;
+			this.value = value;
+		}
+	}
+	
+	private final ExecutionStrategy delegate;
+	// The fields can be resolved by several threads
+	private final List<Source> sources = new ArrayList<Source>();
+	private volatile ExecutionContext executionContext;
+	
+	public IncrementalExecutionStrategy(ExecutionStrategy delegate) {
+		this.delegate = delegate;
+	}
+	
+	public ExecutionStrategy getDelegate() {
+		return delegate;
+	}
+
+	@Override
+	public ExecutionResult execute(ExecutionContext executionContext, GraphQLObjectType parentType, Object source, Map<String,List<Field>> fields) {
+		if(this.executionContext==null) {
+			// The root call, the parts are executed with the same context
+			this.executionContext = executionContext;
+		}
+		List<String> placeholders = null;
+		for(String key: fields.keySet()) {
+			if(IncrementalQuery.isPlaceholder(key)) {
+				if(placeholders==null) {
+					placeholders = new ArrayList<String>();
+				}
+				placeholders.add(key);
+			}
+		}
+		if(placeholders==null) {
+			return delegate.execute(executionContext,parentType,source,fields);
+		}
+		
+		Map<String,List<Field>> actual = new LinkedHashMap<String,List<Field>>(fields);
+		for(String p: placeholders) {
+			actual.remove(p);
+		}
+		ExecutionResult result = delegate.execute(executionContext,parentType,source,actual);
+		if(result.getData() instanceof Map<?,?>) {
+			Integer index;
+			synchronized(sources) {
+				index = sources.size();
+				sources.add(new Source(parentType,source));
+			}
+			@SuppressWarnings("unchecked")
+			Map<String,Object> data = (Map<String,Object>)result.getData();
+			for(String p: placeholders) {
+				data.put(p,index);
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Execute a part on one of the objects recorded during the initial execution.
+	 * The parts must be executed one at a time, as they share the execution context and its
+	 * error list.
+	 * @param index the index found in the initial data in place of the placeholder of the part
+	 */
+	public ExecutionResult executePart(IncrementalQuery.Part part, Object index) {
+		Source source;
+		synchronized(sources) {
+			if(!(index instanceof Integer) || (Integer)index>=sources.size()) {
+				throw new IllegalArgumentException("Unknown deferred object "+index);
+			}
+			source = sources.get((Integer)index);
+		}
+		Map<String,List<Field>> fields = new LinkedHashMap<String,List<Field>>();
+		new FieldCollector().collectFields(executionContext,source.type,part.getSelectionSet(),new ArrayList<String>(),fields);
+		int errorCount = executionContext.getErrors().size();
+		ExecutionResult result = execute(executionContext,source.type,source.value,fields);
+		List<GraphQLError> allErrors = executionContext.getErrors();
+		List<GraphQLError> errors = new ArrayList<GraphQLError>(allErrors.subList(errorCount,allErrors.size()));
+		return new ExecutionResultImpl(result.getData(),errors);
+	}
+}
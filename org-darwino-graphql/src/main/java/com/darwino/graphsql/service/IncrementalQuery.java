@@ -0,0 +1,638 @@
+/*!COPYRIGHT HEADER! 
+ *
+ * (c) Copyright Darwino Inc. 2014-2016.
+ *
+ * Licensed under The MIT License (https://opensource.org/licenses/MIT)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial 
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT 
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, 
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.darwino.graphsql.service;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import graphql.GraphQLError;
+import graphql.language.Argument;
+import graphql.language.ArrayValue;
+import graphql.language.BooleanValue;
+import graphql.language.Definition;
+import graphql.language.Directive;
+import graphql.language.Document;
+import graphql.language.Field;
+import graphql.language.FragmentDefinition;
+import graphql.language.FragmentSpread;
+import graphql.language.InlineFragment;
+import graphql.language.IntValue;
+import graphql.language.ObjectField;
+import graphql.language.ObjectValue;
+import graphql.language.OperationDefinition;
+import graphql.language.Selection;
+import graphql.language.SelectionSet;
+import graphql.language.StringValue;
+import graphql.language.Value;
+import graphql.language.VariableDefinition;
+import graphql.language.VariableReference;
+
+
+/**
+ * Query using incremental delivery (@defer and @stream).
+ * 
+ * graphql-java does not know about these directives, so the query is split before execution
+ * into an initial document and the parts:
+ * <ul>
+ * <li>the initial document selects a placeholder in place of each deferred fragment and
+ * streamed field</li>
+ * <li>each part is a deferred fragment or a streamed field, executed by the
+ * {@link IncrementalExecutionStrategy} on the objects holding its placeholder in the initial
+ * result</li>
+ * </ul>
+ * The parts are thus resolved from the objects returned by the initial execution, and their
+ * ancestors are not resolved again.
+ * 
+ * A streamed field is executed as a separate part, and all its items are delivered after the
+ * initial payload. An initialCount greater than 0 is rejected: the initial items could only be
+ * sent by computing the whole list before the initial payload. The directives found in named
+ * fragment definitions are ignored, and the fragments are executed with their parent.
+ */
+public class IncrementalQuery {
+	
+	public static final String DEFER	= "defer";
+	public static final String STREAM	= "stream";
+	
+	// Alias of the placeholders, followed by the index of the part
+	private static final String PLACEHOLDER	= "__incremental_";
+	
+	/**
+	 * Quick check on the query text, before it is parsed.
+	 */
+	public static boolean hasDirectives(String query) {
+		return query!=null && (query.indexOf("@defer")>=0 || query.indexOf("@stream")>=0);
+	}
+	
+	/**
+	 * Check if a response key is the placeholder of a part.
+	 */
+	public static boolean isPlaceholder(String key) {
+		return key.startsWith(PLACEHOLDER);
+	}
+	
+	/**
+	 * A deferred fragment or a streamed field.
+	 */
+	public static class Part {
+		private final List<String> path;
+		private final SelectionSet selectionSet;
+		private final String placeholder;
+		private final boolean stream;
+		private final String label;
+		Part(List<String> path, Selection selection, int index, boolean stream, String label) {
+			this.path = path;
+			this.selectionSet = new SelectionSet(Collections.singletonList(selection));
+			this.placeholder = PLACEHOLDER+index;
+			this.stream = stream;
+			this.label = label;
+		}
+		/**
+		 * The path of response keys leading to the fragment, or to the streamed field.
+		 */
+		public List<String> getPath() {
+			return path;
+		}
+		/**
+		 * The selection to execute on the objects holding the part: the fragment, or the streamed field.
+		 */
+		public SelectionSet getSelectionSet() {
+			return selectionSet;
+		}
+		/**
+		 * The response key of the placeholder selected by the initial document.
+		 */
+		public String getPlaceholder() {
+			return placeholder;
+		}
+		public boolean isStream() {
+			return stream;
+		}
+		public String getLabel() {
+			return label;
+		}
+		
+		/**
+		 * Find the objects holding this part in the initial data, and remove their placeholders.
+		 * A streamed field starts as an empty list.
+		 * @return the locations of the objects, in the order of the data
+		 */
+		@SuppressWarnings("unchecked")
+		public List<Location> extractLocations(Object data) {
+			List<Location> locations = new ArrayList<Location>();
+			for(Target t: findTargets(data,stream ? path.subList(0,path.size()-1) : path)) {
+				if(t.value instanceof Map<?,?>) {
+					Map<String,Object> m = (Map<String,Object>)t.value;
+					if(m.containsKey(placeholder)) {
+						Object index = m.remove(placeholder);
+						if(stream) {
+							m.put(path.get(path.size()-1),new ArrayList<Object>());
+						}
+						locations.add(new Location(t.path,index));
+					}
+				}
+			}
+			return locations;
+		}
+		
+		/**
+		 * Create the incremental payload entry of an object holding this part.
+		 * The data is kept along with the errors, as for the regular results.
+		 * @param data the data returned by the part selection for the object
+		 * @param errors the errors, or null
+		 */
+		public Map<String,Object> createEntry(Location location, Object data, Object errors) {
+			Map<String,Object> entry;
+			if(stream) {
+				String key = path.get(path.size()-1);
+				List<Object> p = new ArrayList<Object>(location.getPath());
+				p.add(key);
+				p.add(0);
+				Object items = data instanceof Map<?,?> ? ((Map<?,?>)data).get(key) : null;
+				entry = createEntry("items",items instanceof List<?> ? items : new ArrayList<Object>(),p);
+			} else {
+				entry = createEntry("data",data,new ArrayList<Object>(location.getPath()));
+			}
+			if(errors!=null) {
+				entry.put("errors",errors);
+			}
+			return entry;
+		}
+		
+		public Map<String,Object> createErrorEntry(Location location, Object errors) {
+			return createEntry("errors",errors,new ArrayList<Object>(location!=null ? location.getPath() : path));
+		}
+		
+		private Map<String,Object> createEntry(String name, Object value, List<Object> path) {
+			Map<String,Object> entry = new LinkedHashMap<String,Object>();
+			entry.put(name,value);
+			entry.put("path",path);
+			if(label!=null) {
+				entry.put("label",label);
+			}
+			return entry;
+		}
+	}
+	
+	/**
+	 * An object holding a part in the initial data.
+	 */
+	public static final class Location {
+		private final List<Object> path;
+		private final Object index;
+		Location(List<Object> path, Object index) {
+			this.path = path;
+			this.index = index;
+		}
+		/**
+		 * The path of the object in the data, with the list indexes.
+		 */
+		public List<Object> getPath() {
+			return path;
+		}
+		/**
+		 * The index of the object recorded by the execution strategy.
+		 */
+		public Object getIndex() {
+			return index;
+		}
+	}
+	
+	private static final class Target {
+		final List<Object> path;
+		final Object value;
+		Target(List<Object> path, Object value) {
+			this.path = path;
+			this.value = value;
+		}
+	}
+	
+	/**
+	 * Find the objects designated by a path of response keys, with the list indexes
+	 * in their path. 
+	 */
+	private static List<Target> findTargets(Object data, List<String> keys) {
+		List<Target> targets = new ArrayList<Target>();
+		findTargets(data,keys,0,new ArrayList<Object>(),targets);
+		return targets;
+	}
+	private static void findTargets(Object data, List<String> keys, int index, List<Object> current, List<Target> targets) {
+		if(data==null) {
+			return;
+		}
+		if(data instanceof List<?>) {
+			List<?> l = (List<?>)data;
+			for(int i=0; i<l.size(); i++) {
+				current.add(i);
+				findTargets(l.get(i),keys,index,current,targets);
+				current.remove(current.size()-1);
+			}
+			return;
+		}
+		if(index==keys.size()) {
+			targets.add(new Target(new ArrayList<Object>(current),data));
+			return;
+		}
+		if(data instanceof Map<?,?>) {
+			String key = keys.get(index);
+			current.add(key);
+			findTargets(((Map<?,?>)data).get(key),keys,index+1,current,targets);
+			current.remove(current.size()-1);
+		}
+	}
+	
+	/**
+	 * Remove the incremental delivery directives from a document, for a regular execution.
+	 */
+	public static Document strip(Document document) {
+		Builder b = new Builder(document,null);
+		List<Definition> defs = new ArrayList<Definition>();
+		for(Definition d: document.getDefinitions()) {
+			if(d instanceof OperationDefinition) {
+				OperationDefinition op = (OperationDefinition)d;
+				defs.add(b.createOperation(op,b.copy(op.getSelectionSet())));
+			} else if(d instanceof FragmentDefinition) {
+				defs.add(b.getFragmentCopy(((FragmentDefinition)d).getName()));
+			} else {
+				defs.add(d);
+			}
+		}
+		return new Document(defs);
+	}
+	
+	/**
+	 * Split a query for incremental delivery.
+	 * Return null if the operation is not a query, or if nothing is deferred. A query using
+	 * the directives in an unsupported way is returned with errors, and must not be executed.
+	 */
+	public static IncrementalQuery create(Document document, String operationName, Map<String,Object> variables) {
+		OperationDefinition op = new PreparedQuery(document).getOperation(operationName);
+		if(op==null || op.getOperation()!=OperationDefinition.Operation.QUERY) {
+			return null;
+		}
+		Builder b = new Builder(document,variables);
+		SelectionSet initial = b.initial(op.getSelectionSet(),new ArrayList<String>());
+		if(b.parts.isEmpty() && b.errors.isEmpty()) {
+			return null;
+		}
+		// The parts are executed with the context of the initial document, which must then
+		// define their fragments and variables
+		List<SelectionSet> selections = new ArrayList<SelectionSet>();
+		selections.add(initial);
+		for(Part p: b.parts) {
+			selections.add(p.getSelectionSet());
+		}
+		return new IncrementalQuery(b.createDocument(op,initial,selections),b.createDocument(op,b.copy(op.getSelectionSet())),b.parts,b.errors);
+	}
+	
+	private final Document initialDocument;
+	private final Document fullDocument;
+	private final List<Part> parts;
+	private final List<GraphQLError> errors;
+	
+	private IncrementalQuery(Document initialDocument, Document fullDocument, List<Part> parts, List<GraphQLError> errors) {
+		this.initialDocument = initialDocument;
+		this.fullDocument = fullDocument;
+		this.parts = parts;
+		this.errors = errors;
+	}
+	
+	/**
+	 * The errors found while splitting the query, or an empty list.
+	 */
+	public List<GraphQLError> getErrors() {
+		return errors;
+	}
+	
+	public Document getInitialDocument() {
+		return initialDocument;
+	}
+	
+	/**
+	 * The whole query, without the directives, used for the validation and the limits. 
+	 */
+	public Document getFullDocument() {
+		return fullDocument;
+	}
+	
+	/**
+	 * Return the deferred fragments and the streamed fields, each executed separately.
+	 */
+	public List<Part> getParts() {
+		return parts;
+	}
+	
+	
+	private static class Builder {
+		private final Map<String,FragmentDefinition> fragments = new HashMap<String,FragmentDefinition>();
+		private final Map<String,FragmentDefinition> fragmentCopies = new HashMap<String,FragmentDefinition>();
+		private final Map<String,Object> variables;
+		private final List<Part> parts = new ArrayList<Part>();
+		private final List<GraphQLError> errors = new ArrayList<GraphQLError>();
+		
+		Builder(Document document, Map<String,Object> variables) {
+			for(Definition d: document.getDefinitions()) {
+				if(d instanceof FragmentDefinition) {
+					fragments.put(((FragmentDefinition)d).getName(),(FragmentDefinition)d);
+				}
+			}
+			this.variables = variables!=null ? variables : Collections.<String,Object>emptyMap();
+		}
+		
+		//
+		// Initial document, recording the parts
+		//
+		SelectionSet initial(SelectionSet ss, List<String> keys) {
+			List<Selection> result = new ArrayList<Selection>();
+			for(Selection s: ss.getSelections()) {
+				if(s instanceof Field) {
+					Field f = (Field)s;
+					keys.add(f.getAlias()!=null ? f.getAlias() : f.getName());
+					Directive stream = getActive(f.getDirectives(),STREAM);
+					if(stream!=null) {
+						if(getIntArgument(stream,"initialCount")>0) {
+							errors.add(new IncrementalQueryError("An initialCount greater than 0 is not supported by @stream, the items are all delivered after the initial payload",stream.getSourceLocation()));
+						}
+						result.add(addPart(keys,copy(f),true,stream));
+					} else if(f.getSelectionSet()!=null) {
+						result.add(copyField(f,initial(f.getSelectionSet(),keys)));
+					} else {
+						result.add(copy(f));
+					}
+					keys.remove(keys.size()-1);
+				} else if(s instanceof InlineFragment) {
+					InlineFragment fr = (InlineFragment)s;
+					Directive defer = getActive(fr.getDirectives(),DEFER);
+					if(defer!=null) {
+						result.add(addPart(keys,copy(fr),false,defer));
+					} else {
+						result.add(new InlineFragment(fr.getTypeCondition(),copy(fr.getDirectives()),initial(fr.getSelectionSet(),keys)));
+					}
+				} else if(s instanceof FragmentSpread) {
+					FragmentSpread sp = (FragmentSpread)s;
+					Directive defer = getActive(sp.getDirectives(),DEFER);
+					if(defer!=null) {
+						result.add(addPart(keys,copy(sp),false,defer));
+					} else {
+						result.add(copy(sp));
+					}
+				}
+			}
+			return new SelectionSet(result);
+		}
+		
+		/**
+		 * Record a part and return the placeholder selected in its place.
+		 * The placeholder is a __typename field, which is valid on any object type and keeps the
+		 * selection set from being empty. It is removed before the fields are resolved.
+		 */
+		Field addPart(List<String> keys, Selection selection, boolean stream, Directive directive) {
+			Part part = new Part(new ArrayList<String>(keys),selection,parts.size(),stream,getLabel(directive));
+			parts.add(part);
+			Field placeholder = new Field("__typename");
+			placeholder.setAlias(part.getPlaceholder());
+			return placeholder;
+		}
+		
+		//
+		// Documents
+		//
+		Document createDocument(OperationDefinition op, SelectionSet root) {
+			return createDocument(op,root,Collections.singletonList(root));
+		}
+		
+		/**
+		 * Create a document defining the fragments and the variables used by a set of selections.
+		 */
+		Document createDocument(OperationDefinition op, SelectionSet root, List<SelectionSet> selections) {
+			Set<String> usedFragments = new HashSet<String>();
+			Set<String> usedVariables = new HashSet<String>();
+			for(SelectionSet ss: selections) {
+				collect(ss,usedFragments,usedVariables);
+			}
+			
+			List<Definition> defs = new ArrayList<Definition>();
+			defs.add(createOperation(op,root,usedVariables));
+			for(String name: usedFragments) {
+				FragmentDefinition fd = getFragmentCopy(name);
+				if(fd!=null) {
+					defs.add(fd);
+				}
+			}
+			return new Document(defs);
+		}
+		
+		OperationDefinition createOperation(OperationDefinition op, SelectionSet root) {
+			Set<String> usedFragments = new HashSet<String>();
+			Set<String> usedVariables = new HashSet<String>();
+			collect(root,usedFragments,usedVariables);
+			return createOperation(op,root,usedVariables);
+		}
+		
+		OperationDefinition createOperation(OperationDefinition op, SelectionSet root, Set<String> usedVariables) {
+			OperationDefinition result = new OperationDefinition();
+			result.setName(op.getName());
+			result.setOperation(op.getOperation());
+			result.getDirectives().addAll(copy(op.getDirectives()));
+			for(VariableDefinition vd: op.getVariableDefinitions()) {
+				// Unused variables would fail the validation
+				if(usedVariables.contains(vd.getName())) {
+					result.getVariableDefinitions().add(vd);
+				}
+			}
+			result.setSelectionSet(root);
+			return result;
+		}
+		
+		FragmentDefinition getFragmentCopy(String name) {
+			FragmentDefinition copy = fragmentCopies.get(name);
+			if(copy==null) {
+				FragmentDefinition fd = fragments.get(name);
+				if(fd==null) {
+					return null;
+				}
+				copy = new FragmentDefinition(fd.getName(),fd.getTypeCondition());
+				copy.getDirectives().addAll(copy(fd.getDirectives()));
+				copy.setSelectionSet(copy(fd.getSelectionSet()));
+				fragmentCopies.put(name,copy);
+			}
+			return copy;
+		}
+		
+		void collect(SelectionSet ss, Set<String> usedFragments, Set<String> usedVariables) {
+			if(ss==null) {
+				return;
+			}
+			for(Selection s: ss.getSelections()) {
+				if(s instanceof Field) {
+					Field f = (Field)s;
+					collectArguments(f.getArguments(),usedVariables);
+					collectDirectives(f.getDirectives(),usedVariables);
+					collect(f.getSelectionSet(),usedFragments,usedVariables);
+				} else if(s instanceof InlineFragment) {
+					InlineFragment fr = (InlineFragment)s;
+					collectDirectives(fr.getDirectives(),usedVariables);
+					collect(fr.getSelectionSet(),usedFragments,usedVariables);
+				} else if(s instanceof FragmentSpread) {
+					FragmentSpread sp = (FragmentSpread)s;
+					collectDirectives(sp.getDirectives(),usedVariables);
+					if(usedFragments.add(sp.getName())) {
+						FragmentDefinition fd = getFragmentCopy(sp.getName());
+						if(fd!=null) {
+							collectDirectives(fd.getDirectives(),usedVariables);
+							collect(fd.getSelectionSet(),usedFragments,usedVariables);
+						}
+					}
+				}
+			}
+		}
+		void collectDirectives(List<Directive> directives, Set<String> usedVariables) {
+			if(directives!=null) {
+				for(Directive d: directives) {
+					collectArguments(d.getArguments(),usedVariables);
+				}
+			}
+		}
+		void collectArguments(List<Argument> arguments, Set<String> usedVariables) {
+			if(arguments!=null) {
+				for(Argument a: arguments) {
+					collectValue(a.getValue(),usedVariables);
+				}
+			}
+		}
+		void collectValue(Value v, Set<String> usedVariables) {
+			if(v instanceof VariableReference) {
+				usedVariables.add(((VariableReference)v).getName());
+			} else if(v instanceof ObjectValue) {
+				for(ObjectField f: ((ObjectValue)v).getObjectFields()) {
+					collectValue(f.getValue(),usedVariables);
+				}
+			} else if(v instanceof ArrayValue) {
+				for(Value av: ((ArrayValue)v).getValues()) {
+					collectValue(av,usedVariables);
+				}
+			}
+		}
+		
+		//
+		// Copies without the incremental delivery directives
+		//
+		SelectionSet copy(SelectionSet ss) {
+			if(ss==null) {
+				return null;
+			}
+			List<Selection> result = new ArrayList<Selection>(ss.getSelections().size());
+			for(Selection s: ss.getSelections()) {
+				result.add(copy(s));
+			}
+			return new SelectionSet(result);
+		}
+		Selection copy(Selection s) {
+			if(s instanceof Field) {
+				Field f = (Field)s;
+				return copyField(f,copy(f.getSelectionSet()));
+			}
+			if(s instanceof InlineFragment) {
+				InlineFragment fr = (InlineFragment)s;
+				return new InlineFragment(fr.getTypeCondition(),copy(fr.getDirectives()),copy(fr.getSelectionSet()));
+			}
+			if(s instanceof FragmentSpread) {
+				FragmentSpread sp = (FragmentSpread)s;
+				FragmentSpread result = new FragmentSpread(sp.getName());
+				result.getDirectives().addAll(copy(sp.getDirectives()));
+				return result;
+			}
+			return s;
+		}
+		Field copyField(Field f, SelectionSet ss) {
+			Field result = new Field(f.getName(),f.getArguments(),ss);
+			result.setAlias(f.getAlias());
+			result.setDirectives(copy(f.getDirectives()));
+			return result;
+		}
+		List<Directive> copy(List<Directive> directives) {
+			List<Directive> result = new ArrayList<Directive>();
+			if(directives!=null) {
+				for(Directive d: directives) {
+					if(!DEFER.equals(d.getName()) && !STREAM.equals(d.getName())) {
+						result.add(d);
+					}
+				}
+			}
+			return result;
+		}
+		
+		//
+		// Directive arguments
+		//
+		Directive getActive(List<Directive> directives, String name) {
+			if(directives!=null) {
+				for(Directive d: directives) {
+					if(name.equals(d.getName())) {
+						Object v = getArgument(d,"if");
+						return Boolean.FALSE.equals(v) ? null : d;
+					}
+				}
+			}
+			return null;
+		}
+		String getLabel(Directive d) {
+			Object v = getArgument(d,"label");
+			return v instanceof String ? (String)v : null;
+		}
+		int getIntArgument(Directive d, String name) {
+			Object v = getArgument(d,name);
+			return v instanceof Number ? ((Number)v).intValue() : 0;
+		}
+		Object getArgument(Directive d, String name) {
+			if(d.getArguments()!=null) {
+				for(Argument a: d.getArguments()) {
+					if(name.equals(a.getName())) {
+						Value v = a.getValue();
+						if(v instanceof VariableReference) {
+							return variables.get(((VariableReference)v).getName());
+						}
+						if(v instanceof BooleanValue) {
+							return ((BooleanValue)v).isValue();
+						}
+						if(v instanceof IntValue) {
+							BigInteger i = ((IntValue)v).getValue();
+							return i!=null ? i.intValue() : null;
+						}
+						if(v instanceof StringValue) {
+							return ((StringValue)v).getValue();
+						}
+					}
+				}
+			}
+			return null;
+		}
+	}
+}
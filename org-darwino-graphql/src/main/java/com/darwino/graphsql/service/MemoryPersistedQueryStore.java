@@ -0,0 +1,91 @@
+/*!COPYRIGHT HEADER! 
+ *
+ * (c) Copyright Darwino Inc. 2014-2016.
+ *
+ * Licensed under The MIT License (https://opensource.org/licenses/MIT)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial 
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT 
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, 
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.darwino.graphsql.service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.darwino.graphsql.util.BoundedCache;
+import com.darwino.graphsql.util.HashUtil;
+
+
+/**
+ * In memory persisted query store.
+ * 
+ * Queries added by the application are always kept. The number of queries
+ * registered by clients is bounded, so clients cannot fill the memory with registrations.
+ */
+public class MemoryPersistedQueryStore implements PersistedQueryStore {
+	
+	public static final int DEFAULT_SIZE	= 1000;
+	
+	private Map<String,String> queries;
+	private BoundedCache<String,String> registeredQueries;
+	private boolean registration;
+	
+	public MemoryPersistedQueryStore() {
+		this(DEFAULT_SIZE,true);
+	}
+	
+	public MemoryPersistedQueryStore(int maxSize, boolean registration) {
+		this.queries = new ConcurrentHashMap<String,String>();
+		this.registeredQueries = new BoundedCache<String,String>(maxSize);
+		this.registration = registration;
+	}
+	
+	public boolean isRegistration() {
+		return registration;
+	}
+	
+	@Override
+	public String getQuery(String id) {
+		String query = queries.get(id);
+		if(query==null) {
+			query = registeredQueries.get(id);
+		}
+		return query;
+	}
+	
+	@Override
+	public boolean registerQuery(String sha256Hash, String query) {
+		if(!registration) {
+			return false;
+		}
+		registeredQueries.put(sha256Hash,query);
+		return true;
+	}
+	
+	/**
+	 * Add a query with a registered id.
+	 * The query is also made available through its SHA-256 hash. 
+	 */
+	public void addQuery(String id, String query) {
+		queries.put(id,query);
+		queries.put(HashUtil.sha256Hex(query),query);
+	}
+	
+	public int size() {
+		return queries.size()+registeredQueries.size();
+	}
+}
@@ -0,0 +1,81 @@
+/*!COPYRIGHT HEADER! 
+ *
+ * (c) Copyright Darwino Inc. 2014-2016.
+ *
+ * Licensed under The MIT License (https://opensource.org/licenses/MIT)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial 
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT 
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, 
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.darwino.graphsql.service;
+
+import graphql.language.Definition;
+import graphql.language.Document;
+import graphql.language.OperationDefinition;
+
+
+/**
+ * A GraphQL query that was parsed and validated against a schema.
+ * 
+ * Prepared queries are immutable and shared across requests.
+ */
+public class PreparedQuery {
+	
+	private final Document document;
+	private volatile QueryComplexity complexity;
+	
+	public PreparedQuery(Document document) {
+		this.document = document;
+	}
+	
+	public Document getDocument() {
+		return document;
+	}
+	
+	/**
+	 * Return the complexity of the query, or null if it has not been analyzed yet. 
+	 */
+	public QueryComplexity getComplexity() {
+		return complexity;
+	}
+	
+	public void setComplexity(QueryComplexity complexity) {
+		this.complexity = complexity;
+	}
+	
+	/**
+	 * Return the operation executed for a given operation name, or null if it cannot be found.
+	 */
+	public OperationDefinition getOperation(String operationName) {
+		OperationDefinition result = null;
+		for(Definition d: document.getDefinitions()) {
+			if(d instanceof OperationDefinition) {
+				OperationDefinition op = (OperationDefinition)d;
+				if(operationName==null || operationName.length()==0) {
+					if(result!=null) {
+						// Ambiguous, the execution will fail
+						return null;
+					}
+					result = op;
+				} else if(operationName.equals(op.getName())) {
+					return op;
+				}
+			}
+		}
+		return result;
+	}
+}
@@ -0,0 +1,66 @@
+/*!COPYRIGHT HEADER! 
+ *
+ * (c) Copyright Darwino Inc. 2014-2016.
+ *
+ * Licensed under The MIT License (https://opensource.org/licenses/MIT)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial 
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT 
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, 
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.darwino.graphsql.service;
+
+
+/**
+ * Static complexity of a GraphQL operation.
+ */
+public class QueryComplexity {
+	
+	private final int depth;
+	private final long cost;
+	private final boolean variableDependent;
+	
+	public QueryComplexity(int depth, long cost) {
+		this(depth, cost, false);
+	}
+	
+	public QueryComplexity(int depth, long cost, boolean variableDependent) {
+		this.depth = depth;
+		this.cost = cost;
+		this.variableDependent = variableDependent;
+	}
+	
+	public int getDepth() {
+		return depth;
+	}
+	
+	public long getCost() {
+		return cost;
+	}
+	
+	/**
+	 * Return true if the cost was computed from the value of some variables.
+	 * Such a complexity only applies to the request it was computed for.
+	 */
+	public boolean isVariableDependent() {
+		return variableDependent;
+	}
+	
+	@Override
+	public String toString() {
+		return "depth="+depth+", cost="+cost;
+	}
+}
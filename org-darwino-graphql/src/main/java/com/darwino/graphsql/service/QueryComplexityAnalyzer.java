@@ -0,0 +1,294 @@
+/*!COPYRIGHT HEADER! 
+ *
+ * (c) Copyright Darwino Inc. 2014-2016.
+ *
+ * Licensed under The MIT License (https://opensource.org/licenses/MIT)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial 
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT 
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, 
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.darwino.graphsql.service;
+
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import graphql.language.Argument;
+import graphql.language.Definition;
+import graphql.language.Document;
+import graphql.language.Field;
+import graphql.language.FragmentDefinition;
+import graphql.language.FragmentSpread;
+import graphql.language.InlineFragment;
+import graphql.language.IntValue;
+import graphql.language.OperationDefinition;
+import graphql.language.Selection;
+import graphql.language.SelectionSet;
+import graphql.language.Value;
+import graphql.language.VariableDefinition;
+import graphql.language.VariableReference;
+import graphql.schema.GraphQLFieldDefinition;
+import graphql.schema.GraphQLList;
+import graphql.schema.GraphQLNonNull;
+import graphql.schema.GraphQLObjectType;
+import graphql.schema.GraphQLSchema;
+import graphql.schema.GraphQLType;
+
+
+/**
+ * Static query cost and depth analyzer.
+ * 
+ * The cost of a query is the sum of the cost of its fields. The fields under a list are
+ * counted once per estimated list item, either the value of the <code>first</code> argument
+ * or the default list size. For a paginated connection, the <code>first</code> argument of
+ * the connection field sizes the list of edges below it. Fields that are not explicitly
+ * weighted cost 1.
+ * 
+ * The analysis runs on a validated document, before execution. When a <code>first</code>
+ * argument is a variable, its value is taken from the request variables, or from the default
+ * value of the variable, and the complexity is flagged as depending on the variables.
+ */
+public class QueryComplexityAnalyzer {
+	
+	public static final int DEFAULT_FIELD_COST	= 1;
+	public static final int DEFAULT_LIST_SIZE	= 10;
+	
+	// Fields that read from the JSON store
+	public static final int STORE_FIELD_COST	= 10;
+	
+	// Guard against pathological fragment nesting
+	private static final int MAX_ANALYZED_DEPTH	= 128;
+	
+	private Map<String,Integer> fieldCosts = new ConcurrentHashMap<String,Integer>();
+	private int defaultFieldCost = DEFAULT_FIELD_COST;
+	private int listSize = DEFAULT_LIST_SIZE;
+	
+	public QueryComplexityAnalyzer() {
+		fieldCosts.put("Document", STORE_FIELD_COST);
+		fieldCosts.put("Documents", STORE_FIELD_COST);
+		fieldCosts.put("__typename", 0);
+	}
+	
+	public int getFieldCost(String fieldName) {
+		Integer c = fieldCosts.get(fieldName);
+		return c!=null ? c.intValue() : defaultFieldCost;
+	}
+	public void setFieldCost(String fieldName, int cost) {
+		fieldCosts.put(fieldName, cost);
+	}
+	
+	public int getDefaultFieldCost() {
+		return defaultFieldCost;
+	}
+	public void setDefaultFieldCost(int defaultFieldCost) {
+		this.defaultFieldCost = defaultFieldCost;
+	}
+	
+	public int getListSize() {
+		return listSize;
+	}
+	public void setListSize(int listSize) {
+		this.listSize = listSize;
+	}
+	
+	public QueryComplexity analyze(GraphQLSchema schema, Document document, String operationName) {
+		return analyze(schema, document, operationName, null);
+	}
+	
+	public QueryComplexity analyze(GraphQLSchema schema, Document document, String operationName, Map<String,Object> variables) {
+		OperationDefinition operation = null;
+		Map<String,FragmentDefinition> fragments = new HashMap<String,FragmentDefinition>();
+		for(Definition d: document.getDefinitions()) {
+			if(d instanceof OperationDefinition) {
+				OperationDefinition od = (OperationDefinition)d;
+				if(operation==null && (operationName==null || operationName.equals(od.getName()))) {
+					operation = od;
+				}
+			} else if(d instanceof FragmentDefinition) {
+				FragmentDefinition fd = (FragmentDefinition)d;
+				fragments.put(fd.getName(),fd);
+			}
+		}
+		if(operation==null) {
+			return new QueryComplexity(0,0);
+		}
+		
+		GraphQLObjectType root = operation.getOperation()==OperationDefinition.Operation.MUTATION ? schema.getMutationType() : schema.getQueryType();
+		Walker w = new Walker(schema,fragments,operation,variables);
+		long cost = w.selectionSet(operation.getSelectionSet(),root,1,-1);
+		return new QueryComplexity(w.maxDepth,cost,w.variableDependent);
+	}
+	
+	private class Walker {
+		
+		private GraphQLSchema schema;
+		private Map<String,FragmentDefinition> fragments;
+		private OperationDefinition operation;
+		private Map<String,Object> variables;
+		private Set<String> visiting = new HashSet<String>();
+		private int maxDepth;
+		private boolean variableDependent;
+		
+		Walker(GraphQLSchema schema, Map<String,FragmentDefinition> fragments, OperationDefinition operation, Map<String,Object> variables) {
+			this.schema = schema;
+			this.fragments = fragments;
+			this.operation = operation;
+			this.variables = variables;
+		}
+		
+		// pageSize is the 'first' argument of the parent connection field, or -1
+		long selectionSet(SelectionSet selectionSet, GraphQLObjectType parentType, int depth, long pageSize) {
+			if(selectionSet==null || depth>MAX_ANALYZED_DEPTH) {
+				return 0;
+			}
+			long cost = 0;
+			for(Selection s: selectionSet.getSelections()) {
+				if(s instanceof Field) {
+					cost = add(cost,field((Field)s,parentType,depth,pageSize));
+				} else if(s instanceof InlineFragment) {
+					InlineFragment f = (InlineFragment)s;
+					GraphQLObjectType t = parentType;
+					if(f.getTypeCondition()!=null) {
+						GraphQLType ct = schema.getType(f.getTypeCondition().getName());
+						t = ct instanceof GraphQLObjectType ? (GraphQLObjectType)ct : null;
+					}
+					cost = add(cost,selectionSet(f.getSelectionSet(),t,depth,pageSize));
+				} else if(s instanceof FragmentSpread) {
+					String name = ((FragmentSpread)s).getName();
+					FragmentDefinition fd = fragments.get(name);
+					if(fd!=null && visiting.add(name)) {
+						GraphQLObjectType t = parentType;
+						if(fd.getTypeCondition()!=null) {
+							GraphQLType ct = schema.getType(fd.getTypeCondition().getName());
+							t = ct instanceof GraphQLObjectType ? (GraphQLObjectType)ct : null;
+						}
+						// Fragments are inlined at the spread location
+						cost = add(cost,selectionSet(fd.getSelectionSet(),t,depth,pageSize));
+						visiting.remove(name);
+					}
+				}
+			}
+			return cost;
+		}
+		
+		long field(Field field, GraphQLObjectType parentType, int depth, long pageSize) {
+			if(depth>maxDepth) {
+				maxDepth = depth;
+			}
+			long cost = getFieldCost(field.getName());
+			
+			GraphQLType type = null;
+			if(parentType!=null) {
+				GraphQLFieldDefinition def = parentType.getFieldDefinition(field.getName());
+				if(def!=null) {
+					type = def.getType();
+				}
+			}
+			long multiplier = 1;
+			long childPageSize = -1;
+			long first = getFirstArgument(field);
+			type = unwrapNonNull(type);
+			if(type instanceof GraphQLList) {
+				// The list of a connection (edges) holds the page requested on the connection field
+				multiplier = first>=0 ? first : pageSize>=0 ? pageSize : listSize;
+				type = unwrapNonNull(((GraphQLList)type).getWrappedType());
+			} else if(first>=0) {
+				// Paginated connections return a page of 'first' entries, counted by their list field
+				childPageSize = first;
+			}
+			
+			if(field.getSelectionSet()!=null) {
+				long children = selectionSet(field.getSelectionSet(),type instanceof GraphQLObjectType ? (GraphQLObjectType)type : null,depth+1,childPageSize);
+				cost = add(cost,multiply(multiplier,children));
+			}
+			return cost;
+		}
+		
+		long getFirstArgument(Field field) {
+			List<Argument> args = field.getArguments();
+			if(args!=null) {
+				for(Argument a: args) {
+					if("first".equals(a.getName())) {
+						Value v = a.getValue();
+						if(v instanceof VariableReference) {
+							variableDependent = true;
+							return getVariableValue(((VariableReference)v).getName());
+						}
+						return getIntValue(v);
+					}
+				}
+			}
+			return -1;
+		}
+		
+		long getVariableValue(String name) {
+			if(variables!=null && variables.containsKey(name)) {
+				Object v = variables.get(name);
+				if(v instanceof Number) {
+					return toSize(BigInteger.valueOf(((Number)v).longValue()));
+				}
+				return -1;
+			}
+			List<VariableDefinition> defs = operation.getVariableDefinitions();
+			if(defs!=null) {
+				for(VariableDefinition d: defs) {
+					if(name.equals(d.getName())) {
+						return getIntValue(d.getDefaultValue());
+					}
+				}
+			}
+			return -1;
+		}
+		
+		long getIntValue(Value v) {
+			if(v instanceof IntValue) {
+				return toSize(((IntValue)v).getValue());
+			}
+			return -1;
+		}
+		
+		long toSize(BigInteger v) {
+			if(v!=null && v.signum()>=0) {
+				return v.min(BigInteger.valueOf(Integer.MAX_VALUE)).longValue();
+			}
+			return -1;
+		}
+		
+		// Saturating arithmetic, as nested lists can quickly overflow
+		long add(long a, long b) {
+			long r = a+b;
+			return r<0 ? Long.MAX_VALUE : r;
+		}
+		long multiply(long a, long b) {
+			if(a!=0 && b>Long.MAX_VALUE/a) {
+				return Long.MAX_VALUE;
+			}
+			return a*b;
+		}
+		
+		GraphQLType unwrapNonNull(GraphQLType type) {
+			while(type instanceof GraphQLNonNull) {
+				type = ((GraphQLNonNull)type).getWrappedType();
+			}
+			return type;
+		}
+	}
+}
@@ -0,0 +1,130 @@
+/*!COPYRIGHT HEADER! 
+ *
+ * (c) Copyright Darwino Inc. 2014-2016.
+ *
+ * Licensed under The MIT License (https://opensource.org/licenses/MIT)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial 
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT 
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, 
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.darwino.graphsql.service;
+
+import java.util.Map;
+
+
+/**
+ * Deadline of a GraphQL request.
+ * 
+ * The deadline is stored in the execution context map, so the data fetchers and the store
+ * context can check it before starting expensive work. Once the deadline is exceeded, the
+ * remaining fields are not resolved and the request returns the data already computed,
+ * with a timeout error.
+ */
+public class RequestDeadline {
+	
+	/**
+	 * Exception thrown when some work is aborted because the deadline is exceeded.
+	 */
+	public static class ExceededException extends RuntimeException {
+		private static final long serialVersionUID = 1L;
+		public ExceededException(String message) {
+			super(message);
+		}
+	}
+	
+	/**
+	 * Get the deadline of the request from the execution context.
+	 * @return the deadline, or null if the request has none
+	 */
+	public static RequestDeadline get(Object executionContext) {
+		if(executionContext instanceof Map<?,?>) {
+			return (RequestDeadline)((Map<?,?>)executionContext).get(RequestDeadline.class);
+		}
+		return null;
+	}
+	
+	/**
+	 * Store the deadline of a request in its execution context, if it is a map.
+	 */
+	@SuppressWarnings("unchecked")
+	public static void set(Object executionContext, RequestDeadline deadline) {
+		if(executionContext instanceof Map<?,?>) {
+			((Map<Object,Object>)executionContext).put(RequestDeadline.class, deadline);
+		}
+	}
+	
+	private final long timeout;
+	private final long expiresAt;
+	private volatile boolean exceeded;
+	
+	/**
+	 * Create a deadline expiring after a timeout, in milliseconds.
+	 */
+	public RequestDeadline(long timeout) {
+		this.timeout = timeout;
+		this.expiresAt = System.nanoTime()+timeout*1000000L;
+	}
+	
+	public long getTimeout() {
+		return timeout;
+	}
+	
+	public long getRemainingMillis() {
+		if(exceeded) {
+			return 0;
+		}
+		return Math.max(0,(expiresAt-System.nanoTime())/1000000L);
+	}
+	
+	/**
+	 * Check if the deadline is exceeded.
+	 * The first call returning true marks the request as timed out.
+	 */
+	public boolean isExpired() {
+		if(exceeded) {
+			return true;
+		}
+		if(System.nanoTime()-expiresAt>=0) {
+			exceeded = true;
+			return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * Expire the deadline immediately, for example when the client is known to be gone.
+	 */
+	public void cancel() {
+		exceeded = true;
+	}
+	
+	/**
+	 * Check if the request was found out of time, meaning that some of its work was skipped.
+	 */
+	public boolean isExceeded() {
+		return exceeded;
+	}
+	
+	/**
+	 * Throw an exception if the deadline is exceeded.
+	 */
+	public void check() {
+		if(isExpired()) {
+			throw new ExceededException("The request exceeded its deadline of "+timeout+"ms");
+		}
+	}
+}
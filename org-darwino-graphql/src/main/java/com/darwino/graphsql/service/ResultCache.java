@@ -0,0 +1,217 @@
+/*!COPYRIGHT HEADER! 
+ *
+ * (c) Copyright Darwino Inc. 2014-2016.
+ *
+ * Licensed under The MIT License (https://opensource.org/licenses/MIT)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial 
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT 
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, 
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.darwino.graphsql.service;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+import com.darwino.graphsql.util.BoundedCache;
+import com.darwino.graphsql.util.HashUtil;
+import com.darwino.graphsql.util.JsonStreamWriter;
+
+
+/**
+ * Cache of query results.
+ * 
+ * A result is kept with the dependencies recorded during its execution, and served again
+ * as long as the checker reports that these dependencies are unchanged. The ETag of a result
+ * is derived from the query and from the dependency stamps, so it changes as soon as
+ * one of the documents read by the query changes.
+ * 
+ * The results are only shared within a scope, which identifies who the result was computed
+ * for (ex: the user), as the data a query returns can depend on the access rights. Caching
+ * is also opt-in: only the queries whose root fields were all declared cacheable are cached.
+ */
+public class ResultCache {
+	
+	public static final int DEFAULT_SIZE	= 200;
+	
+	private static final class Key {
+		private final String scope;
+		private final String query;
+		private final String operationName;
+		private final Map<String,Object> variables;
+		private final int hash;
+		Key(String scope, String query, String operationName, Map<String,Object> variables) {
+			this.scope = scope;
+			this.query = query;
+			this.operationName = operationName;
+			this.variables = variables!=null ? variables : Collections.<String,Object>emptyMap();
+			int h = scope!=null ? scope.hashCode() : 0;
+			h = 31*h + query.hashCode();
+			h = 31*h + (operationName!=null ? operationName.hashCode() : 0);
+			h = 31*h + this.variables.hashCode();
+			this.hash = h;
+		}
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+		@Override
+		public boolean equals(Object o) {
+			if(o==this) {
+				return true;
+			}
+			if(!(o instanceof Key)) {
+				return false;
+			}
+			Key k = (Key)o;
+			return hash==k.hash
+				&& (scope==null ? k.scope==null : scope.equals(k.scope))
+				&& query.equals(k.query)
+				&& (operationName==null ? k.operationName==null : operationName.equals(k.operationName))
+				&& variables.equals(k.variables);
+		}
+	}
+	
+	public static final class Entry {
+		private final Object data;
+		private final String etag;
+		private final Map<Object,Object> dependencies;
+		Entry(Object data, String etag, Map<Object,Object> dependencies) {
+			this.data = data;
+			this.etag = etag;
+			this.dependencies = dependencies;
+		}
+		public Object getData() {
+			return data;
+		}
+		public String getETag() {
+			return etag;
+		}
+		public Map<Object,Object> getDependencies() {
+			return dependencies;
+		}
+	}
+	
+	private final BoundedCache<Key,Entry> cache;
+	private final ResultDependencies.Checker checker;
+	private final Set<String> cacheableFields = new CopyOnWriteArraySet<String>();
+	
+	public ResultCache(ResultDependencies.Checker checker) {
+		this(DEFAULT_SIZE, checker);
+	}
+	public ResultCache(int maxSize, ResultDependencies.Checker checker) {
+		this.cache = new BoundedCache<Key,Entry>(maxSize);
+		this.checker = checker;
+	}
+	
+	public ResultDependencies.Checker getChecker() {
+		return checker;
+	}
+	
+	/**
+	 * Declare root fields whose results can be cached.
+	 * No field is cacheable by default, so nothing is cached until the fields are declared.
+	 */
+	public void addCacheableFields(String... names) {
+		cacheableFields.addAll(Arrays.asList(names));
+	}
+	
+	public boolean isCacheableField(String name) {
+		return cacheableFields.contains(name);
+	}
+	
+	public Set<String> getCacheableFields() {
+		return Collections.unmodifiableSet(cacheableFields);
+	}
+	
+	/**
+	 * Return a cached result that is still up to date, or null.
+	 * Stale results are removed from the cache.
+	 * @param scope the scope the result is shared in, as returned by {@link GraphQLServiceFactory#getResultCacheScope}
+	 */
+	public Entry get(Object executionContext, String scope, String query, String operationName, Map<String,Object> variables) {
+		Key key = new Key(scope,query,operationName,variables);
+		Entry e = cache.get(key);
+		if(e!=null && !checker.isUnchanged(executionContext,e.getDependencies())) {
+			cache.remove(key);
+			return null;
+		}
+		return e;
+	}
+	
+	public Entry put(String scope, String query, String operationName, Map<String,Object> variables, Object data, ResultDependencies dependencies) {
+		Map<Object,Object> deps = dependencies.getDependencies();
+		Entry e = new Entry(data,createETag(scope,query,operationName,variables,deps),deps);
+		cache.put(new Key(scope,query,operationName,variables),e);
+		return e;
+	}
+	
+	public void clear() {
+		cache.clear();
+	}
+	
+	public int size() {
+		return cache.size();
+	}
+	
+	public int getMaxSize() {
+		return cache.getMaxSize();
+	}
+
+	public long getHitCount() {
+		return cache.getHitCount();
+	}
+
+	public long getMissCount() {
+		return cache.getMissCount();
+	}
+
+	public long getEvictionCount() {
+		return cache.getEvictionCount();
+	}
+	
+	protected String createETag(String scope, String query, String operationName, Map<String,Object> variables, Map<Object,Object> dependencies) {
+		StringWriter w = new StringWriter();
+		try {
+			JsonStreamWriter jw = new JsonStreamWriter(w);
+			jw.startArray()
+				.value(scope)
+				.value(query)
+				.value(operationName)
+				.value(variables);
+			// Sort the dependencies, as concurrent fetchers record them in any order
+			List<String> deps = new ArrayList<String>(dependencies.size());
+			for(Map.Entry<Object,Object> e: dependencies.entrySet()) {
+				deps.add(e.getKey()+"="+e.getValue());
+			}
+			Collections.sort(deps);
+			jw.value(deps);
+			jw.endArray();
+			jw.flush();
+		} catch(IOException ex) {
+			// Cannot happen with a StringWriter
+			throw new IllegalStateException(ex);
+		}
+		return "\""+HashUtil.sha256Hex(w.toString())+"\"";
+	}
+}
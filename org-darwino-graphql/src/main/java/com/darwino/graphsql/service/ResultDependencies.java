@@ -0,0 +1,106 @@
+/*!COPYRIGHT HEADER! 
+ *
+ * (c) Copyright Darwino Inc. 2014-2016.
+ *
+ * Licensed under The MIT License (https://opensource.org/licenses/MIT)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial 
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT 
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, 
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.darwino.graphsql.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ * Data a query result depends on.
+ * 
+ * When the result cache is enabled, an instance is put in the execution context map, under
+ * its class, and the data fetchers record the data they read with a stamp identifying its
+ * version (ex: a document key and its last modification date). Fetchers reading data they
+ * cannot track must mark the result as not cacheable.
+ */
+public class ResultDependencies {
+	
+	/**
+	 * Check if the recorded dependencies are still up to date.
+	 */
+	public interface Checker {
+		/**
+		 * Return true if all the dependencies still have the recorded stamps.
+		 * This is called with the execution context of the request being served.
+		 */
+		public boolean isUnchanged(Object executionContext, Map<Object,Object> dependencies);
+	}
+	
+	/**
+	 * Return the dependencies recorded by the current execution, or null if the result is not cached.
+	 */
+	public static ResultDependencies get(Object executionContext) {
+		if(executionContext instanceof Map<?,?>) {
+			Object deps = ((Map<?,?>)executionContext).get(ResultDependencies.class);
+			if(deps instanceof ResultDependencies) {
+				return (ResultDependencies)deps;
+			}
+		}
+		return null;
+	}
+	
+	// Fetchers can run concurrently, access is synchronized on the map
+	private final Map<Object,Object> dependencies = new LinkedHashMap<Object,Object>();
+	private volatile boolean uncacheable;
+	
+	public ResultDependencies() {
+	}
+	
+	/**
+	 * Record a dependency.
+	 * @param key the data that was read 
+	 * @param stamp the version of the data, or null if it does not exist
+	 */
+	public void add(Object key, Object stamp) {
+		synchronized(dependencies) {
+			dependencies.put(key,stamp);
+		}
+	}
+	
+	public Map<Object,Object> getDependencies() {
+		synchronized(dependencies) {
+			return new LinkedHashMap<Object,Object>(dependencies);
+		}
+	}
+	
+	/**
+	 * Mark the result as not cacheable.
+	 */
+	public void setUncacheable() {
+		this.uncacheable = true;
+	}
+	
+	/**
+	 * A result can be cached if it read some tracked data, and nothing that cannot be tracked.
+	 */
+	public boolean isCacheable() {
+		if(uncacheable) {
+			return false;
+		}
+		synchronized(dependencies) {
+			return !dependencies.isEmpty();
+		}
+	}
+}
@@ -0,0 +1,106 @@
+/*!COPYRIGHT HEADER! 
+ *
+ * (c) Copyright Darwino Inc. 2014-2016.
+ *
+ * Licensed under The MIT License (https://opensource.org/licenses/MIT)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial 
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT 
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, 
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.darwino.graphsql.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import com.darwino.graphsql.util.HashUtil;
+import com.darwino.graphsql.util.HttpUtil;
+import com.darwino.graphsql.util.JsonStreamWriter;
+
+import graphql.ExecutionResult;
+import graphql.GraphQL;
+import graphql.GraphQLError;
+import graphql.introspection.IntrospectionQuery;
+import graphql.schema.GraphQLSchema;
+
+
+/**
+ * Precomputed introspection result of a schema.
+ * 
+ * The introspection query is executed once, and the result is kept serialized, as plain
+ * and gzip bytes, with a strong ETag computed from the content.
+ */
+public class SchemaIntrospection {
+	
+	private final GraphQLSchema schema;
+	private final byte[] content;
+	private final byte[] gzipContent;
+	private final String etag;
+	
+	public SchemaIntrospection(GraphQLSchema schema) throws IOException {
+		this.schema = schema;
+		
+		ExecutionResult result = new GraphQL(schema).execute(IntrospectionQuery.INTROSPECTION_QUERY);
+		List<GraphQLError> errors = result.getErrors();
+		if(errors!=null && !errors.isEmpty()) {
+			throw new IOException("Error while executing the introspection query, "+errors.get(0).getMessage());
+		}
+		
+		ByteArrayOutputStream bos = new ByteArrayOutputStream(64*1024);
+		Writer w = new OutputStreamWriter(bos,"UTF-8");
+		JsonStreamWriter jw = new JsonStreamWriter(w);
+		jw.startObject()
+			.property("data", result.getData())
+		.endObject();
+		jw.flush();
+		this.content = bos.toByteArray();
+		
+		ByteArrayOutputStream gos = new ByteArrayOutputStream(content.length/4);
+		GZIPOutputStream gz = new GZIPOutputStream(gos);
+		gz.write(content);
+		gz.close();
+		this.gzipContent = gos.toByteArray();
+		
+		this.etag = "\""+HashUtil.sha256Hex(content)+"\"";
+	}
+	
+	public GraphQLSchema getSchema() {
+		return schema;
+	}
+	
+	public byte[] getContent() {
+		return content;
+	}
+	
+	public byte[] getGzipContent() {
+		return gzipContent;
+	}
+	
+	public String getETag() {
+		return etag;
+	}
+	
+	/**
+	 * Check if an If-None-Match header value matches the ETag.
+	 */
+	public boolean matches(String ifNoneMatch) {
+		return HttpUtil.matchesETag(ifNoneMatch, etag);
+	}
+}
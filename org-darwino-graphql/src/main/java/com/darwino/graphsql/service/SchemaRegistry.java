@@ -0,0 +1,242 @@
+/*!COPYRIGHT HEADER! 
+ *
+ * (c) Copyright Darwino Inc. 2014-2016.
+ *
+ * Licensed under The MIT License (https://opensource.org/licenses/MIT)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial 
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT 
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, 
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.darwino.graphsql.service;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.darwino.graphsql.json.GraphQLJsonType;
+import com.darwino.graphsql.json.JsonProvider;
+
+import graphql.schema.GraphQLSchema;
+
+
+/**
+ * Registry of the schemas served by a factory, keyed by tenant and application.
+ * 
+ * A schema is registered as a set of JSON providers and is only built when it is first
+ * requested. The built schemas are immutable and shared by all the requests. When the
+ * providers of a key change, a new registration atomically replaces the previous one:
+ * the requests being executed keep the schema they already got, while the new requests
+ * get the new schema.
+ * 
+ * Getting an already built schema does not lock. Only the first requests for a key wait
+ * for the schema to be built.
+ */
+public class SchemaRegistry {
+	
+	public static final int DEFAULT_QUERYCACHE_SIZE	= 100;
+	
+	public static String getKey(String tenant, String application) {
+		return tenant+"/"+application;
+	}
+	
+	private static final class Registration {
+		
+		final List<JsonProvider> providers;
+		volatile GraphQLSchema schema;
+		
+		Registration(List<JsonProvider> providers, GraphQLSchema schema) {
+			this.providers = providers;
+			this.schema = schema;
+		}
+	}
+	
+	// The caches bound to a built schema, discarded with it
+	private static final class SchemaCaches {
+		
+		final GraphQLQueryCache queryCache;
+		volatile SchemaIntrospection introspection;
+		
+		SchemaCaches(int queryCacheSize) {
+			this.queryCache = queryCacheSize>0 ? new GraphQLQueryCache(queryCacheSize) : null;
+		}
+	}
+	
+	private final ConcurrentHashMap<String,Registration> registrations = new ConcurrentHashMap<String,Registration>();
+	private final ConcurrentHashMap<GraphQLSchema,SchemaCaches> caches = new ConcurrentHashMap<GraphQLSchema,SchemaCaches>();
+	private int queryCacheSize = DEFAULT_QUERYCACHE_SIZE;
+	
+	public SchemaRegistry() {
+	}
+	
+	public int getQueryCacheSize() {
+		return queryCacheSize;
+	}
+	
+	/**
+	 * Set the maximum number of prepared queries kept for each schema.
+	 * A value <=0 disables the cache. This applies to the schemas built afterward.
+	 */
+	public void setQueryCacheSize(int queryCacheSize) {
+		this.queryCacheSize = queryCacheSize;
+	}
+	
+	/**
+	 * Register the providers of a schema.
+	 * The schema is built on first use. If the key is already registered, the new providers
+	 * replace the previous ones.
+	 */
+	public void register(String tenant, String application, JsonProvider...providers) {
+		register(getKey(tenant,application),providers);
+	}
+	
+	public void register(String key, JsonProvider...providers) {
+		List<JsonProvider> list = Collections.unmodifiableList(new ArrayList<JsonProvider>(Arrays.asList(providers)));
+		discard(registrations.put(key,new Registration(list,null)));
+	}
+	
+	public boolean unregister(String tenant, String application) {
+		return unregister(getKey(tenant,application));
+	}
+	
+	public boolean unregister(String key) {
+		Registration r = registrations.remove(key);
+		discard(r);
+		return r!=null;
+	}
+	
+	public boolean isRegistered(String key) {
+		return registrations.containsKey(key);
+	}
+	
+	public Set<String> getKeys() {
+		return Collections.unmodifiableSet(registrations.keySet());
+	}
+	
+	public List<JsonProvider> getProviders(String key) {
+		Registration r = registrations.get(key);
+		return r!=null ? r.providers : null;
+	}
+	
+	/**
+	 * Return the schema of a tenant application, building it if needed.
+	 * @return the schema, or null if the key is not registered
+	 */
+	public GraphQLSchema getSchema(String tenant, String application) {
+		return getSchema(getKey(tenant,application));
+	}
+	
+	public GraphQLSchema getSchema(String key) {
+		Registration r = registrations.get(key);
+		if(r==null) {
+			return null;
+		}
+		GraphQLSchema s = r.schema;
+		if(s==null) {
+			synchronized(r) {
+				s = r.schema;
+				if(s==null) {
+					s = buildSchema(key,r.providers);
+					caches.put(s,new SchemaCaches(queryCacheSize));
+					r.schema = s;
+					if(registrations.get(key)!=r) {
+						// Replaced while being built, the schema is only used by this request
+						caches.remove(s);
+					}
+				}
+			}
+		}
+		return s;
+	}
+	
+	/**
+	 * Rebuild the schema of a key and make it the current one.
+	 * 
+	 * The schema is built by the calling thread, before it replaces the current one, so the
+	 * requests are not delayed. This is generally called after a provider changed the fields
+	 * it contributes.
+	 * @return the new schema, or null if the key is not registered
+	 */
+	public GraphQLSchema reload(String key) {
+		for(;;) {
+			Registration r = registrations.get(key);
+			if(r==null) {
+				return null;
+			}
+			GraphQLSchema s = buildSchema(key,r.providers);
+			caches.put(s,new SchemaCaches(queryCacheSize));
+			if(registrations.replace(key,r,new Registration(r.providers,s))) {
+				discard(r);
+				return s;
+			}
+			// The providers were changed concurrently
+			caches.remove(s);
+		}
+	}
+	
+	/**
+	 * Build the schema from the registered providers.
+	 * By default, the JSON type is the query type. 
+	 */
+	protected GraphQLSchema buildSchema(String key, List<JsonProvider> providers) {
+		GraphQLJsonType type = new GraphQLJsonType(providers.toArray(new JsonProvider[providers.size()]));
+		return GraphQLSchema.newSchema()
+			.query(type.createType())
+			.build();
+	}
+	
+	/**
+	 * Return the cache of the queries prepared against a schema built by this registry.
+	 * This returns null if the schema is not the current schema of a key, or if the cache is disabled.
+	 */
+	public GraphQLQueryCache getQueryCache(GraphQLSchema schema) {
+		SchemaCaches c = caches.get(schema);
+		return c!=null ? c.queryCache : null;
+	}
+	
+	/**
+	 * Return the precomputed introspection result of a schema built by this registry.
+	 */
+	public SchemaIntrospection getSchemaIntrospection(GraphQLSchema schema) throws IOException {
+		SchemaCaches c = caches.get(schema);
+		if(c==null) {
+			return new SchemaIntrospection(schema);
+		}
+		SchemaIntrospection si = c.introspection;
+		if(si==null) {
+			synchronized(c) {
+				si = c.introspection;
+				if(si==null) {
+					si = c.introspection = new SchemaIntrospection(schema);
+				}
+			}
+		}
+		return si;
+	}
+	
+	private void discard(Registration r) {
+		if(r!=null) {
+			GraphQLSchema s = r.schema;
+			if(s!=null) {
+				caches.remove(s);
+			}
+		}
+	}
+}
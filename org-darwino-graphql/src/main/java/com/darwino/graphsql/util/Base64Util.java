@@ -0,0 +1,110 @@
+/*!COPYRIGHT HEADER! 
+ *
+ * (c) Copyright Darwino Inc. 2014-2016.
+ *
+ * Licensed under The MIT License (https://opensource.org/licenses/MIT)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial 
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT 
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, 
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.darwino.graphsql.util;
+
+import java.io.UnsupportedEncodingException;
+
+
+/**
+ * URL safe Base64 encoding, without padding.
+ */
+public class Base64Util {
+	
+	private static final char[] ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+	private static final int[] VALUES = new int[128];
+	static {
+		for(int i=0; i<VALUES.length; i++) {
+			VALUES[i] = -1;
+		}
+		for(int i=0; i<ALPHABET.length; i++) {
+			VALUES[ALPHABET[i]] = i;
+		}
+	}
+	
+	public static String encodeString(String s) {
+		try {
+			return encode(s.getBytes("UTF-8"));
+		} catch(UnsupportedEncodingException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+	
+	public static String decodeString(String s) {
+		try {
+			return new String(decode(s),"UTF-8");
+		} catch(UnsupportedEncodingException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+	
+	public static String encode(byte[] bytes) {
+		StringBuilder b = new StringBuilder((bytes.length*4+2)/3);
+		int i = 0;
+		for(; i+2<bytes.length; i+=3) {
+			int n = ((bytes[i]&0xFF)<<16) | ((bytes[i+1]&0xFF)<<8) | (bytes[i+2]&0xFF);
+			b.append(ALPHABET[(n>>18)&0x3F]).append(ALPHABET[(n>>12)&0x3F]).append(ALPHABET[(n>>6)&0x3F]).append(ALPHABET[n&0x3F]);
+		}
+		int rest = bytes.length-i;
+		if(rest==1) {
+			int n = (bytes[i]&0xFF)<<16;
+			b.append(ALPHABET[(n>>18)&0x3F]).append(ALPHABET[(n>>12)&0x3F]);
+		} else if(rest==2) {
+			int n = ((bytes[i]&0xFF)<<16) | ((bytes[i+1]&0xFF)<<8);
+			b.append(ALPHABET[(n>>18)&0x3F]).append(ALPHABET[(n>>12)&0x3F]).append(ALPHABET[(n>>6)&0x3F]);
+		}
+		return b.toString();
+	}
+	
+	/**
+	 * Decode a string.
+	 * @throws IllegalArgumentException if the string is not valid
+	 */
+	public static byte[] decode(String s) {
+		int len = s.length();
+		if(len%4==1) {
+			throw new IllegalArgumentException("Invalid Base64 string");
+		}
+		byte[] bytes = new byte[len*3/4];
+		int n = 0;
+		int bits = 0;
+		int count = 0;
+		for(int i=0; i<len; i++) {
+			char c = s.charAt(i);
+			int v = c<128 ? VALUES[c] : -1;
+			if(v<0) {
+				throw new IllegalArgumentException("Invalid Base64 string");
+			}
+			bits = (bits<<6) | v;
+			count += 6;
+			if(count>=8) {
+				count -= 8;
+				bytes[n++] = (byte)((bits>>count)&0xFF);
+			}
+		}
+		return bytes;
+	}
+	
+	private Base64Util() {
+	}
+}
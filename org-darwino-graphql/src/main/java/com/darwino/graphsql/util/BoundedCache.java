@@ -0,0 +1,122 @@
+/*!COPYRIGHT HEADER! 
+ *
+ * (c) Copyright Darwino Inc. 2014-2016.
+ *
+ * Licensed under The MIT License (https://opensource.org/licenses/MIT)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial 
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT 
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, 
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.darwino.graphsql.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * Bounded, concurrent cache.
+ * 
+ * Reads are lock free. When the maximum size is reached, the oldest entries are
+ * evicted first (FIFO), which is good enough for caches where the working set is
+ * much smaller than the bound.
+ */
+public class BoundedCache<K,V> {
+	
+	private final int maxSize;
+	private final ConcurrentHashMap<K,V> map;
+	private final ConcurrentLinkedQueue<K> order;
+	
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	
+	public BoundedCache(int maxSize) {
+		if(maxSize<1) {
+			throw new IllegalArgumentException("The cache size must be greater than 0");
+		}
+		this.maxSize = maxSize;
+		this.map = new ConcurrentHashMap<K,V>(Math.min(maxSize,1024));
+		this.order = new ConcurrentLinkedQueue<K>();
+	}
+	
+	public int getMaxSize() {
+		return maxSize;
+	}
+	
+	public int size() {
+		return map.size();
+	}
+	
+	public V get(K key) {
+		V value = map.get(key);
+		if(value!=null) {
+			hits.incrementAndGet();
+		} else {
+			misses.incrementAndGet();
+		}
+		return value;
+	}
+	
+	/**
+	 * Add a value to the cache.
+	 * If another thread already added a value for the same key, the existing value is kept and returned. 
+	 */
+	public V put(K key, V value) {
+		V prev = map.putIfAbsent(key, value);
+		if(prev!=null) {
+			return prev;
+		}
+		order.add(key);
+		while(map.size()>maxSize) {
+			K oldest = order.poll();
+			if(oldest==null) {
+				break;
+			}
+			if(map.remove(oldest)!=null) {
+				evictions.incrementAndGet();
+			}
+		}
+		return value;
+	}
+	
+	public V remove(K key) {
+		V value = map.remove(key);
+		if(value!=null) {
+			// Explicit removals are rare (invalidations), so the linear scan is acceptable
+			order.remove(key);
+		}
+		return value;
+	}
+	
+	public void clear() {
+		map.clear();
+		order.clear();
+	}
+
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+}
@@ -0,0 +1,116 @@
+/*!COPYRIGHT HEADER! 
+ *
+ * (c) Copyright Darwino Inc. 2014-2016.
+ *
+ * Licensed under The MIT License (https://opensource.org/licenses/MIT)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial 
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT 
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, 
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.darwino.graphsql.util;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Executor that limits the number of tasks running concurrently on a shared executor.
+ * 
+ * When the limit is reached, a task is run in the calling thread instead of being queued.
+ * This guarantees progress when tasks submit and wait for other tasks, as the GraphQL
+ * execution strategies do for nested fields.
+ * 
+ * This executor does not own the shared executor: shutting it down only prevents new tasks
+ * from being submitted.
+ */
+public class ConcurrencyLimitedExecutor extends AbstractExecutorService {
+	
+	private Executor executor;
+	private Semaphore permits;
+	private volatile boolean shutdown;
+	
+	public ConcurrencyLimitedExecutor(Executor executor, int maxConcurrency) {
+		this.executor = executor;
+		this.permits = new Semaphore(Math.max(maxConcurrency,1));
+	}
+
+	@Override
+	public void execute(final Runnable command) {
+		if(shutdown) {
+			throw new RejectedExecutionException("The executor has been shut down");
+		}
+		final Runnable task = wrap(command);
+		if(!permits.tryAcquire()) {
+			task.run();
+			return;
+		}
+		try {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						task.run();
+					} finally {
+						permits.release();
+					}
+				}
+			});
+		} catch(RejectedExecutionException ex) {
+			permits.release();
+			task.run();
+		}
+	}
+	
+	/**
+	 * Wrap a task before it is executed.
+	 * This can be overridden to propagate some thread bound state to the executing thread. 
+	 */
+	protected Runnable wrap(Runnable task) {
+		return task;
+	}
+
+	@Override
+	public void shutdown() {
+		shutdown = true;
+	}
+
+	@Override
+	public List<Runnable> shutdownNow() {
+		shutdown = true;
+		return Collections.emptyList();
+	}
+
+	@Override
+	public boolean isShutdown() {
+		return shutdown;
+	}
+
+	@Override
+	public boolean isTerminated() {
+		return shutdown;
+	}
+
+	@Override
+	public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+		return shutdown;
+	}
+}
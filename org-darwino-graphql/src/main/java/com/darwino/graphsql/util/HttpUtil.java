@@ -0,0 +1,158 @@
+/*!COPYRIGHT HEADER! 
+ *
+ * (c) Copyright Darwino Inc. 2014-2016.
+ *
+ * Licensed under The MIT License (https://opensource.org/licenses/MIT)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial 
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT 
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, 
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.darwino.graphsql.util;
+
+
+/**
+ * HTTP utilities.
+ */
+public class HttpUtil {
+	
+	/**
+	 * Check if an If-None-Match header value matches an ETag.
+	 * Weak comparison is used, as specified for If-None-Match.
+	 */
+	public static boolean matchesETag(String ifNoneMatch, String etag) {
+		if(ifNoneMatch==null || etag==null) {
+			return false;
+		}
+		for(String s: ifNoneMatch.split(",")) {
+			s = s.trim();
+			if(s.startsWith("W/")) {
+				s = s.substring(2);
+			}
+			if(s.equals("*") || s.equals(etag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	/**
+	 * Return the ETag of another representation of the same content, for example when
+	 * the content is sent with a different encoding.
+	 */
+	public static String getVariantETag(String etag, String variant) {
+		if(etag.length()>=2 && etag.endsWith("\"")) {
+			return etag.substring(0,etag.length()-1)+"-"+variant+"\"";
+		}
+		return etag+"-"+variant;
+	}
+	
+	/**
+	 * Select the media type preferred by an Accept header.
+	 * 
+	 * Each type gets the quality of the most specific media range matching it. The type with
+	 * the highest quality is selected, or the first one in the list in case of a tie.
+	 * @return the index of the selected type, or -1 if none is acceptable
+	 */
+	public static int negotiate(String accept, String... types) {
+		if(accept==null || accept.trim().length()==0) {
+			return types.length>0 ? 0 : -1;
+		}
+		float[] quality = new float[types.length];
+		int[] specificity = new int[types.length];
+		for(int i=0; i<types.length; i++) {
+			specificity[i] = -1;
+		}
+		for(String range: accept.split(",")) {
+			String[] parts = range.split(";");
+			String media = parts[0].trim().toLowerCase();
+			float q = getQuality(parts);
+			int spec;
+			if(media.equals("*/*")) {
+				spec = 0;
+			} else if(media.endsWith("/*")) {
+				spec = 1;
+			} else {
+				spec = 2;
+			}
+			for(int i=0; i<types.length; i++) {
+				if(spec>specificity[i] && matchesMediaRange(media,spec,types[i])) {
+					specificity[i] = spec;
+					quality[i] = q;
+				}
+			}
+		}
+		int best = -1;
+		for(int i=0; i<types.length; i++) {
+			if(specificity[i]>=0 && quality[i]>0 && (best<0 || quality[i]>quality[best])) {
+				best = i;
+			}
+		}
+		return best;
+	}
+	
+	/**
+	 * Check if an Accept-Encoding header accepts a content coding.
+	 * 
+	 * The coding is accepted if it is listed with a non zero quality, or if it is not listed
+	 * and the * wildcard has a non zero quality. So "gzip;q=0" refuses gzip, as well as
+	 * "*;q=0" when gzip is not listed. A missing header does not accept any coding.
+	 */
+	public static boolean acceptsEncoding(String acceptEncoding, String coding) {
+		if(acceptEncoding==null) {
+			return false;
+		}
+		float wildcard = -1;
+		for(String range: acceptEncoding.split(",")) {
+			String[] parts = range.split(";");
+			String name = parts[0].trim();
+			if(name.equalsIgnoreCase(coding)) {
+				return getQuality(parts)>0;
+			}
+			if(name.equals("*")) {
+				wildcard = getQuality(parts);
+			}
+		}
+		return wildcard>0;
+	}
+	
+	// Quality of a header element, from its q parameter
+	private static float getQuality(String[] parts) {
+		float q = 1;
+		for(int j=1; j<parts.length; j++) {
+			String p = parts[j].trim();
+			if(p.startsWith("q=") || p.startsWith("Q=")) {
+				try {
+					q = Float.parseFloat(p.substring(2).trim());
+				} catch(NumberFormatException ex) {
+					q = 0;
+				}
+			}
+		}
+		return q;
+	}
+	
+	private static boolean matchesMediaRange(String media, int specificity, String type) {
+		switch(specificity) {
+			case 0:		return true;
+			case 1:		return type.regionMatches(true,0,media,0,media.length()-1);
+			default:	return type.equalsIgnoreCase(media);
+		}
+	}
+	
+	private HttpUtil() {
+	}
+}
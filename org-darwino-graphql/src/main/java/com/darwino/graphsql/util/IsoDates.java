@@ -0,0 +1,249 @@
+/*!COPYRIGHT HEADER! 
+ *
+ * (c) Copyright Darwino Inc. 2014-2016.
+ *
+ * Licensed under The MIT License (https://opensource.org/licenses/MIT)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial 
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT 
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, 
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.darwino.graphsql.util;
+
+
+/**
+ * ISO 8601 date formatting.
+ * 
+ * The dates are formatted in UTC directly into a char buffer, and parsed directly from the
+ * string, without going through a Calendar or a DateFormat, which are both costly to create
+ * and not thread safe.
+ */
+public class IsoDates {
+	
+	private static final long MILLIS_PER_DAY	= 24L*60*60*1000;
+	
+	/**
+	 * Value returned by {@link #parseDateTime(String)} when the string has no instant.
+	 */
+	public static final long NO_DATE	= Long.MIN_VALUE;
+	
+	/**
+	 * Format a date as yyyy-MM-dd.
+	 * Returns null if the year is outside of the 0-9999 range.
+	 */
+	public static String formatDate(long millis) {
+		char[] buf = new char[10];
+		return formatDate(buf, millis) ? new String(buf) : null;
+	}
+	
+	/**
+	 * Format a date as yyyy-MM-ddTHH:mm:ss.SSSZ.
+	 * Returns null if the year is outside of the 0-9999 range.
+	 */
+	public static String formatDateTime(long millis) {
+		char[] buf = new char[24];
+		if(!formatDate(buf, millis)) {
+			return null;
+		}
+		int ms = (int)floorMod(millis, MILLIS_PER_DAY);
+		buf[10] = 'T';
+		put2(buf, 11, ms/3600000);
+		buf[13] = ':';
+		put2(buf, 14, (ms/60000)%60);
+		buf[16] = ':';
+		put2(buf, 17, (ms/1000)%60);
+		buf[19] = '.';
+		int f = ms%1000;
+		buf[20] = (char)('0'+f/100);
+		put2(buf, 21, f%100);
+		buf[23] = 'Z';
+		return new String(buf);
+	}
+	
+	/**
+	 * Check if a string starts with an ISO date (yyyy-MM-dd).
+	 */
+	public static boolean isIsoDate(String s) {
+		if(s==null || s.length()<10) {
+			return false;
+		}
+		for(int i=0; i<10; i++) {
+			char c = s.charAt(i);
+			if(i==4 || i==7) {
+				if(c!='-') {
+					return false;
+				}
+			} else if(c<'0' || c>'9') {
+				return false;
+			}
+		}
+		return s.length()==10 || s.charAt(10)=='T' || s.charAt(10)==' ';
+	}
+	
+	/**
+	 * Check if a string is a date time as formatted by {@link #formatDateTime(long)}.
+	 */
+	public static boolean isUtcDateTime(String s) {
+		return s.length()==24 && s.charAt(23)=='Z' && s.charAt(10)=='T' && s.charAt(19)=='.';
+	}
+	
+	/**
+	 * Parse an ISO 8601 date time with a time zone offset, like 2017-07-14T02:40:00.000+02:00.
+	 * The seconds and the fraction are optional, and the fraction is truncated to milliseconds.
+	 * Returns {@link #NO_DATE} if the string is not a valid date time, or if it has no offset,
+	 * as a local date time does not designate an instant.
+	 */
+	public static long parseDateTime(String s) {
+		int len = s.length();
+		if(!isIsoDate(s) || len<17 || s.charAt(13)!=':') {
+			return NO_DATE;
+		}
+		int year = parse(s, 0, 4);
+		int month = parse(s, 5, 2);
+		int day = parse(s, 8, 2);
+		int hour = parse(s, 11, 2);
+		int minute = parse(s, 14, 2);
+		int second = 0;
+		int millis = 0;
+		int pos = 16;
+		if(s.charAt(pos)==':') {
+			second = parse(s, pos+1, 2);
+			pos += 3;
+			if(pos<len && (s.charAt(pos)=='.' || s.charAt(pos)==',')) {
+				pos++;
+				int digits = 0;
+				while(pos<len && s.charAt(pos)>='0' && s.charAt(pos)<='9') {
+					if(digits<3) {
+						millis = millis*10+(s.charAt(pos)-'0');
+						digits++;
+					}
+					pos++;
+				}
+				if(digits==0) {
+					return NO_DATE;
+				}
+				for(; digits<3; digits++) {
+					millis *= 10;
+				}
+			}
+		}
+		if(month<1 || month>12 || day<1 || day>31 || hour<0 || hour>23 || minute<0 || minute>59 || second<0 || second>60) {
+			return NO_DATE;
+		}
+		if(pos>=len) {
+			// Local date time
+			return NO_DATE;
+		}
+		int offset;
+		char c = s.charAt(pos++);
+		if(c=='Z' || c=='z') {
+			offset = 0;
+		} else if(c=='+' || c=='-') {
+			int oh = parse(s, pos, 2);
+			pos += 2;
+			if(pos<len && s.charAt(pos)==':') {
+				pos++;
+			}
+			int om = 0;
+			if(pos<len) {
+				om = parse(s, pos, 2);
+				pos += 2;
+			}
+			if(oh<0 || oh>18 || om<0 || om>59) {
+				return NO_DATE;
+			}
+			offset = (oh*60+om)*60000;
+			if(c=='-') {
+				offset = -offset;
+			}
+		} else {
+			return NO_DATE;
+		}
+		if(pos!=len) {
+			return NO_DATE;
+		}
+		return daysFromCivil(year, month, day)*MILLIS_PER_DAY + hour*3600000L + minute*60000L + second*1000L + millis - offset;
+	}
+	
+	// Parse a fixed number of digits, returning -1 if they are not all digits
+	private static int parse(String s, int pos, int count) {
+		if(pos+count>s.length()) {
+			return -1;
+		}
+		int v = 0;
+		for(int i=0; i<count; i++) {
+			char c = s.charAt(pos+i);
+			if(c<'0' || c>'9') {
+				return -1;
+			}
+			v = v*10+(c-'0');
+		}
+		return v;
+	}
+	
+	// Number of days since the epoch of a civil date (proleptic Gregorian calendar)
+	private static long daysFromCivil(int year, int month, int day) {
+		long y = month<=2 ? year-1 : year;
+		long era = (y>=0 ? y : y-399) / 400;
+		long yoe = y - era*400;
+		long doy = (153*(month>2 ? month-3 : month+9)+2)/5 + day-1;
+		long doe = yoe*365 + yoe/4 - yoe/100 + doy;
+		return era*146097 + doe - 719468;
+	}
+	
+	private static boolean formatDate(char[] buf, long millis) {
+		// Civil date from the number of days since the epoch (proleptic Gregorian calendar)
+		long z = floorDiv(millis, MILLIS_PER_DAY) + 719468;
+		long era = (z>=0 ? z : z-146096) / 146097;
+		long doe = z - era*146097;
+		long yoe = (doe - doe/1460 + doe/36524 - doe/146096) / 365;
+		long doy = doe - (365*yoe + yoe/4 - yoe/100);
+		long mp = (5*doy+2) / 153;
+		int day = (int)(doy - (153*mp+2)/5 + 1);
+		int month = (int)(mp<10 ? mp+3 : mp-9);
+		long year = yoe + era*400 + (month<=2 ? 1 : 0);
+		if(year<0 || year>9999) {
+			return false;
+		}
+		int y = (int)year;
+		put2(buf, 0, y/100);
+		put2(buf, 2, y%100);
+		buf[4] = '-';
+		put2(buf, 5, month);
+		buf[7] = '-';
+		put2(buf, 8, day);
+		return true;
+	}
+	
+	private static void put2(char[] buf, int pos, int v) {
+		buf[pos] = (char)('0'+v/10);
+		buf[pos+1] = (char)('0'+v%10);
+	}
+	
+	private static long floorDiv(long x, long y) {
+		long r = x/y;
+		if((x%y)!=0 && ((x^y)<0)) {
+			r--;
+		}
+		return r;
+	}
+	private static long floorMod(long x, long y) {
+		return x - floorDiv(x, y)*y;
+	}
+	
+	private IsoDates() {
+	}
+}
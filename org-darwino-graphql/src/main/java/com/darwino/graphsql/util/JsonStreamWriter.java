@@ -0,0 +1,261 @@
+/*!COPYRIGHT HEADER! 
+ *
+ * (c) Copyright Darwino Inc. 2014-2016.
+ *
+ * Licensed under The MIT License (https://opensource.org/licenses/MIT)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial 
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT 
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, 
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.darwino.graphsql.util;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Map;
+
+import com.darwino.graphsql.json.JsonArrays;
+
+
+/**
+ * Incremental JSON writer.
+ * 
+ * Values are written as they are traversed, without creating an intermediate JSON
+ * object tree. The output is compact.
+ */
+public class JsonStreamWriter {
+	
+	private static final int MAX_DEPTH	= 256;
+	
+	private Writer writer;
+	// For each nesting level, true when no value has been written yet
+	private boolean[] first = new boolean[MAX_DEPTH];
+	private int depth;
+	private boolean afterName;
+	
+	public JsonStreamWriter(Writer writer) {
+		this.writer = writer;
+	}
+	
+	public Writer getWriter() {
+		return writer;
+	}
+	
+	public void flush() throws IOException {
+		writer.flush();
+	}
+	
+	public JsonStreamWriter startObject() throws IOException {
+		beforeValue();
+		writer.write('{');
+		push();
+		return this;
+	}
+	public JsonStreamWriter endObject() throws IOException {
+		depth--;
+		writer.write('}');
+		return this;
+	}
+	
+	public JsonStreamWriter startArray() throws IOException {
+		beforeValue();
+		writer.write('[');
+		push();
+		return this;
+	}
+	public JsonStreamWriter endArray() throws IOException {
+		depth--;
+		writer.write(']');
+		return this;
+	}
+	
+	public JsonStreamWriter name(String name) throws IOException {
+		beforeValue();
+		writeString(name);
+		writer.write(':');
+		afterName = true;
+		return this;
+	}
+	
+	public JsonStreamWriter property(String name, Object value) throws IOException {
+		name(name);
+		value(value);
+		return this;
+	}
+	
+	/**
+	 * Write a value.
+	 * Maps, collections and arrays are traversed recursively.
+	 */
+	public JsonStreamWriter value(Object value) throws IOException {
+		if(value==null) {
+			beforeValue();
+			writer.write("null");
+		} else if(value instanceof String) {
+			beforeValue();
+			writeString((String)value);
+		} else if(value instanceof Number) {
+			beforeValue();
+			writeNumber((Number)value);
+		} else if(value instanceof Boolean) {
+			beforeValue();
+			writer.write(((Boolean)value).booleanValue() ? "true" : "false");
+		} else if(value instanceof Map<?,?>) {
+			startObject();
+			for(Map.Entry<?,?> e: ((Map<?,?>)value).entrySet()) {
+				name(String.valueOf(e.getKey()));
+				value(e.getValue());
+			}
+			endObject();
+		} else if(value instanceof JsonArrays.DoubleList) {
+			// Write the primitive values without boxing
+			value(((JsonArrays.DoubleList)value).getArray());
+		} else if(value instanceof JsonArrays.BooleanList) {
+			value(((JsonArrays.BooleanList)value).getArray());
+		} else if(value instanceof Iterable<?>) {
+			startArray();
+			for(Object o: (Iterable<?>)value) {
+				value(o);
+			}
+			endArray();
+		} else if(value instanceof Object[]) {
+			startArray();
+			for(Object o: (Object[])value) {
+				value(o);
+			}
+			endArray();
+		} else if(value instanceof double[]) {
+			startArray();
+			for(double d: (double[])value) {
+				value(d);
+			}
+			endArray();
+		} else if(value instanceof boolean[]) {
+			startArray();
+			for(boolean b: (boolean[])value) {
+				value(b);
+			}
+			endArray();
+		} else {
+			beforeValue();
+			writeString(value.toString());
+		}
+		return this;
+	}
+	
+	public JsonStreamWriter value(double value) throws IOException {
+		beforeValue();
+		writeDouble(value);
+		return this;
+	}
+	
+	public JsonStreamWriter value(long value) throws IOException {
+		beforeValue();
+		writer.write(Long.toString(value));
+		return this;
+	}
+	
+	public JsonStreamWriter value(boolean value) throws IOException {
+		beforeValue();
+		writer.write(value ? "true" : "false");
+		return this;
+	}
+	
+	
+	private void push() {
+		if(depth>=MAX_DEPTH) {
+			throw new IllegalStateException("JSON value is too deeply nested");
+		}
+		first[depth++] = true;
+	}
+	
+	private void beforeValue() throws IOException {
+		if(afterName) {
+			afterName = false;
+			return;
+		}
+		if(depth>0) {
+			if(first[depth-1]) {
+				first[depth-1] = false;
+			} else {
+				writer.write(',');
+			}
+		}
+	}
+	
+	private void writeNumber(Number n) throws IOException {
+		if(n instanceof Integer || n instanceof Long || n instanceof Short || n instanceof Byte) {
+			writer.write(Long.toString(n.longValue()));
+		} else if(n instanceof BigInteger) {
+			writer.write(n.toString());
+		} else if(n instanceof BigDecimal) {
+			// Exact value, the exponent notation is valid JSON
+			writer.write(n.toString());
+		} else {
+			writeDouble(n.doubleValue());
+		}
+	}
+	
+	private void writeDouble(double d) throws IOException {
+		if(Double.isNaN(d) || Double.isInfinite(d)) {
+			writer.write("null");
+		} else if(d==(long)d && Math.abs(d)<1e15) {
+			writer.write(Long.toString((long)d));
+		} else {
+			writer.write(Double.toString(d));
+		}
+	}
+	
+	private void writeString(String s) throws IOException {
+		Writer w = writer;
+		w.write('"');
+		int len = s.length();
+		int start = 0;
+		for(int i=0; i<len; i++) {
+			char c = s.charAt(i);
+			if(c>=0x20 && c!='"' && c!='\\' && c!=0x2028 && c!=0x2029) {
+				continue;
+			}
+			if(i>start) {
+				w.write(s,start,i-start);
+			}
+			start = i+1;
+			switch(c) {
+				case '"':	w.write("\\\""); break;
+				case '\\':	w.write("\\\\"); break;
+				case '\n':	w.write("\\n"); break;
+				case '\r':	w.write("\\r"); break;
+				case '\t':	w.write("\\t"); break;
+				case '\b':	w.write("\\b"); break;
+				case '\f':	w.write("\\f"); break;
+				default: {
+					w.write("\\u");
+					String hex = Integer.toHexString(c);
+					for(int j=hex.length(); j<4; j++) {
+						w.write('0');
+					}
+					w.write(hex);
+				}
+			}
+		}
+		if(len>start) {
+			w.write(s,start,len-start);
+		}
+		w.write('"');
+	}
+}
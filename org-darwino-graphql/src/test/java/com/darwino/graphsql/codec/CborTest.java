@@ -0,0 +1,197 @@
+/*!COPYRIGHT HEADER! 
+ *
+ * (c) Copyright Darwino Inc. 2014-2016.
+ *
+ * Licensed under The MIT License (https://opensource.org/licenses/MIT)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial 
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT 
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, 
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.darwino.graphsql.codec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.darwino.graphsql.json.JsonArrays;
+
+
+/**
+ * Round trips through CborWriter and CborReader.
+ */
+public class CborTest {
+
+	@Test
+	public void testIntegers() throws IOException {
+		long[] values = {0,1,23,24,255,256,65535,65536,Integer.MAX_VALUE,0x100000000L,Long.MAX_VALUE,-1,-24,-25,-256,-257,Integer.MIN_VALUE,Long.MIN_VALUE};
+		for(long v: values) {
+			Object o = roundTrip(v);
+			assertEquals(v,((Number)o).longValue());
+			assertTrue((o instanceof Integer)==(v>=Integer.MIN_VALUE && v<=Integer.MAX_VALUE));
+		}
+		assertArrayEquals(hex("1903e8"),write(1000));
+		assertArrayEquals(hex("3863"),write(-100));
+	}
+
+	@Test
+	public void testFloatingPoint() throws IOException {
+		assertEquals(1.5,roundTrip(1.5));
+		assertEquals(0.1,roundTrip(0.1));
+		assertEquals(-1e300,roundTrip(-1e300));
+		assertEquals(Double.NaN,roundTrip(Double.NaN));
+		assertEquals(Double.NEGATIVE_INFINITY,roundTrip(Double.NEGATIVE_INFINITY));
+		// Single precision when exact
+		assertArrayEquals(hex("fa3fc00000"),write(1.5));
+		assertArrayEquals(hex("fb3fb999999999999a"),write(0.1));
+		// Half precision, only read
+		assertEquals(1.0,read(hex("f93c00")));
+		assertEquals(-4.0,read(hex("f9c400")));
+	}
+
+	@Test
+	public void testBigIntegers() throws IOException {
+		BigInteger two64 = BigInteger.ONE.shiftLeft(64);
+		BigInteger[] values = {
+			two64,
+			two64.negate().subtract(BigInteger.ONE),
+			BigInteger.ONE.shiftLeft(200).add(BigInteger.valueOf(12345)),
+			BigInteger.ONE.shiftLeft(200).negate(),
+			BigInteger.valueOf(Long.MAX_VALUE).add(BigInteger.ONE),
+			BigInteger.valueOf(Long.MIN_VALUE).subtract(BigInteger.ONE),
+		};
+		for(BigInteger v: values) {
+			assertEquals(v,roundTrip(v));
+		}
+		// Values fitting in 64 bits are written as integers
+		assertEquals(Integer.valueOf(42),roundTrip(BigInteger.valueOf(42)));
+		assertEquals(Long.valueOf(Long.MIN_VALUE),roundTrip(BigInteger.valueOf(Long.MIN_VALUE)));
+		
+		// RFC 8949 examples
+		assertArrayEquals(hex("c249010000000000000000"),write(two64));
+		assertArrayEquals(hex("c349010000000000000000"),write(two64.negate().subtract(BigInteger.ONE)));
+		// Integers beyond the range of a long, without a tag
+		assertEquals(two64.subtract(BigInteger.ONE),read(hex("1bffffffffffffffff")));
+		assertEquals(two64.negate(),read(hex("3bffffffffffffffff")));
+	}
+
+	@Test
+	public void testBigDecimals() throws IOException {
+		String[] values = {"273.15","-0.001","3.14159265358979323846264338327950288419716939937510","1E+10","0","123456789012345678901234567890.5"};
+		for(String v: values) {
+			BigDecimal d = new BigDecimal(v);
+			Object o = roundTrip(d);
+			// Same value and scale
+			assertEquals(d,o);
+		}
+		// RFC 8949 example
+		assertArrayEquals(hex("c48221196ab3"),write(new BigDecimal("273.15")));
+	}
+
+	@Test
+	public void testStrings() throws IOException {
+		assertEquals("",roundTrip(""));
+		assertEquals("abc",roundTrip("abc"));
+		assertEquals("\u00fc\u6c34\ud800\udd51",roundTrip("\u00fc\u6c34\ud800\udd51"));
+		StringBuilder b = new StringBuilder();
+		for(int i=0; i<20000; i++) {
+			b.append((char)('a'+i%26));
+		}
+		assertEquals(b.toString(),roundTrip(b.toString()));
+		b.append('\u00e9');
+		assertEquals(b.toString(),roundTrip(b.toString()));
+		// Indefinite length string, only read
+		assertEquals("streaming",read(hex("7f657374726561646d696e67ff")));
+	}
+
+	@Test
+	public void testStructures() throws IOException {
+		Map<String,Object> m = new LinkedHashMap<String,Object>();
+		m.put("a",1);
+		m.put("b",Arrays.asList(Boolean.TRUE,Boolean.FALSE,null,"x"));
+		Map<String,Object> inner = new LinkedHashMap<String,Object>();
+		inner.put("c",new BigDecimal("1.25"));
+		inner.put("d",Arrays.asList());
+		m.put("e",inner);
+		assertEquals(m,roundTrip(m));
+		
+		assertEquals(Arrays.asList(1.5,-2.0),roundTrip(new JsonArrays.DoubleList(new double[] {1.5,-2.0})));
+		assertEquals(Arrays.asList(true,false),roundTrip(new JsonArrays.BooleanList(new boolean[] {true,false})));
+		assertEquals(Arrays.asList(1,"a"),roundTrip(new Object[] {1,"a"}));
+		assertNull(roundTrip(null));
+		// Indefinite length map and array
+		Map<String,Object> expected = new LinkedHashMap<String,Object>();
+		expected.put("a",1);
+		expected.put("b",Arrays.asList(2,3));
+		assertEquals(expected,read(hex("bf61610161629f0203ffff")));
+	}
+
+	@Test
+	public void testUnknownTag() throws IOException {
+		// Tag 1 (epoch date), the item is returned as is
+		assertEquals(Integer.valueOf(1363896240),read(hex("c11a514b67b0")));
+	}
+
+	@Test
+	public void testInvalidDecimal() {
+		try {
+			read(hex("c482616101"));
+		} catch(IOException ex) {
+			return;
+		}
+		throw new AssertionError("Invalid decimal fraction accepted");
+	}
+
+
+	//
+	// Helpers
+	//
+	private static Object roundTrip(Object value) throws IOException {
+		return read(write(value));
+	}
+
+	private static byte[] write(Object value) throws IOException {
+		ByteArrayOutputStream os = new ByteArrayOutputStream();
+		CborWriter w = new CborWriter(os);
+		w.value(value);
+		w.flush();
+		return os.toByteArray();
+	}
+
+	private static Object read(byte[] bytes) throws IOException {
+		return new CborReader(new ByteArrayInputStream(bytes)).read();
+	}
+
+	private static byte[] hex(String s) {
+		byte[] b = new byte[s.length()/2];
+		for(int i=0; i<b.length; i++) {
+			b[i] = (byte)Integer.parseInt(s.substring(i*2,i*2+2),16);
+		}
+		return b;
+	}
+}
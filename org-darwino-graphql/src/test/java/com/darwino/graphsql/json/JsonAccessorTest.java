@@ -0,0 +1,151 @@
+/*!COPYRIGHT HEADER! 
+ *
+ * (c) Copyright Darwino Inc. 2014-2016.
+ *
+ * Licensed under The MIT License (https://opensource.org/licenses/MIT)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial 
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT 
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, 
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package com.darwino.graphsql.json;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.darwino.commons.json.JsonException;
+import com.darwino.commons.json.jsonpath.JsonPath;
+
+import graphql.schema.DataFetchingEnvironment;
+
+
+/**
+ * Memoization of the path results by the accessors.
+ */
+public class JsonAccessorTest {
+	
+	// Accessor counting the paths it evaluates
+	private static class TestAccessor extends JsonAccessor {
+		Map<String,Object> values = new HashMap<String,Object>();
+		List<String> evaluated = new ArrayList<String>();
+		TestAccessor() {
+			super(null);
+		}
+		@Override
+		protected Object readPath(String path) throws JsonException {
+			evaluated.add(path);
+			return values.get(path);
+		}
+		@Override
+		public Object path(JsonPath path) throws JsonException {
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	@Test
+	public void testMemoSize() {
+		Map<Object,Object> context = new HashMap<Object,Object>();
+		assertEquals(0,JsonAccessor.getMemoSize(context));
+		JsonAccessor.setMemoSize(context,16);
+		assertEquals(16,JsonAccessor.getMemoSize(context));
+		JsonAccessor.setMemoSize(context,0);
+		assertEquals(0,JsonAccessor.getMemoSize(context));
+		assertEquals(0,context.size());
+		
+		// The size can only be stored in a map
+		JsonAccessor.setMemoSize("context",16);
+		assertEquals(0,JsonAccessor.getMemoSize("context"));
+		assertEquals(0,JsonAccessor.getMemoSize(null));
+	}
+
+	@Test
+	public void testDisabled() throws Exception {
+		TestAccessor a = new TestAccessor();
+		a.values.put("$.a",1);
+		DataFetchingEnvironment env = env(a,new HashMap<Object,Object>());
+		assertEquals(1,a.read(env,"$.a"));
+		assertEquals(1,a.read(env,"$.a"));
+		assertEquals(1,a.read("$.a"));
+		assertEquals(3,a.evaluated.size());
+	}
+
+	@Test
+	public void testMemoized() throws Exception {
+		TestAccessor a = new TestAccessor();
+		a.values.put("$.a",1);
+		Map<Object,Object> context = new HashMap<Object,Object>();
+		JsonAccessor.setMemoSize(context,16);
+		DataFetchingEnvironment env = env(a,context);
+		assertEquals(1,a.read(env,"$.a"));
+		a.values.put("$.a",2);
+		assertEquals(1,a.read(env,"$.a"));
+		// Missing values are memoized as well
+		assertNull(a.read(env,"$.b"));
+		assertNull(a.read(env,"$.b"));
+		assertEquals(2,a.evaluated.size());
+		
+		// The memo is per accessor
+		TestAccessor b = new TestAccessor();
+		b.values.put("$.a",3);
+		assertEquals(3,b.read(env(b,context),"$.a"));
+		
+		// Other requests do not memoize the values
+		assertEquals(2,a.read(env(a,new HashMap<Object,Object>()),"$.a"));
+	}
+
+	@Test
+	public void testLimit() throws Exception {
+		TestAccessor a = new TestAccessor();
+		a.values.put("$.a",1);
+		a.values.put("$.b",2);
+		a.values.put("$.c",3);
+		for(int i=0; i<2; i++) {
+			assertEquals(1,a.read("$.a",2));
+			assertEquals(2,a.read("$.b",2));
+			assertEquals(3,a.read("$.c",2));
+		}
+		// The paths read after the limit is reached are evaluated each time
+		assertEquals(4,a.evaluated.size());
+		assertEquals("$.c",a.evaluated.get(3));
+	}
+
+	@Test
+	public void testFetcher() throws Exception {
+		TestAccessor a = new TestAccessor();
+		a.values.put("$.value",5);
+		Map<Object,Object> context = new HashMap<Object,Object>();
+		JsonAccessor.setMemoSize(context,16);
+		// Aliases reading the same path only evaluate it once
+		JsonStandardFields.JsonIntFecther f = new JsonStandardFields.JsonIntFecther();
+		assertEquals(5,f.get(env(a,context)));
+		assertEquals(5,f.get(env(a,context)));
+		assertEquals(1,a.evaluated.size());
+	}
+
+	private static DataFetchingEnvironment env(JsonAccessor source, Object context) {
+		Map<String,Object> args = new HashMap<String,Object>();
+		args.put("path","$.value");
+		return new DataFetchingEnvironment(source, args, context, null, null, null, null);
+	}
+}
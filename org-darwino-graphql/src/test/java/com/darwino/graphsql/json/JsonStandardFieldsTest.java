@@ -0,0 +1,121 @@
+/*!COPYRIGHT HEADER! 
+ *
+ * (c) Copyright Darwino Inc. 2014-2016.
+ *
+ * Licensed under The MIT License (https://opensource.org/licenses/MIT)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial 
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT 
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, 
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.darwino.graphsql.json;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.darwino.graphsql.json.JsonStandardFields.JsonDateFecther;
+import com.darwino.graphsql.json.JsonStandardFields.JsonIntFecther;
+import com.darwino.graphsql.json.JsonStandardFields.JsonLongFecther;
+
+import graphql.schema.DataFetcher;
+import graphql.schema.DataFetchingEnvironment;
+
+
+/**
+ * Conversions of the typed fetchers.
+ */
+public class JsonStandardFieldsTest {
+
+	@Test
+	public void testInt() throws Exception {
+		JsonIntFecther f = new JsonIntFecther();
+		assertEquals(12,fetch(f,12));
+		assertEquals(12,fetch(f,12L));
+		assertEquals(12,fetch(f,12.0));
+		assertEquals(-7,fetch(f,new BigDecimal("-7.00")));
+		assertEquals(42,fetch(f,"42"));
+		assertEquals(Integer.MAX_VALUE,fetch(f,(long)Integer.MAX_VALUE));
+		// Fractional or out of range values are not truncated
+		assertNull(fetch(f,12.5));
+		assertNull(fetch(f,(long)Integer.MAX_VALUE+1));
+		assertNull(fetch(f,1e10));
+		assertNull(fetch(f,"4.2"));
+		assertNull(fetch(f,true));
+		assertNull(fetch(f,null));
+	}
+
+	@Test
+	public void testLong() throws Exception {
+		JsonLongFecther f = new JsonLongFecther();
+		assertEquals(12L,fetch(f,12));
+		assertEquals(Long.MAX_VALUE,fetch(f,Long.MAX_VALUE));
+		assertEquals(1L<<53,fetch(f,(double)(1L<<53)));
+		assertEquals(Long.MIN_VALUE,fetch(f,BigInteger.valueOf(Long.MIN_VALUE)));
+		assertEquals(-5L,fetch(f,"-5"));
+		assertNull(fetch(f,BigInteger.valueOf(Long.MAX_VALUE).add(BigInteger.ONE)));
+		assertNull(fetch(f,9.223372036854775808E18));
+		assertNull(fetch(f,0.5));
+		assertNull(fetch(f,new BigDecimal("1.5")));
+		assertNull(fetch(f,"x"));
+	}
+
+	@Test
+	public void testDate() throws Exception {
+		JsonDateFecther f = new JsonDateFecther(false);
+		assertEquals("2024-03-01",fetch(f,"2024-03-01"));
+		// The local date of the value is kept, not the UTC one
+		assertEquals("2024-03-01",fetch(f,"2024-03-01T23:00-05:00"));
+		assertEquals("2024-03-01",fetch(f,"2024-03-01T01:00:00.000+02:00"));
+		assertEquals("2024-03-01",fetch(f,"2024-03-01T10:15:00"));
+		// The numbers are taken in UTC
+		assertEquals("1970-01-02",fetch(f,86400000L));
+		assertEquals("1970-01-01",fetch(f,new Date(0)));
+		assertNull(fetch(f,"03/01/2024"));
+		assertNull(fetch(f,"2024-03-01X"));
+		assertNull(fetch(f,true));
+	}
+
+	@Test
+	public void testDateTime() throws Exception {
+		JsonDateFecther f = new JsonDateFecther(true);
+		assertEquals("2024-03-02T04:00:00.000Z",fetch(f,"2024-03-01T23:00-05:00"));
+		assertEquals("2024-03-01T10:15:30.123Z",fetch(f,"2024-03-01T10:15:30.123Z"));
+		assertEquals("2024-03-01T10:15:30.120Z",fetch(f,"2024-03-01T12:15:30.12+02:00"));
+		assertEquals("1970-01-01T00:00:01.500Z",fetch(f,1500));
+		assertEquals("1970-01-01T00:00:00.000Z",fetch(f,new Date(0)));
+		// Local values do not designate an instant and are returned as is
+		assertEquals("2024-03-01T10:15:00",fetch(f,"2024-03-01T10:15:00"));
+		assertEquals("2024-03-01",fetch(f,"2024-03-01"));
+		assertNull(fetch(f,"tomorrow"));
+	}
+
+	private static Object fetch(DataFetcher f, Object value) {
+		Map<String,Object> json = new HashMap<String,Object>();
+		json.put("value", value);
+		Map<String,Object> args = new HashMap<String,Object>();
+		args.put("path", "$.value");
+		DataFetchingEnvironment env = new DataFetchingEnvironment(JsonAccessorFactory.adapter(json), args, null, null, null, null, null);
+		return f.get(env);
+	}
+}
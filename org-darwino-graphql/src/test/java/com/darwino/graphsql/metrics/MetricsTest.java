@@ -0,0 +1,145 @@
+/*!COPYRIGHT HEADER! 
+ *
+ * (c) Copyright Darwino Inc. 2014-2016.
+ *
+ * Licensed under The MIT License (https://opensource.org/licenses/MIT)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial 
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT 
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, 
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.darwino.graphsql.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.StringWriter;
+
+import org.junit.Test;
+
+
+/**
+ * Tests the metrics registries.
+ */
+public class MetricsTest {
+	
+	private static String write(MetricsRegistry registry) throws Exception {
+		StringWriter w = new StringWriter();
+		registry.write(w);
+		return w.toString();
+	}
+	
+	@Test
+	public void testRegistryPerFactory() throws Exception {
+		MetricsRegistry r1 = new MetricsRegistry();
+		MetricsRegistry r2 = new MetricsRegistry();
+		r1.setEnabled(true);
+		assertFalse(r2.isEnabled());
+		
+		MetricsRegistry previous = Metrics.setCurrent(r1);
+		try {
+			assertTrue(Metrics.isEnabled());
+			long start = Metrics.start();
+			assertTrue(start!=0);
+			Metrics.event(Metrics.EVENT_REQUEST);
+			Metrics.phase(Metrics.PHASE_PARSE, start);
+			
+			// A disabled registry records nothing
+			Metrics.setCurrent(r2);
+			assertEquals(0,Metrics.start());
+			Metrics.event(Metrics.EVENT_REQUEST);
+		} finally {
+			Metrics.setCurrent(previous);
+		}
+		assertEquals(1,r1.getEventCount(Metrics.EVENT_REQUEST));
+		assertEquals(1,r1.getPhase(Metrics.PHASE_PARSE).getCount());
+		assertEquals(0,r2.getEventCount(Metrics.EVENT_REQUEST));
+		assertNull(r2.getPhase(Metrics.PHASE_PARSE));
+	}
+	
+	@Test
+	public void testNoRegistry() throws Exception {
+		MetricsRegistry previous = Metrics.setCurrent(null);
+		try {
+			assertFalse(Metrics.isEnabled());
+			assertEquals(0,Metrics.start());
+			Metrics.event(Metrics.EVENT_REQUEST);
+			Metrics.phase(Metrics.PHASE_PARSE, 1);
+		} finally {
+			Metrics.setCurrent(previous);
+		}
+	}
+	
+	@Test
+	public void testWrap() throws Exception {
+		final MetricsRegistry registry = new MetricsRegistry();
+		registry.setEnabled(true);
+		final MetricsRegistry[] seen = new MetricsRegistry[1];
+		Runnable task;
+		MetricsRegistry previous = Metrics.setCurrent(registry);
+		try {
+			task = Metrics.wrap(new Runnable() {
+				@Override
+				public void run() {
+					seen[0] = Metrics.getCurrent();
+					Metrics.event(Metrics.EVENT_DOCUMENT_LOAD);
+				}
+			});
+		} finally {
+			Metrics.setCurrent(previous);
+		}
+		Thread t = new Thread(task);
+		t.start();
+		t.join();
+		assertSame(registry,seen[0]);
+		assertEquals(1,registry.getEventCount(Metrics.EVENT_DOCUMENT_LOAD));
+	}
+	
+	@Test
+	public void testGauges() throws Exception {
+		MetricsRegistry registry = new MetricsRegistry();
+		MetricsRegistry.Gauge active = new MetricsRegistry.Gauge() {
+			@Override
+			public long getValue() {
+				return 3;
+			}
+		};
+		registry.registerGauge("admission_active", "Active requests", active);
+		registry.registerGauge("admission_queued", "Queued requests", new MetricsRegistry.Gauge() {
+			@Override
+			public long getValue() {
+				return 1;
+			}
+		});
+		// Each gauge is its own family, without a shared label
+		String s = write(registry);
+		assertTrue(s.contains("# TYPE graphql_admission_active gauge\ngraphql_admission_active 3\n"));
+		assertTrue(s.contains("# TYPE graphql_admission_queued gauge\ngraphql_admission_queued 1\n"));
+		assertFalse(s.contains("graphql_gauge"));
+		
+		registry.unregisterGauge("admission_active", active);
+		assertNull(registry.getGauge("admission_active"));
+		assertFalse(write(registry).contains("graphql_admission_active"));
+	}
+	
+	@Test(expected=IllegalArgumentException.class)
+	public void testInvalidGaugeName() throws Exception {
+		new MetricsRegistry().registerGauge("admission active", "Invalid", null);
+	}
+}
@@ -0,0 +1,243 @@
+/*!COPYRIGHT HEADER! 
+ *
+ * (c) Copyright Darwino Inc. 2014-2016.
+ *
+ * Licensed under The MIT License (https://opensource.org/licenses/MIT)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial 
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT 
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, 
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package com.darwino.graphsql.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.darwino.commons.services.HttpServiceContext;
+import com.darwino.graphsql.metrics.MetricsRegistry;
+
+import graphql.schema.GraphQLSchema;
+
+
+/**
+ * Tests the admission control of the requests.
+ */
+public class AdmissionControllerTest {
+	
+	// Factory with a fixed user and schema key
+	private static class TestFactory extends GraphQLServiceFactory {
+		String schemaKey;
+		String userKey;
+		TestFactory(String path) {
+			super(path,(GraphQLSchema)null);
+		}
+		@Override
+		protected String getSchemaKey(HttpServiceContext context) {
+			return schemaKey;
+		}
+		@Override
+		protected String getUserKey(HttpServiceContext context) {
+			return userKey;
+		}
+	}
+
+	@Test
+	public void testAcquire() {
+		AdmissionController c = new AdmissionController(2);
+		c.setMaxQueued(0);
+		AdmissionController.Permit p1 = c.acquire(null);
+		AdmissionController.Permit p2 = c.acquire(null);
+		assertEquals(2,c.getActiveCount());
+		try {
+			c.acquire(null);
+			fail();
+		} catch(AdmissionController.RejectedException ex) {
+			assertEquals(AdmissionController.STATUS_SERVICE_UNAVAILABLE,ex.getStatus());
+		}
+		assertEquals(1,c.getRejectedCount());
+		
+		// Releasing twice does not free another slot
+		p1.release();
+		p1.release();
+		assertEquals(1,c.getActiveCount());
+		c.acquire(null).release();
+		p2.release();
+		assertEquals(0,c.getActiveCount());
+	}
+
+	@Test
+	public void testQueue() throws Exception {
+		final AdmissionController c = new AdmissionController(1);
+		c.setMaxQueued(1);
+		c.setQueueTimeout(10000);
+		AdmissionController.Permit p = c.acquire(null);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			Future<AdmissionController.Permit> waiting = executor.submit(new Callable<AdmissionController.Permit>() {
+				@Override
+				public AdmissionController.Permit call() {
+					return c.acquire(null);
+				}
+			});
+			long end = System.currentTimeMillis()+5000;
+			while(c.getQueuedCount()==0 && System.currentTimeMillis()<end) {
+				Thread.sleep(5);
+			}
+			assertEquals(1,c.getQueuedCount());
+			
+			// The queue is full
+			try {
+				c.acquire(null);
+				fail();
+			} catch(AdmissionController.RejectedException ex) {
+				assertEquals(AdmissionController.STATUS_SERVICE_UNAVAILABLE,ex.getStatus());
+			}
+			
+			// The waiting request gets the released slot
+			p.release();
+			AdmissionController.Permit p2 = waiting.get(5,TimeUnit.SECONDS);
+			assertNotNull(p2);
+			assertEquals(0,c.getQueuedCount());
+			assertEquals(1,c.getActiveCount());
+			p2.release();
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testQueueTimeout() {
+		AdmissionController c = new AdmissionController(1);
+		c.setQueueTimeout(20);
+		AdmissionController.Permit p = c.acquire(null);
+		try {
+			c.acquire(null);
+			fail();
+		} catch(AdmissionController.RejectedException ex) {
+			assertEquals(AdmissionController.STATUS_SERVICE_UNAVAILABLE,ex.getStatus());
+		}
+		assertEquals(0,c.getQueuedCount());
+		p.release();
+	}
+
+	@Test
+	public void testKeyQuota() {
+		AdmissionController c = new AdmissionController(10);
+		c.setKeyQuota(2);
+		AdmissionController.Permit a1 = c.acquire("a");
+		AdmissionController.Permit a2 = c.acquire("a");
+		try {
+			c.acquire("a");
+			fail();
+		} catch(AdmissionController.RejectedException ex) {
+			assertEquals(AdmissionController.STATUS_TOO_MANY_REQUESTS,ex.getStatus());
+		}
+		// Other keys, and the requests without a key, are not affected
+		AdmissionController.Permit b = c.acquire("b");
+		AdmissionController.Permit n = c.acquire(null);
+		assertEquals(2,c.getKeyCount());
+		
+		a1.release();
+		c.acquire("a").release();
+		a2.release();
+		b.release();
+		n.release();
+		// The counts of the keys without requests are removed
+		assertEquals(0,c.getKeyCount());
+		assertEquals(0,c.getActiveCount());
+	}
+
+	@Test
+	public void testKeyReleasedOnReject() {
+		AdmissionController c = new AdmissionController(1);
+		c.setMaxQueued(0);
+		c.setKeyQuota(1);
+		AdmissionController.Permit p = c.acquire("a");
+		try {
+			c.acquire("b");
+			fail();
+		} catch(AdmissionController.RejectedException ex) {
+			assertEquals(AdmissionController.STATUS_SERVICE_UNAVAILABLE,ex.getStatus());
+		}
+		// The rejected request does not hold the quota of its key
+		assertEquals(1,c.getKeyCount());
+		p.release();
+		c.acquire("b").release();
+		assertEquals(0,c.getKeyCount());
+	}
+
+	@Test
+	public void testAdmissionKey() {
+		TestFactory factory = new TestFactory("/graphql");
+		assertNull(factory.getAdmissionKey(null));
+		factory.userKey = "cn=user";
+		assertEquals("cn=user",factory.getAdmissionKey(null));
+		factory.schemaKey = "tenant";
+		assertEquals("tenant/cn=user",factory.getAdmissionKey(null));
+		factory.userKey = null;
+		assertEquals("tenant",factory.getAdmissionKey(null));
+	}
+
+	@Test
+	public void testGauges() {
+		TestFactory f1 = new TestFactory("/graphql");
+		TestFactory f2 = new TestFactory("/api/v2/graphql/");
+		assertEquals("graphql",f1.getMetricsName());
+		assertEquals("api_v2_graphql",f2.getMetricsName());
+		assertEquals("service",new TestFactory("/").getMetricsName());
+		
+		AdmissionController c1 = new AdmissionController(4);
+		f1.setAdmissionController(c1);
+		AdmissionController.Permit p = c1.acquire(null);
+		MetricsRegistry.Gauge active = f1.getMetrics().getGauge("graphql_admission_active");
+		assertNotNull(active);
+		assertEquals(1,active.getValue());
+		assertNotNull(f1.getMetrics().getGauge("graphql_admission_queued"));
+		assertNull(f2.getMetrics().getGauge("graphql_admission_active"));
+		p.release();
+		
+		// Replacing the controller replaces its gauges
+		AdmissionController c2 = new AdmissionController(4);
+		f1.setAdmissionController(c2);
+		assertNotNull(f1.getMetrics().getGauge("graphql_admission_active"));
+		assertFalse(active==f1.getMetrics().getGauge("graphql_admission_active"));
+		f1.setMetricsName("main");
+		assertNull(f1.getMetrics().getGauge("graphql_admission_active"));
+		assertNotNull(f1.getMetrics().getGauge("main_admission_active"));
+		f1.setAdmissionController(null);
+		assertNull(f1.getMetrics().getGauge("main_admission_active"));
+		assertNull(f1.getMetrics().getGauge("main_admission_queued"));
+		
+		// The gauges of another factory are named after it
+		f2.setAdmissionController(c2);
+		p = c2.acquire(null);
+		assertEquals(1,f2.getMetrics().getGauge("api_v2_graphql_admission_active").getValue());
+		assertEquals(0,f2.getMetrics().getGauge("api_v2_graphql_admission_queued").getValue());
+		p.release();
+	}
+}
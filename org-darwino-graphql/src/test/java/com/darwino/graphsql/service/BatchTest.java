@@ -0,0 +1,216 @@
+/*!COPYRIGHT HEADER! 
+ *
+ * (c) Copyright Darwino Inc. 2014-2016.
+ *
+ * Licensed under The MIT License (https://opensource.org/licenses/MIT)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial 
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT 
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, 
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.darwino.graphsql.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.darwino.commons.json.JsonArray;
+import com.darwino.commons.json.JsonObject;
+import com.darwino.commons.services.HttpServiceContext;
+import com.darwino.commons.services.HttpServiceError;
+
+import graphql.ErrorType;
+import graphql.ExecutionResult;
+import graphql.ExecutionResultImpl;
+import graphql.GraphQLError;
+import graphql.language.SourceLocation;
+import graphql.schema.GraphQLSchema;
+
+
+/**
+ * Tests the batched operations.
+ */
+public class BatchTest {
+	
+	// Service where the execution is replaced, to test how the operations are dispatched
+	private static class TestService extends GraphQLService {
+		List<Object> results;
+		List<Object> executionContexts = Collections.synchronizedList(new ArrayList<Object>());
+		CyclicBarrier barrier;
+		TestService(GraphQLServiceFactory factory) {
+			super(factory,false);
+		}
+		@Override
+		protected Object createExecutionContext(HttpServiceContext context) {
+			return new HashMap<Object,Object>();
+		}
+		@Override
+		protected ExecutionResult execute(HttpServiceContext context, GraphQLSchema schema, String query, String operationName, Map<String,Object> variables, Object executionContext) {
+			executionContexts.add(executionContext);
+			if(barrier!=null) {
+				try {
+					barrier.await(5, TimeUnit.SECONDS);
+				} catch(Exception ex) {
+					throw new IllegalStateException("The operations did not run concurrently");
+				}
+			}
+			if(query.equals("{ fail }")) {
+				throw new IllegalStateException("Failed");
+			}
+			Map<String,Object> data = new HashMap<String,Object>();
+			data.put("query", query);
+			if(query.equals("{ partial }")) {
+				return new ExecutionResultImpl(data, Collections.singletonList(createError("Partial")));
+			}
+			return new ExecutionResultImpl(data, Collections.<GraphQLError>emptyList());
+		}
+		@Override
+		protected void emitBatch(HttpServiceContext context, List<Object> results) {
+			this.results = results;
+		}
+	}
+	
+	private static GraphQLError createError(final String message) {
+		return new GraphQLError() {
+			@Override
+			public String getMessage() {
+				return message;
+			}
+			@Override
+			public List<SourceLocation> getLocations() {
+				return null;
+			}
+			@Override
+			public ErrorType getErrorType() {
+				return ErrorType.DataFetchingException;
+			}
+		};
+	}
+	
+	private static JsonArray createBatch(Object... queries) {
+		JsonArray batch = new JsonArray();
+		for(Object q: queries) {
+			if(q instanceof String) {
+				JsonObject op = new JsonObject();
+				op.put("query", q);
+				batch.add(op);
+			} else {
+				batch.add(q);
+			}
+		}
+		return batch;
+	}
+	
+	private static String getQuery(Object result) {
+		return (String)((Map<?,?>)((JsonObject)result).get("data")).get("query");
+	}
+	
+	private static String getError(Object result) {
+		JsonArray errors = (JsonArray)((JsonObject)result).get("errors");
+		return (String)((Map<?,?>)errors.get(0)).get("message");
+	}
+	
+	@Test
+	public void testResults() throws Exception {
+		TestService service = new TestService(new GraphQLServiceFactory("/graphql",(GraphQLSchema)null));
+		service.processBatch(null, createBatch("{ a }", "{ fail }", "{ partial }", new JsonObject(), 42, "{ b }"));
+		List<Object> results = service.results;
+		assertEquals(6,results.size());
+		// The results are in the order of the operations, and a failure stays in its own result
+		assertEquals("{ a }",getQuery(results.get(0)));
+		assertNull(((JsonObject)results.get(0)).get("errors"));
+		assertEquals("Failed",getError(results.get(1)));
+		assertFalse(((JsonObject)results.get(1)).containsKey("data"));
+		assertEquals("{ partial }",getQuery(results.get(2)));
+		assertEquals("Partial",getError(results.get(2)));
+		assertEquals("Missing query",getError(results.get(3)));
+		assertEquals("An operation must be a JSON object",getError(results.get(4)));
+		assertEquals("{ b }",getQuery(results.get(5)));
+	}
+	
+	@Test
+	public void testSharedExecutionContext() throws Exception {
+		TestService service = new TestService(new GraphQLServiceFactory("/graphql",(GraphQLSchema)null));
+		service.processBatch(null, createBatch("{ a }", "{ b }", "{ c }"));
+		assertEquals(3,service.executionContexts.size());
+		assertSame(service.executionContexts.get(0),service.executionContexts.get(1));
+		assertSame(service.executionContexts.get(0),service.executionContexts.get(2));
+	}
+	
+	@Test
+	public void testParallel() throws Exception {
+		GraphQLServiceFactory factory = new GraphQLServiceFactory("/graphql",(GraphQLSchema)null);
+		factory.setParallelBatch(true);
+		factory.setMaxRequestConcurrency(2);
+		TestService service = new TestService(factory);
+		// Each operation waits for the other one, which requires them to run concurrently
+		service.barrier = new CyclicBarrier(2);
+		service.processBatch(null, createBatch("{ a }", "{ b }"));
+		assertEquals("{ a }",getQuery(service.results.get(0)));
+		assertEquals("{ b }",getQuery(service.results.get(1)));
+		assertSame(service.executionContexts.get(0),service.executionContexts.get(1));
+		
+		// Above the concurrency, the operations run in the request thread
+		service.barrier = null;
+		service.processBatch(null, createBatch("{ a }", "{ b }", "{ c }", "{ d }", "{ e }"));
+		List<Object> results = service.results;
+		assertEquals(5,results.size());
+		String[] queries = {"{ a }","{ b }","{ c }","{ d }","{ e }"};
+		for(int i=0; i<queries.length; i++) {
+			assertEquals(queries[i],getQuery(results.get(i)));
+		}
+	}
+	
+	@Test
+	public void testParallelFailure() throws Exception {
+		GraphQLServiceFactory factory = new GraphQLServiceFactory("/graphql",(GraphQLSchema)null);
+		factory.setParallelBatch(true);
+		TestService service = new TestService(factory);
+		service.processBatch(null, createBatch("{ a }", "{ fail }", "{ b }"));
+		assertEquals("{ a }",getQuery(service.results.get(0)));
+		assertEquals("Failed",getError(service.results.get(1)));
+		assertEquals("{ b }",getQuery(service.results.get(2)));
+	}
+	
+	@Test
+	public void testMaxBatchSize() throws Exception {
+		GraphQLServiceFactory factory = new GraphQLServiceFactory("/graphql",(GraphQLSchema)null);
+		factory.setMaxBatchSize(2);
+		TestService service = new TestService(factory);
+		service.processBatch(null, createBatch("{ a }", "{ b }"));
+		assertEquals(2,service.results.size());
+		service.results = null;
+		try {
+			service.processBatch(null, createBatch("{ a }", "{ b }", "{ c }"));
+		} catch(HttpServiceError ex) {
+			// Expected
+		}
+		assertNull(service.results);
+		assertTrue(service.executionContexts.size()==2);
+	}
+}
@@ -0,0 +1,155 @@
+/*!COPYRIGHT HEADER! 
+ *
+ * (c) Copyright Darwino Inc. 2014-2016.
+ *
+ * Licensed under The MIT License (https://opensource.org/licenses/MIT)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial 
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT 
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, 
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+
+package com.darwino.graphsql.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import graphql.ExceptionWhileDataFetching;
+import graphql.ExecutionResult;
+import graphql.ExecutionResultImpl;
+import graphql.execution.ExecutionContext;
+import graphql.execution.ExecutionStrategy;
+import graphql.language.Field;
+import graphql.schema.GraphQLObjectType;
+
+
+/**
+ * Tests the execution of the deferred parts on the objects of the initial execution.
+ */
+public class IncrementalExecutionStrategyTest {
+	
+	// Strategy reading the fields from map sources, and counting the objects it resolves
+	private static class TestStrategy extends ExecutionStrategy {
+		List<Object> sources = new ArrayList<Object>();
+		List<String> fields = new ArrayList<String>();
+		@Override
+		public ExecutionResult execute(ExecutionContext executionContext, GraphQLObjectType parentType, Object source, Map<String,List<Field>> fields) {
+			sources.add(source);
+			Map<String,Object> data = new LinkedHashMap<String,Object>();
+			for(String key: fields.keySet()) {
+				this.fields.add(key);
+				if(key.equals("fail")) {
+					executionContext.addError(new ExceptionWhileDataFetching(new RuntimeException("fail")));
+					data.put(key,null);
+				} else {
+					data.put(key,((Map<?,?>)source).get(key));
+				}
+			}
+			return new ExecutionResultImpl(data,null);
+		}
+	}
+	
+	@Test
+	public void testPlaceholders() {
+		TestStrategy delegate = new TestStrategy();
+		IncrementalExecutionStrategy strategy = new IncrementalExecutionStrategy(delegate);
+		ExecutionContext context = new ExecutionContext();
+		
+		// The placeholders are not resolved, they get the index of the recorded object
+		Map<String,Object> first = map("id",1,"b",2);
+		ExecutionResult result = strategy.execute(context,null,first,fields("id","__incremental_0"));
+		assertEquals(Arrays.asList("id"),delegate.fields);
+		assertEquals(map("id",1,"__incremental_0",0),result.getData());
+
+		Map<String,Object> second = map("id",3,"b",4);
+		result = strategy.execute(context,null,second,fields("id","__incremental_0","__incremental_1"));
+		assertEquals(map("id",3,"__incremental_0",1,"__incremental_1",1),result.getData());
+
+		// Objects without placeholders are not recorded
+		result = strategy.execute(context,null,map("id",5),fields("id"));
+		assertEquals(map("id",5),result.getData());
+	}
+
+	@Test
+	public void testExecutePart() {
+		TestStrategy delegate = new TestStrategy();
+		IncrementalExecutionStrategy strategy = new IncrementalExecutionStrategy(delegate);
+		ExecutionContext context = new ExecutionContext();
+		Map<String,Object> first = map("id",1,"b",2);
+		Map<String,Object> second = map("id",3,"b",4);
+		strategy.execute(context,null,first,fields("id","__incremental_0"));
+		strategy.execute(context,null,second,fields("id","__incremental_0"));
+		
+		// The part is executed on the recorded object, without resolving its ancestors again
+		IncrementalQuery.Part part = new IncrementalQuery.Part(Arrays.asList("a"),new Field("b"),0,false,null);
+		delegate.sources.clear();
+		ExecutionResult result = strategy.executePart(part,1);
+		assertEquals(Arrays.<Object>asList(second),delegate.sources);
+		assertEquals(map("b",4),result.getData());
+		assertTrue(result.getErrors().isEmpty());
+		
+		try {
+			strategy.executePart(part,2);
+			fail();
+		} catch(IllegalArgumentException ex) {
+		}
+	}
+
+	@Test
+	public void testPartErrors() {
+		TestStrategy delegate = new TestStrategy();
+		IncrementalExecutionStrategy strategy = new IncrementalExecutionStrategy(delegate);
+		ExecutionContext context = new ExecutionContext();
+		strategy.execute(context,null,map("id",1,"b",2),fields("id","fail","__incremental_0"));
+		assertEquals(1,context.getErrors().size());
+
+		// A part only reports its own errors, along with its partial data
+		IncrementalQuery.Part part = new IncrementalQuery.Part(Arrays.asList("a"),new Field("b"),0,false,null);
+		ExecutionResult result = strategy.executePart(part,0);
+		assertEquals(map("b",2),result.getData());
+		assertTrue(result.getErrors().isEmpty());
+		
+		part = new IncrementalQuery.Part(Arrays.asList("a"),new Field("fail"),0,false,null);
+		result = strategy.executePart(part,0);
+		assertEquals(map("fail",null),result.getData());
+		assertEquals(1,result.getErrors().size());
+	}
+
+	private static Map<String,List<Field>> fields(String...keys) {
+		Map<String,List<Field>> fields = new LinkedHashMap<String,List<Field>>();
+		for(String k: keys) {
+			fields.put(k,Arrays.asList(new Field(k)));
+		}
+		return fields;
+	}
+
+	private static Map<String,Object> map(Object...keyValues) {
+		Map<String,Object> map = new LinkedHashMap<String,Object>();
+		for(int i=0; i<keyValues.length; i+=2) {
+			map.put((String)keyValues[i],keyValues[i+1]);
+		}
+		return map;
+	}
+}
@@ -0,0 +1,300 @@
+/*!COPYRIGHT HEADER! 
+ *
+ * (c) Copyright Darwino Inc. 2014-2016.
+ *
+ * Licensed under The MIT License (https://opensource.org/licenses/MIT)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial 
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT 
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, 
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.darwino.graphsql.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.junit.Test;
+
+import graphql.ErrorType;
+import graphql.language.Definition;
+import graphql.language.Directive;
+import graphql.language.Document;
+import graphql.language.Field;
+import graphql.language.FragmentDefinition;
+import graphql.language.FragmentSpread;
+import graphql.language.InlineFragment;
+import graphql.language.OperationDefinition;
+import graphql.language.Selection;
+import graphql.language.SelectionSet;
+import graphql.language.VariableDefinition;
+import graphql.parser.Parser;
+
+
+/**
+ * Split of the queries using @defer and @stream.
+ */
+public class IncrementalQueryTest {
+
+	@Test
+	public void testNoDirective() {
+		assertNull(create("{ a { id } }",null));
+		assertNull(create("{ a { id ... @defer(if: false) { b } } }",null));
+		assertNull(create("query Q($d: Boolean) { a { id ... @defer(if: $d) { b } } }",Collections.<String,Object>singletonMap("d",false)));
+		assertNull(create("mutation { a { id ... @defer { b } } }",null));
+	}
+
+	@Test
+	public void testDeferInlineFragment() {
+		IncrementalQuery iq = create("{ a { id ... @defer(label: \"more\") { b } } }",null);
+		assertEquals("query{a{id __incremental_0:__typename}}",render(iq.getInitialDocument()));
+		assertEquals("query{a{id ...{b}}}",render(iq.getFullDocument()));
+		assertEquals(1,iq.getParts().size());
+		IncrementalQuery.Part part = iq.getParts().get(0);
+		assertEquals(Arrays.asList("a"),part.getPath());
+		assertFalse(part.isStream());
+		assertEquals("more",part.getLabel());
+		assertEquals("__incremental_0",part.getPlaceholder());
+		assertEquals("{...{b}}",render(part.getSelectionSet()));
+	}
+
+	@Test
+	public void testDeferEverything() {
+		IncrementalQuery iq = create("{ a { ... @defer { b } } c { ... @defer { d } } }",null);
+		// The placeholders keep the selection sets from being empty
+		assertEquals("query{a{__incremental_0:__typename} c{__incremental_1:__typename}}",render(iq.getInitialDocument()));
+		assertEquals("{...{b}}",render(iq.getParts().get(0).getSelectionSet()));
+		assertEquals("{...{d}}",render(iq.getParts().get(1).getSelectionSet()));
+	}
+
+	@Test
+	public void testDeferFragmentSpread() {
+		IncrementalQuery iq = create(
+				"query { a { id ...F @defer } c { ...G } }"
+				+" fragment F on A { b ...H }"
+				+" fragment G on C { d }"
+				+" fragment H on A { e }",null);
+		// The initial document defines the fragments of the parts, which are executed with its context
+		assertEquals("query{a{id __incremental_0:__typename} c{...G}} fragment F{b ...H} fragment G{d} fragment H{e}",render(iq.getInitialDocument()));
+		assertEquals(1,iq.getParts().size());
+		IncrementalQuery.Part part = iq.getParts().get(0);
+		assertEquals(Arrays.asList("a"),part.getPath());
+		assertNull(part.getLabel());
+		assertEquals("{...F}",render(part.getSelectionSet()));
+	}
+
+	@Test
+	public void testStream() {
+		IncrementalQuery iq = create("{ y a: list @stream(label: \"items\") { x } }",null);
+		assertEquals("query{y __incremental_0:__typename}",render(iq.getInitialDocument()));
+		assertEquals("query{y a:list{x}}",render(iq.getFullDocument()));
+		IncrementalQuery.Part part = iq.getParts().get(0);
+		assertEquals(Arrays.asList("a"),part.getPath());
+		assertTrue(part.isStream());
+		assertEquals("items",part.getLabel());
+		assertEquals("{a:list{x}}",render(part.getSelectionSet()));
+		assertTrue(iq.getErrors().isEmpty());
+	}
+
+	@Test
+	public void testStreamInitialCount() {
+		IncrementalQuery iq = create("{ list @stream(initialCount: 2) { x } }",null);
+		assertEquals(1,iq.getErrors().size());
+		assertEquals(ErrorType.ValidationError,iq.getErrors().get(0).getErrorType());
+		assertTrue(create("{ list @stream(initialCount: 0) { x } }",null).getErrors().isEmpty());
+	}
+
+	@Test
+	public void testVariables() {
+		IncrementalQuery iq = create("query Q($x: String, $y: String, $z: Boolean) { a(id: $x) { id } ... @defer { b(id: $y) { id @include(if: $z) } } }",null);
+		// The initial document defines the variables of the parts
+		assertEquals("query Q($x,$y,$z){a{id} __incremental_0:__typename}",render(iq.getInitialDocument()));
+		assertEquals("query Q($x,$y,$z){a{id} ...{b{id@include}}}",render(iq.getFullDocument()));
+		assertEquals("{...{b{id@include}}}",render(iq.getParts().get(0).getSelectionSet()));
+	}
+
+	@Test
+	public void testFragmentVariables() {
+		IncrementalQuery iq = create("query Q($x: String, $y: String) { a(id: $x) { id ...F @defer } } fragment F on A { b(id: $y) }",null);
+		assertEquals("query Q($x,$y){a{id __incremental_0:__typename}} fragment F{b}",render(iq.getInitialDocument()));
+		assertEquals("{...F}",render(iq.getParts().get(0).getSelectionSet()));
+	}
+
+	@Test
+	public void testDeferPath() {
+		IncrementalQuery iq = create("{ a { b { id ... @defer(label: \"c\") { c } } } }",null);
+		assertEquals(Arrays.asList("a","b"),iq.getParts().get(0).getPath());
+	}
+
+	@Test
+	public void testDeferLocations() {
+		IncrementalQuery.Part part = new IncrementalQuery.Part(Arrays.asList("a","b"),new Field("c"),0,false,"c");
+		
+		// The execution strategy puts the index of the recorded objects in place of the placeholders
+		Map<String,Object> data = map("a",Arrays.asList(map("b",map("id",1,"__incremental_0",0)),map("b",null),map("b",map("id",3,"__incremental_0",1))));
+		List<IncrementalQuery.Location> locations = part.extractLocations(data);
+		assertEquals(map("a",Arrays.asList(map("b",map("id",1)),map("b",null),map("b",map("id",3)))),data);
+		assertEquals(2,locations.size());
+		assertEquals(Arrays.<Object>asList("a",0,"b"),locations.get(0).getPath());
+		assertEquals(0,locations.get(0).getIndex());
+		assertEquals(Arrays.<Object>asList("a",2,"b"),locations.get(1).getPath());
+		assertEquals(1,locations.get(1).getIndex());
+		
+		Map<String,Object> entry = part.createEntry(locations.get(0),map("c",1),null);
+		assertEquals(map("c",1),entry.get("data"));
+		assertEquals(Arrays.<Object>asList("a",0,"b"),entry.get("path"));
+		assertEquals("c",entry.get("label"));
+		assertFalse(entry.containsKey("errors"));
+		
+		// The data is kept along with the errors
+		entry = part.createEntry(locations.get(1),map("c",null),"errors");
+		assertEquals(map("c",null),entry.get("data"));
+		assertEquals("errors",entry.get("errors"));
+
+		Map<String,Object> error = part.createErrorEntry(locations.get(1),"errors");
+		assertEquals("errors",error.get("errors"));
+		assertFalse(error.containsKey("data"));
+		assertEquals(Arrays.<Object>asList("a",2,"b"),error.get("path"));
+	}
+
+	@Test
+	public void testStreamLocations() {
+		IncrementalQuery.Part part = new IncrementalQuery.Part(Arrays.asList("a","list"),new Field("list"),0,true,null);
+
+		// The initial data gets empty lists in place of the streamed field
+		Map<String,Object> data = map("a",Arrays.asList(map("id",1,"__incremental_0",0),map("id",2,"__incremental_0",1)));
+		List<IncrementalQuery.Location> locations = part.extractLocations(data);
+		assertEquals(map("a",Arrays.asList(map("id",1,"list",new ArrayList<Object>()),map("id",2,"list",new ArrayList<Object>()))),data);
+		assertEquals(2,locations.size());
+
+		Map<String,Object> entry = part.createEntry(locations.get(0),map("list",Arrays.asList(map("x",1),map("x",2))),null);
+		assertEquals(Arrays.asList(map("x",1),map("x",2)),entry.get("items"));
+		assertEquals(Arrays.<Object>asList("a",0,"list",0),entry.get("path"));
+		assertFalse(entry.containsKey("label"));
+		entry = part.createEntry(locations.get(1),map("list",null),null);
+		assertEquals(Collections.emptyList(),entry.get("items"));
+		assertEquals(Arrays.<Object>asList("a",1,"list",0),entry.get("path"));
+	}
+
+	@Test
+	public void testStrip() {
+		Document doc = new Parser().parseDocument("query { a { id ...F @defer list @stream { x } } } fragment F on A { ... @defer { b } }");
+		assertEquals("query{a{id ...F list{x}}} fragment F{...{b}}",render(IncrementalQuery.strip(doc)));
+	}
+
+
+	//
+	// Helpers
+	//
+	private static IncrementalQuery create(String query, Map<String,Object> variables) {
+		return IncrementalQuery.create(new Parser().parseDocument(query),null,variables);
+	}
+
+	private static String render(SelectionSet ss) {
+		StringBuilder b = new StringBuilder();
+		render(b,ss);
+		return b.toString();
+	}
+
+	private static Map<String,Object> map(Object...keyValues) {
+		Map<String,Object> m = new LinkedHashMap<String,Object>();
+		for(int i=0; i<keyValues.length; i+=2) {
+			m.put((String)keyValues[i],keyValues[i+1]);
+		}
+		return m;
+	}
+
+	/**
+	 * Compact rendering of a document: the operation with its variable names, then the fragments
+	 * sorted by name. The arguments are not rendered.
+	 */
+	private static String render(Document document) {
+		StringBuilder b = new StringBuilder();
+		Map<String,FragmentDefinition> fragments = new TreeMap<String,FragmentDefinition>();
+		for(Definition d: document.getDefinitions()) {
+			if(d instanceof OperationDefinition) {
+				OperationDefinition op = (OperationDefinition)d;
+				b.append(op.getOperation().name().toLowerCase());
+				if(op.getName()!=null) {
+					b.append(' ').append(op.getName());
+				}
+				if(!op.getVariableDefinitions().isEmpty()) {
+					b.append('(');
+					for(int i=0; i<op.getVariableDefinitions().size(); i++) {
+						VariableDefinition vd = op.getVariableDefinitions().get(i);
+						b.append(i>0 ? ",$" : "$").append(vd.getName());
+					}
+					b.append(')');
+				}
+				render(b,op.getSelectionSet());
+			} else if(d instanceof FragmentDefinition) {
+				fragments.put(((FragmentDefinition)d).getName(),(FragmentDefinition)d);
+			}
+		}
+		for(FragmentDefinition fd: fragments.values()) {
+			b.append(" fragment ").append(fd.getName());
+			render(b,fd.getSelectionSet());
+		}
+		return b.toString();
+	}
+	private static void render(StringBuilder b, SelectionSet ss) {
+		if(ss==null) {
+			return;
+		}
+		b.append('{');
+		for(int i=0; i<ss.getSelections().size(); i++) {
+			if(i>0) {
+				b.append(' ');
+			}
+			Selection s = ss.getSelections().get(i);
+			if(s instanceof Field) {
+				Field f = (Field)s;
+				if(f.getAlias()!=null) {
+					b.append(f.getAlias()).append(':');
+				}
+				b.append(f.getName());
+				render(b,f.getDirectives());
+				render(b,f.getSelectionSet());
+			} else if(s instanceof InlineFragment) {
+				InlineFragment fr = (InlineFragment)s;
+				b.append("...");
+				render(b,fr.getDirectives());
+				render(b,fr.getSelectionSet());
+			} else if(s instanceof FragmentSpread) {
+				FragmentSpread sp = (FragmentSpread)s;
+				b.append("...").append(sp.getName());
+				render(b,sp.getDirectives());
+			}
+		}
+		b.append('}');
+	}
+	private static void render(StringBuilder b, List<Directive> directives) {
+		if(directives!=null) {
+			for(Directive d: directives) {
+				b.append('@').append(d.getName());
+			}
+		}
+	}
+}
@@ -0,0 +1,171 @@
+/*!COPYRIGHT HEADER! 
+ *
+ * (c) Copyright Darwino Inc. 2014-2016.
+ *
+ * Licensed under The MIT License (https://opensource.org/licenses/MIT)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial 
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT 
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, 
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.darwino.graphsql.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.darwino.graphsql.util.HashUtil;
+
+import graphql.GraphQLError;
+import graphql.schema.GraphQLSchema;
+
+
+/**
+ * Tests the persisted queries.
+ */
+public class PersistedQueryTest {
+	
+	private static final String QUERY = "{ hello }";
+	
+	// Service where the query check is replaced, to test the registration rules
+	private static class TestService extends GraphQLService {
+		List<GraphQLError> errors = Collections.emptyList();
+		TestService(PersistedQueryStore store) {
+			super(createFactory(store),false);
+		}
+		@Override
+		protected List<GraphQLError> checkQuery(GraphQLSchema schema, String query, String operationName, Map<String,Object> variables) {
+			return errors;
+		}
+		String resolve(String query, String id, String hash) {
+			Map<String,Object> extensions = createExtensions(hash);
+			query = lookupPersistedQuery(query, id, extensions);
+			registerPersistedQuery(null, query, extensions, null, null);
+			return query;
+		}
+	}
+	
+	private static GraphQLServiceFactory createFactory(PersistedQueryStore store) {
+		GraphQLServiceFactory factory = new GraphQLServiceFactory("/graphql",(GraphQLSchema)null);
+		factory.setPersistedQueryStore(store);
+		return factory;
+	}
+	
+	private static Map<String,Object> createExtensions(String hash) {
+		if(hash==null) {
+			return null;
+		}
+		Map<String,Object> pq = new HashMap<String,Object>();
+		pq.put("version",1);
+		pq.put("sha256Hash",hash);
+		Map<String,Object> extensions = new HashMap<String,Object>();
+		extensions.put("persistedQuery",pq);
+		return extensions;
+	}
+	
+	private static void assertError(TestService service, String query, String id, String hash, String code) {
+		try {
+			service.resolve(query, id, hash);
+			fail("Expected "+code);
+		} catch(GraphQLService.PersistedQueryException ex) {
+			assertEquals(code,ex.getCode());
+		}
+	}
+	
+	@Test
+	public void testMemoryStore() throws Exception {
+		MemoryPersistedQueryStore store = new MemoryPersistedQueryStore(2,true);
+		store.addQuery("q1",QUERY);
+		assertEquals(QUERY,store.getQuery("q1"));
+		assertEquals(QUERY,store.getQuery(HashUtil.sha256Hex(QUERY)));
+		assertTrue(store.registerQuery("h1","{ a }"));
+		assertEquals("{ a }",store.getQuery("h1"));
+		assertNull(store.getQuery("unknown"));
+		
+		assertFalse(new MemoryPersistedQueryStore(2,false).registerQuery("h1","{ a }"));
+	}
+	
+	@Test
+	public void testRegistration() throws Exception {
+		MemoryPersistedQueryStore store = new MemoryPersistedQueryStore();
+		TestService service = new TestService(store);
+		String hash = HashUtil.sha256Hex(QUERY);
+		// The client first sends the hash only
+		assertError(service, null, null, hash, GraphQLService.PERSISTED_QUERY_NOT_FOUND);
+		// Then the query along with the hash
+		assertEquals(QUERY,service.resolve(QUERY, null, hash));
+		assertEquals(QUERY,store.getQuery(hash));
+		// The hash is then enough
+		assertEquals(QUERY,service.resolve(null, null, hash));
+	}
+	
+	@Test
+	public void testInvalidQueryNotRegistered() throws Exception {
+		MemoryPersistedQueryStore store = new MemoryPersistedQueryStore();
+		TestService service = new TestService(store);
+		List<GraphQLError> errors = new ArrayList<GraphQLError>();
+		errors.add(new QueryComplexityError("Too complex"));
+		service.errors = errors;
+		String hash = HashUtil.sha256Hex(QUERY);
+		// The query is returned, so its execution reports the errors
+		assertEquals(QUERY,service.resolve(QUERY, null, hash));
+		assertNull(store.getQuery(hash));
+		assertError(service, null, null, hash, GraphQLService.PERSISTED_QUERY_NOT_FOUND);
+	}
+	
+	@Test
+	public void testHashMismatch() throws Exception {
+		MemoryPersistedQueryStore store = new MemoryPersistedQueryStore();
+		TestService service = new TestService(store);
+		assertError(service, QUERY, null, HashUtil.sha256Hex("{ other }"), GraphQLService.PERSISTED_QUERY_HASH_MISMATCH);
+		assertEquals(0,store.size());
+	}
+	
+	@Test
+	public void testRegistrationNotSupported() throws Exception {
+		TestService service = new TestService(new MemoryPersistedQueryStore(10,false));
+		assertError(service, QUERY, null, HashUtil.sha256Hex(QUERY), GraphQLService.PERSISTED_QUERY_NOT_SUPPORTED);
+	}
+	
+	@Test
+	public void testIds() throws Exception {
+		MemoryPersistedQueryStore store = new MemoryPersistedQueryStore(10,false);
+		store.addQuery("q1",QUERY);
+		TestService service = new TestService(store);
+		assertEquals(QUERY,service.resolve(null, "q1", null));
+		assertError(service, null, "q2", null, GraphQLService.PERSISTED_QUERY_NOT_FOUND);
+		// The query text takes precedence
+		assertEquals("{ a }",service.resolve("{ a }", "q1", null));
+	}
+	
+	@Test
+	public void testErrorResult() throws Exception {
+		Map<?,?> result = GraphQLService.createErrorResult("PersistedQueryNotFound", GraphQLService.PERSISTED_QUERY_NOT_FOUND);
+		Map<?,?> error = (Map<?,?>)((List<?>)result.get("errors")).get(0);
+		assertEquals("PersistedQueryNotFound",error.get("message"));
+		assertEquals(GraphQLService.PERSISTED_QUERY_NOT_FOUND,((Map<?,?>)error.get("extensions")).get("code"));
+	}
+}
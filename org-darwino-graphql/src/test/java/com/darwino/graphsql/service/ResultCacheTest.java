@@ -0,0 +1,142 @@
+/*!COPYRIGHT HEADER! 
+ *
+ * (c) Copyright Darwino Inc. 2014-2016.
+ *
+ * Licensed under The MIT License (https://opensource.org/licenses/MIT)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial 
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT 
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, 
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.darwino.graphsql.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import graphql.language.Field;
+import graphql.language.FragmentSpread;
+import graphql.language.OperationDefinition;
+import graphql.language.Selection;
+import graphql.language.SelectionSet;
+import graphql.schema.GraphQLSchema;
+
+
+/**
+ * Tests the result cache.
+ */
+public class ResultCacheTest {
+	
+	private static final String QUERY = "{ doc { title } }";
+	
+	// Checker comparing the recorded stamps with the current ones
+	private static class TestChecker implements ResultDependencies.Checker {
+		Map<Object,Object> stamps = new HashMap<Object,Object>();
+		@Override
+		public boolean isUnchanged(Object executionContext, Map<Object,Object> dependencies) {
+			for(Map.Entry<Object,Object> e: dependencies.entrySet()) {
+				Object s = stamps.get(e.getKey());
+				if(s==null ? e.getValue()!=null : !s.equals(e.getValue())) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+	
+	private static ResultDependencies createDependencies(Object key, Object stamp) {
+		ResultDependencies deps = new ResultDependencies();
+		deps.add(key, stamp);
+		return deps;
+	}
+	
+	@Test
+	public void testScope() throws Exception {
+		TestChecker checker = new TestChecker();
+		checker.stamps.put("d1", "s1");
+		ResultCache cache = new ResultCache(checker);
+		ResultCache.Entry e1 = cache.put("user1", QUERY, null, null, "data1", createDependencies("d1","s1"));
+		assertSame(e1,cache.get(null, "user1", QUERY, null, null));
+		// The result of a user is not served to another one
+		assertNull(cache.get(null, "user2", QUERY, null, null));
+		assertNull(cache.get(null, null, QUERY, null, null));
+		
+		ResultCache.Entry e2 = cache.put("user2", QUERY, null, null, "data2", createDependencies("d1","s1"));
+		assertEquals(2,cache.size());
+		assertFalse(e1.getETag().equals(e2.getETag()));
+		assertEquals("data1",cache.get(null, "user1", QUERY, null, null).getData());
+		assertEquals("data2",cache.get(null, "user2", QUERY, null, null).getData());
+	}
+	
+	@Test
+	public void testETag() throws Exception {
+		ResultCache cache = new ResultCache(new TestChecker());
+		String etag = cache.put("user1", QUERY, null, null, "data", createDependencies("d1","s1")).getETag();
+		assertEquals(etag,cache.put("user1", QUERY, null, null, "data", createDependencies("d1","s1")).getETag());
+		assertFalse(etag.equals(cache.put("user1", QUERY, null, null, "data", createDependencies("d1","s2")).getETag()));
+		assertFalse(etag.equals(cache.put("user1", QUERY, "op", null, "data", createDependencies("d1","s1")).getETag()));
+		Map<String,Object> variables = Collections.<String,Object>singletonMap("id","d1");
+		assertFalse(etag.equals(cache.put("user1", QUERY, null, variables, "data", createDependencies("d1","s1")).getETag()));
+	}
+	
+	@Test
+	public void testStale() throws Exception {
+		TestChecker checker = new TestChecker();
+		checker.stamps.put("d1", "s1");
+		ResultCache cache = new ResultCache(checker);
+		cache.put("user1", QUERY, null, null, "data", createDependencies("d1","s1"));
+		assertNotNull(cache.get(null, "user1", QUERY, null, null));
+		checker.stamps.put("d1", "s2");
+		assertNull(cache.get(null, "user1", QUERY, null, null));
+		assertEquals(0,cache.size());
+	}
+	
+	@Test
+	public void testCacheableFields() throws Exception {
+		ResultCache cache = new ResultCache(new TestChecker());
+		GraphQLService service = new GraphQLService(new GraphQLServiceFactory("/graphql",(GraphQLSchema)null),false);
+		OperationDefinition op = createOperation(new Field("doc"), new Field("docs"));
+		// Nothing is cacheable until the fields opt in
+		assertFalse(service.isCacheable(op, cache));
+		cache.addCacheableFields("doc");
+		assertFalse(service.isCacheable(op, cache));
+		cache.addCacheableFields("docs");
+		assertTrue(service.isCacheable(op, cache));
+		assertFalse(service.isCacheable(op, null));
+		// The fragments are not expanded
+		assertFalse(service.isCacheable(createOperation(new Field("doc"), new FragmentSpread("f")), cache));
+	}
+	
+	private static OperationDefinition createOperation(Selection... selections) {
+		List<Selection> l = new ArrayList<Selection>();
+		Collections.addAll(l, selections);
+		OperationDefinition op = new OperationDefinition();
+		op.setOperation(OperationDefinition.Operation.QUERY);
+		op.setSelectionSet(new SelectionSet(l));
+		return op;
+	}
+}
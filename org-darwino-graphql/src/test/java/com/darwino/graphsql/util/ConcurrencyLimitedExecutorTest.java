@@ -0,0 +1,150 @@
+/*!COPYRIGHT HEADER! 
+ *
+ * (c) Copyright Darwino Inc. 2014-2016.
+ *
+ * Licensed under The MIT License (https://opensource.org/licenses/MIT)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial 
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT 
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, 
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.darwino.graphsql.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+
+/**
+ * Tests the executor limiting the concurrency of a request.
+ */
+public class ConcurrencyLimitedExecutorTest {
+	
+	@Test
+	public void testLimit() throws Exception {
+		ExecutorService shared = Executors.newFixedThreadPool(8);
+		try {
+			ConcurrencyLimitedExecutor executor = new ConcurrencyLimitedExecutor(shared, 2);
+			final AtomicInteger active = new AtomicInteger();
+			final AtomicInteger maxActive = new AtomicInteger();
+			final AtomicInteger callerRuns = new AtomicInteger();
+			final Thread caller = Thread.currentThread();
+			List<Future<?>> futures = new ArrayList<Future<?>>();
+			for(int i=0; i<20; i++) {
+				futures.add(executor.submit(new Runnable() {
+					@Override
+					public void run() {
+						int n = active.incrementAndGet();
+						synchronized(maxActive) {
+							maxActive.set(Math.max(maxActive.get(),n));
+						}
+						if(Thread.currentThread()==caller) {
+							callerRuns.incrementAndGet();
+						}
+						try {
+							Thread.sleep(10);
+						} catch(InterruptedException ex) {
+							Thread.currentThread().interrupt();
+						}
+						active.decrementAndGet();
+					}
+				}));
+			}
+			for(Future<?> f: futures) {
+				f.get(5, TimeUnit.SECONDS);
+			}
+			// The caller runs the tasks above the limit, so the shared pool never gets more than 2
+			assertTrue(maxActive.get()<=3);
+			assertTrue(callerRuns.get()>0);
+		} finally {
+			shared.shutdown();
+		}
+	}
+	
+	@Test
+	public void testNested() throws Exception {
+		// Tasks waiting for nested tasks do not deadlock when all the permits are taken
+		ExecutorService shared = Executors.newFixedThreadPool(1);
+		try {
+			final ConcurrencyLimitedExecutor executor = new ConcurrencyLimitedExecutor(shared, 1);
+			Future<Integer> f = executor.submit(new java.util.concurrent.Callable<Integer>() {
+				@Override
+				public Integer call() throws Exception {
+					Future<Integer> nested = executor.submit(new java.util.concurrent.Callable<Integer>() {
+						@Override
+						public Integer call() {
+							return 42;
+						}
+					});
+					return nested.get(5, TimeUnit.SECONDS);
+				}
+			});
+			assertEquals(42,f.get(5, TimeUnit.SECONDS).intValue());
+		} finally {
+			shared.shutdown();
+		}
+	}
+	
+	@Test
+	public void testRejected() throws Exception {
+		// A shared executor refusing the task makes it run in the caller
+		Executor refusing = new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				throw new RejectedExecutionException();
+			}
+		};
+		ConcurrencyLimitedExecutor executor = new ConcurrencyLimitedExecutor(refusing, 2);
+		final Thread[] thread = new Thread[1];
+		final CountDownLatch done = new CountDownLatch(3);
+		for(int i=0; i<3; i++) {
+			executor.execute(new Runnable() {
+				@Override
+				public void run() {
+					thread[0] = Thread.currentThread();
+					done.countDown();
+				}
+			});
+		}
+		assertEquals(0,done.getCount());
+		assertSame(Thread.currentThread(),thread[0]);
+	}
+	
+	@Test(expected=RejectedExecutionException.class)
+	public void testShutdown() throws Exception {
+		ConcurrencyLimitedExecutor executor = new ConcurrencyLimitedExecutor(Executors.newSingleThreadExecutor(), 2);
+		executor.shutdown();
+		assertTrue(executor.isShutdown());
+		executor.execute(new Runnable() {
+			@Override
+			public void run() {
+			}
+		});
+	}
+}
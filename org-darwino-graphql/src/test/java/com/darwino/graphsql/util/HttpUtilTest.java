@@ -0,0 +1,66 @@
+/*!COPYRIGHT HEADER! 
+ *
+ * (c) Copyright Darwino Inc. 2014-2016.
+ *
+ * Licensed under The MIT License (https://opensource.org/licenses/MIT)
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of this software 
+ * and associated documentation files (the "Software"), to deal in the Software without restriction, 
+ * including without limitation the rights to use, copy, modify, merge, publish, distribute, sublicense, 
+ * and/or sell copies of the Software, and to permit persons to whom the Software is furnished to do so, 
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all copies or substantial 
+ * portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR IMPLIED, INCLUDING BUT NOT 
+ * LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. 
+ * IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, 
+ * WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION WITH THE 
+ * SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+
+package com.darwino.graphsql.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+
+/**
+ * Content negotiation.
+ */
+public class HttpUtilTest {
+
+	@Test
+	public void testAcceptsEncoding() {
+		assertTrue(HttpUtil.acceptsEncoding("gzip", "gzip"));
+		assertTrue(HttpUtil.acceptsEncoding("deflate, GZIP;q=0.5", "gzip"));
+		assertTrue(HttpUtil.acceptsEncoding("br, *", "gzip"));
+		assertFalse(HttpUtil.acceptsEncoding(null, "gzip"));
+		assertFalse(HttpUtil.acceptsEncoding("", "gzip"));
+		assertFalse(HttpUtil.acceptsEncoding("identity", "gzip"));
+		// A zero quality is a refusal
+		assertFalse(HttpUtil.acceptsEncoding("gzip;q=0", "gzip"));
+		assertFalse(HttpUtil.acceptsEncoding("deflate, gzip ; q=0.0", "gzip"));
+		assertFalse(HttpUtil.acceptsEncoding("*;q=0", "gzip"));
+		// The coding itself takes precedence over the wildcard
+		assertFalse(HttpUtil.acceptsEncoding("*, gzip;q=0", "gzip"));
+		assertTrue(HttpUtil.acceptsEncoding("*;q=0, gzip", "gzip"));
+		// Not a substring match
+		assertFalse(HttpUtil.acceptsEncoding("x-gzipped", "gzip"));
+	}
+
+	@Test
+	public void testNegotiate() {
+		assertEquals(0,HttpUtil.negotiate(null, "application/json", "application/cbor"));
+		assertEquals(1,HttpUtil.negotiate("application/cbor", "application/json", "application/cbor"));
+		assertEquals(0,HttpUtil.negotiate("*/*", "application/json", "application/cbor"));
+		assertEquals(1,HttpUtil.negotiate("application/*;q=0.5, application/cbor", "application/json", "application/cbor"));
+		assertEquals(-1,HttpUtil.negotiate("text/html", "application/json", "application/cbor"));
+		assertEquals(1,HttpUtil.negotiate("*/*, application/json;q=0", "application/json", "application/cbor"));
+	}
+}